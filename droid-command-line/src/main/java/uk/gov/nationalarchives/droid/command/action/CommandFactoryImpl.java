@@ -40,6 +40,7 @@ import uk.gov.nationalarchives.droid.command.FilterFieldCommand;
 import uk.gov.nationalarchives.droid.command.context.GlobalContext;
 import uk.gov.nationalarchives.droid.command.filter.CommandLineFilter;
 import uk.gov.nationalarchives.droid.command.filter.CommandLineFilter.FilterType;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportFormat;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 
 /**
@@ -50,6 +51,7 @@ public class CommandFactoryImpl implements CommandFactory {
 
     private static final String NO_RESOURCES_SPECIFIED = "No resources specified.";
     private static final String NO_PROFILES_SPECIFIED_FOR_EXPORT = "No profiles specified for export.";
+    private static final String CSV_EXPORT_TYPE = "csv";
     private GlobalContext context;
     private PrintWriter printWriter;
 
@@ -86,6 +88,7 @@ public class CommandFactoryImpl implements CommandFactory {
         cmd.setDestination(destination);
         cmd.setProfiles(profiles);
         cmd.setBom(bom);
+        setExportType(cmd, cli);
 
         if (cli.hasOption(CommandLineParam.ALL_FILTER.toString())) {
             cmd.setFilter(new CommandLineFilter(cli.getOptionValues(
@@ -120,6 +123,7 @@ public class CommandFactoryImpl implements CommandFactory {
         cmd.setDestination(destination);
         cmd.setProfiles(profiles);
         cmd.setBom(bom);
+        setExportType(cmd, cli);
 
         if (cli.hasOption(CommandLineParam.ALL_FILTER.toString())) {
             cmd.setFilter(new CommandLineFilter(cli.getOptionValues(
@@ -134,6 +138,25 @@ public class CommandFactoryImpl implements CommandFactory {
         return cmd;
     }
 
+    private static void setExportType(final ExportCommand cmd, final CommandLine cli)
+        throws CommandLineSyntaxException {
+        final String type = cli.getOptionValue(CommandLineParam.EXPORT_TYPE.toString(), CSV_EXPORT_TYPE);
+        switch (type.toLowerCase()) {
+            case CSV_EXPORT_TYPE:
+                cmd.setExportFormat(ExportFormat.CSV);
+                break;
+            case "jsonl":
+                cmd.setExportFormat(ExportFormat.JSON_LINES);
+                break;
+            case "columnar":
+                cmd.setExportFormat(ExportFormat.COLUMNAR);
+                break;
+            default:
+                throw new CommandLineSyntaxException(String.format("Unknown export type: %s", type));
+        }
+        cmd.setCompress(cli.hasOption(CommandLineParam.GZIP.toString()));
+    }
+
     /**
      * @param cli the command line
      * @throws CommandLineSyntaxException command parse exception.
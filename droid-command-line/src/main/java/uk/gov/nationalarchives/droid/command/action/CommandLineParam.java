@@ -108,6 +108,22 @@ public enum CommandLineParam {
         }
     },
 
+    /** The type of file to export to. */
+    EXPORT_TYPE("o", "export-type", true, 1, I18N.EXPORT_TYPE_HELP, "type") {
+        @Override
+        public DroidCommand getCommand(CommandFactory commandFactory, CommandLine cli) {
+            return null;
+        }
+    },
+
+    /** Compress the export file with gzip. */
+    GZIP("z", "gzip", I18N.EXPORT_GZIP_HELP) {
+        @Override
+        public DroidCommand getCommand(CommandFactory commandFactory, CommandLine cli) {
+            return null;
+        }
+    },
+
     /** Add BOM to file parameter.   */
     BOM("B", "bom", I18N.EXPORT_WITH_BOM) {
         @Override
@@ -392,6 +408,8 @@ public enum CommandLineParam {
         options.addOption(RECURSIVE.newOption());
         options.addOption(QUIET.newOption());
         options.addOption(BOM.newOption());
+        options.addOption(EXPORT_TYPE.newOption());
+        options.addOption(GZIP.newOption());
         
         OptionGroup filterOptions = new OptionGroup();
         filterOptions.addOption(ALL_FILTER.newOption());
@@ -470,6 +488,8 @@ public enum CommandLineParam {
         options.addOption(ANY_FILTER.newOption());
         options.addOption(ALL_FILTER.newOption());
         options.addOption(BOM.newOption());
+        options.addOption(EXPORT_TYPE.newOption());
+        options.addOption(GZIP.newOption());
         
         return options;
     }
@@ -41,6 +41,7 @@ import java.util.concurrent.Future;
 import uk.gov.nationalarchives.droid.command.filter.CommandLineFilter;
 import uk.gov.nationalarchives.droid.command.filter.DqlFilterParser;
 import uk.gov.nationalarchives.droid.command.filter.SimpleFilter;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportFormat;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportManager;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.profile.ProfileInstance;
@@ -61,6 +62,8 @@ public class ExportCommand implements DroidCommand {
     private CommandLineFilter cliFilter;
     private ExportOptions options;
     private boolean bom;
+    private ExportFormat exportFormat = ExportFormat.CSV;
+    private boolean compress;
     
     /**
      * {@inheritDoc}
@@ -98,7 +101,7 @@ public class ExportCommand implements DroidCommand {
             //default to UTF-8
             final String outputEncoding = "UTF-8"; //TODO set encoding from command line option
             final Future<?> fProfiles = exportManager.exportProfiles(profileIds, destination, filter,
-                    options, outputEncoding, bom);
+                    options, exportFormat, compress, outputEncoding, bom);
             fProfiles.get();
         } catch (InterruptedException e) {
             throw new CommandExecutionException(e);
@@ -200,4 +203,32 @@ public class ExportCommand implements DroidCommand {
     public void setBom(boolean bom) {
         this.bom = bom;
     }
+
+    /**
+     * @return the format of the export file.
+     */
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+
+    /**
+     * @param exportFormat the format of the export file.
+     */
+    public void setExportFormat(ExportFormat exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+
+    /**
+     * @return whether the export file is gzip compressed.
+     */
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress true to gzip compress the export file.
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
 }
@@ -58,6 +58,7 @@ import uk.gov.nationalarchives.droid.core.SignatureParseException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.util.FileUtil;
@@ -88,6 +89,7 @@ public class NoProfileRunCommand implements DroidCommand {
     private boolean recursive;
     private boolean archives;
     private boolean webArchives;
+    private DroidGlobalConfig globalConfig;
     private Log log = LogFactory.getLog(this.getClass());
 
     //CHECKSTYLE:OFF
@@ -146,6 +148,9 @@ public class NoProfileRunCommand implements DroidCommand {
         }
 
         binarySignatureIdentifier.setSignatureFile(fileSignaturesFileName);
+        if (globalConfig != null) {
+            binarySignatureIdentifier.setSignatureFileSnapshotDir(globalConfig.getSignatureSnapshotDir());
+        }
         try {
             binarySignatureIdentifier.init();
         } catch (SignatureParseException e) {
@@ -314,4 +319,13 @@ public class NoProfileRunCommand implements DroidCommand {
     public void setQuiet(final boolean quiet) {
         this.quietFlag = quiet;
     }
+
+    /**
+     * Set the global config, used to find the directory signature file snapshots are kept in.
+     * 
+     * @param globalConfig The global config
+     */
+    public void setGlobalConfig(final DroidGlobalConfig globalConfig) {
+        this.globalConfig = globalConfig;
+    }
 }
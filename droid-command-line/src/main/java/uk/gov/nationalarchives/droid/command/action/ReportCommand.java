@@ -33,7 +33,6 @@ package uk.gov.nationalarchives.droid.command.action;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -173,27 +172,17 @@ public class ReportCommand implements DroidCommand {
                 try (final Writer tempReport = Files.newBufferedWriter(destinationPath, UTF_8)) {
                     reportXmlWriter.writeReport(report, tempReport);
                 }
-            } else {
-                // Write the report xml to a temporary file:
-                final Path tempFile = Files.createTempFile(config.getTempDir(), "report~", ".xml");
-                try (final Writer tempReport = Files.newBufferedWriter(tempFile, UTF_8)) {
-                    reportXmlWriter.writeReport(report, tempReport);
+            } else if (PDF_FORMAT.equalsIgnoreCase(reportOutputType)) {
+                // The report is streamed straight into the transform, without writing its xml out first.
+                try (final OutputStream out = Files.newOutputStream(destinationPath)) {
+                    transformer.transformToPdf(report, XHTML_TRANSFORM_LOCATION, out);
                 }
-
-                if (PDF_FORMAT.equalsIgnoreCase(reportOutputType)) {
-                    try (final Reader reader = Files.newBufferedReader(tempFile, UTF_8);
-                            final OutputStream out = Files.newOutputStream(destinationPath)) {
-                        transformer.transformToPdf(reader, XHTML_TRANSFORM_LOCATION, out);
-                    }
-                } else {
-                    final ReportSpec spec = request.getReportSpec();
-                    final Path xslFile = getXSLFile(spec.getXslTransforms());
-                    if (xslFile != null) {
-                        //FileWriter out = new FileWriter(destination);
-                        try (final Reader reader = Files.newBufferedReader(tempFile, UTF_8);
-                                final Writer out = Files.newBufferedWriter(destinationPath, UTF_8)) {
-                            transformer.transformUsingXsl(reader, xslFile, out);
-                        }
+            } else {
+                final ReportSpec spec = request.getReportSpec();
+                final Path xslFile = getXSLFile(spec.getXslTransforms());
+                if (xslFile != null) {
+                    try (final Writer out = Files.newBufferedWriter(destinationPath, UTF_8)) {
+                        transformer.transformUsingXsl(report, xslFile, out);
                     }
                 }
             }
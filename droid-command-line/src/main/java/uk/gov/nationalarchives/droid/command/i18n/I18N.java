@@ -54,6 +54,12 @@ public final class I18N {
 
     /** Export description. */
     public static final String EXPORT_FORMAT_HELP = "export.format.help";
+
+    /** Export type description. */
+    public static final String EXPORT_TYPE_HELP = "export.type.help";
+
+    /** Export compression description. */
+    public static final String EXPORT_GZIP_HELP = "export.gzip.help";
     
     
     /** Profiles description. */
@@ -49,6 +49,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import uk.gov.nationalarchives.droid.command.context.GlobalContext;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportFormat;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 
 /**
@@ -135,6 +136,75 @@ public class CommandFactoryTest {
         assertEquals("out.csv", exportCommand.getDestination());
     }
 
+
+    @Test
+    public void testExportCommandWithTypeAndGzip() throws Exception {
+
+        ExportCommand exportCommand = new ExportCommand();
+        when(context.getExportCommand(ExportOptions.ONE_ROW_PER_FILE)).thenReturn(exportCommand);
+
+        String[] args = new String[] {
+                "-o",
+                "jsonl",
+                "-z",
+                "-e",
+                "out.jsonl.gz",
+                "-p",
+                "tmp/profile 1.droid",
+        };
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cli = parser.parse(CommandLineParam.options(), args);
+
+        ExportCommand e1 = (ExportCommand) factory.getExportFileCommand(cli);
+
+        assertEquals(ExportFormat.JSON_LINES, e1.getExportFormat());
+        assertTrue(e1.isCompress());
+        assertEquals("out.jsonl.gz", exportCommand.getDestination());
+    }
+
+    @Test
+    public void testExportCommandDefaultsToUncompressedCsv() throws Exception {
+
+        ExportCommand exportCommand = new ExportCommand();
+        when(context.getExportCommand(ExportOptions.ONE_ROW_PER_FILE)).thenReturn(exportCommand);
+
+        String[] args = new String[] {
+                "-e",
+                "out.csv",
+                "-p",
+                "tmp/profile 1.droid",
+        };
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cli = parser.parse(CommandLineParam.options(), args);
+
+        ExportCommand e1 = (ExportCommand) factory.getExportFileCommand(cli);
+
+        assertEquals(ExportFormat.CSV, e1.getExportFormat());
+        assertFalse(e1.isCompress());
+    }
+
+    @Test (expected = CommandLineSyntaxException.class)
+    public void testExportCommandWithUnknownType() throws Exception {
+
+        ExportCommand exportCommand = new ExportCommand();
+        when(context.getExportCommand(ExportOptions.ONE_ROW_PER_FORMAT)).thenReturn(exportCommand);
+
+        String[] args = new String[] {
+                "-o",
+                "xml",
+                "-E",
+                "out.xml",
+                "-p",
+                "tmp/profile 1.droid",
+        };
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine cli = parser.parse(CommandLineParam.options(), args);
+
+        factory.getExportFormatCommand(cli);
+    }
     
     @Test
     public void testExportCommandWithNoExportArgument() throws Exception {
@@ -51,6 +51,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.ErrorCode;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureRegistry;
 
 /**
  * @author rflitcroft
@@ -64,12 +65,18 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
      * 
      */
     private static final String ERROR_READING_SIGNATURE_FILE = "Error reading signature file";
+
+    private static final SignatureRegistry<ContainerSignatureDefinitions> SHARED_SIGNATURE_FILES =
+            new SignatureRegistry<ContainerSignatureDefinitions>();
+
     private ContainerSignatureSaxParser signatureFileParser;
     private ContainerIdentifierFactory containerIdentifierFactory;
     private String containerType;
     private ArchiveFormatResolver containerFormatResolver;
     private DroidCore droidCore;
     private Path signatureFilePath;
+    private boolean shareSignatureFile;
+    private String sharedSignatureFileKey;
     
     private ContainerIdentifierInit init;
 
@@ -173,48 +180,88 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
      * @throws SignatureFileException if the Signature file could not be initialised
      */
     public void init() throws SignatureFileException {
-        try (final InputStream sigFile = new BufferedInputStream(Files.newInputStream(signatureFilePath))) {
-            ContainerSignatureDefinitions defs = signatureFileParser.parse(sigFile);
-            
-            init = new ContainerIdentifierInit();
-            init.init(defs, containerType, formats, droidCore);
-            
-            /*
-            Set<String> uniqueFileSet = new HashSet<String>();
-            
-            for (ContainerSignature sig : defs.getContainerSignatures()) {
-                if (sig.getContainerType().equals(containerType)) {
-                    addContainerSignature(sig);
-                    uniqueFileSet.addAll(sig.getFiles().keySet());
-                }
+        final ContainerSignatureDefinitions defs;
+        if (shareSignatureFile) {
+            defs = acquireSharedSignatureFile();
+        } else {
+            defs = loadSignatureFile();
+        }
+        init = new ContainerIdentifierInit();
+        init.init(defs, containerType, formats, droidCore);
+        
+        /*
+        Set<String> uniqueFileSet = new HashSet<String>();
+        
+        for (ContainerSignature sig : defs.getContainerSignatures()) {
+            if (sig.getContainerType().equals(containerType)) {
+                addContainerSignature(sig);
+                uniqueFileSet.addAll(sig.getFiles().keySet());
             }
-            uniqueFileEntries = new ArrayList<String>(uniqueFileSet); 
-            
-            for (FileFormatMapping fmt : defs.getFormats()) {
-                List<FileFormatMapping> mappings = formats.get(fmt.getSignatureId());
-                if (mappings == null) {
-                    mappings = new ArrayList<FileFormatMapping>();
-                    formats.put(fmt.getSignatureId(), mappings);
-                }
-                mappings.add(fmt);
-                droidCore.removeSignatureForPuid(fmt.getPuid());
+        }
+        uniqueFileEntries = new ArrayList<String>(uniqueFileSet); 
+        
+        for (FileFormatMapping fmt : defs.getFormats()) {
+            List<FileFormatMapping> mappings = formats.get(fmt.getSignatureId());
+            if (mappings == null) {
+                mappings = new ArrayList<FileFormatMapping>();
+                formats.put(fmt.getSignatureId(), mappings);
             }
-            */
-            
-            
-            for (TriggerPuid triggerPuid : defs.getTiggerPuids()) {
-                if (triggerPuid.getContainerType().equals(containerType)) {
-                    containerIdentifierFactory.addContainerIdentifier(containerType, this);
-                    final String puid = triggerPuid.getPuid();
-                    containerFormatResolver.registerPuid(puid, containerType);
+            mappings.add(fmt);
+            droidCore.removeSignatureForPuid(fmt.getPuid());
+        }
+        */
+        
+        
+        for (TriggerPuid triggerPuid : defs.getTiggerPuids()) {
+            if (triggerPuid.getContainerType().equals(containerType)) {
+                containerIdentifierFactory.addContainerIdentifier(containerType, this);
+                final String puid = triggerPuid.getPuid();
+                containerFormatResolver.registerPuid(puid, containerType);
+                // Containers are identified from all the binary hits, before lower priority ones are removed.
+                if (droidCore != null) {
+                    droidCore.reportLowerPriorityHitsForPuid(puid);
                 }
             }
+        }
+    }
+
+    /**
+     * Releases this identifier's reference to a shared container signature file.
+     */
+    public void destroy() {
+        if (sharedSignatureFileKey != null) {
+            SHARED_SIGNATURE_FILES.release(sharedSignatureFileKey);
+            sharedSignatureFileKey = null;
+        }
+    }
+
+    private ContainerSignatureDefinitions loadSignatureFile() throws SignatureFileException {
+        try (final InputStream sigFile = new BufferedInputStream(Files.newInputStream(signatureFilePath))) {
+            return signatureFileParser.parse(sigFile);
         } catch (IOException e) {
             throw new SignatureFileException(ERROR_READING_SIGNATURE_FILE, e, ErrorCode.FILE_NOT_FOUND);
         } catch (SignatureParseException e) {
             throw new SignatureFileException(ERROR_READING_SIGNATURE_FILE, e, ErrorCode.INVALID_SIGNATURE_FILE);
         }
     }
+
+    private ContainerSignatureDefinitions acquireSharedSignatureFile() throws SignatureFileException {
+        final String key;
+        try {
+            key = SignatureRegistry.digest(signatureFilePath);
+        } catch (IOException e) {
+            throw new SignatureFileException(ERROR_READING_SIGNATURE_FILE, e, ErrorCode.FILE_NOT_FOUND);
+        }
+        final ContainerSignatureDefinitions shared = SHARED_SIGNATURE_FILES.acquire(key,
+            new SignatureRegistry.Loader<ContainerSignatureDefinitions, SignatureFileException>() {
+                @Override
+                public ContainerSignatureDefinitions load() throws SignatureFileException {
+                    return loadSignatureFile();
+                }
+            });
+        sharedSignatureFileKey = key;
+        return shared;
+    }
     
     /**
      * @param signatureFileParser the signatureFileParser to set
@@ -258,6 +305,17 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
         this.signatureFilePath = signatureFilePath;
     }
 
+    /**
+     * Sets whether the parsed container signature file is shared with other identifiers in this
+     * process which use the same container signature file, rather than each parsing and holding
+     * their own.  A shared signature file must be released by calling {@link #destroy()} when
+     * this identifier is no longer used.
+     * @param shareSignatureFile whether to share the parsed container signature file.
+     */
+    public void setShareSignatureFile(boolean shareSignatureFile) {
+        this.shareSignatureFile = shareSignatureFile;
+    }
+
     @Override
     public void setMaxBytesToScan(long maxBytesToScan) {
         this.maxBytesToScan = maxBytesToScan;
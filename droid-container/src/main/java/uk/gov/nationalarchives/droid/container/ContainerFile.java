@@ -57,7 +57,7 @@ public class ContainerFile {
     private Log log = LogFactory.getLog(this.getClass());
     
     @XmlTransient
-    private boolean compileError;
+    private volatile boolean compileError;
     
     @XmlElement(name = "Path")
     private String path;
@@ -69,7 +69,7 @@ public class ContainerFile {
     private XmlFragment binarySignatures;
     
     @XmlTransient
-    private InternalSignatureCollection signatures;
+    private volatile InternalSignatureCollection signatures;
     
     /**
      * @return the path
@@ -117,7 +117,17 @@ public class ContainerFile {
      * @return the compiled binarySignature
      */
     public InternalSignatureCollection getCompiledBinarySignatures() {
-        if (signatures == null && binarySignatures != null && !compileError) {      //TODO potential race condition
+        if (signatures == null && binarySignatures != null && !compileError) {
+            compileBinarySignatures();
+        }
+        return this.signatures;
+    }
+
+    /*
+     * Container files are shared between identifiers and threads, so only one of them compiles the signatures.
+     */
+    private synchronized void compileBinarySignatures() {
+        if (signatures == null && !compileError) {
             BinarySignatureXMLParser<InternalSignatureCollection> signatureParser =
                 new BinarySignatureXMLParser<InternalSignatureCollection>();
             Element element = binarySignatures.getElement();
@@ -133,7 +143,6 @@ public class ContainerFile {
                 log.warn(message);
             }
         }
-        return this.signatures;
     }
     
 }
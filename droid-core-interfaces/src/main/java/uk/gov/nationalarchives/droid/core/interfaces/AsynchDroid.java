@@ -48,6 +48,16 @@ public interface AsynchDroid {
      */
     Future<IdentificationResultCollection> submit(final IdentificationRequest request);
 
+    /**
+     * Submits a job asynchronously, opening the request on its byte source
+     * inside the job rather than on the calling thread.
+     * @param request the unopened request to submit
+     * @param byteSource the byte source to open the request from
+     * @param <T> the type of byte source the request opens.
+     * @return future task
+     */
+    <T> Future<IdentificationResultCollection> submit(final IdentificationRequest<T> request, T byteSource);
+
     /**
      * Waits until in-flight jobs have finished.
      * @throws InterruptedException if the calling thread was interrupted.
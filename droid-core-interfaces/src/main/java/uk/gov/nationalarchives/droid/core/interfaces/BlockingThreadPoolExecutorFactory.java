@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -43,6 +44,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * @author rflitcroft
  * Executor service which which will block new tasks until a thread is available to service a task.
+ * If a queue capacity is set, up to that many tasks are queued before new tasks are blocked.
+ * Once the pool is busy and its queue is full, new tasks are run by the thread submitting them,
+ * unless the pool is set to block when full, in which case the submitting thread waits for room in the queue.
  */
 public class BlockingThreadPoolExecutorFactory {
 
@@ -53,10 +57,15 @@ public class BlockingThreadPoolExecutorFactory {
     //private static final int DEFAULT_MAX_CORE_POOL_SIZE = 4;
     
     private static final int DEFAULT_KEEP_ALIVE_TIME_MILLIS = 1000;
+    private static final String DEFAULT_THREAD_NAME_PREFIX = "core-thread-";
+    private static final String SHUT_DOWN = "Executor has been shut down.";
     
     private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
     private int maxPoolSize = DEFAULT_MAX_CORE_POOL_SIZE;
     private long keepAliveTimeMillis = DEFAULT_KEEP_ALIVE_TIME_MILLIS;
+    private int queueCapacity;
+    private boolean blockWhenFull;
+    private String threadNamePrefix = DEFAULT_THREAD_NAME_PREFIX;
     
     /**
      * Returns a new instance of a BlockingThreadPoolExecutor.
@@ -64,10 +73,12 @@ public class BlockingThreadPoolExecutorFactory {
      */
     public ThreadPoolExecutor newInstance() {
         
-        final BlockingQueue<Runnable> workQueue = new SynchronousQueue<Runnable>();
-        RejectedExecutionHandler rejectedExecutionHandler = new CallerRunsUnlessPoolShutdownPolicy();
+        final BlockingQueue<Runnable> workQueue = queueCapacity > 0
+                ? new ArrayBlockingQueue<Runnable>(queueCapacity) : new SynchronousQueue<Runnable>();
+        RejectedExecutionHandler rejectedExecutionHandler = blockWhenFull
+                ? new BlockUnlessPoolShutdownPolicy() : new CallerRunsUnlessPoolShutdownPolicy();
         
-        ThreadFactory tf = new MyThreadFactory();
+        ThreadFactory tf = new MyThreadFactory(threadNamePrefix);
         
         ThreadPoolExecutor executor = new ThreadPoolExecutor(
                 corePoolSize, maxPoolSize, keepAliveTimeMillis, TimeUnit.MILLISECONDS, 
@@ -80,12 +91,29 @@ public class BlockingThreadPoolExecutorFactory {
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
             
             if (executor.isShutdown()) {
-                throw new RejectedExecutionException("Executor has been shut down.");
+                throw new RejectedExecutionException(SHUT_DOWN);
             } 
             
             r.run();
         }
     }
+
+    private static final class BlockUnlessPoolShutdownPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException(SHUT_DOWN);
+            }
+
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting to queue a task.", e);
+            }
+        }
+    }
     
     private static final class MyThreadFactory implements ThreadFactory {
         
@@ -93,10 +121,10 @@ public class BlockingThreadPoolExecutorFactory {
         private final AtomicInteger threadNumber = new AtomicInteger(1);
         private final String namePrefix;
 
-        private MyThreadFactory() {
+        private MyThreadFactory(String namePrefix) {
             SecurityManager s = System.getSecurityManager();
             group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-            namePrefix = "core-thread-";
+            this.namePrefix = namePrefix;
         }
 
         public Thread newThread(Runnable r) {
@@ -135,6 +163,29 @@ public class BlockingThreadPoolExecutorFactory {
         this.keepAliveTimeMillis = keepAliveTimeMillis;
     }
 
+    /**
+     * @param queueCapacity the number of tasks which can wait for a thread before
+     *                      new tasks are blocked, or zero to hand tasks directly to threads.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param blockWhenFull whether a task submitted while the pool is busy and its queue is full waits
+     *                      for room in the queue, rather than being run by the thread submitting it.
+     */
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    /**
+     * @param threadNamePrefix the prefix for the names of threads in the pool
+     */
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
     /**
      * @param workQueueSize the workQueueSize to set
      */
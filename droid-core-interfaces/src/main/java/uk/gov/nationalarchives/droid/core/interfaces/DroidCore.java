@@ -98,6 +98,14 @@ public interface DroidCore {
      * @param string a puid
      */
     void removeSignatureForPuid(String string);
+
+    /**
+     * Ensures binary signature matches for the PUID specified are always reported,
+     * even when a higher priority format also matches, because something needs to
+     * see them before lower priority hits are removed.
+     * @param puid a puid
+     */
+    void reportLowerPriorityHitsForPuid(String puid);
     
     /**
      * Sets the maximum number of bytes to scan from the
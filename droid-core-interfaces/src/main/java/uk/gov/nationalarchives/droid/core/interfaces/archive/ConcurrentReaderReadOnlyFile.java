@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+
+import de.schlichtherle.truezip.rof.AbstractReadOnlyFile;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A ReadOnlyFile over a byteseek WindowReader which can be read by several threads at once.
+ * <p>
+ * Unlike the {@link ReaderReadOnlyFile}, each thread has its own file pointer, and access to the
+ * WindowReader is synchronized on it, so TrueZip can inflate several entries of the same zip file
+ * on different threads.  TrueZip entry streams always seek before they read from the shared file,
+ * so a per thread file pointer is all the state they need.
+ * <p>
+ * The underlying WindowReader is not closed when this file is closed.
+ */
+public final class ConcurrentReaderReadOnlyFile extends AbstractReadOnlyFile {
+
+    private final WindowReader reader;
+    private final ThreadLocal<long[]> filePointer = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    private volatile boolean closed;
+
+    /**
+     * Constructs a ConcurrentReaderReadOnlyFile backed by a WindowReader.
+     *
+     * @param reader The WindowReader to back this ReadOnlyFile.
+     */
+    public ConcurrentReaderReadOnlyFile(final WindowReader reader) {
+        super();
+        this.reader = reader;
+    }
+
+    @Override
+    public long length() throws IOException {
+        synchronized (reader) {
+            return reader.length();
+        }
+    }
+
+    @Override
+    public long getFilePointer() throws IOException {
+        ensureOpen();
+        return filePointer.get()[0];
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        final long[] pointer = filePointer.get();
+        final int result;
+        synchronized (reader) {
+            result = reader.readByte(pointer[0]);
+        }
+        if (result >= 0) {
+            pointer[0]++;
+        }
+        return result;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        ensureOpen();
+        if (position < 0) {
+            throw new IOException("Cannot seek to a negative position: " + position);
+        }
+        final long length = length();
+        if (position > length) {
+            throw new IOException("Cannot seek past the end of data with length "
+                    + length + ".  Seek position was " + position);
+        }
+        filePointer.get()[0] = position;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if ((offset | length) < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " and length " + length
+                    + " do not fit in an array of length " + bytes.length);
+        }
+        if (length == 0) {
+            return 0;
+        }
+        final long[] pointer = filePointer.get();
+        int totalRead = 0;
+        synchronized (reader) {
+            Window window = reader.getWindow(pointer[0]);
+            while (window != null && totalRead < length) {
+                final int windowOffset = reader.getWindowOffset(pointer[0]);
+                final int copyBytes = Math.min(length - totalRead, window.length() - windowOffset);
+                System.arraycopy(window.getArray(), windowOffset, bytes, offset + totalRead, copyBytes);
+                totalRead += copyBytes;
+                pointer[0] += copyBytes;
+                window = reader.getWindow(pointer[0]);
+            }
+        }
+        return totalRead == 0 ? -1 : totalRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The ConcurrentReaderReadOnlyFile is closed.");
+        }
+    }
+}
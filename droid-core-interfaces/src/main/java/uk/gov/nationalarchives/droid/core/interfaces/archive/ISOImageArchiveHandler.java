@@ -31,11 +31,16 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,8 +57,11 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
 
 
 /**
@@ -67,25 +75,46 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
     private AsynchDroid droid;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;
+    private Path tempDirLocation;
     private final Log log = LogFactory.getLog(this.getClass());
 
     @Override
     public void handle(IdentificationRequest request) throws IOException {
+        final WindowReader windowReader = request.getWindowReader();
+        if (windowReader == null) {
+            log.info("Identification request for ISO image ignored as it has no content to read.");
+        } else if (windowReader instanceof FileReader) {
+            walk(((FileReader) windowReader).getFile(), request.getIdentifier());
+        } else {
+            // The ISO reader can only read from a file, so an image nested in another archive
+            // is written out once from its window reader and removed when it has been walked.
+            final Path tempFile;
+            try (InputStream in = Channels.newInputStream(new ReaderSeekableByteChannel(windowReader))) {
+                tempFile = ResourceUtils.createTemporaryFileFromStream(getTempDir(), in);
+            }
+            try {
+                walk(tempFile.toFile(), request.getIdentifier());
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
 
-        if (request.getClass().isAssignableFrom(FileSystemIdentificationRequest.class)) {
-
-            FileSystemIdentificationRequest req = (FileSystemIdentificationRequest) request;
-
-            Iso9660FileSystem fileSystem = new Iso9660FileSystem(req.getFile().toFile(), true);
-
+    private void walk(File isoFile, RequestIdentifier identifier) throws IOException {
+        Iso9660FileSystem fileSystem = new Iso9660FileSystem(isoFile, true);
+        try {
             ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler,
-                    fileSystem, request.getIdentifier());
+                    fileSystem, identifier);
             walker.walk(fileSystem);
-        } else {
-            log.info("Identification request for ISO image ignored due to limited support.");
+        } finally {
+            fileSystem.close();
         }
     }
 
+    private Path getTempDir() {
+        return tempDirLocation != null ? tempDirLocation : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
     /**
      * Internal walker implementation.
      */
@@ -236,4 +265,12 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
     public void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }
+
+    /**
+     * Set the directory in which ISO images nested in other archives are written to be read.
+     * @param tempDirLocation the temporary directory.
+     */
+    public void setTempDirLocation(Path tempDirLocation) {
+        this.tempDirLocation = tempDirLocation;
+    }
 }
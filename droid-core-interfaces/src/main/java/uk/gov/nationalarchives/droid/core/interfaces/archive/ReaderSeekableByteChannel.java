@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * Adapts a byteseek WindowReader to behave as a read-only SeekableByteChannel.
+ * <p>
+ * This lets libraries which need random access to an archive, such as commons-compress
+ * SevenZFile, read an archive nested inside another one directly from the windows already
+ * cached by its WindowReader, rather than requiring a file on disk.  It works in the same way
+ * as the {@link ReaderReadOnlyFile} used for zip files.
+ */
+public final class ReaderSeekableByteChannel implements SeekableByteChannel {
+
+    private final WindowReader reader;
+    private final boolean closeReaderIfClosed;
+    private long position;
+    private boolean closed;
+
+    /**
+     * Constructs a ReaderSeekableByteChannel backed by a WindowReader.
+     * <p>
+     * The underlying WindowReader will not be closed when this channel is closed.
+     *
+     * @param reader The WindowReader to back this channel.
+     */
+    public ReaderSeekableByteChannel(final WindowReader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * Constructs a ReaderSeekableByteChannel backed by a WindowReader.
+     * <p>
+     * When the channel is closed, the backing window reader will be closed if
+     * closeReaderIfClosed is true.
+     *
+     * @param reader The WindowReader backing this channel.
+     * @param closeReaderIfClosed If true, then the backing WindowReader will be closed when this is closed.
+     */
+    public ReaderSeekableByteChannel(final WindowReader reader, final boolean closeReaderIfClosed) {
+        this.reader = reader;
+        this.closeReaderIfClosed = closeReaderIfClosed;
+    }
+
+    @Override
+    public int read(final ByteBuffer destination) throws IOException {
+        ensureOpen();
+        if (!destination.hasRemaining()) {
+            return 0;
+        }
+        int totalRead = 0;
+        Window window = reader.getWindow(position);
+        while (window != null && destination.hasRemaining()) {
+            final int windowOffset = reader.getWindowOffset(position);
+            final int availableBytes = window.length() - windowOffset;
+            final int copyBytes = Math.min(destination.remaining(), availableBytes);
+            destination.put(window.getArray(), windowOffset, copyBytes);
+            totalRead += copyBytes;
+            position += copyBytes;
+            window = reader.getWindow(position);
+        }
+        return totalRead == 0 ? -1 : totalRead;
+    }
+
+    @Override
+    public int write(final ByteBuffer source) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Cannot seek to a negative position: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return reader.length();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed && closeReaderIfClosed) {
+            reader.close();
+        }
+        closed = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
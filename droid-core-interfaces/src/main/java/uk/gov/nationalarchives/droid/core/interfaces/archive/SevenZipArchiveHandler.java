@@ -34,13 +34,15 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.nio.file.Path;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.ant.compress.util.SevenZStreamFactory;
+import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
 import org.apache.commons.compress.archivers.sevenz.SevenZFile;
@@ -73,14 +75,10 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
     @Override
     public void handle(IdentificationRequest request) throws IOException {
         WindowReader windowReader = request.getWindowReader();
-        if (windowReader instanceof FileReader) {
-            FileReader fileReader = (FileReader) windowReader;
-            final Path file = fileReader.getFile().toPath();
-
-            SevenZFile sevenZFile = new SevenZFile(file.toFile());
-
-            SevenZStreamFactory sevenZStreamFactory = new SevenZStreamFactory();
-            try (ArchiveInputStream archiveStream = sevenZStreamFactory.getArchiveInputStream(file.toFile(), null)) {
+        if (windowReader != null) {
+            try (SeekableByteChannel channel = openChannel(windowReader);
+                 SevenZFile sevenZFile = new SevenZFile(channel);
+                 ArchiveInputStream archiveStream = new SevenZFileInputStream(sevenZFile)) {
                 //Prevent to close input stream. We want to read all files in archive.
                 CloseShieldInputStream  closeShieldInputStream = new CloseShieldInputStream(archiveStream);
 
@@ -91,6 +89,54 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
         }
     }
 
+    /**
+     * Opens a channel over the archive. Archives on disk are read from their file directly;
+     * archives nested inside other archives are read in place through their window reader.
+     *
+     * @param windowReader the window reader of the archive request.
+     * @return A seekable channel over the archive bytes.
+     * @throws IOException if the channel could not be opened.
+     */
+    private static SeekableByteChannel openChannel(WindowReader windowReader) throws IOException {
+        final SeekableByteChannel channel;
+        if (windowReader instanceof FileReader) {
+            channel = Files.newByteChannel(((FileReader) windowReader).getFile().toPath(), StandardOpenOption.READ);
+        } else {
+            channel = new ReaderSeekableByteChannel(windowReader);
+        }
+        return channel;
+    }
+
+    /**
+     * Presents a SevenZFile as an ArchiveInputStream, reading the current entry's content,
+     * so that it can be iterated by the {@link SevenZipIteratorAdapter}.
+     */
+    private static final class SevenZFileInputStream extends ArchiveInputStream {
+
+        private final SevenZFile sevenZFile;
+
+        SevenZFileInputStream(SevenZFile sevenZFile) {
+            this.sevenZFile = sevenZFile;
+        }
+
+        @Override
+        public ArchiveEntry getNextEntry() throws IOException {
+            return sevenZFile.getNextEntry();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return sevenZFile.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final int bytesRead = sevenZFile.read(buffer, offset, length);
+            count(bytesRead);
+            return bytesRead;
+        }
+    }
+
 
     /**
      *
@@ -39,6 +39,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -46,6 +50,8 @@ import de.schlichtherle.truezip.zip.ZipEntry;
 import de.schlichtherle.truezip.zip.ZipFile;
 
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
@@ -58,16 +64,24 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
  */
 public class TrueZipArchiveHandler implements ArchiveHandler {
 
+    /**
+     * Set while a thread inflates a zip entry for the executor.  Identifying an entry can expand
+     * further zip files on the same thread, whose entries are then inflated in place rather than
+     * queued behind the task waiting for them.
+     */
+    private static final ThreadLocal<Boolean> INFLATING_ENTRY = new ThreadLocal<Boolean>();
+
     private AsynchDroid droidCore;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;    
+    private ExecutorService executorService;
     
     /**
      * {@inheritDoc}
      */
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        final ZipFile zipFile = new ZipFile(new ReaderReadOnlyFile(request.getWindowReader()));
+        final ZipFile zipFile = new ZipFile(new ConcurrentReaderReadOnlyFile(request.getWindowReader()));
         try {
             Iterable<ZipEntry> iterable = new Iterable<ZipEntry>() {
                 @Override
@@ -77,7 +91,15 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
             };
     
             ZipArchiveWalker walker = new ZipArchiveWalker(request.getIdentifier(), zipFile);  
-            walker.walk(iterable);
+            try {
+                walker.walk(iterable);
+                //CHECKSTYLE:OFF - entries still being inflated must finish before the zip file is closed.
+            } catch (IOException | RuntimeException e) {
+                //CHECKSTYLE:ON
+                walker.awaitEntriesAfter(e);
+                throw e;
+            }
+            walker.awaitEntries();
         } finally {
             if (zipFile != null) {
                 zipFile.close();
@@ -125,7 +147,11 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
     final void submit(ZipEntry entry, String entryName, URI parentName, 
             ZipFile file, ResourceId correlationId, long originatorNodeId)
         throws IOException {
-        
+        submit(newEntryRequest(entry, entryName, parentName, correlationId, originatorNodeId), entry, file);
+    }
+
+    private IdentificationRequest newEntryRequest(ZipEntry entry, String entryName, URI parentName,
+            ResourceId correlationId, long originatorNodeId) {
         long size = entry.getSize();
         long time = entry.getTime();
         
@@ -137,8 +163,10 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
         RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toZipUri(parentName, entry.getName()));
         identifier.setAncestorId(originatorNodeId);
         identifier.setParentResourceId(correlationId);
+        return factory.newRequest(metaData, identifier);
+    }
 
-        IdentificationRequest request = factory.newRequest(metaData, identifier);
+    private void submit(IdentificationRequest request, ZipEntry entry, ZipFile file) throws IOException {
         InputStream in = null;
         try {
             in = file.getInputStream(entry);
@@ -164,6 +192,16 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
     public final void setDroidCore(AsynchDroid droidCore) {
         this.droidCore = droidCore;
     }
+
+    /**
+     * Sets the executor on which zip entries are inflated and submitted.  If it is not set,
+     * entries are inflated one at a time by the thread handling the zip file.
+     * The executor should bound the tasks it queues, as each holds an inflated entry.
+     * @param executorService the executor service to set
+     */
+    public final void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
     
     /**
      * Adapts an enumeration to the Iterator interface.
@@ -217,6 +255,8 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
         private final long originatorNodeId;
         private final URI parentName;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
+        private final Phaser entriesInFlight = new Phaser(1);
+        private final AtomicReference<IOException> entryFailure = new AtomicReference<IOException>();
         
         ZipArchiveWalker(RequestIdentifier identifier, ZipFile zipFile) {
             this.zipFile = zipFile;
@@ -280,7 +320,76 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
             // If there is a file, submit the file:
             entryName = FilenameUtils.getName(entryName);
             if (!entryName.isEmpty()) {
+                submitEntry(entry, entryName, correlationId);
+            }
+        }
+
+        /**
+         * Inflates and submits an entry, on the executor if there is one.  Directories are always
+         * resolved on the walking thread before this, so their ids do not depend on entry timing.
+         */
+        private void submitEntry(final ZipEntry entry, final String entryName,
+                                 final ResourceId correlationId) throws IOException {
+            throwIfEntryFailed();
+            if (executorService == null || INFLATING_ENTRY.get() != null) {
                 submit(entry, entryName, parentName, zipFile, correlationId, originatorNodeId);
+            } else {
+                // The request is made here, so a failure on the executor can be reported against it.
+                final IdentificationRequest request =
+                        newEntryRequest(entry, entryName, parentName, correlationId, originatorNodeId);
+                entriesInFlight.register();
+                try {
+                    executorService.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            INFLATING_ENTRY.set(Boolean.TRUE);
+                            try {
+                                submit(request, entry, zipFile);
+                            } catch (IOException e) {
+                                entryFailure.compareAndSet(null, e);
+                                //CHECKSTYLE:OFF - nothing else would see a runtime failure on the executor.
+                            } catch (RuntimeException e) {
+                                //CHECKSTYLE:ON
+                                resultHandler.handleError(
+                                        new IdentificationException(request, IdentificationErrorType.OTHER, e));
+                            } finally {
+                                INFLATING_ENTRY.remove();
+                                entriesInFlight.arriveAndDeregister();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    entriesInFlight.arriveAndDeregister();
+                    throw new IOException("Could not submit zip entry " + entry.getName(), e);
+                }
+            }
+        }
+
+        /**
+         * Waits until all the entries handed to the executor have been submitted.
+         * @throws IOException if any of the entries could not be read.
+         */
+        void awaitEntries() throws IOException {
+            entriesInFlight.arriveAndAwaitAdvance();
+            throwIfEntryFailed();
+        }
+
+        /**
+         * Waits until all the entries handed to the executor have been submitted, after the walk failed.
+         * @param walkFailure the failure of the walk, to which any entry failure is added as suppressed.
+         */
+        void awaitEntriesAfter(Exception walkFailure) {
+            entriesInFlight.arriveAndAwaitAdvance();
+            final IOException failure = entryFailure.get();
+            if (failure != null && failure != walkFailure) {
+                walkFailure.addSuppressed(failure);
+            }
+        }
+
+        private void throwIfEntryFailed() throws IOException {
+            final IOException failure = entryFailure.get();
+            if (failure != null) {
+                throw failure;
             }
         }
     }
@@ -92,6 +92,7 @@ public class DroidGlobalConfig {
     private Path signatureFilesDir;
     private Path profileTemplateDir;
     private Path containerSignatureDir;
+    private Path signatureSnapshotDir;
     private Path textSignatureFileDir;
     private Path reportDefinitionDir;
     private Path filterDir;
@@ -119,6 +120,9 @@ public class DroidGlobalConfig {
         containerSignatureDir = droidWorkDir.resolve("container_sigs");
         Files.createDirectories(containerSignatureDir);
         createResourceFile(containerSignatureDir, CONTAINER_SIGNATURE_FILE, CONTAINER_SIGNATURE_FILE);
+
+        signatureSnapshotDir = droidWorkDir.resolve("signature_snapshots");
+        Files.createDirectories(signatureSnapshotDir);
         
         /*
         signatureFilesDir = new File(droidWorkDir, "signature_files");
@@ -356,6 +360,13 @@ public class DroidGlobalConfig {
     public Path getTempDir() {
         return tempDir;
     }
+
+    /**
+     * @return the directory for binary snapshots of signature files
+     */
+    public Path getSignatureSnapshotDir() {
+        return signatureSnapshotDir;
+    }
     
     private void createResourceFile(final Path resourceDir, final String fileName, final String resourceName) throws IOException {
         final Path resourcefile = resourceDir.resolve(fileName);
@@ -112,6 +112,9 @@ public enum DroidGlobalProperty {
 
     /** CSV Export one row per format. */
     CSV_EXPORT_ROW_PER_FORMAT("export.rowPerFormat", PropertyType.BOOLEAN, true),
+
+    /** Whether profile database exports are written in node id order rather than URI order. */
+    EXPORT_NODE_ID_ORDER("export.nodeIdOrder", PropertyType.BOOLEAN, true),
     
     /** The max number of bytes to scan from the beginning or
      * end of a file, or negative, meaning unlimited scanning.
@@ -122,6 +125,18 @@ public enum DroidGlobalProperty {
     /** Whether to match all extensions, or just ones without another signature attached. */
     EXTENSION_ALL("profile.matchAllExtensions", PropertyType.BOOLEAN, true),
     
+    /** The max number of identification results to cache between profiles, or zero to disable the cache. */
+    RESULT_CACHE_MAX_ENTRIES("profile.resultCacheMaxEntries", PropertyType.INTEGER, true),
+
+    /** The number of threads which post process identifications: container identification, hashing, archives and results. */
+    POST_PROCESS_THREADS("profile.postProcessThreads", PropertyType.INTEGER, true),
+
+    /** The number of identifications which can wait to be post processed before identification waits for them. */
+    POST_PROCESS_QUEUE_CAPACITY("profile.postProcessQueueCapacity", PropertyType.INTEGER, true),
+
+    /** Where new profiles store their results: jdbc for the profile database, or columnar. */
+    RESULT_STORE("profile.resultStore", PropertyType.TEXT, true),
+    
     /** Whether the database plays safe (=true), or gains performance
      * but loses resilience in the face of failures (=false).
      */
@@ -49,5 +49,14 @@ public interface Criterion {
      */
     String toEjbQl(QueryBuilder parent);
 
+    /**
+     * Evaluates this Criterion in memory, giving the same answer the database
+     * would give for the JPA-Ql returned by toEjbQl.  A property with no value
+     * never matches, as a comparison with SQL NULL is never true.
+     * @param properties the property values to evaluate against
+     * @return true if the properties satisfy this Criterion
+     */
+    boolean matches(PropertyValues properties);
+
 
 }
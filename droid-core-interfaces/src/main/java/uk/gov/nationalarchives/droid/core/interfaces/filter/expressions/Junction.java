@@ -43,6 +43,7 @@ import java.util.List;
 public abstract class Junction implements Criterion {
 
     private static final String SPACE = " ";
+    private static final String AND = "AND";
     private List<Criterion> criteria = new ArrayList<Criterion>();
     private String op;
     
@@ -78,6 +79,22 @@ public abstract class Junction implements Criterion {
         return params.toArray();
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(PropertyValues properties) {
+        boolean all = AND.equals(op);
+        boolean result = all || criteria.isEmpty();
+        for (Criterion criterion : criteria) {
+            if (criterion.matches(properties) != all) {
+                result = !all;
+                break;
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -98,6 +98,21 @@ public final class QueryBuilder implements Criterion {
         return params.toArray();
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(PropertyValues properties) {
+        boolean result = true;
+        for (Criterion criterion : criteria) {
+            if (criterion != null && !criterion.matches(properties)) {
+                result = false;
+                break;
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -32,7 +32,9 @@
 package uk.gov.nationalarchives.droid.core.interfaces.filter.expressions;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -51,6 +53,14 @@ public final class Restrictions {
     private static final char SPACE = ' ';
     private static final String AND = "AND";
     private static final String OR = "OR";
+    private static final String LIKE = "LIKE";
+    private static final String EQ = "=";
+    private static final String NE = "!=";
+    private static final String GT = ">";
+    private static final String LT = "<";
+    private static final String GTE = ">=";
+    private static final String LTE = "<=";
+    private static final String NOT_LIKE = "NOT LIKE";
 
     private Restrictions() { }
     
@@ -61,7 +71,7 @@ public final class Restrictions {
      * @return an equals expression
      */
     public static Criterion eq(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, "=");
+        return new SimpleExpression(propertyName, value, EQ);
     }
     
     /**
@@ -71,7 +81,7 @@ public final class Restrictions {
      * @return a not equals expression
      */
     public static Criterion neq(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, "!=");
+        return new SimpleExpression(propertyName, value, NE);
     }
 
     /**
@@ -81,7 +91,7 @@ public final class Restrictions {
      * @return a greater than expression
      */
     public static Criterion gt(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, ">");
+        return new SimpleExpression(propertyName, value, GT);
     }
 
     /**
@@ -91,7 +101,7 @@ public final class Restrictions {
      * @return a less than expression
      */
     public static Criterion lt(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, "<");
+        return new SimpleExpression(propertyName, value, LT);
     }
 
     /**
@@ -101,7 +111,7 @@ public final class Restrictions {
      * @return a greater than or equals expression
      */
     public static Criterion gte(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, ">=");
+        return new SimpleExpression(propertyName, value, GTE);
     }
 
     /**
@@ -111,7 +121,7 @@ public final class Restrictions {
      * @return an less than or equals expression
      */
     public static Criterion lte(String propertyName, Object value) {
-        return new SimpleExpression(propertyName, value, "<=");
+        return new SimpleExpression(propertyName, value, LTE);
     }
 
     /**
@@ -121,7 +131,7 @@ public final class Restrictions {
      * @return a like expression
      */
     public static Criterion like(String propertyName, String value) {
-        return new SimpleExpression(propertyName, value, "LIKE");
+        return new SimpleExpression(propertyName, value, LIKE);
     }
     
     /**
@@ -131,7 +141,7 @@ public final class Restrictions {
      * @return a not like expression
      */
     public static Criterion notLike(String propertyName, String value) {
-        return new SimpleExpression(propertyName, value, "NOT LIKE");
+        return new SimpleExpression(propertyName, value, NOT_LIKE);
     }
 
     /**
@@ -213,6 +223,7 @@ public final class Restrictions {
         private String op;
         private String propertyName;
         private Object[] values;
+        private Pattern likePattern;
         
         /**
          * 
@@ -224,6 +235,53 @@ public final class Restrictions {
             this.propertyName = propertyName;
             this.values = new Object[] {value};
             this.op = op;
+            if (op.endsWith(LIKE) && value != null) {
+                likePattern = toPattern(value.toString());
+            }
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(PropertyValues properties) {
+            final Object actual = properties.getValue(propertyName);
+            boolean result = false;
+            if (actual != null && values[0] != null) {
+                if (likePattern != null) {
+                    result = likePattern.matcher(actual.toString()).matches() != NOT_LIKE.equals(op);
+                } else {
+                    result = satisfies(compare(actual, values[0]));
+                }
+            }
+            return result;
+        }
+        
+        private boolean satisfies(int comparison) {
+            boolean result;
+            switch (op) {
+                case EQ:
+                    result = comparison == 0;
+                    break;
+                case NE:
+                    result = comparison != 0;
+                    break;
+                case GT:
+                    result = comparison > 0;
+                    break;
+                case LT:
+                    result = comparison < 0;
+                    break;
+                case GTE:
+                    result = comparison >= 0;
+                    break;
+                case LTE:
+                    result = comparison <= 0;
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("Invalid operator [%s]", op));
+            }
+            return result;
         }
         
         /**
@@ -252,6 +310,64 @@ public final class Restrictions {
         
     }
     
+    /**
+     * Translates a SQL LIKE pattern, where % matches any run of characters
+     * and _ matches any single character, into a regular expression.
+     */
+    private static Pattern toPattern(String likePattern) {
+        StringBuilder regex = new StringBuilder(likePattern.length() * 2);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < likePattern.length(); i++) {
+            final char c = likePattern.charAt(i);
+            if (c == '%' || c == '_') {
+                appendLiteral(regex, literal);
+                regex.append(c == '%' ? ".*" : PERIOD);
+            } else {
+                literal.append(c);
+            }
+        }
+        appendLiteral(regex, literal);
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Compares a property value with a parameter value as the database would
+     * compare their columns: enums by ordinal, dates by time, numbers and
+     * booleans numerically, and anything else as strings.
+     */
+    private static int compare(Object actual, Object expected) {
+        final Object lhs = toComparable(actual);
+        final Object rhs = toComparable(expected);
+        int result;
+        if (lhs instanceof Long && rhs instanceof Long) {
+            result = ((Long) lhs).compareTo((Long) rhs);
+        } else {
+            result = lhs.toString().compareTo(rhs.toString());
+        }
+        return result;
+    }
+
+    private static Object toComparable(Object value) {
+        Object result = value;
+        if (value instanceof Enum<?>) {
+            result = Long.valueOf(((Enum<?>) value).ordinal());
+        } else if (value instanceof Date) {
+            result = ((Date) value).getTime();
+        } else if (value instanceof Number) {
+            result = ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            result = ((Boolean) value) ? 1L : 0L;
+        }
+        return result;
+    }
+
     private static String getAliasedQualifier(String propertyName, QueryBuilder parent) {
         
         if (propertyName.indexOf('.') > 0) {
@@ -285,6 +401,24 @@ public final class Restrictions {
             return values;
         }
         
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(PropertyValues properties) {
+            final Object actual = properties.getValue(propertyName);
+            boolean found = false;
+            if (actual != null) {
+                for (Object value : values) {
+                    if (value != null && compare(actual, value) == 0) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+            return actual != null && found != inverse;
+        }
+        
         /**
          * {@inheritDoc}
          */
@@ -332,6 +466,16 @@ public final class Restrictions {
             return ArrayUtils.addAll(lhs.getValues(), rhs.getValues());
         }
         
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(PropertyValues properties) {
+            return AND.equals(op)
+                    ? lhs.matches(properties) && rhs.matches(properties)
+                    : lhs.matches(properties) || rhs.matches(properties);
+        }
+        
         /**
          * {@inheritDoc}
          */
@@ -381,6 +525,24 @@ public final class Restrictions {
         }
 
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(PropertyValues properties) {
+            final boolean all = AND.equals(op);
+            boolean result = all;
+            for (int i = 0; i < values.length; i++) {
+                final Object actual = properties.getValue(propertyNames.get(i));
+                if ((actual != null && compare(actual, values[i]) == 0) != all) {
+                    result = !all;
+                    break;
+                }
+            }
+            return result != inverse;
+        }
+
+
         /**
          * {@inheritDoc}
          */
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * Generates one or more hashes of some content in a single pass over it.
+ * <p>
+ * Algorithms are named as in the profile.hashAlgorithm property (md5, sha1 or sha256), and
+ * more than one can be given separated by commas, e.g. "md5,sha256".  The first algorithm
+ * is the primary one, whose hash is returned by {@link #hash(InputStream)}.
+ * <p>
+ * Hashing a {@link WindowReader} updates the digests directly from the reader's windows,
+ * so any bytes already cached by the reader during identification are not read again.
+ */
+public class MultiHashGenerator implements HashGenerator {
+
+    /** The md5 algorithm name. */
+    public static final String MD5 = "md5";
+
+    /** The sha1 algorithm name. */
+    public static final String SHA1 = "sha1";
+
+    /** The sha256 algorithm name. */
+    public static final String SHA256 = "sha256";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<String> algorithms;
+
+    /**
+     * @param algorithmNames a comma separated list of the algorithms to hash with.
+     * @throws IllegalArgumentException if no algorithms are given, or an algorithm is not supported.
+     */
+    public MultiHashGenerator(String algorithmNames) {
+        final List<String> names = new ArrayList<String>();
+        for (String name : algorithmNames.split(",")) {
+            final String algorithm = name.trim().toLowerCase();
+            if (!algorithm.isEmpty() && !names.contains(algorithm)) {
+                getJavaAlgorithmName(algorithm); // validates the algorithm name.
+                names.add(algorithm);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("No hash algorithm specified: " + algorithmNames);
+        }
+        this.algorithms = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the algorithms to hash with, the primary algorithm first.
+     */
+    public List<String> getAlgorithms() {
+        return algorithms;
+    }
+
+    /**
+     * @return the primary hash algorithm.
+     */
+    public String getPrimaryAlgorithm() {
+        return algorithms.get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return the hash of the primary algorithm.
+     */
+    @Override
+    public String hash(InputStream in) throws IOException {
+        return hashAll(in).get(getPrimaryAlgorithm());
+    }
+
+    /**
+     * Calculates the hashes of an input stream.
+     * @param in the input stream
+     * @return a map of algorithm names to hex encoded hashes, in the order of the algorithms.
+     * @throws IOException if there was an error reading the input stream.
+     */
+    public Map<String, String> hashAll(InputStream in) throws IOException {
+        final MessageDigest[] digests = newDigests();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read = in.read(buffer);
+        while (read >= 0) {
+            update(digests, buffer, 0, read);
+            read = in.read(buffer);
+        }
+        return toHashes(digests);
+    }
+
+    /**
+     * Calculates the hashes of the content of a window reader, using the reader's windows directly.
+     * @param reader the reader
+     * @return a map of algorithm names to hex encoded hashes, in the order of the algorithms.
+     * @throws IOException if there was an error reading the content.
+     */
+    public Map<String, String> hashAll(WindowReader reader) throws IOException {
+        final MessageDigest[] digests = newDigests();
+        long position = 0;
+        Window window = reader.getWindow(position);
+        while (window != null) {
+            final int offset = (int) (position - window.getWindowPosition());
+            final int length = window.length() - offset;
+            update(digests, window.getArray(), offset, length);
+            position += length;
+            window = reader.getWindow(position);
+        }
+        return toHashes(digests);
+    }
+
+    private MessageDigest[] newDigests() {
+        final MessageDigest[] digests = new MessageDigest[algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(getJavaAlgorithmName(algorithms.get(i)));
+            } catch (NoSuchAlgorithmException e) {
+                // Every java platform must support MD5, SHA-1 and SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+        return digests;
+    }
+
+    private static void update(MessageDigest[] digests, byte[] bytes, int offset, int length) {
+        for (MessageDigest digest : digests) {
+            digest.update(bytes, offset, length);
+        }
+    }
+
+    private Map<String, String> toHashes(MessageDigest[] digests) {
+        final Map<String, String> hashes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < digests.length; i++) {
+            hashes.put(algorithms.get(i), Hex.encodeHexString(digests[i].digest()));
+        }
+        return hashes;
+    }
+
+    private static String getJavaAlgorithmName(String algorithm) {
+        final String javaName;
+        switch (algorithm) {
+            case MD5:
+                javaName = "MD5";
+                break;
+            case SHA1:
+                javaName = "SHA-1";
+                break;
+            case SHA256:
+                javaName = "SHA-256";
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported hash algorithm: " + algorithm);
+        }
+        return javaName;
+    }
+}
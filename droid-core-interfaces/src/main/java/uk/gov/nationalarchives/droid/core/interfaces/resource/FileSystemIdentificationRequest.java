@@ -80,7 +80,9 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
     public final void open(final Path theFile) throws IOException {
         // Use a caching strategy that uses soft references, to allow the GC to reclaim
         // cached file bytes in low memory conditions.
-        final WindowCache cache = new TopAndTailFixedLengthCache(theFile.toFile().length(), TOP_TAIL_BUFFER_CAPACITY);
+        // The size from the request metadata saves another stat of the file, if it is known.
+        final long length = size < 0 ? theFile.toFile().length() : size;
+        final WindowCache cache = new TopAndTailFixedLengthCache(length, TOP_TAIL_BUFFER_CAPACITY);
         fileReader = new FileReader(theFile.toFile(), cache);
         ((FileReader) fileReader).useSoftWindows(true);
         this.file = theFile;
@@ -118,7 +120,9 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
     @Override
     public final void close() throws IOException {
         file = null;
-        fileReader.close();
+        if (fileReader != null) { // the request may never have been opened.
+            fileReader.close();
+        }
     }
 
     //TODO:MP: can we return something backed by the file reader, which has already cached a lot of the file?
@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.resource;
 
+import java.util.Map;
 
 /**
  * @author rflitcroft
@@ -42,6 +43,7 @@ public class RequestMetaData {
     private final Long time;
     private final String name;
     private String hash;
+    private Map<String, String> hashes;
 
     /**
      * @param size - the size in bytes of the request data
@@ -88,4 +90,18 @@ public class RequestMetaData {
     public final String getHash() {
         return hash;
     }
+
+    /**
+     * @param hashes the hashes to set, keyed by hash algorithm name.
+     */
+    public final void setHashes(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * @return the hashes keyed by hash algorithm name, or null if no hashes were generated.
+     */
+    public final Map<String, String> getHashes() {
+        return hashes;
+    }
 }
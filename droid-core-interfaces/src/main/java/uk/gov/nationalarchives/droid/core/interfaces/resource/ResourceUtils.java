@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -178,7 +179,7 @@ public final class ResourceUtils {
         // once they are no longer needed.
         // DO NOT USE!!!: tempFile.deleteOnExit();
         try {
-            Files.copy(stream, tempFile);
+            Files.copy(stream, tempFile, StandardCopyOption.REPLACE_EXISTING);
             return tempFile;
         } catch (IOException ex) {
             // Don't leave temp files lying around.
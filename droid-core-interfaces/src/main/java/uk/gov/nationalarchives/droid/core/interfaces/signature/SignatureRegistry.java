@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.signature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * A registry of compiled signatures, keyed by a digest of the signature files they were
+ * compiled from, so that profiles using the same signature files share a single compiled
+ * instance rather than each parsing and holding their own.
+ * <p>
+ * Instances are reference counted: each call to {@link #acquire(String, Loader)} must be
+ * balanced by a call to {@link #release(String)}, and an instance is dropped from the
+ * registry when its last reference is released.  Registered instances are used by many
+ * threads at once, so must not be modified once they have been loaded.
+ *
+ * @param <T> the type of compiled signatures held in the registry.
+ */
+public final class SignatureRegistry<T> {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<String, Entry<T>> entries = new HashMap<String, Entry<T>>();
+
+    /**
+     * Loads compiled signatures which are not already in the registry.
+     *
+     * @param <T> the type of compiled signatures.
+     * @param <E> the type of exception thrown if the signatures can't be loaded.
+     */
+    public interface Loader<T, E extends Exception> {
+
+        /**
+         * @return the compiled signatures.
+         * @throws E if the signatures could not be loaded.
+         */
+        T load() throws E;
+    }
+
+    /**
+     * Returns the compiled signatures registered under a key, loading them if they
+     * are not already registered, and adds a reference to them.  Only one caller loads
+     * signatures for a key; any others acquiring the same key wait for it to finish.
+     *
+     * @param key the digest of the signature files the signatures are compiled from.
+     * @param loader loads the signatures if they are not already registered.
+     * @param <E> the type of exception thrown if the signatures can't be loaded.
+     * @return the compiled signatures for the key.
+     * @throws E if the signatures could not be loaded, in which case no reference is added.
+     */
+    public <E extends Exception> T acquire(final String key, final Loader<T, E> loader) throws E {
+        final Entry<T> entry;
+        synchronized (entries) {
+            Entry<T> existing = entries.get(key);
+            if (existing == null) {
+                existing = new Entry<T>();
+                entries.put(key, existing);
+            }
+            existing.references++;
+            entry = existing;
+        }
+        boolean acquired = false;
+        try {
+            synchronized (entry) {
+                if (entry.signatures == null) {
+                    entry.signatures = loader.load();
+                }
+                acquired = true;
+                return entry.signatures;
+            }
+        } finally {
+            if (!acquired) {
+                release(key);
+            }
+        }
+    }
+
+    /**
+     * Removes a reference to the compiled signatures registered under a key, dropping
+     * them from the registry if nothing else refers to them.
+     *
+     * @param key the digest of the signature files the signatures are compiled from.
+     */
+    public void release(final String key) {
+        synchronized (entries) {
+            final Entry<T> entry = entries.get(key);
+            if (entry != null && --entry.references == 0) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param key the digest of the signature files the signatures are compiled from.
+     * @return the number of references to the signatures registered under the key.
+     */
+    public int getReferences(final String key) {
+        synchronized (entries) {
+            final Entry<T> entry = entries.get(key);
+            return entry == null ? 0 : entry.references;
+        }
+    }
+
+    /**
+     * Calculates a key for signatures compiled from one or more signature files,
+     * from a digest of the contents of the files.
+     *
+     * @param signatureFiles the signature files, any of which can be null if not used.
+     * @return a hex encoded digest of the signature files.
+     * @throws IOException if a signature file could not be read.
+     */
+    public static String digest(final Path... signatureFiles) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (final Path signatureFile : signatureFiles) {
+            // Separate each file, so the same contents split differently across files give different keys.
+            digest.update((byte) (signatureFile == null ? 0 : 1));
+            if (signatureFile != null) {
+                try (InputStream in = Files.newInputStream(signatureFile)) {
+                    int read = in.read(buffer);
+                    while (read >= 0) {
+                        digest.update(buffer, 0, read);
+                        read = in.read(buffer);
+                    }
+                }
+                digest.update(Long.toString(Files.size(signatureFile)).getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every java platform must support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Compiled signatures and the number of references to them.  Guarded by the registry
+     * map for the reference count, and by the entry itself while the signatures are loaded.
+     */
+    private static final class Entry<T> {
+        private int references;
+        private T signatures;
+    }
+}
@@ -44,6 +44,15 @@ public final class DroidUrlFormat {
     private static final Pattern WINDOWS_DRIVER_LETTER = Pattern.compile("^[A-Z]:$");
     private static final String WINDOWS_UNC_REFIX = "//";
     private static final String PATH_SPLITER = "/";
+    private static final String UNENCODED_CHARS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.-*_";
+    private static final boolean[] UNENCODED = new boolean[Byte.MAX_VALUE + 1];
+
+    static {
+        for (int i = 0; i < UNENCODED_CHARS.length(); i++) {
+            UNENCODED[UNENCODED_CHARS.charAt(i)] = true;
+        }
+    }
 
     private DroidUrlFormat() {
     };
@@ -102,10 +111,23 @@ public final class DroidUrlFormat {
     }
 
     private static String encode(String s) {
+        if (isLeftAsItIs(s)) {
+            return s;
+        }
         try {
-            return URLEncoder.encode(s, "UTF-8").replaceAll("\\+", "%20");
+            return URLEncoder.encode(s, "UTF-8").replace("+", "%20");
         } catch (UnsupportedEncodingException ex) {
             throw new RuntimeException("Unsupported encoding", ex);
         }
     }
+
+    // Most path segments only have characters which URLEncoder doesn't change, so needn't be encoded.
+    private static boolean isLeftAsItIs(String s) {
+        boolean unchanged = true;
+        for (int i = 0; unchanged && i < s.length(); i++) {
+            final char c = s.charAt(i);
+            unchanged = c < UNENCODED.length && UNENCODED[c];
+        }
+        return unchanged;
+    }
 }
@@ -46,6 +46,9 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -225,6 +228,40 @@ public class ISOImageArchiveHandlerTest {
 
     }
 
+    @Test
+    public void testWithIsoImageReadFromWindowReader() throws Exception {
+        IdentificationRequestFactory<InputStream> factory = new ISOEntryRequestFactory();
+
+        AsynchDroid droid = mock(AsynchDroid.class);
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
+
+        Path tempDir = Files.createTempDirectory("iso-test");
+        ISOImageArchiveHandler isoImageArchiveHandler = new ISOImageArchiveHandler();
+        isoImageArchiveHandler.setDroid(droid);
+        isoImageArchiveHandler.setFactory(factory);
+        isoImageArchiveHandler.setResultHandler(resultHandler);
+        isoImageArchiveHandler.setTempDirLocation(tempDir);
+
+        RequestIdentifier identifier = new RequestIdentifier(new URI("file://testiso.iso"));
+        identifier.setNodeId(1L);
+
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getIdentifier()).thenReturn(identifier);
+        when(request.getWindowReader()).thenReturn(
+                new net.byteseek.io.reader.InputStreamReader(Files.newInputStream(Paths.get("./src/test/resources/testiso.iso"))));
+        isoImageArchiveHandler.handle(request);
+
+        verify(droid, times(6)).submit(any(IdentificationRequest.class));
+        verify(resultHandler, times(3)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
+
+        try (DirectoryStream<Path> remaining = Files.newDirectoryStream(tempDir)) {
+            assertFalse(remaining.iterator().hasNext());
+        }
+        Files.delete(tempDir);
+    }
+
     @Test
     public void testIgnoreOtherIdentificationRequest() throws Exception {
 
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ReaderSeekableByteChannelTest {
+
+    private static final int WINDOW_SIZE = 16;
+
+    private static byte[] data(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static WindowReader reader(byte[] bytes) {
+        return new InputStreamReader(new ByteArrayInputStream(bytes), WINDOW_SIZE);
+    }
+
+    @Test
+    public void testReadsAcrossWindows() throws Exception {
+        byte[] bytes = data(100);
+        ReaderSeekableByteChannel channel = new ReaderSeekableByteChannel(reader(bytes));
+        ByteBuffer buffer = ByteBuffer.allocate(150);
+
+        assertEquals(100, channel.read(buffer));
+        assertEquals(100, channel.position());
+        assertEquals(100, channel.size());
+        byte[] read = new byte[100];
+        buffer.flip();
+        buffer.get(read);
+        assertArrayEquals(bytes, read);
+        assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+    }
+
+    @Test
+    public void testReadsFromPosition() throws Exception {
+        byte[] bytes = data(100);
+        ReaderSeekableByteChannel channel = new ReaderSeekableByteChannel(reader(bytes));
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+
+        channel.position(30);
+        assertEquals(20, channel.read(buffer));
+        assertEquals(50, channel.position());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(bytes[30 + i], buffer.get(i));
+        }
+
+        channel.position(200);
+        assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testWriteNotSupported() throws Exception {
+        new ReaderSeekableByteChannel(reader(data(10))).write(ByteBuffer.allocate(1));
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testReadAfterClose() throws Exception {
+        ReaderSeekableByteChannel channel = new ReaderSeekableByteChannel(reader(data(10)));
+        channel.close();
+        assertFalse(channel.isOpen());
+        channel.read(ByteBuffer.allocate(1));
+    }
+}
@@ -54,6 +54,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -118,4 +119,36 @@ public class SevenZArchiveHandlerTest {
         verify(droidCore).submit(mockRequests.get(6));
     }
 
+    @Test
+    public void testHandleSevenZFileReadFromWindowReader() throws Exception {
+
+        final Path file = Paths.get(getClass().getResource("/saved.7z").toURI());
+
+        IdentificationRequestFactory factory = mock(IdentificationRequestFactory.class);
+        when(factory.newRequest(any(RequestMetaData.class), any(RequestIdentifier.class))).thenReturn(mock(IdentificationRequest.class));
+
+        AsynchDroid droidCore = mock(AsynchDroid.class);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class),
+                any(ResourceId.class), anyBoolean())).thenReturn(new ResourceId(30L, ""));
+
+        SevenZipArchiveHandler handler = new SevenZipArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroid(droidCore);
+        handler.setResultHandler(resultHandler);
+
+        IdentificationRequest originalRequest = mock(IdentificationRequest.class);
+        RequestIdentifier originalIdentifier = new RequestIdentifier(file.toUri());
+        originalIdentifier.setAncestorId(10L);
+        originalIdentifier.setParentId(20L);
+        originalIdentifier.setNodeId(30L);
+
+        // An archive nested in another archive is only available through a cached window reader.
+        when(originalRequest.getIdentifier()).thenReturn(originalIdentifier);
+        when(originalRequest.getWindowReader()).thenReturn(new net.byteseek.io.reader.InputStreamReader(Files.newInputStream(file)));
+        handler.handle(originalRequest);
+
+        verify(droidCore, times(5)).submit(any(IdentificationRequest.class));
+    }
+
 }
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TrueZipArchiveHandlerTest {
+
+    private static final int ENTRIES = 300;
+
+    private Path tempDir;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("zip-test");
+        BlockingThreadPoolExecutorFactory executorFactory = new BlockingThreadPoolExecutorFactory();
+        executorFactory.setCorePoolSize(4);
+        executorFactory.setMaxPoolSize(4);
+        executorFactory.setQueueCapacity(4);
+        executorService = executorFactory.newInstance();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void testConcurrentExpansionSubmitsEveryEntryWithItsContent() throws Exception {
+        Path zip = createZip();
+        Map<URI, String> sequential = expand(zip, null);
+        Map<URI, String> concurrent = expand(zip, executorService);
+
+        assertEquals(ENTRIES, sequential.size());
+        assertEquals(sequential, concurrent);
+        for (Map.Entry<URI, String> entry : concurrent.entrySet()) {
+            String path = entry.getKey().toString();
+            assertEquals(path.substring(path.lastIndexOf('!') + 2), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testRuntimeFailureOfEntryIsReportedToResultHandler() throws Exception {
+        Path zip = createZip();
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.submit(any(IdentificationRequest.class))).thenThrow(new IllegalStateException("entry failed"));
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean()))
+                .thenReturn(new ResourceId(2L, ""));
+        ZipEntryRequestFactory factory = new ZipEntryRequestFactory();
+        factory.setTempDirLocation(tempDir);
+
+        newHandler(droid, resultHandler, factory).handle(zipRequest(zip));
+
+        verify(resultHandler, times(ENTRIES)).handleError(any(IdentificationException.class));
+    }
+
+    @Test
+    public void testWalkFailureIsThrownWithEntryFailureSuppressed() throws Exception {
+        Path zip = tempDir.resolve("failing.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("first.txt"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("dir/second.txt"));
+            out.closeEntry();
+        }
+        IOException entryFailure = new IOException("entry failed");
+        IdentificationRequest entryRequest = mock(IdentificationRequest.class);
+        doThrow(entryFailure).when(entryRequest).open(any(InputStream.class));
+        IdentificationRequestFactory factory = mock(IdentificationRequestFactory.class);
+        when(factory.newRequest(any(RequestMetaData.class), any(RequestIdentifier.class))).thenReturn(entryRequest);
+        IllegalStateException walkFailure = new IllegalStateException("directory failed");
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean()))
+                .thenThrow(walkFailure);
+
+        try {
+            newHandler(mock(AsynchDroid.class), resultHandler, factory).handle(zipRequest(zip));
+            fail("Expected the walk failure to be thrown");
+        } catch (IllegalStateException e) {
+            assertSame(walkFailure, e);
+            assertEquals(1, e.getSuppressed().length);
+            assertSame(entryFailure, e.getSuppressed()[0]);
+        }
+    }
+
+    private TrueZipArchiveHandler newHandler(AsynchDroid droid, ResultHandler resultHandler,
+                                             IdentificationRequestFactory factory) {
+        TrueZipArchiveHandler handler = new TrueZipArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroidCore(droid);
+        handler.setResultHandler(resultHandler);
+        handler.setExecutorService(executorService);
+        return handler;
+    }
+
+    private IdentificationRequest zipRequest(Path zip) throws IOException {
+        RequestIdentifier identifier = new RequestIdentifier(zip.toUri());
+        identifier.setNodeId(1L);
+        identifier.setAncestorId(1L);
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getIdentifier()).thenReturn(identifier);
+        when(request.getWindowReader()).thenReturn(new net.byteseek.io.reader.InputStreamReader(Files.newInputStream(zip)));
+        return request;
+    }
+
+    private Path createZip() throws Exception {
+        Path zip = tempDir.resolve("entries.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < ENTRIES; i++) {
+                String name = "dir" + (i % 7) + "/sub" + (i % 3) + "/entry" + i + ".txt";
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private Map<URI, String> expand(Path zip, ExecutorService executor) throws Exception {
+        final Map<URI, String> submitted = new ConcurrentHashMap<>();
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.submit(any(IdentificationRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                IdentificationRequest request = (IdentificationRequest) invocation.getArguments()[0];
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try (InputStream in = request.getSourceInputStream()) {
+                    byte[] buffer = new byte[64];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        content.write(buffer, 0, read);
+                    }
+                }
+                submitted.put(request.getIdentifier().getUri(), new String(content.toByteArray(), StandardCharsets.UTF_8));
+                request.close();
+                return null;
+            }
+        });
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean()))
+                .thenReturn(new ResourceId(2L, ""));
+
+        ZipEntryRequestFactory factory = new ZipEntryRequestFactory();
+        factory.setTempDirLocation(tempDir);
+
+        TrueZipArchiveHandler handler = new TrueZipArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroidCore(droid);
+        handler.setResultHandler(resultHandler);
+        handler.setExecutorService(executor);
+
+        RequestIdentifier identifier = new RequestIdentifier(zip.toUri());
+        identifier.setNodeId(1L);
+        identifier.setAncestorId(1L);
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getIdentifier()).thenReturn(identifier);
+        when(request.getWindowReader()).thenReturn(new net.byteseek.io.reader.InputStreamReader(Files.newInputStream(zip)));
+
+        handler.handle(request);
+
+        // 7 top level folders, each with 3 sub folders, created once whatever the timing of the entries.
+        verify(resultHandler, times(28)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
+        return submitted;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.filter.expressions;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+
+public class RestrictionsTest {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    private final PropertyValues properties = new PropertyValues() {
+        @Override
+        public Object getValue(String propertyName) {
+            return values.get(propertyName);
+        }
+    };
+
+    @Test
+    public void testComparisonsMatchLikeTheDatabase() {
+        values.put("metaData.size", 100L);
+        values.put("identificationCount", 2);
+
+        assertTrue(Restrictions.eq("metaData.size", 100L).matches(properties));
+        assertTrue(Restrictions.neq("metaData.size", 99L).matches(properties));
+        assertTrue(Restrictions.gt("metaData.size", 99L).matches(properties));
+        assertFalse(Restrictions.gt("metaData.size", 100L).matches(properties));
+        assertTrue(Restrictions.gte("metaData.size", 100L).matches(properties));
+        assertTrue(Restrictions.lt("identificationCount", 3).matches(properties));
+        assertFalse(Restrictions.lte("identificationCount", 1).matches(properties));
+    }
+
+    @Test
+    public void testMissingValuesNeverMatch() {
+        assertFalse(Restrictions.eq("metaData.size", 100L).matches(properties));
+        assertFalse(Restrictions.neq("metaData.size", 100L).matches(properties));
+        assertFalse(Restrictions.notLike("metaData.name", "%A%").matches(properties));
+        assertFalse(Restrictions.notIn("format.puid", new Object[] {"fmt/1"}).matches(properties));
+    }
+
+    @Test
+    public void testEnumsAndDatesCompareAsTheyAreStored() {
+        values.put("metaData.resourceType", ResourceType.FILE);
+        values.put("metaData.lastModifiedDate", new Date(2000L));
+
+        assertTrue(Restrictions.eq("metaData.resourceType", ResourceType.FILE).matches(properties));
+        assertTrue(Restrictions.in("metaData.resourceType",
+                new Object[] {ResourceType.FOLDER, ResourceType.FILE}).matches(properties));
+        assertTrue(Restrictions.and(Restrictions.gte("metaData.lastModifiedDate", new Date(1000L)),
+                Restrictions.lt("metaData.lastModifiedDate", new Date(3000L))).matches(properties));
+        assertFalse(Restrictions.or(Restrictions.lt("metaData.lastModifiedDate", new Date(1000L)),
+                Restrictions.gte("metaData.lastModifiedDate", new Date(3000L))).matches(properties));
+    }
+
+    @Test
+    public void testLikeUsesSqlWildcards() {
+        values.put("metaData.name", "REPORT (1).PDF");
+
+        assertTrue(Restrictions.like("metaData.name", "REPORT%").matches(properties));
+        assertTrue(Restrictions.like("metaData.name", "%(1)%").matches(properties));
+        assertTrue(Restrictions.like("metaData.name", "%._DF").matches(properties));
+        assertFalse(Restrictions.like("metaData.name", "%.DOC").matches(properties));
+        assertTrue(Restrictions.notLike("metaData.name", "%.DOC").matches(properties));
+        assertFalse(Restrictions.notLike("metaData.name", "REPORT%").matches(properties));
+    }
+
+    @Test
+    public void testInAndNotIn() {
+        values.put("format.puid", "fmt/2");
+        Object[] puids = new Object[] {"fmt/1", "fmt/2"};
+
+        assertTrue(Restrictions.in("format.puid", puids).matches(properties));
+        assertFalse(Restrictions.notIn("format.puid", puids).matches(properties));
+        assertTrue(Restrictions.notIn("format.puid", new Object[] {"fmt/3"}).matches(properties));
+    }
+
+    @Test
+    public void testJunctionsAndQueryBuilder() {
+        values.put("metaData.size", 100L);
+        values.put("format.puid", "fmt/2");
+        Criterion sizeMatches = Restrictions.eq("metaData.size", 100L);
+        Criterion puidDiffers = Restrictions.eq("format.puid", "fmt/3");
+
+        assertTrue(Restrictions.conjunction().matches(properties));
+        assertTrue(Restrictions.disjunction().matches(properties));
+        assertFalse(Restrictions.conjunction().add(sizeMatches).add(puidDiffers).matches(properties));
+        assertTrue(Restrictions.disjunction().add(sizeMatches).add(puidDiffers).matches(properties));
+        assertFalse(Restrictions.disjunction().add(puidDiffers).matches(properties));
+
+        assertTrue(QueryBuilder.forAlias("prn").matches(properties));
+        assertTrue(QueryBuilder.forAlias("prn").add(sizeMatches).add(null).matches(properties));
+        assertFalse(QueryBuilder.forAlias("prn").add(sizeMatches).add(puidDiffers).matches(properties));
+    }
+}
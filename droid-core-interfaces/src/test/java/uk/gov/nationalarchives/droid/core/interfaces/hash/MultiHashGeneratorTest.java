@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import net.byteseek.io.reader.FileReader;
+
+public class MultiHashGeneratorTest {
+
+    private final byte[] content = new byte[300000];
+
+    public MultiHashGeneratorTest() {
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    public void testHashesInputStreamWithEveryAlgorithm() throws IOException {
+        MultiHashGenerator generator = new MultiHashGenerator("sha256, md5,sha1,md5");
+        assertEquals(Arrays.asList("sha256", "md5", "sha1"), generator.getAlgorithms());
+
+        Map<String, String> hashes = generator.hashAll(new ByteArrayInputStream(content));
+        assertEquals(DigestUtils.sha256Hex(content), hashes.get("sha256"));
+        assertEquals(DigestUtils.md5Hex(content), hashes.get("md5"));
+        assertEquals(DigestUtils.sha1Hex(content), hashes.get("sha1"));
+        assertEquals(DigestUtils.sha256Hex(content), generator.hash(new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    public void testHashesWindowReaderTheSameAsInputStream() throws IOException {
+        MultiHashGenerator generator = new MultiHashGenerator("md5,sha256");
+        File file = File.createTempFile("multihash", ".bin");
+        try {
+            Files.write(file.toPath(), content);
+            FileReader reader = new FileReader(file);
+            try {
+                assertEquals(generator.hashAll(new ByteArrayInputStream(content)), generator.hashAll(reader));
+            } finally {
+                reader.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAlgorithmIsRejected() {
+        new MultiHashGenerator("md5,crc32");
+    }
+}
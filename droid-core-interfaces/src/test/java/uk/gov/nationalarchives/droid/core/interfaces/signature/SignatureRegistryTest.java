@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.signature;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SignatureRegistryTest {
+
+    private static final String KEY = "key";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SignatureRegistry<Object> registry;
+    private AtomicInteger loads;
+
+    @Before
+    public void setup() {
+        registry = new SignatureRegistry<Object>();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void testSignaturesAreLoadedOnceAndShared() {
+        final Object first = registry.acquire(KEY, loader());
+        final Object second = registry.acquire(KEY, loader());
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(2, registry.getReferences(KEY));
+    }
+
+    @Test
+    public void testSignaturesAreDroppedWhenLastReferenceIsReleased() {
+        final Object first = registry.acquire(KEY, loader());
+        registry.acquire(KEY, loader());
+
+        registry.release(KEY);
+        assertEquals(1, registry.getReferences(KEY));
+        assertSame(first, registry.acquire(KEY, loader()));
+        registry.release(KEY);
+        registry.release(KEY);
+        assertEquals(0, registry.getReferences(KEY));
+
+        assertNotSame(first, registry.acquire(KEY, loader()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testReleasingAnUnknownKeyDoesNothing() {
+        registry.release(KEY);
+        assertEquals(0, registry.getReferences(KEY));
+    }
+
+    @Test
+    public void testFailedLoadAddsNoReference() {
+        try {
+            registry.acquire(KEY, new SignatureRegistry.Loader<Object, IOException>() {
+                @Override
+                public Object load() throws IOException {
+                    throw new IOException("Can't load signatures");
+                }
+            });
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Can't load signatures", e.getMessage());
+        }
+        assertEquals(0, registry.getReferences(KEY));
+
+        registry.acquire(KEY, loader());
+        assertEquals(1, registry.getReferences(KEY));
+    }
+
+    @Test
+    public void testDigestDependsOnTheContentsOfEachFile() throws IOException {
+        final Path one = write("one.xml", "<Signatures/>");
+        final Path copy = write("copy.xml", "<Signatures/>");
+        final Path other = write("other.xml", "<Signatures></Signatures>");
+
+        assertEquals(SignatureRegistry.digest(one), SignatureRegistry.digest(copy));
+        assertNotEquals(SignatureRegistry.digest(one), SignatureRegistry.digest(other));
+        assertEquals(SignatureRegistry.digest(one, other), SignatureRegistry.digest(copy, other));
+        assertNotEquals(SignatureRegistry.digest(one, other), SignatureRegistry.digest(other, one));
+        assertNotEquals(SignatureRegistry.digest(one), SignatureRegistry.digest(one, null));
+    }
+
+    private Path write(final String name, final String contents) throws IOException {
+        final Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private SignatureRegistry.Loader<Object, RuntimeException> loader() {
+        return new SignatureRegistry.Loader<Object, RuntimeException>() {
+            @Override
+            public Object load() {
+                loads.incrementAndGet();
+                return new Object();
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+/**
+ * Measures matching the binary signatures against the skeleton test files, which spends most of its
+ * time searching for signature subsequences and their fragments.
+ * Run with: mvn -Pbenchmark test-compile exec:exec, which also reports the allocation rate with the gc profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarySignatureIdentifierBenchmark {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V88.xml";
+    private static final String[] SKELETON_DIRS = {"test-skeletons/fmt", "test-skeletons/x-fmt"};
+
+    private BinarySignatureIdentifier droid;
+    private List<IdentificationRequest<Path>> requests;
+
+    /**
+     * Loads the signature file and opens a request for each skeleton file.
+     * @throws Exception if the signature file can't be parsed or a skeleton file can't be opened.
+     */
+    @Setup
+    public void setup() throws Exception {
+        droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile(SIGFILE);
+        droid.init();
+        droid.setMaxBytesToScan(-1);
+
+        requests = new ArrayList<>();
+        for (String dir : SKELETON_DIRS) {
+            for (File file : new File(dir).listFiles()) {
+                Path path = file.toPath();
+                RequestMetaData metaData = new RequestMetaData(Files.size(path),
+                        Files.getLastModifiedTime(path).toMillis(), file.getName());
+                IdentificationRequest<Path> request =
+                        new FileSystemIdentificationRequest(metaData, new RequestIdentifier(path.toUri()));
+                request.open(path);
+                requests.add(request);
+            }
+        }
+    }
+
+    /**
+     * Closes the requests.
+     * @throws IOException if a request could not be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (IdentificationRequest<Path> request : requests) {
+            request.close();
+        }
+    }
+
+    /**
+     * Matches the binary signatures against every skeleton file.
+     * @param blackhole Consumes the results.
+     */
+    @Benchmark
+    public void matchBinarySignatures(Blackhole blackhole) {
+        for (IdentificationRequest<Path> request : requests) {
+            blackhole.consume(droid.matchBinarySignatures(request));
+        }
+    }
+}
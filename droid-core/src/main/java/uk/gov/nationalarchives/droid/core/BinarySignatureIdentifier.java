@@ -31,12 +31,15 @@
  */
 package uk.gov.nationalarchives.droid.core;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
@@ -44,6 +47,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureRegistry;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 import uk.gov.nationalarchives.droid.core.signature.FileFormat;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
@@ -58,9 +62,19 @@ import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
  */
 public class BinarySignatureIdentifier implements DroidCore {
 
+    private static final SignatureRegistry<FFSignatureFile> SHARED_SIGNATURE_FILES =
+            new SignatureRegistry<FFSignatureFile>();
+
     private FFSignatureFile sigFile;
     private SignatureFileParser sigFileParser = new SignatureFileParser();
     private URI signatureFile;
+    private Path signatureFileSnapshotDir;
+    private Path containerSignatureFile;
+    private boolean shareSignatureFile;
+    private String sharedSignatureFileKey;
+    private long maxBytesToScan = -1;
+    private boolean skipLowerPriorityHits;
+    private final Set<String> reportedPuids = ConcurrentHashMap.newKeySet();
     
     /**
      * Default constructor.
@@ -73,8 +87,57 @@ public class BinarySignatureIdentifier implements DroidCore {
      * @throws SignatureParseException When a signature could not be parsed
      */
     public void init() throws SignatureParseException {
-        sigFile = sigFileParser.parseSigFile(Paths.get(signatureFile));
-        sigFile.prepareForUse();
+        if (shareSignatureFile) {
+            sigFile = acquireSharedSignatureFile();
+        } else {
+            sigFile = loadSignatureFile();
+        }
+    }
+
+    /**
+     * Releases this droid core's reference to a shared signature file.
+     */
+    public void destroy() {
+        if (sharedSignatureFileKey != null) {
+            SHARED_SIGNATURE_FILES.release(sharedSignatureFileKey);
+            sharedSignatureFileKey = null;
+        }
+    }
+
+    private FFSignatureFile loadSignatureFile() throws SignatureParseException {
+        final FFSignatureFile loaded = sigFileParser.parseSigFile(Paths.get(signatureFile), signatureFileSnapshotDir);
+        loaded.prepareForUse();
+        return loaded;
+    }
+
+    /*
+     * Container signatures override the binary signatures for their puids, so the compiled
+     * signature file can only be shared with identifiers using the same container signatures.
+     * The overrides are applied before the signature file is published to the registry,
+     * so a shared signature file is never changed while another droid core is using it.
+     */
+    private FFSignatureFile acquireSharedSignatureFile() throws SignatureParseException {
+        final String key;
+        try {
+            key = SignatureRegistry.digest(Paths.get(signatureFile), containerSignatureFile);
+        } catch (final IOException e) {
+            throw new SignatureParseException(e.getMessage(), e);
+        }
+        final FFSignatureFile shared = SHARED_SIGNATURE_FILES.acquire(key,
+            new SignatureRegistry.Loader<FFSignatureFile, SignatureParseException>() {
+                @Override
+                public FFSignatureFile load() throws SignatureParseException {
+                    final FFSignatureFile loaded = loadSignatureFile();
+                    if (containerSignatureFile != null) {
+                        for (final String puid : ContainerSignaturePuids.read(containerSignatureFile)) {
+                            loaded.puidHasOverridingSignatures(puid);
+                        }
+                    }
+                    return loaded;
+                }
+            });
+        sharedSignatureFileKey = key;
+        return shared;
     }
     
     /**
@@ -86,6 +149,45 @@ public class BinarySignatureIdentifier implements DroidCore {
         this.signatureFile = Paths.get(signatureFile).toUri();
     }
 
+    /**
+     * Sets a directory to keep a binary snapshot of the signature file in, which is
+     * quicker to load than the signature file XML.  The snapshot is written the first
+     * time the signature file is parsed, and rewritten if the signature file changes.
+     * @param signatureFileSnapshotDir the snapshot directory, or null to always parse the signature file XML.
+     */
+    public void setSignatureFileSnapshotDir(final Path signatureFileSnapshotDir) {
+        this.signatureFileSnapshotDir = signatureFileSnapshotDir;
+    }
+
+    /**
+     * Sets whether the compiled signature file is shared with other droid cores in this process
+     * which use the same signature file and container signature file, rather than each droid core
+     * parsing and holding its own.  A shared signature file must be released by calling
+     * {@link #destroy()} when this droid core is no longer used.
+     * @param shareSignatureFile whether to share the compiled signature file.
+     */
+    public void setShareSignatureFile(final boolean shareSignatureFile) {
+        this.shareSignatureFile = shareSignatureFile;
+    }
+
+    /**
+     * Sets the container signature file whose signatures override the binary signatures for their puids.
+     * @param containerSignatureFile the container signature file.
+     */
+    public void setContainerSignatureFile(final Path containerSignatureFile) {
+        this.containerSignatureFile = containerSignatureFile;
+    }
+
+    /**
+     * Sets whether signatures which could only produce hits that would be removed as lower priority
+     * are skipped when matching, leaving only the hits which would not be removed, plus any hits
+     * for puids which must be reported. Removing lower priority hits then gives the same result.
+     * @param skipLowerPriorityHits whether to skip signatures for lower priority hits.
+     */
+    public void setSkipLowerPriorityHits(final boolean skipLowerPriorityHits) {
+        this.skipLowerPriorityHits = skipLowerPriorityHits;
+    }
+
 
     /**
      * {@inheritDoc}
@@ -96,7 +198,11 @@ public class BinarySignatureIdentifier implements DroidCore {
         IdentificationResultCollection results = new IdentificationResultCollection(request);
         results.setRequestMetaData(request.getRequestMetaData());
         ByteReader byteReader = new IdentificationRequestByteReaderAdapter(request);
-        sigFile.runFileIdentification(byteReader);
+        if (skipLowerPriorityHits) {
+            sigFile.runFileIdentification(byteReader, maxBytesToScan, reportedPuids);
+        } else {
+            sigFile.runFileIdentification(byteReader, maxBytesToScan);
+        }
         final int numHits = byteReader.getNumHits();
         for (int i = 0; i < numHits; i++) {
             FileFormatHit hit = byteReader.getHit(i);
@@ -154,9 +260,21 @@ public class BinarySignatureIdentifier implements DroidCore {
      */
     @Override
     public void removeSignatureForPuid(String puid) {
-        sigFile.puidHasOverridingSignatures(puid);
+        // A shared signature file had the container overrides applied when it was loaded,
+        // and other droid cores may be identifying with it, so it is never changed here.
+        if (sharedSignatureFileKey == null) {
+            sigFile.puidHasOverridingSignatures(puid);
+        }
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reportLowerPriorityHitsForPuid(String puid) {
+        reportedPuids.add(puid);
+    }
+
     /**
      * @return the sigFile
      */
@@ -169,7 +287,7 @@ public class BinarySignatureIdentifier implements DroidCore {
      */
     @Override
     public void setMaxBytesToScan(long maxBytes) {
-        sigFile.setMaxBytesToScan(maxBytes);
+        maxBytesToScan = maxBytes;
     }
 
     /**
@@ -42,6 +42,8 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -58,6 +60,8 @@ public class SignatureFileParser {
     /** Namespace for the xml file format signatures file. */
     public static final String SIGNATURE_FILE_NS = "http://www.nationalarchives.gov.uk/pronom/SignatureFile";
 
+    private final Log log = LogFactory.getLog(this.getClass());
+
     /**
      * Create a new signature file object based on a signature file.
      *
@@ -78,6 +82,59 @@ public class SignatureFileParser {
         }
         return (FFSignatureFile) mb.getModel();
     }
+
+    /**
+     * Create a new signature file object based on a signature file, using its snapshot if
+     * it has a current one, and writing a snapshot for next time if not.
+     *
+     * @param theFileName the file name
+     * @param snapshotDir the directory to read and write snapshots in, or null to parse the signature file XML.
+     * @return sig file
+     * @throws SignatureParseException if there is a problem parsing the signature file.
+     */
+    FFSignatureFile parseSigFile(final Path theFileName, final Path snapshotDir) throws SignatureParseException {
+        return snapshotDir == null ? parseSigFile(theFileName) : parseSigFileWithSnapshot(theFileName, snapshotDir);
+    }
+
+    private FFSignatureFile parseSigFileWithSnapshot(final Path theFileName, final Path snapshotDir)
+        throws SignatureParseException {
+        final Path snapshot = SignatureFileSnapshot.snapshotFor(snapshotDir, theFileName);
+        try {
+            final long length = Files.size(theFileName);
+            final long checksum = SignatureFileSnapshot.checksum(theFileName);
+            FFSignatureFile sigFile = readSnapshot(snapshot, length, checksum);
+            if (sigFile == null) {
+                sigFile = parseSigFile(theFileName);
+                writeSnapshot(snapshot, length, checksum, sigFile);
+            }
+            return sigFile;
+        } catch (final IOException e) {
+            throw new SignatureParseException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Returns the signature file built from its snapshot, or null if there is no current snapshot
+     * or it could not be read, in which case the signature file XML is parsed instead.
+     */
+    private FFSignatureFile readSnapshot(final Path snapshot, final long length, final long checksum) {
+        FFSignatureFile sigFile = null;
+        try {
+            sigFile = SignatureFileSnapshot.read(snapshot, length, checksum);
+        } catch (final IOException e) {
+            log.warn("Could not read signature file snapshot " + snapshot, e);
+        }
+        return sigFile;
+    }
+
+    private void writeSnapshot(final Path snapshot, final long length, final long checksum,
+                               final FFSignatureFile sigFile) {
+        try {
+            SignatureFileSnapshot.write(snapshot, length, checksum, sigFile);
+        } catch (final IOException e) {
+            log.warn("Could not write signature file snapshot " + snapshot, e);
+        }
+    }
     
     /**
      * Create the XML parser for the signature file.
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+
+/**
+ * A binary snapshot of a parsed signature file, written next to the signature file XML.
+ * <p>
+ * The snapshot holds the fields of the signature file model, written by the {@link SignatureModelCodec},
+ * so the model can be built without parsing the XML.  It is versioned, and holds the length and CRC32
+ * checksum of the XML it was written from.  The XML is checksummed every time the snapshot is read,
+ * so a snapshot of a different or modified signature file is never used, even one with the same length
+ * and last modified time.
+ * <p>
+ * The byteseek matchers compiled from the signatures cannot be serialized, so they are still
+ * compiled when the model is prepared for use.
+ */
+final class SignatureFileSnapshot {
+
+    /** Extension appended to the signature file name to name its snapshot. */
+    static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    private static final long MAGIC = 0x44524F4944534947L; // "DROIDSIG"
+    private static final int FORMAT_VERSION = 3;
+
+    // magic, format version, signature file length and checksum, model checksum.
+    private static final int HEADER_LENGTH = 36;
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Log LOG = LogFactory.getLog(SignatureFileSnapshot.class);
+
+    private SignatureFileSnapshot() {
+    }
+
+    /**
+     * @param snapshotDir the directory snapshots are kept in.
+     * @param signatureFile the signature file XML.
+     * @return The path of the snapshot for the signature file.
+     */
+    static Path snapshotFor(final Path snapshotDir, final Path signatureFile) {
+        return snapshotDir.resolve(signatureFile.getFileName().toString() + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Calculates the CRC32 checksum of a signature file.
+     * @param signatureFile the signature file XML.
+     * @return the checksum of the file.
+     * @throws IOException if the file could not be read.
+     */
+    static long checksum(final Path signatureFile) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(signatureFile)) {
+            int read = in.read(buffer);
+            while (read >= 0) {
+                crc.update(buffer, 0, read);
+                read = in.read(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Builds the signature file model from a snapshot, if the snapshot exists and was written
+     * from a signature file of the given length and checksum.
+     *
+     * @param snapshot the snapshot file.
+     * @param length the length of the signature file XML.
+     * @param checksum the checksum of the signature file XML.
+     * @return the signature file model, not yet prepared for use, or null if there is no current snapshot
+     *         or its contents have been corrupted.
+     * @throws IOException if the snapshot could not be read.
+     */
+    static FFSignatureFile read(final Path snapshot, final long length, final long checksum) throws IOException {
+        FFSignatureFile sigFile = null;
+        if (Files.exists(snapshot)) {
+            final byte[] contents = Files.readAllBytes(snapshot);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+            boolean current = contents.length > HEADER_LENGTH && in.readLong() == MAGIC
+                    && in.readInt() == FORMAT_VERSION;
+            current = current && in.readLong() == length && in.readLong() == checksum;
+            current = current && in.readLong() == modelChecksum(contents, HEADER_LENGTH);
+            if (current) {
+                sigFile = SignatureModelCodec.read(in);
+            }
+        }
+        return sigFile;
+    }
+
+    /**
+     * Writes a snapshot of a signature file model.  The snapshot is written to a temporary file first,
+     * so a snapshot being written is never read.
+     *
+     * @param snapshot the snapshot file to write.
+     * @param length the length of the signature file XML.
+     * @param checksum the checksum of the signature file XML.
+     * @param sigFile the signature file model, as parsed and before it is prepared for use.
+     * @throws IOException if the snapshot could not be written.
+     */
+    static void write(final Path snapshot, final long length, final long checksum, final FFSignatureFile sigFile)
+        throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream model = new DataOutputStream(bytes);
+        SignatureModelCodec.write(model, sigFile);
+        model.flush();
+        final byte[] contents = bytes.toByteArray();
+        Files.createDirectories(snapshot.toAbsolutePath().getParent());
+        final Path tempFile = snapshot.resolveSibling(snapshot.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+                out.writeLong(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(length);
+                out.writeLong(checksum);
+                out.writeLong(modelChecksum(contents, 0));
+                out.write(contents);
+            }
+            moveIntoPlace(tempFile, snapshot);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static long modelChecksum(final byte[] model, final int offset) {
+        final CRC32 crc = new CRC32();
+        crc.update(model, offset, model.length - offset);
+        return crc.getValue();
+    }
+
+    private static void moveIntoPlace(final Path tempFile, final Path snapshot) throws IOException {
+        try {
+            Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.debug("Atomic move not supported writing signature file snapshot " + snapshot);
+            Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
+import uk.gov.nationalarchives.droid.core.signature.droid6.ByteSequence;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+import uk.gov.nationalarchives.droid.core.signature.droid6.LeftFragment;
+import uk.gov.nationalarchives.droid.core.signature.droid6.RightFragment;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SideFragment;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SubSequence;
+
+/**
+ * Writes and reads the fields of a signature file model as the XML parser built it: the file formats
+ * with their extensions, priorities and signature ids, and the internal signatures with their byte sequence,
+ * subsequence and fragment definitions.  The model is read back by calling the model setters directly,
+ * without looking up model classes and setters by reflection.
+ */
+final class SignatureModelCodec {
+
+    private static final int NULL_STRING = -1;
+    private static final String LITTLE_ENDIAN = "Little-endian";
+    private static final String VERSION = "Version";
+
+    private SignatureModelCodec() {
+    }
+
+    /**
+     * Writes a signature file model.
+     * @param out the stream to write to.
+     * @param sigFile the signature file model, as parsed and before it is prepared for use.
+     * @throws IOException if the model could not be written.
+     */
+    static void write(final DataOutputStream out, final FFSignatureFile sigFile) throws IOException {
+        writeString(out, sigFile.getVersion());
+        writeString(out, sigFile.getDateCreated());
+        final List<InternalSignature> signatures = sigFile.getSignatures();
+        out.writeInt(signatures.size());
+        for (final InternalSignature signature : signatures) {
+            writeSignature(out, signature);
+        }
+        final List<FileFormat> formats = sigFile.getFileFormatCollection().getFileFormats();
+        out.writeInt(formats.size());
+        for (final FileFormat format : formats) {
+            writeFormat(out, format);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void writeSignature(final DataOutputStream out, final InternalSignature signature)
+        throws IOException {
+        out.writeInt(signature.getID());
+        out.writeBoolean(signature.isSpecific());
+        out.writeInt(signature.getByteSequences().size());
+        for (final ByteSequence sequence : signature.getByteSequences()) {
+            writeString(out, sequence.getReference());
+            out.writeBoolean(sequence.isBigEndian());
+            out.writeInt(sequence.getIndirectOffsetLength());
+            out.writeInt(sequence.getIndirectOffsetLocation());
+            out.writeInt(sequence.getSubSequences().size());
+            for (final SubSequence subSequence : sequence.getSubSequences()) {
+                writeSubSequence(out, subSequence);
+            }
+        }
+    }
+
+    private static void writeSubSequence(final DataOutputStream out, final SubSequence subSequence)
+        throws IOException {
+        out.writeInt(subSequence.getMinSeqOffset());
+        out.writeInt(subSequence.getMaxSeqOffset());
+        writeString(out, subSequence.getSequence());
+        writeFragments(out, subSequence.getLeftFragments());
+        writeFragments(out, subSequence.getRightFragments());
+    }
+
+    private static void writeFragments(final DataOutputStream out, final List<? extends SideFragment> fragments)
+        throws IOException {
+        out.writeInt(fragments.size());
+        for (final SideFragment fragment : fragments) {
+            out.writeInt(fragment.getPosition());
+            out.writeInt(fragment.getMinOffset());
+            out.writeInt(fragment.getMaxOffset());
+            writeString(out, fragment.getFragment());
+        }
+    }
+
+    private static void writeFormat(final DataOutputStream out, final FileFormat format) throws IOException {
+        out.writeInt(format.getID());
+        writeString(out, format.getName());
+        writeString(out, format.getVersion());
+        writeString(out, format.getPUID());
+        writeString(out, format.getMimeType());
+        out.writeInt(format.getNumInternalSignatures());
+        for (int i = 0; i < format.getNumInternalSignatures(); i++) {
+            out.writeInt(format.getInternalSignatureID(i));
+        }
+        out.writeInt(format.getNumExtensions());
+        for (final String extension : format.getExtensions()) {
+            writeString(out, extension);
+        }
+        out.writeInt(format.getNumHasPriorityOver());
+        for (final Integer formatId : format.getFormatIdsHasPriorityOver()) {
+            out.writeInt(formatId);
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+        } else {
+            final byte[] encoded = value.getBytes(UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    /**
+     * Reads a signature file model.
+     * @param in the stream to read from.
+     * @return the signature file model, not yet prepared for use.
+     * @throws IOException if the model could not be read.
+     */
+    static FFSignatureFile read(final DataInputStream in) throws IOException {
+        final FFSignatureFile sigFile = new FFSignatureFile();
+        sigFile.setAttributeValue(VERSION, readString(in));
+        sigFile.setAttributeValue("DateCreated", readString(in));
+        final InternalSignatureCollection signatures = new InternalSignatureCollection();
+        final int numSignatures = in.readInt();
+        for (int i = 0; i < numSignatures; i++) {
+            signatures.addInternalSignature(readSignature(in));
+        }
+        sigFile.setInternalSignatureCollection(signatures);
+        final FileFormatCollection formats = new FileFormatCollection();
+        final int numFormats = in.readInt();
+        for (int i = 0; i < numFormats; i++) {
+            formats.addFileFormat(readFormat(in));
+        }
+        sigFile.setFileFormatCollection(formats);
+        return sigFile;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static InternalSignature readSignature(final DataInputStream in) throws IOException {
+        final InternalSignature signature = new InternalSignature();
+        signature.setID(Integer.toString(in.readInt()));
+        if (in.readBoolean()) {
+            signature.setSpecificity("specific");
+        }
+        final int numSequences = in.readInt();
+        for (int i = 0; i < numSequences; i++) {
+            final ByteSequence sequence = new ByteSequence();
+            sequence.setReference(readString(in));
+            if (!in.readBoolean()) {
+                sequence.setEndianness(LITTLE_ENDIAN);
+            }
+            sequence.setIndirectOffsetLength(Integer.toString(in.readInt()));
+            sequence.setIndirectOffsetLocation(Integer.toString(in.readInt()));
+            final int numSubSequences = in.readInt();
+            for (int j = 0; j < numSubSequences; j++) {
+                sequence.addSubSequence(readSubSequence(in));
+            }
+            signature.addByteSequence(sequence);
+        }
+        return signature;
+    }
+
+    private static SubSequence readSubSequence(final DataInputStream in) throws IOException {
+        final SubSequence subSequence = new SubSequence();
+        subSequence.setMinSeqOffset(in.readInt());
+        subSequence.setMaxSeqOffset(in.readInt());
+        final String sequence = readString(in);
+        if (sequence != null) {
+            subSequence.setSequence(sequence);
+        }
+        final int numLeftFragments = in.readInt();
+        for (int i = 0; i < numLeftFragments; i++) {
+            subSequence.addLeftFragment(readFragment(in, new LeftFragment()));
+        }
+        final int numRightFragments = in.readInt();
+        for (int i = 0; i < numRightFragments; i++) {
+            subSequence.addRightFragment(readFragment(in, new RightFragment()));
+        }
+        return subSequence;
+    }
+
+    private static <T extends SideFragment> T readFragment(final DataInputStream in, final T fragment)
+        throws IOException {
+        fragment.setPosition(in.readInt());
+        fragment.setMinOffset(in.readInt());
+        fragment.setMaxOffset(in.readInt());
+        fragment.setFragment(readString(in));
+        return fragment;
+    }
+
+    private static FileFormat readFormat(final DataInputStream in) throws IOException {
+        final FileFormat format = new FileFormat();
+        format.setAttributeValue("ID", Integer.toString(in.readInt()));
+        format.setAttributeValue("Name", readString(in));
+        format.setAttributeValue(VERSION, readString(in));
+        format.setAttributeValue("PUID", readString(in));
+        format.setMimeType(readString(in));
+        final int numSignatures = in.readInt();
+        for (int i = 0; i < numSignatures; i++) {
+            format.setInternalSignatureID(Integer.toString(in.readInt()));
+        }
+        final int numExtensions = in.readInt();
+        for (int i = 0; i < numExtensions; i++) {
+            format.setExtension(readString(in));
+        }
+        final int numPriorities = in.readInt();
+        for (int i = 0; i < numPriorities; i++) {
+            format.setHasPriorityOverFileFormatID(Integer.toString(in.readInt()));
+        }
+        return format;
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        String value = null;
+        if (length != NULL_STRING) {
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+}
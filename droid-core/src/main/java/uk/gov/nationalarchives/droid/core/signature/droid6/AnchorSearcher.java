@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+/**
+ * Searches for the anchoring sequence of a subsequence using the Boyer-Moore-Horspool algorithm,
+ * returning the position of the first match rather than a list of search results, so searching
+ * creates no garbage.
+ *
+ * <p>A searcher only searches in one direction.  Searching forwards, the shift for each byte is
+ * taken from the last position in the sequence; searching backwards it is taken from the first.
+ * Bytes are read directly from the window arrays of the reader.</p>
+ */
+final class AnchorSearcher {
+
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final SequenceMatcher matcher;
+    private final ByteMatcher shiftByteMatcher;
+    private final int length;
+    private final int shiftPosition;
+    private final int[] shifts = new int[BYTE_VALUES];
+
+    /**
+     * @param matcher The anchoring sequence to search for.
+     * @param backwards Whether to search backwards rather than forwards.
+     */
+    AnchorSearcher(final SequenceMatcher matcher, final boolean backwards) {
+        this.matcher = matcher;
+        this.length = matcher.length();
+        this.shiftPosition = backwards ? 0 : length - 1;
+        this.shiftByteMatcher = matcher.getMatcherForPosition(shiftPosition);
+        Arrays.fill(shifts, length);
+        if (backwards) {
+            for (int position = length - 1; position > 0; position--) {
+                setShifts(matcher.getMatcherForPosition(position), position);
+            }
+        } else {
+            for (int position = 0; position < length - 1; position++) {
+                setShifts(matcher.getMatcherForPosition(position), length - 1 - position);
+            }
+        }
+    }
+
+    /**
+     * Searches forwards for the sequence.
+     *
+     * @param reader The reader to search in.
+     * @param fromPosition The first position the sequence can start at.
+     * @param toPosition The last position the sequence can start at.
+     * @return The first position the sequence matches at, or -1 if it was not found.
+     * @throws IOException If there was a problem reading the reader.
+     */
+    long searchForwards(final WindowReader reader, final long fromPosition, final long toPosition) throws IOException {
+        long searchPosition = Math.max(fromPosition, 0);
+        byte[] array = null;
+        long windowStart = 0;
+        long windowEnd = -1;
+        while (searchPosition <= toPosition) {
+            final long bytePosition = searchPosition + shiftPosition;
+            if (bytePosition < windowStart || bytePosition > windowEnd) {
+                final Window window = reader.getWindow(bytePosition);
+                if (window == null) {
+                    break;
+                }
+                array = window.getArray();
+                windowStart = window.getWindowPosition();
+                windowEnd = windowStart + window.length() - 1;
+            }
+            final byte value = array[(int) (bytePosition - windowStart)];
+            if (shiftByteMatcher.matches(value) && (length == 1 || matcher.matches(reader, searchPosition))) {
+                return searchPosition;
+            }
+            searchPosition += shifts[value & BYTE_MASK];
+        }
+        return -1;
+    }
+
+    /**
+     * Searches backwards for the sequence.
+     *
+     * @param reader The reader to search in.
+     * @param fromPosition The last position the sequence can start at.
+     * @param toPosition The first position the sequence can start at.
+     * @return The last position the sequence matches at, or -1 if it was not found.
+     * @throws IOException If there was a problem reading the reader.
+     */
+    long searchBackwards(final WindowReader reader, final long fromPosition, final long toPosition) throws IOException {
+        final long lastPosition = Math.max(toPosition, 0);
+        long searchPosition = fromPosition;
+        byte[] array = null;
+        long windowStart = 0;
+        long windowEnd = -1;
+        while (searchPosition >= lastPosition) {
+            if (searchPosition < windowStart || searchPosition > windowEnd) {
+                final Window window = reader.getWindow(searchPosition);
+                if (window == null) {
+                    // Past the end of the data: carry on from the last position a sequence could start at.
+                    searchPosition = Math.min(searchPosition - 1, reader.length() - length);
+                    continue;
+                }
+                array = window.getArray();
+                windowStart = window.getWindowPosition();
+                windowEnd = windowStart + window.length() - 1;
+            }
+            final byte value = array[(int) (searchPosition - windowStart)];
+            if (shiftByteMatcher.matches(value) && (length == 1 || matcher.matches(reader, searchPosition))) {
+                return searchPosition;
+            }
+            searchPosition -= shifts[value & BYTE_MASK];
+        }
+        return -1;
+    }
+
+    private void setShifts(final ByteMatcher byteMatcher, final int shift) {
+        for (final byte value : byteMatcher.getMatchingBytes()) {
+            shifts[value & BYTE_MASK] = shift;
+        }
+    }
+}
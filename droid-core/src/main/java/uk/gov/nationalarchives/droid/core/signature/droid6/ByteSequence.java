@@ -301,6 +301,58 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
         return subSequences.get(theIndex);
     }
 
+    /**
+     *
+     * @return The subsequences of this byte sequence, in the order they were defined.
+     */
+    public final List<SubSequence> getSubSequences() {
+        return subSequences;
+    }
+
+    /**
+     *
+     * @return Whether an indirect offset is read as a big-endian value.
+     */
+    public final boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    /**
+     *
+     * @return The length of the indirect offset.
+     */
+    public final int getIndirectOffsetLength() {
+        return indirectOffsetLength;
+    }
+
+    /**
+     *
+     * @return The location of the indirect offset.
+     */
+    public final int getIndirectOffsetLocation() {
+        return indirectOffsetLocation;
+    }
+
+    /**
+     * Replaces a prepared subsequence with another which finds exactly the same matches,
+     * so byte sequences can share a single instance of it.
+     *
+     * @param theIndex The index of the subsequence to replace.
+     * @param sharedSequence The shared subsequence to use instead.
+     */
+    final void shareSubSequence(final int theIndex, final SubSequence sharedSequence) {
+        subSequences.set(theIndex, sharedSequence);
+        sequences[theIndex] = sharedSequence;
+    }
+
+    /**
+     *
+     * @return Whether the position of this byte sequence is read from an indirect offset in the file.
+     */
+    final boolean hasIndirectOffset() {
+        return hasIndirectOffset;
+    }
+
     /**
      * Prepares bytes sequences and sub-sequences for use.
      * MUST be called before using the byte sequence to match.
@@ -423,6 +475,20 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
      * @return boolean
      */
     public final boolean matches(final ByteReader targetFile, final long maxBytesToScan) {
+        return matches(targetFile, maxBytesToScan, null);
+    }
+
+    /**
+     * checks whether the binary file specified by targetFile matches
+     * with this byte sequence, remembering where any shared subsequences are found.
+     *
+     * @param targetFile The binary file to be identified
+     * @param maxBytesToScan the maximum number of bytes to scan from the start
+     * or the end of a file, or a negative number meaning a full file scan is possible.
+     * @param memo The shared subsequence matches already found in the target file, or null.
+     * @return boolean
+     */
+    final boolean matches(final ByteReader targetFile, final long maxBytesToScan, final SubSequenceMemo memo) {
         boolean matchResult = true;
 
         // Use a local reference to the sequence list for better performance:
@@ -438,8 +504,8 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
                /* matchResult = subseq.findSequenceFromPosition(
                         currentFilePos, targetFile, maxBytesToScan, false, fixedSubsequence);
                  */
-                matchResult = subseq.findSequenceFromPosition(
-                         currentFilePos, targetFile, maxBytesToScan, false, fixedSubsequence);
+                matchResult = findSequenceFromPosition(
+                         subseq, currentFilePos, targetFile, maxBytesToScan, false, fixedSubsequence, memo);
                         
                 fixedSubsequence = false;
             }
@@ -454,8 +520,8 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
                     /*matchResult = subseq.findSequenceFromPosition(
                             currentFilePos, targetFile, maxBytesToScan, fixedSubsequence, false);
                     */
-                    matchResult = subseq.findSequenceFromPosition(
-                            currentFilePos, targetFile, maxBytesToScan, fixedSubsequence, false);
+                    matchResult = findSequenceFromPosition(
+                            subseq, currentFilePos, targetFile, maxBytesToScan, fixedSubsequence, false, memo);
 
                     fixedSubsequence = false;
                 }
@@ -468,6 +534,20 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
         return matchResult;
     }
 
+    /*
+     * Subsequences shared with other byte sequences are only searched for once
+     * from the same position in a file, if there is a memo of their matches.
+     */
+    private static boolean findSequenceFromPosition(final SubSequence subseq, final long position,
+                                                    final ByteReader targetFile, final long maxBytesToScan,
+                                                    final boolean bofSubsequence, final boolean eofSubsequence,
+                                                    final SubSequenceMemo memo) {
+        return memo == null || subseq.getSharedIndex() < 0
+                ? subseq.findSequenceFromPosition(position, targetFile, maxBytesToScan, bofSubsequence, eofSubsequence)
+                : memo.findSequenceFromPosition(subseq, position, targetFile, maxBytesToScan,
+                        bofSubsequence, eofSubsequence);
+    }
+
     /**
      * 
      * @param prettyPrint whether to pretty print the regular expression.
@@ -101,6 +101,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -328,7 +329,11 @@ public class FFSignatureFile extends SimpleElement {
         //BNO: Called when profile initialised
         this.setAllSignatureFileFormats();
         this.intSigs.prepareForUse();
+        intSigs.shareSubSequences();
         intSigs.sortSignatures(new InternalSignatureComparator());
+        intSigs.buildPrefilter();
+        intSigs.buildLeadingByteIndex();
+        intSigs.buildPriorities();
         buildFileExtensions();
     }
     
@@ -486,7 +491,38 @@ public class FFSignatureFile extends SimpleElement {
      * @param targetFile The binary file to be identified
      */
     public final void runFileIdentification(final ByteReader targetFile) {
-        final List<InternalSignature> matchingSigs = intSigs.getMatchingSignatures(targetFile, maxBytesToScan);
+        runFileIdentification(targetFile, maxBytesToScan);
+    }
+
+    /**
+     * Identify the target file using the signatures defined in this signature file,
+     * scanning up to a given number of bytes rather than the maximum set on this signature file.
+     *
+     * @param targetFile The binary file to be identified
+     * @param maxBytes The maximum number of bytes to scan from each end of the file.
+     *         If the number is less than zero, then the full file can be scanned.
+     */
+    public final void runFileIdentification(final ByteReader targetFile, final long maxBytes) {
+        addHits(targetFile, intSigs.getMatchingSignatures(targetFile, maxBytes));
+    }
+
+    /**
+     * Identify the target file using the signatures defined in this signature file,
+     * skipping signatures which could only produce hits that would be removed as lower priority
+     * than the hits already found.  Removing the lower priority hits gives the same result as
+     * it would if no signatures had been skipped.
+     *
+     * @param targetFile The binary file to be identified
+     * @param maxBytes The maximum number of bytes to scan from each end of the file.
+     *         If the number is less than zero, then the full file can be scanned.
+     * @param reportedPuids The puids of formats which must be reported even if they are lower priority.
+     */
+    public final void runFileIdentification(final ByteReader targetFile, final long maxBytes,
+                                            final Set<String> reportedPuids) {
+        addHits(targetFile, intSigs.getMatchingSignatures(targetFile, maxBytes, reportedPuids));
+    }
+
+    private void addHits(final ByteReader targetFile, final List<InternalSignature> matchingSigs) {
         final int numSigs = matchingSigs.size(); // reduce garbage: use an indexed loop rather than an iterator.
         for (int i = 0; i < numSigs; i++) {
             final InternalSignature internalSig = matchingSigs.get(i);
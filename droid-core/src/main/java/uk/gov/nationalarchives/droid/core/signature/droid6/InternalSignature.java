@@ -135,6 +135,7 @@ public class InternalSignature extends SimpleElement {
     private final List<FileFormat> fileFormatList = new ArrayList<FileFormat>();
     private int sortOrder;
     private boolean isInvalidSignature;
+    private int prefilterSlot = -1;
     
     /* setters */
     /**
@@ -169,6 +170,22 @@ public class InternalSignature extends SimpleElement {
     public boolean isInvalidSignature() {
         return isInvalidSignature;
     }
+
+    /**
+     *
+     * @return The slot this signature occupies in a {@link SignaturePrefilter}, or -1 if it has none.
+     */
+    final int getPrefilterSlot() {
+        return prefilterSlot;
+    }
+
+    /**
+     *
+     * @param prefilterSlot The slot this signature occupies in a {@link SignaturePrefilter}, or -1 if none.
+     */
+    final void setPrefilterSlot(final int prefilterSlot) {
+        this.prefilterSlot = prefilterSlot;
+    }
     
 
     /**
@@ -402,13 +419,27 @@ public class InternalSignature extends SimpleElement {
      * @return Whether the signature matches the target file or not.
      */
     public final boolean matches(final ByteReader targetFile, final long maxBytesToScan) {
+        return matches(targetFile, maxBytesToScan, null);
+    }
+
+    /**
+     * Indicates whether the internal signature matches the target file,
+     * remembering where any subsequences shared with other signatures are found.
+     *
+     * @param targetFile the binary file to be identified
+     * @param maxBytesToScan how many bytes should be scanned from the
+     * beginning or end of each file.  If negative, scanning is unlimited.
+     * @param memo The shared subsequence matches already found in the target file, or null.
+     * @return Whether the signature matches the target file or not.
+     */
+    final boolean matches(final ByteReader targetFile, final long maxBytesToScan, final SubSequenceMemo memo) {
         boolean matchResult = true;
         //BNO Byte sequences within the current signature
         final List<ByteSequence> sequences = byteSequences;
         final int numseqs = sequences.size();
         //check each byte sequence in turn - stop as soon as one is found to be non-compliant
         for (int sequenceIndex = 0; matchResult && sequenceIndex < numseqs; sequenceIndex++) {
-            matchResult = sequences.get(sequenceIndex).matches(targetFile, maxBytesToScan);
+            matchResult = sequences.get(sequenceIndex).matches(targetFile, maxBytesToScan, memo);
         }
         return matchResult;
     }
@@ -53,13 +53,17 @@
  */
 package uk.gov.nationalarchives.droid.core.signature.droid6;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 import uk.gov.nationalarchives.droid.core.signature.xml.SimpleElement;
@@ -83,6 +87,10 @@ public class InternalSignatureCollection extends SimpleElement {
     
     private List<InternalSignature> intSigs = new ArrayList<InternalSignature>(DEFAULT_COLLECTION_SIZE);
     private Map<Integer, InternalSignature> sigsByID = new HashMap<Integer, InternalSignature>();
+    private volatile SignaturePrefilter prefilter;
+    private volatile LeadingByteIndex leadingByteIndex;
+    private volatile int numSharedSubSequences;
+    private volatile SignaturePriorities priorities;
     
     /**
      * Runs all the signatures against the target file,
@@ -96,16 +104,238 @@ public class InternalSignatureCollection extends SimpleElement {
         //BNO: intSigs here represents all the available binary signatures..
         List<InternalSignature> matchingSigs = new ArrayList<InternalSignature>();
         if (targetFile.getNumBytes() > 0) {
-            final int stop = intSigs.size();
-            for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
-                final InternalSignature internalSig = intSigs.get(sigIndex);
-                if (internalSig.matches(targetFile, maxBytesToScan)) {
-                    matchingSigs.add(internalSig);
+            final SignaturePrefilter filter = prefilter;
+            final SignaturePrefilter.Candidates candidates =
+                    filter == null ? null : filter.scan(targetFile, maxBytesToScan);
+            final LeadingByteIndex index = leadingByteIndex;
+            final int leadingByte = index == null ? -1 : readLeadingByte(targetFile);
+            final int numShared = numSharedSubSequences;
+            final SubSequenceMemo memo = numShared == 0 ? null : new SubSequenceMemo(numShared);
+            if (leadingByte < 0) {
+                final int stop = intSigs.size();
+                for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
+                    addIfMatches(intSigs.get(sigIndex), targetFile, maxBytesToScan, candidates, memo, matchingSigs);
                 }
+            } else {
+                addMatchingIndexedSignatures(index, leadingByte, targetFile, maxBytesToScan,
+                        candidates, memo, matchingSigs);
             }
         }
         return matchingSigs;
     }
+
+    /**
+     * Runs the signatures against the target file, skipping any signature which could only produce hits
+     * that would be removed as lower priority than the hits already found.
+     * Signatures are run in order of their priority rank, so formats with priority over others are usually
+     * looked for first, but the signatures which matched are returned in the same order as they would be
+     * if all the signatures had been run.  Removing lower priority hits from them gives exactly the same
+     * result as removing them from all the matching signatures.
+     *
+     * @param targetFile The file to match the signatures against.
+     * @param maxBytesToScan The maximum bytes to scan.
+     * @param reportedPuids The puids of formats which must be matched even if they are lower priority.
+     * @return A list of the internal signatures which matched, less any skipped as lower priority.
+     */
+    public List<InternalSignature> getMatchingSignatures(ByteReader targetFile, long maxBytesToScan,
+                                                         Set<String> reportedPuids) {
+        final SignaturePriorities ranks = priorities;
+        if (ranks == null || ranks.getMaxRank() == 0 || targetFile.getNumBytes() <= 0) {
+            return getMatchingSignatures(targetFile, maxBytesToScan);
+        }
+        final SignaturePrefilter filter = prefilter;
+        final SignaturePrefilter.Candidates candidates =
+                filter == null ? null : filter.scan(targetFile, maxBytesToScan);
+        final int numShared = numSharedSubSequences;
+        final SubSequenceMemo memo = numShared == 0 ? null : new SubSequenceMemo(numShared);
+        final int[] signatureOrder = getSignaturesToRun(targetFile);
+        final boolean[] matched = matchByRank(ranks, signatureOrder, targetFile, maxBytesToScan,
+                candidates, memo, reportedPuids);
+        final List<InternalSignature> matchingSigs = new ArrayList<InternalSignature>();
+        for (int orderIndex = 0; orderIndex < signatureOrder.length; orderIndex++) {
+            if (matched[orderIndex]) {
+                matchingSigs.add(intSigs.get(signatureOrder[orderIndex]));
+            }
+        }
+        return matchingSigs;
+    }
+
+    /*
+     * Runs the signatures in increasing rank, skipping those which could only produce lower priority hits,
+     * and returns which of them matched.
+     */
+    private boolean[] matchByRank(final SignaturePriorities ranks, final int[] signatureOrder,
+                                  final ByteReader targetFile, final long maxBytesToScan,
+                                  final SignaturePrefilter.Candidates candidates, final SubSequenceMemo memo,
+                                  final Set<String> reportedPuids) {
+        final boolean[] matched = new boolean[signatureOrder.length];
+        final Set<Integer> lowerPriorityIDs = new HashSet<Integer>();
+        final int maxRank = ranks.getMaxRank();
+        for (int rank = 0; rank <= maxRank; rank++) {
+            for (int orderIndex = 0; orderIndex < signatureOrder.length; orderIndex++) {
+                final int sigIndex = signatureOrder[orderIndex];
+                if (ranks.getRank(sigIndex) == rank) {
+                    final InternalSignature internalSig = intSigs.get(sigIndex);
+                    matched[orderIndex] = (rank == 0
+                            || !SignaturePriorities.isLowerPriority(internalSig, lowerPriorityIDs, reportedPuids))
+                            && matches(internalSig, targetFile, maxBytesToScan, candidates, memo);
+                    if (matched[orderIndex]) {
+                        addLowerPriorityIDs(internalSig, lowerPriorityIDs);
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+
+    /*
+     * Returns the positions of the signatures to run against a file, in the order of the signature list.
+     */
+    private int[] getSignaturesToRun(final ByteReader targetFile) {
+        final LeadingByteIndex index = leadingByteIndex;
+        final int leadingByte = index == null ? -1 : readLeadingByte(targetFile);
+        final int[] signatureOrder;
+        if (leadingByte < 0) {
+            signatureOrder = new int[intSigs.size()];
+            for (int sigIndex = 0; sigIndex < signatureOrder.length; sigIndex++) {
+                signatureOrder[sigIndex] = sigIndex;
+            }
+        } else {
+            final int[] indexed = index.getSignaturesForByte(leadingByte);
+            final int[] unindexed = index.getUnindexedSignatures();
+            signatureOrder = new int[indexed.length + unindexed.length];
+            System.arraycopy(indexed, 0, signatureOrder, 0, indexed.length);
+            System.arraycopy(unindexed, 0, signatureOrder, indexed.length, unindexed.length);
+            Arrays.sort(signatureOrder);
+        }
+        return signatureOrder;
+    }
+
+    private static void addLowerPriorityIDs(final InternalSignature internalSig, final Set<Integer> lowerPriorityIDs) {
+        final int numFormats = internalSig.getNumFileFormats();
+        for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+            lowerPriorityIDs.addAll(internalSig.getFileFormat(formatIndex).getFormatIdsHasPriorityOver());
+        }
+    }
+
+    /*
+     * Merges the signatures indexed on the leading byte of the file with the unindexed ones,
+     * preserving the sort order of the signatures.
+     */
+    private void addMatchingIndexedSignatures(final LeadingByteIndex index, final int leadingByte,
+                                              final ByteReader targetFile, final long maxBytesToScan,
+                                              final SignaturePrefilter.Candidates candidates,
+                                              final SubSequenceMemo memo,
+                                              final List<InternalSignature> matchingSigs) {
+        final int[] indexed = index.getSignaturesForByte(leadingByte);
+        final int[] unindexed = index.getUnindexedSignatures();
+        int indexedPos = 0;
+        int unindexedPos = 0;
+        while (indexedPos < indexed.length || unindexedPos < unindexed.length) {
+            final int sigIndex;
+            if (unindexedPos == unindexed.length
+                    || indexedPos < indexed.length && indexed[indexedPos] < unindexed[unindexedPos]) {
+                sigIndex = indexed[indexedPos++];
+            } else {
+                sigIndex = unindexed[unindexedPos++];
+            }
+            addIfMatches(intSigs.get(sigIndex), targetFile, maxBytesToScan, candidates, memo, matchingSigs);
+        }
+    }
+
+    private static void addIfMatches(final InternalSignature internalSig, final ByteReader targetFile,
+                                     final long maxBytesToScan, final SignaturePrefilter.Candidates candidates,
+                                     final SubSequenceMemo memo, final List<InternalSignature> matchingSigs) {
+        if (matches(internalSig, targetFile, maxBytesToScan, candidates, memo)) {
+            matchingSigs.add(internalSig);
+        }
+    }
+
+    private static boolean matches(final InternalSignature internalSig, final ByteReader targetFile,
+                                   final long maxBytesToScan, final SignaturePrefilter.Candidates candidates,
+                                   final SubSequenceMemo memo) {
+        return (candidates == null || candidates.mayMatch(internalSig))
+                && internalSig.matches(targetFile, maxBytesToScan, memo);
+    }
+
+    private int readLeadingByte(final ByteReader targetFile) {
+        try {
+            return targetFile.getWindowReader().readByte(0);
+        } catch (IOException e) {
+            getLog().debug(e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Compiles a prefilter over the anchoring sequences of all the signatures in the collection,
+     * so signatures which cannot match a file are not run against it.
+     * Must be called after the signatures have been prepared for use.
+     */
+    public void buildPrefilter() {
+        prefilter = new SignaturePrefilter(intSigs);
+    }
+
+    /**
+     * Indexes the signatures on the first byte of the files they can match,
+     * so only those which can match the first byte of a file are run against it.
+     * Must be called after the signatures have been prepared for use and sorted.
+     * The index is rebuilt whenever signatures are added or removed after this.
+     */
+    public void buildLeadingByteIndex() {
+        leadingByteIndex = new LeadingByteIndex(intSigs);
+    }
+
+    /**
+     * Ranks the signatures by the priorities of the formats they identify, so signatures whose hits
+     * would be removed as lower priority can be skipped when matching.
+     * Must be called after the signatures have been prepared for use and sorted.
+     * The ranks are rebuilt whenever signatures are added or removed after this.
+     */
+    public void buildPriorities() {
+        priorities = new SignaturePriorities(intSigs);
+    }
+
+    /**
+     * Makes all the byte sequences in the collection share a single instance of any
+     * subsequences which are structurally identical, such as common magic numbers.
+     * Each shared subsequence is then only searched for once from the same position in a file,
+     * no matter how many signatures contain it.
+     * Must be called after the signatures have been prepared for use.
+     */
+    public void shareSubSequences() {
+        final Map<String, SubSequence> distinctSubSequences = new HashMap<String, SubSequence>();
+        int numShared = numSharedSubSequences;
+        for (final InternalSignature signature : intSigs) {
+            for (final ByteSequence byteSequence : signature.getByteSequences()) {
+                final List<SubSequence> subSequences = byteSequence.getSubSequences();
+                final int stop = subSequences.size();
+                for (int subSequenceIndex = 0; subSequenceIndex < stop; subSequenceIndex++) {
+                    final SubSequence subSequence = subSequences.get(subSequenceIndex);
+                    final String key = subSequence.getStructuralKey();
+                    final SubSequence distinct = distinctSubSequences.get(key);
+                    if (distinct == null) {
+                        distinctSubSequences.put(key, subSequence);
+                    } else if (distinct != subSequence) {
+                        if (distinct.getSharedIndex() < 0) {
+                            distinct.setSharedIndex(numShared++);
+                        }
+                        byteSequence.shareSubSequence(subSequenceIndex, distinct);
+                    }
+                }
+            }
+        }
+        numSharedSubSequences = numShared;
+    }
+
+    private void rebuildSignatureIndexes() {
+        if (leadingByteIndex != null) {
+            buildLeadingByteIndex();
+        }
+        if (priorities != null) {
+            buildPriorities();
+        }
+    }
     
    
     /**
@@ -137,6 +367,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void addInternalSignature(final InternalSignature iSig) {
         intSigs.add(iSig);
         sigsByID.put(iSig.getID(), iSig);
+        rebuildSignatureIndexes();
     }
     
     
@@ -147,6 +378,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void removeInternalSignature(final InternalSignature iSig) {
         intSigs.remove(iSig);
         sigsByID.remove(iSig.getID());
+        rebuildSignatureIndexes();
     }
     
     
@@ -168,8 +400,10 @@ public class InternalSignatureCollection extends SimpleElement {
         intSigs.clear();
         sigsByID.clear();
         for (InternalSignature signature : iSigs) {
-            addInternalSignature(signature);
+            intSigs.add(signature);
+            sigsByID.put(signature.getID(), signature);
         }
+        rebuildSignatureIndexes();
     }
 
     /* getters */
@@ -187,6 +421,7 @@ public class InternalSignatureCollection extends SimpleElement {
      */
     public void sortSignatures(final Comparator<InternalSignature> compareWith) {
         Collections.sort(intSigs, compareWith);
+        rebuildSignatureIndexes();
     }
 
 }
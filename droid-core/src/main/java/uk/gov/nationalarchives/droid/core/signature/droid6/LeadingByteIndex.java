@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.matcher.bytes.ByteMatcher;
+
+/**
+ * Indexes a list of internal signatures by the first byte of the files they can match.
+ *
+ * <p>Many signatures have a byte sequence anchored to the beginning of the file which
+ * must match exactly at offset zero.  Only the signatures whose first byte matches the
+ * first byte of a file need to be run against it, along with all the signatures which
+ * can't be indexed this way (variable, EOF, or offset BOF sequences).</p>
+ *
+ * <p>The index holds the positions of signatures in the list it was built from,
+ * so it must be rebuilt if the list changes.  Candidates are always returned in
+ * the same order as the list.</p>
+ */
+final class LeadingByteIndex {
+
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final int[][] signaturesForByte = new int[BYTE_VALUES][];
+    private final int[] unindexedSignatures;
+
+    /**
+     * Builds an index over the signatures given.
+     *
+     * @param signatures The prepared and sorted signatures to index.
+     */
+    LeadingByteIndex(final List<InternalSignature> signatures) {
+        final List<List<Integer>> indexed = new ArrayList<List<Integer>>(BYTE_VALUES);
+        for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+            indexed.add(new ArrayList<Integer>());
+        }
+        final List<Integer> unindexed = new ArrayList<Integer>();
+        final int numSignatures = signatures.size();
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            final boolean[] leadingBytes = getLeadingBytes(signatures.get(sigIndex));
+            if (leadingBytes == null) {
+                unindexed.add(sigIndex);
+            } else {
+                for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+                    if (leadingBytes[byteValue]) {
+                        indexed.get(byteValue).add(sigIndex);
+                    }
+                }
+            }
+        }
+        for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+            signaturesForByte[byteValue] = toArray(indexed.get(byteValue));
+        }
+        unindexedSignatures = toArray(unindexed);
+    }
+
+    /**
+     * @param leadingByte The first byte of a file, as a value from 0 to 255.
+     * @return The positions of signatures which start with that byte, in ascending order.
+     */
+    int[] getSignaturesForByte(final int leadingByte) {
+        return signaturesForByte[leadingByte & BYTE_MASK];
+    }
+
+    /**
+     * @return The positions of signatures which could match a file starting with any byte, in ascending order.
+     */
+    int[] getUnindexedSignatures() {
+        return unindexedSignatures;
+    }
+
+    /*
+     * Returns the bytes a file must begin with for the signature to match it,
+     * or null if the signature does not constrain the first byte of a file.
+     */
+    private static boolean[] getLeadingBytes(final InternalSignature signature) {
+        boolean[] leadingBytes = null;
+        for (final ByteSequence sequence : signature.getByteSequences()) {
+            if (sequence.isAnchoredToBOF() && !sequence.hasIndirectOffset()) {
+                final SubSequence firstSubSequence = sequence.getSubSequences().get(0);
+                if (firstSubSequence.isAnchorAtFixedPosition() && firstSubSequence.getMinSeqOffset() == 0) {
+                    final ByteMatcher firstByte = firstSubSequence.getAnchorMatcher(0);
+                    if (firstByte.getNumberOfMatchingBytes() < BYTE_VALUES) {
+                        leadingBytes = intersect(leadingBytes, firstByte.getMatchingBytes());
+                    }
+                }
+            }
+        }
+        return leadingBytes;
+    }
+
+    private static boolean[] intersect(final boolean[] leadingBytes, final byte[] matchingBytes) {
+        final boolean[] result = new boolean[BYTE_VALUES];
+        for (final byte value : matchingBytes) {
+            final int byteValue = value & BYTE_MASK;
+            result[byteValue] = leadingBytes == null || leadingBytes[byteValue];
+        }
+        return result;
+    }
+
+    private static int[] toArray(final List<Integer> values) {
+        final int[] array = new int[values.size()];
+        for (int index = 0; index < array.length; index++) {
+            array[index] = values.get(index);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * An Aho-Corasick automaton which finds all occurrences of a set of literal
+ * byte patterns in a single pass over a window of a file.
+ *
+ * <p>The root state has a dense transition table, as almost every byte read
+ * passes through it.  All other states hold a small sorted array of transitions,
+ * as most states in a trie built from signature anchors only have one child.</p>
+ *
+ * <p>Once built, the automaton is immutable and can be used concurrently
+ * by any number of threads.</p>
+ */
+final class MultiPatternAutomaton {
+
+    private static final int ROOT = 0;
+    private static final int NO_STATE = -1;
+    private static final int NO_PATTERN = -1;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int ALPHABET_SIZE = 256;
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final int[] NO_STATES = new int[0];
+
+    private final int[] rootTransitions = new int[ALPHABET_SIZE];
+    private byte[][] transitionBytes;
+    private int[][] transitionStates;
+    private int[] failureLinks;
+    private int[] outputLinks;
+    private int[] patternAtState;
+    private final int[] patternLengths;
+    private int numStates;
+
+    /**
+     * Builds an automaton matching the patterns given.  The id of each pattern
+     * is its index in the list.
+     *
+     * @param patterns The byte patterns to match.  Each pattern must contain at least one byte.
+     */
+    MultiPatternAutomaton(final List<byte[]> patterns) {
+        final int numPatterns = patterns.size();
+        patternLengths = new int[numPatterns];
+        int maxStates = 1;
+        for (int patternId = 0; patternId < numPatterns; patternId++) {
+            maxStates += patterns.get(patternId).length;
+        }
+        transitionBytes = new byte[maxStates][];
+        transitionStates = new int[maxStates][];
+        patternAtState = new int[maxStates];
+        Arrays.fill(patternAtState, NO_PATTERN);
+        transitionBytes[ROOT] = NO_BYTES;
+        transitionStates[ROOT] = NO_STATES;
+        numStates = 1;
+        for (int patternId = 0; patternId < numPatterns; patternId++) {
+            addPattern(patternId, patterns.get(patternId));
+        }
+        buildRootTransitions();
+        buildFailureLinks();
+        transitionBytes = Arrays.copyOf(transitionBytes, numStates);
+        transitionStates = Arrays.copyOf(transitionStates, numStates);
+        patternAtState = Arrays.copyOf(patternAtState, numStates);
+    }
+
+    /**
+     * @return The number of patterns this automaton matches.
+     */
+    int getNumPatterns() {
+        return patternLengths.length;
+    }
+
+    /**
+     * Scans a region of the reader, recording for each pattern the nearest distance
+     * at which it ends from the start of the file, or begins from the end of the file.
+     *
+     * <p>The distance recorded when measuring from the start is the position of the
+     * byte after the pattern.  The distance recorded when measuring from the end is the
+     * number of bytes from the first byte of the pattern to the end of the file.
+     * The distances array must be initialised with values greater than any possible distance.</p>
+     *
+     * @param reader The reader to scan.
+     * @param fromPosition The first position in the reader to scan.
+     * @param toPosition The position after the last position to scan.
+     * @param fromEnd Whether distances are measured from the end of the file at toPosition.
+     * @param distances The array to record the nearest distances in, indexed by pattern id plus the offset.
+     * @param offset An offset to add to each pattern id when recording distances.
+     * @throws IOException If there was a problem reading the reader.
+     */
+    void recordNearestMatches(final WindowReader reader, final long fromPosition, final long toPosition,
+                              final boolean fromEnd, final long[] distances, final int offset) throws IOException {
+        int state = ROOT;
+        long position = fromPosition;
+        Window window = position < toPosition ? reader.getWindow(position) : null;
+        while (window != null) {
+            final byte[] array = window.getArray();
+            final long windowPosition = window.getWindowPosition();
+            final int windowEnd = (int) Math.min(window.length(), toPosition - windowPosition);
+            for (int index = reader.getWindowOffset(position); index < windowEnd; index++) {
+                state = nextState(state, array[index]);
+                for (int output = patternAtState[state] == NO_PATTERN ? outputLinks[state] : state;
+                     output != NO_STATE; output = outputLinks[output]) {
+                    final int pattern = patternAtState[output];
+                    final long endPosition = windowPosition + index + 1;
+                    final long distance = fromEnd ? toPosition - endPosition + patternLengths[pattern] : endPosition;
+                    if (distance < distances[pattern + offset]) {
+                        distances[pattern + offset] = distance;
+                    }
+                }
+            }
+            position = windowPosition + windowEnd;
+            window = position < toPosition ? reader.getWindow(position) : null;
+        }
+    }
+
+    private int nextState(final int currentState, final byte value) {
+        int state = currentState;
+        while (state != ROOT) {
+            final int next = findTransition(state, value);
+            if (next != NO_STATE) {
+                return next;
+            }
+            state = failureLinks[state];
+        }
+        return rootTransitions[value & BYTE_MASK];
+    }
+
+    private int findTransition(final int state, final byte value) {
+        final byte[] keys = transitionBytes[state];
+        for (int index = 0; index < keys.length; index++) {
+            if (keys[index] == value) {
+                return transitionStates[state][index];
+            }
+        }
+        return NO_STATE;
+    }
+
+    private void addPattern(final int patternId, final byte[] pattern) {
+        int state = ROOT;
+        for (final byte value : pattern) {
+            int next = findTransition(state, value);
+            if (next == NO_STATE) {
+                next = numStates++;
+                transitionBytes[next] = NO_BYTES;
+                transitionStates[next] = NO_STATES;
+                final int numTransitions = transitionBytes[state].length;
+                transitionBytes[state] = Arrays.copyOf(transitionBytes[state], numTransitions + 1);
+                transitionStates[state] = Arrays.copyOf(transitionStates[state], numTransitions + 1);
+                transitionBytes[state][numTransitions] = value;
+                transitionStates[state][numTransitions] = next;
+            }
+            state = next;
+        }
+        patternLengths[patternId] = pattern.length;
+        patternAtState[state] = patternId;
+    }
+
+    private void buildRootTransitions() {
+        final byte[] keys = transitionBytes[ROOT];
+        for (int index = 0; index < keys.length; index++) {
+            rootTransitions[keys[index] & BYTE_MASK] = transitionStates[ROOT][index];
+        }
+    }
+
+    /*
+     * Breadth first walk of the trie, pointing each state at the state for the
+     * longest proper suffix of its path, and at the nearest suffix state which
+     * completes a pattern.
+     */
+    private void buildFailureLinks() {
+        failureLinks = new int[numStates];
+        outputLinks = new int[numStates];
+        Arrays.fill(outputLinks, NO_STATE);
+        final Queue<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final byte[] keys = transitionBytes[state];
+            for (int index = 0; index < keys.length; index++) {
+                final int child = transitionStates[state][index];
+                final int failure = state == ROOT ? ROOT : nextState(failureLinks[state], keys[index]);
+                failureLinks[child] = failure;
+                outputLinks[child] = patternAtState[failure] == NO_PATTERN ? outputLinks[failure] : failure;
+                queue.add(child);
+            }
+        }
+    }
+
+}
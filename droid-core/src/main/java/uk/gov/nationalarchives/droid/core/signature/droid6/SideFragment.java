@@ -127,6 +127,7 @@ public class SideFragment extends SimpleElement implements Cloneable {
     private int myPosition;
     private int myMinOffset;
     private int myMaxOffset;
+    private String fragmentExpression;
     private SequenceMatcher matcher;
     private Searcher searcher;
     private boolean isInvalidFragment;
@@ -180,6 +181,7 @@ public class SideFragment extends SimpleElement implements Cloneable {
      * @param expression The regular expression defining the fragment.
      */
     public final void setFragment(final String expression) {
+        this.fragmentExpression = expression;
         try {
             final String transformed = FragmentRewriter.rewriteFragment(expression);
             matcher = EXPRESSION_COMPILER.compile(transformed);
@@ -255,6 +257,14 @@ public class SideFragment extends SimpleElement implements Cloneable {
         return matcher == null ? 0 : matcher.length();
     }
 
+    /**
+     * 
+     * @return The regular expression defining the fragment, as it was set.
+     */
+    public final String getFragment() {
+        return fragmentExpression;
+    }
+
     /**
      * Set the sideFragment sequence.
      * This will have been stored in the text attribute by the setText method.
@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.byteseek.io.reader.WindowReader;
+
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Rules out internal signatures which cannot match a file before any of them are run.
+ *
+ * <p>Every subsequence of a signature has an anchoring sequence which must be found for
+ * the signature to match.  The longest literal run of bytes in each anchor is compiled
+ * into one of two multi-pattern automata: one for anchors searched for from the start
+ * of the file, and one for anchors searched for from the end.  Each automaton scans
+ * its window of the file once, and records how close to that end of the file each literal
+ * was found.  A signature is only a candidate for full matching if all of its literals were
+ * found within the distance its anchors can be searched for.</p>
+ *
+ * <p>Anchors which can be found anywhere in the file are only ruled out when the maximum
+ * bytes to scan limits where they can appear, or when the whole file was scanned.
+ * The filter never rules out a signature which could match, so the results of identification
+ * are unchanged.</p>
+ */
+public final class SignaturePrefilter {
+
+    /**
+     * Literals shorter than this are too common to be worth filtering on.
+     */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    /**
+     * The most bytes scanned from either end of a file when filtering.
+     */
+    private static final long MAX_SCAN_WINDOW = 1024 * 1024;
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+    private static final int NO_SLOT = -1;
+
+    private final MultiPatternAutomaton bofAutomaton;
+    private final MultiPatternAutomaton eofAutomaton;
+    private final int numLiterals;
+    private final long maxBoundedBofLimit;
+    private final long maxBoundedEofLimit;
+    private final boolean hasUnboundedBofLimit;
+    private final boolean hasUnboundedEofLimit;
+    private final int[][] requiredLiterals;
+    private final long[][] requiredLimits;
+
+    /**
+     * Compiles a prefilter for the signatures given.  Each signature is assigned a slot in
+     * the prefilter, and signatures which have no literal anchors to filter on are always candidates.
+     *
+     * @param signatures The prepared internal signatures to build a prefilter for.
+     */
+    public SignaturePrefilter(final List<InternalSignature> signatures) {
+        final LiteralTable bofLiterals = new LiteralTable();
+        final LiteralTable eofLiterals = new LiteralTable();
+        final List<int[]> literalsForSlots = new ArrayList<int[]>();
+        final List<long[]> limitsForSlots = new ArrayList<long[]>();
+        for (final InternalSignature signature : signatures) {
+            final List<SubSequence> anchors = getFilterableSubSequences(signature);
+            if (anchors.isEmpty()) {
+                signature.setPrefilterSlot(NO_SLOT);
+            } else {
+                signature.setPrefilterSlot(literalsForSlots.size());
+                addRequirements(anchors, bofLiterals, eofLiterals, literalsForSlots, limitsForSlots);
+            }
+        }
+        final int numBofLiterals = bofLiterals.size();
+        offsetEofLiterals(literalsForSlots, numBofLiterals);
+        this.bofAutomaton = new MultiPatternAutomaton(bofLiterals.getLiterals());
+        this.eofAutomaton = new MultiPatternAutomaton(eofLiterals.getLiterals());
+        this.numLiterals = numBofLiterals + eofLiterals.size();
+        this.maxBoundedBofLimit = bofLiterals.getMaxBoundedLimit();
+        this.maxBoundedEofLimit = eofLiterals.getMaxBoundedLimit();
+        this.hasUnboundedBofLimit = bofLiterals.hasUnboundedLimit();
+        this.hasUnboundedEofLimit = eofLiterals.hasUnboundedLimit();
+        this.requiredLiterals = literalsForSlots.toArray(new int[literalsForSlots.size()][]);
+        this.requiredLimits = limitsForSlots.toArray(new long[limitsForSlots.size()][]);
+    }
+
+    /**
+     * Scans the target file with both automata, returning the candidates which can match it.
+     *
+     * @param targetFile The file to scan.
+     * @param maxBytesToScan The maximum bytes to scan from either end of the file, or negative if unlimited.
+     * @return The candidate signatures for the file.
+     */
+    public Candidates scan(final ByteReader targetFile, final long maxBytesToScan) {
+        final long fileLength = targetFile.getNumBytes();
+        final long scanLimit = maxBytesToScan > 0 ? maxBytesToScan + 1 : UNLIMITED;
+        final long bofExtent = getScanExtent(fileLength, scanLimit, maxBoundedBofLimit, hasUnboundedBofLimit);
+        final long eofExtent = getScanExtent(fileLength, scanLimit, maxBoundedEofLimit, hasUnboundedEofLimit);
+        final long[] distances = new long[numLiterals];
+        Arrays.fill(distances, UNLIMITED);
+        final WindowReader reader = targetFile.getWindowReader();
+        try {
+            bofAutomaton.recordNearestMatches(reader, 0, bofExtent, false, distances, 0);
+            eofAutomaton.recordNearestMatches(reader, fileLength - eofExtent, fileLength, true,
+                    distances, bofAutomaton.getNumPatterns());
+        } catch (IOException e) {
+            // If we can't read the file, don't filter anything; let the signatures report the problem.
+            return new Candidates(fileLength, scanLimit, fileLength, fileLength, null);
+        }
+        return new Candidates(fileLength, scanLimit, bofExtent, eofExtent, distances);
+    }
+
+    private static void addRequirements(final List<SubSequence> anchors,
+                                        final LiteralTable bofLiterals, final LiteralTable eofLiterals,
+                                        final List<int[]> literalsForSlots, final List<long[]> limitsForSlots) {
+        final int[] literals = new int[anchors.size()];
+        final long[] limits = new long[anchors.size()];
+        for (int anchorIndex = 0; anchorIndex < literals.length; anchorIndex++) {
+            final SubSequence anchor = anchors.get(anchorIndex);
+            final long limit = anchor.getAnchorSearchLimit();
+            if (anchor.isBackwardsSearch()) {
+                literals[anchorIndex] = -eofLiterals.add(anchor.getLongestAnchorLiteral(), limit) - 1;
+            } else {
+                literals[anchorIndex] = bofLiterals.add(anchor.getLongestAnchorLiteral(), limit);
+            }
+            limits[anchorIndex] = limit < 0 ? UNLIMITED : limit;
+        }
+        literalsForSlots.add(literals);
+        limitsForSlots.add(limits);
+    }
+
+    /*
+     * EOF literal ids are recorded as (-id - 1) until we know how many BOF literals come before them.
+     */
+    private static void offsetEofLiterals(final List<int[]> literalsForSlots, final int numBofLiterals) {
+        for (final int[] literals : literalsForSlots) {
+            for (int index = 0; index < literals.length; index++) {
+                if (literals[index] < 0) {
+                    literals[index] = numBofLiterals - literals[index] - 1;
+                }
+            }
+        }
+    }
+
+    private static long getScanExtent(final long fileLength, final long scanLimit,
+                                      final long maxBoundedLimit, final boolean hasUnboundedLimit) {
+        final long furthestLimit = scanLimit == UNLIMITED || !hasUnboundedLimit
+                ? Math.min(maxBoundedLimit, scanLimit) : scanLimit;
+        return Math.min(fileLength, Math.min(furthestLimit, MAX_SCAN_WINDOW));
+    }
+
+    private static List<SubSequence> getFilterableSubSequences(final InternalSignature signature) {
+        final List<SubSequence> anchors = new ArrayList<SubSequence>();
+        for (final ByteSequence sequence : signature.getByteSequences()) {
+            if (!sequence.hasIndirectOffset()) {
+                for (final SubSequence subSequence : sequence.getSubSequences()) {
+                    if (subSequence.getLongestAnchorLiteral().length >= MIN_LITERAL_LENGTH) {
+                        anchors.add(subSequence);
+                    }
+                }
+            }
+        }
+        return anchors;
+    }
+
+    /**
+     * The result of scanning a single file, which tells whether a signature could match it.
+     */
+    public final class Candidates {
+
+        private final long fileLength;
+        private final long scanLimit;
+        private final long bofExtent;
+        private final long eofExtent;
+        private final long[] distances;
+
+        private Candidates(final long fileLength, final long scanLimit,
+                           final long bofExtent, final long eofExtent, final long[] distances) {
+            this.fileLength = fileLength;
+            this.scanLimit = scanLimit;
+            this.bofExtent = bofExtent;
+            this.eofExtent = eofExtent;
+            this.distances = distances;
+        }
+
+        /**
+         * @param signature An internal signature the prefilter was built with.
+         * @return False if the signature cannot possibly match the file, true if it might.
+         */
+        public boolean mayMatch(final InternalSignature signature) {
+            final int slot = signature.getPrefilterSlot();
+            if (slot == NO_SLOT || distances == null) {
+                return true;
+            }
+            final int[] literals = requiredLiterals[slot];
+            final long[] limits = requiredLimits[slot];
+            boolean found = true;
+            for (int index = 0; found && index < literals.length; index++) {
+                final int literal = literals[index];
+                final long extent = literal < bofAutomaton.getNumPatterns() ? bofExtent : eofExtent;
+                final long limit = Math.min(limits[index], scanLimit);
+                // Only anchors which must lie inside the scanned window can rule a signature out:
+                if (extent >= fileLength || limit <= extent) {
+                    found = distances[literal] <= limit;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Assigns ids to distinct literals, tracking the furthest distance from the end of
+     * the file any of them need to be looked for.
+     */
+    private static final class LiteralTable {
+
+        private final Map<String, Integer> literalIds = new HashMap<String, Integer>();
+        private final List<byte[]> literals = new ArrayList<byte[]>();
+        private long maxBoundedLimit;
+        private boolean unboundedLimit;
+
+        int add(final byte[] literal, final long limit) {
+            if (limit < 0) {
+                unboundedLimit = true;
+            } else if (limit > maxBoundedLimit) {
+                maxBoundedLimit = limit;
+            }
+            final String key = new String(literal, StandardCharsets.ISO_8859_1);
+            Integer literalId = literalIds.get(key);
+            if (literalId == null) {
+                literalId = literals.size();
+                literalIds.put(key, literalId);
+                literals.add(literal);
+            }
+            return literalId;
+        }
+
+        int size() {
+            return literals.size();
+        }
+
+        List<byte[]> getLiterals() {
+            return literals;
+        }
+
+        long getMaxBoundedLimit() {
+            return maxBoundedLimit;
+        }
+
+        boolean hasUnboundedLimit() {
+            return unboundedLimit;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+
+/**
+ * Ranks a list of internal signatures by how many formats with priority over them
+ * could be found before them, so they can be run against a file in an order which lets
+ * signatures whose hits would be removed as lower priority be skipped.
+ *
+ * <p>A signature has rank zero if no other signature in the list produces a format which
+ * has priority over any of its formats.  Otherwise its rank is one more than the highest
+ * rank of the formats with priority over its formats.  Running signatures in increasing rank
+ * means the formats with priority over a signature have usually already been looked for.</p>
+ *
+ * <p>The ranks are held by the positions of signatures in the list they were built from,
+ * so they must be rebuilt if the list changes.</p>
+ */
+final class SignaturePriorities {
+
+    private final int[] ranks;
+    private final int maxRank;
+
+    /**
+     * Ranks the signatures given.
+     *
+     * @param signatures The prepared and sorted signatures to rank.
+     */
+    SignaturePriorities(final List<InternalSignature> signatures) {
+        final Map<Integer, List<Integer>> higherPriorityFormats = new HashMap<Integer, List<Integer>>();
+        for (final InternalSignature signature : signatures) {
+            final int numFormats = signature.getNumFileFormats();
+            for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+                final FileFormat format = signature.getFileFormat(formatIndex);
+                for (final Integer lowerPriorityID : format.getFormatIdsHasPriorityOver()) {
+                    List<Integer> higher = higherPriorityFormats.get(lowerPriorityID);
+                    if (higher == null) {
+                        higher = new ArrayList<Integer>();
+                        higherPriorityFormats.put(lowerPriorityID, higher);
+                    }
+                    higher.add(format.getID());
+                }
+            }
+        }
+        final Map<Integer, Integer> formatRanks = new HashMap<Integer, Integer>();
+        final int numSignatures = signatures.size();
+        ranks = new int[numSignatures];
+        int highestRank = 0;
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            final InternalSignature signature = signatures.get(sigIndex);
+            int rank = 0;
+            final int numFormats = signature.getNumFileFormats();
+            for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+                final int formatID = signature.getFileFormat(formatIndex).getID();
+                rank = Math.max(rank, rankFormat(formatID, higherPriorityFormats, formatRanks));
+            }
+            ranks[sigIndex] = rank;
+            highestRank = Math.max(highestRank, rank);
+        }
+        maxRank = highestRank;
+    }
+
+    /**
+     * @param sigIndex The position of a signature in the list the ranks were built from.
+     * @return The rank of the signature.
+     */
+    int getRank(final int sigIndex) {
+        return ranks[sigIndex];
+    }
+
+    /**
+     * @return The highest rank of any signature, or zero if no signature has priority over another.
+     */
+    int getMaxRank() {
+        return maxRank;
+    }
+
+    /**
+     * Returns whether a signature can be skipped, because it could only produce hits which would be removed
+     * as lower priority than the hits already found, and these hits would not remove any other hits.
+     *
+     * @param signature The signature to check.
+     * @param lowerPriorityIDs The ids of formats which the hits found so far have priority over.
+     * @param reportedPuids The puids of formats whose hits must be reported even if they are lower priority.
+     * @return Whether the signature can be skipped.
+     */
+    static boolean isLowerPriority(final InternalSignature signature, final Set<Integer> lowerPriorityIDs,
+                                   final Set<String> reportedPuids) {
+        boolean lowerPriority = true;
+        final int numFormats = signature.getNumFileFormats();
+        for (int formatIndex = 0; lowerPriority && formatIndex < numFormats; formatIndex++) {
+            final FileFormat format = signature.getFileFormat(formatIndex);
+            lowerPriority = lowerPriorityIDs.contains(format.getID())
+                    && lowerPriorityIDs.containsAll(format.getFormatIdsHasPriorityOver())
+                    && !reportedPuids.contains(format.getPUID());
+        }
+        return lowerPriority;
+    }
+
+    /*
+     * Returns one more than the highest rank of the formats with priority over a format,
+     * ignoring any cycles in the priorities.
+     */
+    private static int rankFormat(final Integer formatID, final Map<Integer, List<Integer>> higherPriorityFormats,
+                                  final Map<Integer, Integer> formatRanks) {
+        final Integer knownRank = formatRanks.get(formatID);
+        if (knownRank != null) {
+            return knownRank;
+        }
+        // Mark the format as being ranked, so a cycle back to it ends with rank zero.
+        formatRanks.put(formatID, 0);
+        int rank = 0;
+        final List<Integer> higher = higherPriorityFormats.get(formatID);
+        if (higher != null) {
+            for (final Integer higherID : higher) {
+                rank = Math.max(rank, rankFormat(higherID, higherPriorityFormats, formatRanks) + 1);
+            }
+        }
+        formatRanks.put(formatID, rank);
+        return rank;
+    }
+}
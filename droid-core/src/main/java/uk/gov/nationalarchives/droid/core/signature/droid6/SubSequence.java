@@ -120,10 +120,7 @@ import org.apache.commons.lang.ArrayUtils;
 import net.byteseek.compiler.CompileException;
 import net.byteseek.compiler.matcher.SequenceMatcherCompiler;
 import net.byteseek.io.reader.WindowReader;
-import net.byteseek.searcher.bytes.ByteMatcherSearcher;
-import net.byteseek.searcher.Searcher;
-import net.byteseek.searcher.SearchResult;
-import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
@@ -161,6 +158,19 @@ public class SubSequence extends SimpleElement {
     private static final boolean EXPRESSION_BEFORE_GAPS = true;
     private static final boolean GAPS_BEFORE_EXPRESSION = false;
 
+    private static final long[] NO_FRAGMENT_POSITIONS = new long[0];
+
+    /*
+     * Buffers reused by each thread to check fragments around the anchors found, rather than
+     * allocating new ones for every anchor.  Subsequence searches on a thread never overlap.
+     */
+    private static final ThreadLocal<FragmentScratch> FRAGMENT_SCRATCH = new ThreadLocal<FragmentScratch>() {
+        @Override
+        protected FragmentScratch initialValue() {
+            return new FragmentScratch();
+        }
+    };
+
     private int minSeqOffset;
     private int maxSeqOffset;
     private int minLeftFragmentLength;
@@ -173,7 +183,7 @@ public class SubSequence extends SimpleElement {
     private List<LeftFragment> leftFragments = new ArrayList<LeftFragment>();
     private List<RightFragment> rightFragments = new ArrayList<RightFragment>();
     private SequenceMatcher matcher;
-    private Searcher searcher;
+    private AnchorSearcher searcher;
     private final List<List<SideFragment>> orderedLeftFragments = new ArrayList<List<SideFragment>>();
     private final List<List<SideFragment>> orderedRightFragments = new ArrayList<List<SideFragment>>();
     private boolean backwardsSearch;
@@ -182,11 +192,15 @@ public class SubSequence extends SimpleElement {
     private boolean hasRightFragments;
 
     private String subsequenceText;
+    private String sequence;
 
     private boolean[] orderedLeftFragsHaveVariableOffset;
     private boolean[] orderedRightFragsHaveVariableOffset;
     private boolean useLeftFragmentBackTrack;
     private boolean useRightFragmentBackTrack;
+    private List<List<SideFragment>> furthestLeftFragmentOption;
+    private List<List<SideFragment>> furthestRightFragmentOption;
+    private int sharedIndex = -1;
 
 
     /**
@@ -229,6 +243,7 @@ public class SubSequence extends SimpleElement {
      * @param seq A regular expression defining the anchor sequence for the subsequence.
      */
     public final void setSequence(final String seq) {
+        sequence = seq;
         subsequenceText = FragmentRewriter.rewriteFragment(seq);
     }
 
@@ -359,6 +374,131 @@ public class SubSequence extends SimpleElement {
         return maxSeqOffset;
     }
 
+    /**
+     *
+     * @return The regular expression defining the anchor sequence, as it was set.
+     */
+    public final String getSequence() {
+        return sequence;
+    }
+
+    /**
+     *
+     * @return The fragments to the left of the subsequence, as they were added.
+     */
+    public final List<LeftFragment> getLeftFragments() {
+        return leftFragments;
+    }
+
+    /**
+     *
+     * @return The fragments to the right of the subsequence, as they were added.
+     */
+    public final List<RightFragment> getRightFragments() {
+        return rightFragments;
+    }
+
+    /**
+     * Returns the longest run of bytes in the anchoring sequence where each position
+     * can only match a single byte value.  Any file which matches this subsequence
+     * must contain these bytes.
+     *
+     * @return The longest literal run of bytes in the anchoring sequence, or an empty
+     *         array if there is no position in the anchor which matches a single byte.
+     */
+    final byte[] getLongestAnchorLiteral() {
+        int bestStart = 0;
+        int bestLength = 0;
+        int runStart = 0;
+        final int length = getNumBytes();
+        for (int position = 0; position <= length; position++) {
+            if (position == length || matcher.getMatcherForPosition(position).getNumberOfMatchingBytes() != 1) {
+                final int runLength = position - runStart;
+                if (runLength > bestLength) {
+                    bestStart = runStart;
+                    bestLength = runLength;
+                }
+                runStart = position + 1;
+            }
+        }
+        final byte[] literal = new byte[bestLength];
+        for (int index = 0; index < bestLength; index++) {
+            literal[index] = matcher.getMatcherForPosition(bestStart + index).getMatchingBytes()[0];
+        }
+        return literal;
+    }
+
+    /**
+     * Returns the furthest distance from the end of the file the subsequence is anchored to
+     * at which the anchoring sequence can be found, including the anchor itself.
+     * The distance is measured from the start of the file for forwards searching subsequences,
+     * and from the end of the file for backwards searching subsequences.
+     *
+     * @return The maximum number of bytes from the anchored end of the file which can contain
+     *         the anchoring sequence, or a negative number if it can appear anywhere in the file.
+     */
+    final long getAnchorSearchLimit() {
+        if (fullFileScan) {
+            return -1;
+        }
+        final long fragmentLength = backwardsSearch ? maxRightFragmentLength : maxLeftFragmentLength;
+        return fragmentLength + maxSeqOffset + getNumBytes();
+    }
+
+    /**
+     *
+     * @return Whether this subsequence is searched for backwards from the end of the file.
+     */
+    final boolean isBackwardsSearch() {
+        return backwardsSearch;
+    }
+
+    /**
+     *
+     * @return Whether the anchoring sequence can only match at a single position from
+     *         where the subsequence is searched from: the minimum sequence offset.
+     */
+    final boolean isAnchorAtFixedPosition() {
+        return !fullFileScan && !hasLeftFragments && !backwardsSearch && minSeqOffset == maxSeqOffset;
+    }
+
+    /**
+     *
+     * @param position The position in the anchoring sequence.
+     * @return The byte matcher for that position in the anchoring sequence.
+     */
+    final ByteMatcher getAnchorMatcher(final int position) {
+        return matcher.getMatcherForPosition(position);
+    }
+
+    /**
+     * Returns a key which is the same for any two prepared subsequences which search for the same
+     * bytes in the same way, so they always find the same match from the same position in a file.
+     *
+     * @return A key describing the structure of the prepared subsequence.
+     */
+    final String getStructuralKey() {
+        return toRegularExpression(false) + '{' + minSeqOffset + '-' + maxSeqOffset + '}'
+                + (backwardsSearch ? 'B' : 'F') + (fullFileScan ? 'S' : 'A');
+    }
+
+    /**
+     *
+     * @return The index of this subsequence in the subsequences shared between byte sequences,
+     *         or a negative number if it is not shared.
+     */
+    final int getSharedIndex() {
+        return sharedIndex;
+    }
+
+    /**
+     *
+     * @param index The index of this subsequence in the subsequences shared between byte sequences.
+     */
+    final void setSharedIndex(final int index) {
+        this.sharedIndex = index;
+    }
+
     /**
      * Note: unclear whether this is used anymore.
      *
@@ -384,6 +524,16 @@ public class SubSequence extends SimpleElement {
         processSequenceFragments();
         hasLeftFragments  = !orderedLeftFragments.isEmpty();
         hasRightFragments = !orderedRightFragments.isEmpty();
+        furthestLeftFragmentOption = furthestFragmentOption(orderedLeftFragments);
+        furthestRightFragmentOption = furthestFragmentOption(orderedRightFragments);
+    }
+
+    /*
+     * Returns a list holding just the fragment option furthest from the anchoring sequence, or null if there are none.
+     */
+    private static List<List<SideFragment>> furthestFragmentOption(final List<List<SideFragment>> orderedFragments) {
+        final int numPositions = orderedFragments.size();
+        return numPositions == 0 ? null : orderedFragments.subList(numPositions - 1, numPositions);
     }
 
 
@@ -647,14 +797,8 @@ public class SubSequence extends SimpleElement {
 
     private void buildMatcherAndSearcher() {
         try {
-            // CHECKSTYLE:OFF     Quite legitimate to have more than 120 chars per line just now...
             matcher = SEQUENCE_COMPILER.compile(subsequenceText);
-            if (matcher.length() == 1) {
-                searcher = new ByteMatcherSearcher(matcher.getMatcherForPosition(0)); // use simplest byte matcher searcher if the matcher is length 1.
-            } else {
-                searcher = new HorspoolFinalFlagSearcher(matcher); // use shifting searcher if shifts can be bigger than one.
-            }
-            // CHECKSTYLE:ON
+            searcher = new AnchorSearcher(matcher, backwardsSearch);
         } catch (CompileException ex) {
             final String warning = String.format(SEQUENCE_PARSE_ERROR, subsequenceText, ex.getMessage());
             getLog().warn(warning);
@@ -893,10 +1037,7 @@ public class SubSequence extends SimpleElement {
                         matchPosition = matcher.matches(windowReader, matchPosition)?
                                 matchPosition : -1;
                     } else {
-                        final List<SearchResult<SequenceMatcher>> matches =
-                                searcher.searchBackwards(windowReader, matchPosition, endSearchWindow);
-                        matchPosition = matches.size() > 0?
-                                matches.get(0).getMatchPosition() : -1;
+                        matchPosition = searcher.searchBackwards(windowReader, matchPosition, endSearchWindow);
                     }
 
                     if (matchPosition != -1) {
@@ -906,8 +1047,7 @@ public class SubSequence extends SimpleElement {
 
                             // Get the fragment option furthest to the right of the main sequence (and nearest the
                             // end of the file).
-                            List<List<SideFragment>> furthestRightFragmentOption =
-                                    this.orderedRightFragments.subList(orderedRightFragments.size() -1,orderedRightFragments.size());
+                            final List<List<SideFragment>> furthestRightFragmentOption = this.furthestRightFragmentOption;
 
                             // We record information about the file positions and offsets at which any fragments in the
                             // rightmost fragment position are found.  This is in case we need to do a recheck for
@@ -915,7 +1055,8 @@ public class SubSequence extends SimpleElement {
                             // whole.  TODO: This code can benefit from further refactoring, along with the
                             // bytePosForRightFragments method - e.g. the file positions in
                             // finalOptionOffSetFoundPositions currently duplicate the data in the returned array.
-                            OffsetAndFilePositions finalOptionOffSetFoundPositions = new OffsetAndFilePositions(furthestRightFragmentOption.get(0));
+                            OffsetAndFilePositions finalOptionOffSetFoundPositions =
+                                    FRAGMENT_SCRATCH.get().offsetAndFilePositions(furthestRightFragmentOption.get(0));
 
                             final long[] rightFragmentPositions =
                                     bytePosForRightFragments(windowReader, matchPosition + matchLength,
@@ -1013,10 +1154,8 @@ public class SubSequence extends SimpleElement {
                         matchPosition = matcher.matches(windowReader, matchStarterPosition)?
                                 matchStarterPosition + matchLength - 1 : -1;
                     } else {
-                        final List<SearchResult<SequenceMatcher>> matches =
-                                searcher.searchForwards(windowReader, matchStarterPosition, matchEndingPosition);
-                        matchPosition = matches.size() > 0?
-                                matches.get(0).getMatchPosition() + matchLength - 1 : -1;
+                        final long matchStart = searcher.searchForwards(windowReader, matchStarterPosition, matchEndingPosition);
+                        matchPosition = matchStart != -1 ? matchStart + matchLength - 1 : -1;
                     }
 
                     if (matchPosition != -1) {
@@ -1025,8 +1164,7 @@ public class SubSequence extends SimpleElement {
 
                             // Get the fragment option furthest to the left of the main sequence (and nearest the
                             // start of the file).
-                            List<List<SideFragment>> furthestLeftFragmentOption =
-                                    this.orderedLeftFragments.subList(orderedLeftFragments.size() -1,orderedLeftFragments.size());
+                            final List<List<SideFragment>> furthestLeftFragmentOption = this.furthestLeftFragmentOption;
 
                             // We record information about the file positions and offsets at which any fragments in the
                             // leftmost fragment position are found.  This is in case we need to do a recheck for
@@ -1034,7 +1172,8 @@ public class SubSequence extends SimpleElement {
                             // whole.  TODO: This code can benefit from further refactoring, along with the
                             // bytePosForLeftFragments method - e.g. the file positions in
                             // finalOptionOffSetFoundPositions currently duplicate the data in the returned array.
-                            OffsetAndFilePositions finalOptionOffSetFoundPositions = new OffsetAndFilePositions(furthestLeftFragmentOption.get(0));
+                            OffsetAndFilePositions finalOptionOffSetFoundPositions =
+                                    FRAGMENT_SCRATCH.get().offsetAndFilePositions(furthestLeftFragmentOption.get(0));
 
                             final long[] leftFragmentPositions =
                                     bytePosForLeftFragments(windowReader, targetFile.getFileMarker(),
@@ -1165,7 +1304,8 @@ public class SubSequence extends SimpleElement {
             totalNumOptions = totalNumOptions * this.getNumAlternativeFragments(iFragPos, fragments);
         }
 
-        long[] markerPos = new long[totalNumOptions];
+        final FragmentScratch scratch = FRAGMENT_SCRATCH.get();
+        long[] markerPos = scratch.markerPositions(totalNumOptions);
         for (int iOffset = 0; iOffset <= offsetRange; iOffset++) {
             markerPos[iOffset] = startPos + iOffset * searchDirection;
         }
@@ -1177,7 +1317,7 @@ public class SubSequence extends SimpleElement {
         // fragment option and/or none of the fragment positions have variable offsets.
         Stack<FragmentHit> fragmentHits = null;
         if (this.useRightFragmentBackTrack) {
-            fragmentHits = new Stack<FragmentHit>();
+            fragmentHits = scratch.fragmentHits();
         }
 
         boolean recheckingFinalFragmentOption = finalOffsetFoundPositions != null
@@ -1189,7 +1329,7 @@ public class SubSequence extends SimpleElement {
             final List<SideFragment> fragmentsAtPosition = fragments.get(iFragPos - 1);
             final int numAltFrags = fragmentsAtPosition.size();
             //array to store possible end offsetPositions after this fragment positionInFile has been examined
-            long[] tempEndPos = new long[numAltFrags * numOptions];
+            long[] tempEndPos = scratch.endPositions(numAltFrags * numOptions);
 
             int numEndPos = 0;
 
@@ -1361,7 +1501,7 @@ public class SubSequence extends SimpleElement {
         //prepare array to be returned
         if (seqNotFound) {
             // no possible offsetPositions found, return 0 length array
-            return new long[0];
+            return NO_FRAGMENT_POSITIONS;
         }
         // return ordered array of possibilities
         long[] outArray = new long[numOptions];
@@ -1530,7 +1670,8 @@ public class SubSequence extends SimpleElement {
         }
 
         //now set up the array so that it can potentially hold all possibilities
-        long[] markerPos = new long[totalNumOptions];
+        final FragmentScratch scratch = FRAGMENT_SCRATCH.get();
+        long[] markerPos = scratch.markerPositions(totalNumOptions);
         for (int iOffset = 0; iOffset <= offsetRange; iOffset++) {
             markerPos[iOffset] = startPos + iOffset * searchDirection;
         }
@@ -1543,7 +1684,7 @@ public class SubSequence extends SimpleElement {
         // only one fragment option  and/or none of the fragment positions have variable offsets.
         Stack<FragmentHit> fragmentHits = null;
         if (this.useLeftFragmentBackTrack) {
-            fragmentHits = new Stack<FragmentHit>();
+            fragmentHits = scratch.fragmentHits();
         }
 
         boolean recheckingFinalFragmentOption = finalOffsetFoundPositions != null
@@ -1555,7 +1696,7 @@ public class SubSequence extends SimpleElement {
             final List<SideFragment> fragmentsAtPosition = fragments.get(iFragPos - 1);
             final int numAltFrags = fragmentsAtPosition.size();
             //array to store possible end offsetPositions after this fragment positionInFile has been examined
-            long[] tempEndPos = new long[numAltFrags * numOptions];
+            long[] tempEndPos = scratch.endPositions(numAltFrags * numOptions);
 
             int numEndPos = 0;
             for (int iOption = 0; iOption < numOptions; iOption++) {
@@ -1728,7 +1869,7 @@ public class SubSequence extends SimpleElement {
         //prepare array to be returned
         if (seqNotFound) {
             // no possible offsetPositions found, return 0 length array
-            return new long[0];
+            return NO_FRAGMENT_POSITIONS;
         }
         // return ordered array of possibilities
         long[] outArray = new long[numOptions];
@@ -1934,7 +2075,7 @@ public class SubSequence extends SimpleElement {
      * at which SideFragments within the list have been found in the byte stream.
      *
      */
-    private class OffsetAndFilePositions {
+    private static final class OffsetAndFilePositions {
 
         private static final int NO_OFFSET_POSITION_FOUND = -1;
         //The indices of theses arrays correspond to the indices in
@@ -1943,15 +2084,23 @@ public class SubSequence extends SimpleElement {
         //  will each have only one element.
         // - if there is more than one option for the given fragment position, the arrays
         //  will be initialised with a number of elements to equal the number of options.
-        private int[] offsetPositions;
-        private long[] filePositions;
+        private int[] offsetPositions = new int[1];
+        private long[] filePositions = new long[1];
+        private int numFragments;
 
-        public OffsetAndFilePositions(List<SideFragment> fragments) {
-            //Initialise the arrays to contain a number of elements equal to the options for the SideFragment
+        /**
+         * Clears the positions for a new List<SideFragment>, reusing the arrays if they are big enough.
+         * @param fragments The fragment options at a given fragment position.
+         */
+        public void reset(List<SideFragment> fragments) {
+            //Size the arrays to contain a number of elements equal to the options for the SideFragment
             // at a given position
-            this.offsetPositions = new int[fragments.size()];
-            this.filePositions = new long[fragments.size()];
-            for (int i = 0; i < fragments.size(); i++) {
+            numFragments = fragments.size();
+            if (offsetPositions.length < numFragments) {
+                this.offsetPositions = new int[numFragments];
+                this.filePositions = new long[numFragments];
+            }
+            for (int i = 0; i < numFragments; i++) {
                 offsetPositions[i] = NO_OFFSET_POSITION_FOUND;
                 filePositions[i] = NO_OFFSET_POSITION_FOUND;
             }
@@ -2005,7 +2154,7 @@ public class SubSequence extends SimpleElement {
             }
 
             long temp = Long.MAX_VALUE;
-            for (int i = 0; i < offsetPositions.length; i++) {
+            for (int i = 0; i < numFragments; i++) {
                 if (offsetPositions[i] < temp && offsetPositions[i] != NO_OFFSET_POSITION_FOUND) {
                     temp = offsetPositions[i];
                 }
@@ -2014,4 +2163,54 @@ public class SubSequence extends SimpleElement {
         }
 
     }
+
+    /**
+     * Buffers reused by a thread for the positions of fragments found around anchoring sequences.
+     */
+    private static final class FragmentScratch {
+
+        private long[] markerPositions = new long[1];
+        private long[] endPositions = new long[1];
+        private final Stack<FragmentHit> fragmentHits = new Stack<FragmentHit>();
+        private final OffsetAndFilePositions offsetAndFilePositions = new OffsetAndFilePositions();
+
+        /**
+         * @param size The number of positions needed.
+         * @return An array which can hold at least the number of positions needed.
+         */
+        public long[] markerPositions(final int size) {
+            if (markerPositions.length < size) {
+                markerPositions = new long[size];
+            }
+            return markerPositions;
+        }
+
+        /**
+         * @param size The number of positions needed.
+         * @return A different array to the marker positions, which can hold at least the number of positions needed.
+         */
+        public long[] endPositions(final int size) {
+            if (endPositions.length < size) {
+                endPositions = new long[size];
+            }
+            return endPositions;
+        }
+
+        /**
+         * @return An empty stack of fragment hits.
+         */
+        public Stack<FragmentHit> fragmentHits() {
+            fragmentHits.clear();
+            return fragmentHits;
+        }
+
+        /**
+         * @param fragments The fragment options at a given fragment position.
+         * @return Offset and file positions with nothing found for the fragments.
+         */
+        public OffsetAndFilePositions offsetAndFilePositions(final List<SideFragment> fragments) {
+            offsetAndFilePositions.reset(fragments);
+            return offsetAndFilePositions;
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Remembers where subsequences shared between byte sequences were found in a single file,
+ * so each of them is only searched for once from the same position.
+ *
+ * <p>A subsequence search only depends on the position it starts from, the file marker,
+ * whether it is anchored to the beginning or end of the file, and the bytes to scan.
+ * If all of these are the same as the last search for a shared subsequence, the result of
+ * that search is used again, including moving the file marker past the match if one was found.</p>
+ *
+ * <p>A memo is created for each file identified, and must not be used for any other file.</p>
+ */
+final class SubSequenceMemo {
+
+    private final Search[] lastSearches;
+
+    /**
+     * @param numSharedSubSequences The number of shared subsequences in the signatures.
+     */
+    SubSequenceMemo(final int numSharedSubSequences) {
+        lastSearches = new Search[numSharedSubSequences];
+    }
+
+    /**
+     * Finds a shared subsequence from a position in the target file, using the result of the last search for it
+     * if it was made from the same place.
+     *
+     * @param subSequence The shared subsequence to find.
+     * @param position The position in the file to begin searching from.
+     * @param targetFile The file to search in.
+     * @param maxBytesToScan The maximum amount of bytes to read from the beginning or end of the file.
+     * @param bofSubsequence Indicates when subsequence is anchored to BOF
+     * @param eofSubsequence Indicates when subsequence is anchored to EOF
+     * @return Whether the subsequence was found.
+     */
+    boolean findSequenceFromPosition(final SubSequence subSequence, final long position,
+                                     final ByteReader targetFile, final long maxBytesToScan,
+                                     final boolean bofSubsequence, final boolean eofSubsequence) {
+        final long fileMarker = targetFile.getFileMarker();
+        final int index = subSequence.getSharedIndex();
+        Search search = lastSearches[index];
+        if (search == null) {
+            search = new Search();
+            lastSearches[index] = search;
+        } else if (search.isFrom(position, fileMarker, maxBytesToScan, bofSubsequence, eofSubsequence)) {
+            if (search.found) {
+                targetFile.setFileMarker(search.markerAfterMatch);
+            }
+            return search.found;
+        }
+        search.position = position;
+        search.fileMarker = fileMarker;
+        search.maxBytesToScan = maxBytesToScan;
+        search.bofSubsequence = bofSubsequence;
+        search.eofSubsequence = eofSubsequence;
+        search.found = subSequence.findSequenceFromPosition(
+                position, targetFile, maxBytesToScan, bofSubsequence, eofSubsequence);
+        search.markerAfterMatch = targetFile.getFileMarker();
+        return search.found;
+    }
+
+    /*
+     * Where the last search for a shared subsequence was made from, and what it found.
+     */
+    private static final class Search {
+        private long position;
+        private long fileMarker;
+        private long maxBytesToScan;
+        private boolean bofSubsequence;
+        private boolean eofSubsequence;
+        private boolean found;
+        private long markerAfterMatch;
+
+        private boolean isFrom(final long fromPosition, final long fromFileMarker, final long fromMaxBytesToScan,
+                               final boolean fromBof, final boolean fromEof) {
+            final boolean samePosition = position == fromPosition && fileMarker == fromFileMarker
+                    && maxBytesToScan == fromMaxBytesToScan;
+            return samePosition && bofSubsequence == fromBof && eofSubsequence == fromEof;
+        }
+    }
+}
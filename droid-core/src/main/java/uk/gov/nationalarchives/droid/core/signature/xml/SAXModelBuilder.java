@@ -78,6 +78,8 @@ package uk.gov.nationalarchives.droid.core.signature.xml;
 
 import java.lang.reflect.Method;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -98,6 +100,14 @@ public class SAXModelBuilder extends DefaultHandler {
     private static final String ADD = "add";
     private static final String SET = "set";
 
+    /*
+     * Element classes and property setters are looked up once per process rather than for every
+     * element parsed, as failed class lookups search the whole class path.
+     */
+    private static final ConcurrentMap<String, Class<?>> ELEMENT_CLASSES = new ConcurrentHashMap<String, Class<?>>();
+    private static final ConcurrentMap<String, PropertySetter> PROPERTY_SETTERS =
+            new ConcurrentHashMap<String, PropertySetter>();
+
     private Log log = LogFactory.getLog(this.getClass());
     
     private Stack<Object> stack = new Stack<Object>();
@@ -187,13 +197,21 @@ public class SAXModelBuilder extends DefaultHandler {
             packName = mySignaturePackage;
         }
         String fullName = packName + "." + elementName; 
+        Class<?> elementClass = ELEMENT_CLASSES.get(fullName);
         try {
-            elem = (SimpleElement) Class.forName(fullName).newInstance();
+            if (elementClass == null) {
+                elementClass = SimpleElement.class;
+                elem = (SimpleElement) Class.forName(fullName).newInstance();
+                elementClass = elem.getClass();
+            } else {
+                elem = (SimpleElement) elementClass.newInstance();
+            }
         //CHECKSTYLE:OFF
         } catch (Exception e) {
         	log.trace("No class exists for element name:" + elementName);
         }
         //CHECKSTYLE:ON
+        ELEMENT_CLASSES.putIfAbsent(fullName, elementClass);
         if (elem == null) {
             elem = new SimpleElement();
         }
@@ -248,47 +266,55 @@ public class SAXModelBuilder extends DefaultHandler {
      * @throws SAXException exception if a problem occurs
      */
     void setProperty(String name, Object target, Object value) throws SAXException {
-        Method method = null;
-        Object val = value;
-        try {
-            method = target.getClass().getMethod(
-                    ADD + name, new Class[]{val.getClass()});
-        //CHECKSTYLE:OFF
-        } catch (NoSuchMethodException e) {
+        final String key = target.getClass().getName() + '#' + name + '#' + value.getClass().getName();
+        PropertySetter setter = PROPERTY_SETTERS.get(key);
+        if (setter == null) {
+            setter = findPropertySetter(name, target.getClass(), value.getClass());
+            PROPERTY_SETTERS.put(key, setter);
         }
-        //CHECKSTYLE:ON
-        if (method == null) {
+        if (setter.method == null) {
+            unknownElementWarning(name, ((SimpleElement) target).getElementName());
+        } else {
+            final Object val = setter.textValue ? ((SimpleElement) value).getText().trim() : value;
             try {
-                method = target.getClass().getMethod(
-                        SET + name, new Class[]{val.getClass()});
-              //CHECKSTYLE:OFF
-            } catch (NoSuchMethodException e) {
+                setter.method.invoke(target, val);
+            //CHECKSTYLE:OFF
+            } catch (Exception e) {
+                throw new SAXException(e);
             }
             //CHECKSTYLE:ON
         }
+    }
+
+    /*
+     * Looks for an add or set method taking the element value, then for an add or set
+     * method taking the text of the element.
+     */
+    private static PropertySetter findPropertySetter(String name, Class<?> targetClass, Class<?> valueClass) {
+        Method method = findMethod(targetClass, ADD + name, valueClass);
         if (method == null) {
-            try {
-                val = ((SimpleElement) val).getText().trim();
-                method = target.getClass().getMethod(
-                        ADD + name, new Class[]{String.class});
-              //CHECKSTYLE:OFF
-            } catch (NoSuchMethodException e) {
-            }
-            //CHECKSTYLE:ON
+            method = findMethod(targetClass, SET + name, valueClass);
         }
-        try {
+        boolean textValue = false;
+        if (method == null) {
+            textValue = true;
+            method = findMethod(targetClass, ADD + name, String.class);
             if (method == null) {
-                method = target.getClass().getMethod(
-                        SET + name, new Class[]{String.class});
+                method = findMethod(targetClass, SET + name, String.class);
             }
-            method.invoke(target, val);
+        }
+        return new PropertySetter(method, textValue);
+    }
+
+    private static Method findMethod(Class<?> targetClass, String methodName, Class<?> parameterClass) {
+        Method method = null;
+        try {
+            method = targetClass.getMethod(methodName, new Class[]{parameterClass});
+        //CHECKSTYLE:OFF
         } catch (NoSuchMethodException e) {
-            unknownElementWarning(name, ((SimpleElement) target).getElementName());
-          //CHECKSTYLE:OFF
-        } catch (Exception e) {
-            throw new SAXException(e);
         }
         //CHECKSTYLE:ON
+        return method;
     }
 
     /**
@@ -311,4 +337,17 @@ public class SAXModelBuilder extends DefaultHandler {
         log.trace(warning);
     }    
 
+    /**
+     * The method used to add an element to its parent, and whether it takes the element or its text.
+     */
+    private static final class PropertySetter {
+        private final Method method;
+        private final boolean textValue;
+
+        PropertySetter(Method method, boolean textValue) {
+            this.method = method;
+            this.textValue = textValue;
+        }
+    }
+
 }
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+
+public class BinarySignatureIdentifierSharingTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V26.xml";
+    private static final String OTHER_SIGFILE = "test_sig_files/DROID_SignatureFile_V16.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path containerSignatureFile;
+    private BinarySignatureIdentifier first;
+    private BinarySignatureIdentifier second;
+
+    @Before
+    public void setup() throws Exception {
+        containerSignatureFile = writeContainerSignatureFile("container-signature.xml", "<ContainerSignatureMapping/>");
+    }
+
+    @After
+    public void tearDown() {
+        destroy(first);
+        destroy(second);
+    }
+
+    @Test
+    public void testIdentifiersWithTheSameSignatureFilesShareOneSignatureFile() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(copyOf(SIGFILE), true);
+
+        assertSame(first.getSigFile(), second.getSigFile());
+    }
+
+    @Test
+    public void testIdentifiersWithDifferentSignatureFilesDoNotShare() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(OTHER_SIGFILE, true);
+
+        assertNotSame(first.getSigFile(), second.getSigFile());
+    }
+
+    @Test
+    public void testIdentifiersWithDifferentContainerSignatureFilesDoNotShare() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(SIGFILE, false);
+        second.setContainerSignatureFile(writeContainerSignatureFile("other-container-signature.xml",
+                "<ContainerSignatureMapping></ContainerSignatureMapping>"));
+        second.init();
+
+        assertNotSame(first.getSigFile(), second.getSigFile());
+    }
+
+    @Test
+    public void testIdentifiersDoNotShareUnlessAskedTo() throws Exception {
+        first = newIdentifier(SIGFILE, false);
+        first.setShareSignatureFile(false);
+        first.init();
+        second = newIdentifier(SIGFILE, false);
+        second.setShareSignatureFile(false);
+        second.init();
+
+        assertNotSame(first.getSigFile(), second.getSigFile());
+    }
+
+    @Test
+    public void testSignatureFileIsReloadedOnceAllSharersAreDestroyed() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(SIGFILE, true);
+        final FFSignatureFile shared = first.getSigFile();
+
+        first.destroy();
+        second.destroy();
+        first = newIdentifier(SIGFILE, true);
+
+        assertNotSame(shared, first.getSigFile());
+    }
+
+    @Test
+    public void testContainerOverridesAreAppliedBeforeSharing() throws Exception {
+        containerSignatureFile = writeContainerSignatureFile("overriding-container-signature.xml",
+                "<ContainerSignatureMapping><FileFormatMappings>"
+                + "<FileFormatMapping signatureId=\"1\" Puid=\"x-fmt/44\"/>"
+                + "</FileFormatMappings></ContainerSignatureMapping>");
+        first = newIdentifier(SIGFILE, true);
+
+        assertEquals(0, first.getSigFile().getFileFormat("x-fmt/44").getNumInternalSignatures());
+    }
+
+    @Test
+    public void testSharedSignatureFileIsNotChangedAfterLoading() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(SIGFILE, true);
+        final String puid = "x-fmt/44";
+        assertEquals(1, first.getSigFile().getFileFormat(puid).getNumInternalSignatures());
+
+        first.removeSignatureForPuid(puid);
+        second.removeSignatureForPuid(puid);
+        assertEquals(1, first.getSigFile().getFileFormat(puid).getNumInternalSignatures());
+    }
+
+    @Test
+    public void testUnsharedSignatureFileAppliesOverridingSignatures() throws Exception {
+        first = newIdentifier(SIGFILE, false);
+        first.setShareSignatureFile(false);
+        first.init();
+        final String puid = "x-fmt/44";
+
+        first.removeSignatureForPuid(puid);
+        assertEquals(0, first.getSigFile().getFileFormat(puid).getNumInternalSignatures());
+    }
+
+    @Test
+    public void testMaxBytesToScanIsNotShared() throws Exception {
+        first = newIdentifier(SIGFILE, true);
+        second = newIdentifier(SIGFILE, true);
+
+        first.setMaxBytesToScan(1);
+        second.setMaxBytesToScan(2);
+        assertEquals(-1, first.getSigFile().getMaxBytesToScan());
+    }
+
+    private BinarySignatureIdentifier newIdentifier(final String signatureFile, final boolean init) throws Exception {
+        final BinarySignatureIdentifier identifier = new BinarySignatureIdentifier();
+        identifier.setSignatureFile(signatureFile);
+        identifier.setContainerSignatureFile(containerSignatureFile);
+        identifier.setShareSignatureFile(true);
+        if (init) {
+            identifier.init();
+        }
+        return identifier;
+    }
+
+    private String copyOf(final String signatureFile) throws Exception {
+        final Path copy = folder.getRoot().toPath().resolve("copy.xml");
+        Files.copy(Paths.get(signatureFile), copy);
+        return copy.toString();
+    }
+
+    private Path writeContainerSignatureFile(final String name, final String contents) throws Exception {
+        return Files.write(folder.getRoot().toPath().resolve(name), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void destroy(final BinarySignatureIdentifier identifier) {
+        if (identifier != null) {
+            identifier.destroy();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+
+public class SignatureFileSnapshotTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V88.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path sigFile;
+    private Path snapshotDir;
+    private Path snapshot;
+
+    @Before
+    public void setup() throws Exception {
+        sigFile = folder.getRoot().toPath().resolve("signatures.xml");
+        Files.copy(Paths.get(SIGFILE), sigFile);
+        snapshotDir = folder.getRoot().toPath().resolve("snapshots");
+        snapshot = SignatureFileSnapshot.snapshotFor(snapshotDir, sigFile);
+    }
+
+    @Test
+    public void testParsingWithoutSnapshotDirDoesNotWriteSnapshot() throws Exception {
+        new SignatureFileParser().parseSigFile(sigFile, null);
+        assertFalse(Files.exists(snapshotDir));
+    }
+
+    @Test
+    public void testSnapshotIsWrittenAndRebuildsTheSameModel() throws Exception {
+        final FFSignatureFile recorded = new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        assertTrue(Files.exists(snapshot));
+        assertSameModel(new SignatureFileParser().parseSigFile(sigFile), recorded);
+
+        final FFSignatureFile rebuilt = new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        assertSameModel(new SignatureFileParser().parseSigFile(sigFile), rebuilt);
+    }
+
+    @Test
+    public void testSnapshotIsUsedWhenCurrent() throws Exception {
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        final FileTime written = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(snapshot, written);
+
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        assertEquals(written, Files.getLastModifiedTime(snapshot));
+    }
+
+    @Test
+    public void testStaleSnapshotIsRewritten() throws Exception {
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        final byte[] original = Files.readAllBytes(snapshot);
+
+        final String xml = new String(Files.readAllBytes(sigFile), StandardCharsets.UTF_8);
+        Files.write(sigFile, xml.replace("Version=\"88\"", "Version=\"89\"").getBytes(StandardCharsets.UTF_8));
+        touch(sigFile);
+
+        final FFSignatureFile changed = new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        assertEquals("89", changed.getVersion());
+        assertFalse(Arrays.equals(original, Files.readAllBytes(snapshot)));
+        assertEquals("89", new SignatureFileParser().parseSigFile(sigFile, snapshotDir).getVersion());
+    }
+
+    @Test
+    public void testReplacedSignatureFileWithSameLengthAndModifiedTimeIsNotReadFromTheSnapshot() throws Exception {
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        final FileTime modified = Files.getLastModifiedTime(sigFile);
+
+        final String xml = new String(Files.readAllBytes(sigFile), StandardCharsets.UTF_8);
+        Files.write(sigFile, xml.replace("Version=\"88\"", "Version=\"89\"").getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(sigFile, modified);
+
+        assertEquals("89", new SignatureFileParser().parseSigFile(sigFile, snapshotDir).getVersion());
+    }
+
+    @Test
+    public void testTouchedSignatureFileKeepsItsSnapshot() throws Exception {
+        final FFSignatureFile expected = new SignatureFileParser().parseSigFile(sigFile);
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        final byte[] original = Files.readAllBytes(snapshot);
+        touch(sigFile);
+
+        assertSameModel(expected, new SignatureFileParser().parseSigFile(sigFile, snapshotDir));
+        assertArrayEquals(original, Files.readAllBytes(snapshot));
+    }
+
+    @Test
+    public void testCorruptSnapshotFallsBackToTheSignatureFile() throws Exception {
+        final FFSignatureFile expected = new SignatureFileParser().parseSigFile(sigFile);
+        new SignatureFileParser().parseSigFile(sigFile, snapshotDir);
+        final byte[] contents = Files.readAllBytes(snapshot);
+        contents[contents.length / 2] ^= 0xFF;
+        Files.write(snapshot, contents);
+
+        assertSameModel(expected, new SignatureFileParser().parseSigFile(sigFile, snapshotDir));
+        assertArrayEquals(contentsOfFreshSnapshot(), Files.readAllBytes(snapshot));
+    }
+
+    @Test
+    public void testTruncatedSnapshotFallsBackToTheSignatureFile() throws Exception {
+        final FFSignatureFile expected = new SignatureFileParser().parseSigFile(sigFile);
+        Files.createDirectories(snapshotDir);
+        Files.write(snapshot, new byte[] {1, 2, 3});
+
+        assertSameModel(expected, new SignatureFileParser().parseSigFile(sigFile, snapshotDir));
+    }
+
+    private static void touch(final Path file) throws Exception {
+        final long modified = Files.getLastModifiedTime(file).toMillis();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified + 60000));
+    }
+
+    private byte[] contentsOfFreshSnapshot() throws Exception {
+        final Path otherDir = folder.newFolder().toPath();
+        new SignatureFileParser().parseSigFile(sigFile, otherDir);
+        return Files.readAllBytes(SignatureFileSnapshot.snapshotFor(otherDir, sigFile));
+    }
+
+    private static void assertSameModel(final FFSignatureFile expected, final FFSignatureFile actual) {
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getDateCreated(), actual.getDateCreated());
+        assertEquals(expected.getNumFileFormats(), actual.getNumFileFormats());
+        for (int i = 0; i < expected.getNumFileFormats(); i++) {
+            assertEquals(describe(expected.getFileFormat(i)), describe(actual.getFileFormat(i)));
+        }
+        expected.prepareForUse();
+        actual.prepareForUse();
+        assertEquals(describe(expected.getSignatures()), describe(actual.getSignatures()));
+    }
+
+    private static String describe(final FileFormat format) {
+        final List<Integer> signatureIds = new ArrayList<Integer>();
+        for (int i = 0; i < format.getNumInternalSignatures(); i++) {
+            signatureIds.add(format.getInternalSignatureID(i));
+        }
+        return format.getID() + " " + format.getPUID() + " " + format.getName() + " " + format.getVersion()
+                + " " + format.getMimeType() + " " + format.getExtensions() + " " + signatureIds
+                + " " + format.getFormatIdsHasPriorityOver();
+    }
+
+    private static List<String> describe(final List<InternalSignature> signatures) {
+        final List<String> descriptions = new ArrayList<String>();
+        for (final InternalSignature signature : signatures) {
+            descriptions.add(signature.getID() + " " + signature.toRegularExpressions());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import net.byteseek.compiler.CompileException;
+import net.byteseek.compiler.matcher.SequenceMatcherCompiler;
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnchorSearcherTest {
+
+    private static final SequenceMatcherCompiler COMPILER = new SequenceMatcherCompiler();
+    private static final byte[] TEXT = "abcXabcYabc".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testFindsFirstMatchForwards() throws Exception {
+        AnchorSearcher searcher = new AnchorSearcher(compile("'abc'"), false);
+        WindowReader reader = new ByteArrayReader(TEXT);
+        assertEquals(0, searcher.searchForwards(reader, 0, 8));
+        assertEquals(4, searcher.searchForwards(reader, 1, 8));
+        assertEquals(8, searcher.searchForwards(reader, 5, 8));
+        assertEquals(-1, searcher.searchForwards(reader, 5, 7));
+        assertEquals(-1, searcher.searchForwards(reader, 9, 20));
+    }
+
+    @Test
+    public void testFindsFirstMatchBackwards() throws Exception {
+        AnchorSearcher searcher = new AnchorSearcher(compile("'abc'"), true);
+        WindowReader reader = new ByteArrayReader(TEXT);
+        assertEquals(8, searcher.searchBackwards(reader, 8, 0));
+        assertEquals(4, searcher.searchBackwards(reader, 7, 0));
+        assertEquals(0, searcher.searchBackwards(reader, 3, 0));
+        assertEquals(-1, searcher.searchBackwards(reader, 3, 1));
+        assertEquals(8, searcher.searchBackwards(reader, 100, 0));
+    }
+
+    @Test
+    public void testSingleByteSequences() throws Exception {
+        WindowReader reader = new ByteArrayReader(TEXT);
+        assertEquals(3, new AnchorSearcher(compile("'X'"), false).searchForwards(reader, 0, 10));
+        assertEquals(7, new AnchorSearcher(compile("'X'|'Y'"), true).searchBackwards(reader, 10, 0));
+    }
+
+    @Test
+    public void testMatchesBruteForceSearchWithByteClasses() throws Exception {
+        Random random = new Random(42);
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) random.nextInt(4);
+        }
+        WindowReader reader = new ByteArrayReader(data);
+        for (String expression : new String[] {"01 02", "00 [01-02] 03", "[^00] 01 . 02", "03 03 03 03"}) {
+            SequenceMatcher matcher = compile(expression);
+            AnchorSearcher forwards = new AnchorSearcher(matcher, false);
+            AnchorSearcher backwards = new AnchorSearcher(matcher, true);
+            for (int from = 0; from < data.length; from += 97) {
+                assertEquals(expression, firstMatchForwards(matcher, reader, from, data.length),
+                        forwards.searchForwards(reader, from, data.length));
+                assertEquals(expression, firstMatchBackwards(matcher, reader, from, 0),
+                        backwards.searchBackwards(reader, from, 0));
+            }
+        }
+    }
+
+    private static long firstMatchForwards(SequenceMatcher matcher, WindowReader reader, long from, long to)
+            throws IOException {
+        for (long position = from; position <= to; position++) {
+            if (matcher.matches(reader, position)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static long firstMatchBackwards(SequenceMatcher matcher, WindowReader reader, long from, long to)
+            throws IOException {
+        for (long position = from; position >= to; position--) {
+            if (matcher.matches(reader, position)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static SequenceMatcher compile(String expression) throws CompileException {
+        return COMPILER.compile(expression);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class LeadingByteIndexTest {
+
+    private LeadingByteIndex index;
+
+    @Before
+    public void setup() {
+        List<InternalSignature> signatures = new ArrayList<InternalSignature>();
+        signatures.add(signature(1, "BOFoffset", "25504446", 0, 0));   // %PDF at offset zero
+        signatures.add(signature(2, "BOFoffset", "25215053", 4, 4));   // %!PS at offset four
+        signatures.add(signature(3, "EOFoffset", "2525454F46", 0, 0)); // %%EOF at the end
+        signatures.add(signature(4, "BOFoffset", "[41 42] 43", 0, 0)); // A or B, then C at offset zero
+        signatures.add(signature(5, "Variable", "504B0304", 0, 0));     // PK anywhere
+        signatures.add(signature(6, "BOFoffset", "2521", 0, 0));       // %! at offset zero
+        index = new LeadingByteIndex(signatures);
+    }
+
+    @Test
+    public void testIndexesSignaturesFixedAtStartOfFile() {
+        assertArrayEquals(new int[] {0, 5}, index.getSignaturesForByte('%'));
+        assertArrayEquals(new int[] {3}, index.getSignaturesForByte('A'));
+        assertArrayEquals(new int[] {3}, index.getSignaturesForByte('B'));
+        assertArrayEquals(new int[0], index.getSignaturesForByte('C'));
+        assertArrayEquals(new int[0], index.getSignaturesForByte(0xFF));
+    }
+
+    @Test
+    public void testDoesNotIndexOffsetEofOrVariableSignatures() {
+        assertArrayEquals(new int[] {1, 2, 4}, index.getUnindexedSignatures());
+    }
+
+    private static InternalSignature signature(int id, String reference, String sequence, int minOffset, int maxOffset) {
+        SubSequence subSequence = new SubSequence();
+        subSequence.setSequence(sequence);
+        subSequence.setMinSeqOffset(minOffset);
+        subSequence.setMaxSeqOffset(maxOffset);
+        ByteSequence byteSequence = new ByteSequence();
+        byteSequence.setReference(reference);
+        byteSequence.addSubSequence(subSequence);
+        InternalSignature signature = new InternalSignature();
+        signature.setID(Integer.toString(id));
+        signature.addByteSequence(byteSequence);
+        signature.prepareForUse();
+        return signature;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.StringReader;
+import net.byteseek.io.reader.WindowReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+
+public class MultiPatternAutomatonTest {
+
+    private static final long NOT_FOUND = Long.MAX_VALUE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFindsOverlappingPatternsFromStart() throws IOException {
+        MultiPatternAutomaton automaton = automaton("he", "she", "his", "hers", "xyz");
+        WindowReader reader = new StringReader("ushers and his");
+        long[] distances = scan(automaton, reader, 0, reader.length(), false);
+        assertEquals(4, distances[0]);  // "he" ends at position 3
+        assertEquals(4, distances[1]);  // "she" ends at position 3
+        assertEquals(14, distances[2]); // "his" ends at position 13
+        assertEquals(6, distances[3]);  // "hers" ends at position 5
+        assertEquals(NOT_FOUND, distances[4]);
+    }
+
+    @Test
+    public void testFindsNearestPatternsFromEnd() throws IOException {
+        MultiPatternAutomaton automaton = automaton("ab", "abc", "zz");
+        WindowReader reader = new StringReader("abc..abc..ab.");
+        long[] distances = scan(automaton, reader, 0, reader.length(), true);
+        assertEquals(3, distances[0]);  // last "ab" starts 3 bytes from the end
+        assertEquals(8, distances[1]);  // last "abc" starts 8 bytes from the end
+        assertEquals(NOT_FOUND, distances[2]);
+    }
+
+    @Test
+    public void testOnlyScansWindowGiven() throws IOException {
+        MultiPatternAutomaton automaton = automaton("ab", "cd");
+        WindowReader reader = new StringReader("ab....cd");
+        long[] distances = scan(automaton, reader, 0, 4, false);
+        assertEquals(2, distances[0]);
+        assertEquals(NOT_FOUND, distances[1]);
+
+        distances = scan(automaton, reader, 4, reader.length(), true);
+        assertEquals(NOT_FOUND, distances[0]);
+        assertEquals(2, distances[1]);
+    }
+
+    @Test
+    public void testFindsPatternsAcrossWindowBoundaries() throws IOException {
+        File file = temporaryFolder.newFile("windows.bin");
+        Files.write(file.toPath(), "..PK\u0003\u0004....%PDF-1.".getBytes(ISO_8859_1));
+        WindowReader reader = new FileReader(file, 3);
+        try {
+            MultiPatternAutomaton automaton = automaton("PK\u0003\u0004", "%PDF-", "PDF");
+            long[] distances = scan(automaton, reader, 0, reader.length(), false);
+            assertEquals(6, distances[0]);
+            assertEquals(15, distances[1]);
+            assertEquals(14, distances[2]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static MultiPatternAutomaton automaton(String... patterns) {
+        List<byte[]> bytes = new ArrayList<byte[]>();
+        for (String pattern : patterns) {
+            bytes.add(pattern.getBytes(ISO_8859_1));
+        }
+        return new MultiPatternAutomaton(bytes);
+    }
+
+    private static long[] scan(MultiPatternAutomaton automaton, WindowReader reader,
+                               long from, long to, boolean fromEnd) throws IOException {
+        long[] distances = new long[automaton.getNumPatterns()];
+        Arrays.fill(distances, NOT_FOUND);
+        automaton.recordNearestMatches(reader, from, to, fromEnd, distances, 0);
+        return distances;
+    }
+}
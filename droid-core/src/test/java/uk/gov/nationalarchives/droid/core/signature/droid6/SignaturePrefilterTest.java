@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.SignatureFileParser;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.xml.SAXModelBuilder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignaturePrefilterTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V88.xml";
+    private static final String[] TEST_FILE_DIRS = {"test-skeletons/fmt", "test-skeletons/x-fmt", "test_sig_files"};
+
+    private List<InternalSignature> signatures;
+    private InternalSignatureCollection withPrefilter;
+    private InternalSignatureCollection withoutPrefilter;
+    private final List<Path> targetFiles = new ArrayList<Path>();
+
+    @Before
+    public void setup() throws Exception {
+        final SAXModelBuilder mb = new SAXModelBuilder();
+        mb.setupNamespace(SignatureFileParser.SIGNATURE_FILE_NS, true);
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final XMLReader parser = factory.newSAXParser().getXMLReader();
+        parser.setContentHandler(mb);
+        try (Reader in = Files.newBufferedReader(Paths.get(SIGFILE), UTF_8)) {
+            parser.parse(new InputSource(in));
+        }
+        final FFSignatureFile sigFile = (FFSignatureFile) mb.getModel();
+        sigFile.prepareForUse();
+        signatures = sigFile.getSignatures();
+        withPrefilter = new InternalSignatureCollection();
+        withPrefilter.setInternalSignatures(signatures);
+        withPrefilter.buildPrefilter();
+        withoutPrefilter = new InternalSignatureCollection();
+        withoutPrefilter.setInternalSignatures(signatures);
+
+        for (final String dir : TEST_FILE_DIRS) {
+            for (final File file : Paths.get(dir).toFile().listFiles()) {
+                if (file.isFile()) {
+                    targetFiles.add(file.toPath());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAreTheSameWithAndWithoutThePrefilter() throws Exception {
+        final SignaturePrefilter prefilter = new SignaturePrefilter(signatures);
+        int skipped = 0;
+        for (final Path file : targetFiles) {
+            final IdentificationRequest<Path> request = open(file);
+            try {
+                final ByteReader targetFile = new IdentificationRequestByteReaderAdapter(request);
+                assertEquals(file.toString(), ids(withoutPrefilter.getMatchingSignatures(targetFile, -1)),
+                        ids(withPrefilter.getMatchingSignatures(targetFile, -1)));
+                skipped += countSkipped(prefilter.scan(targetFile, -1));
+            } finally {
+                request.close();
+            }
+        }
+        // the prefilter must actually have ruled signatures out for the comparison to mean anything.
+        assertTrue(skipped > 0);
+    }
+
+    private int countSkipped(final SignaturePrefilter.Candidates candidates) {
+        int skipped = 0;
+        for (final InternalSignature signature : signatures) {
+            if (!candidates.mayMatch(signature)) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    private static List<Integer> ids(final List<InternalSignature> matching) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (final InternalSignature signature : matching) {
+            ids.add(signature.getID());
+        }
+        return ids;
+    }
+
+    private static IdentificationRequest<Path> open(final Path file) throws Exception {
+        final RequestMetaData metaData = new RequestMetaData(
+                Files.size(file), Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final IdentificationRequest<Path> request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return request;
+    }
+}
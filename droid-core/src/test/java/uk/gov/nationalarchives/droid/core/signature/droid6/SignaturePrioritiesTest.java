@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.byteseek.io.reader.ByteArrayReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SignaturePrioritiesTest {
+
+    private static final byte[] ZIP_FILE = {'P', 'K', 3, 4, 20, 0, 0, 0};
+
+    private InternalSignatureCollection collection;
+    private List<InternalSignature> signatures;
+    private IdentificationRequestByteReaderAdapter targetFile;
+
+    @Before
+    public void setup() {
+        FileFormat zip = format(1, "x-fmt/263");
+        FileFormat jar = format(2, "x-fmt/412", 1);
+        FileFormat specialJar = format(3, "fmt/999", 2);
+
+        signatures = new ArrayList<InternalSignature>();
+        signatures.add(signature(1, zip, "Variable", "504B"));                 // PK anywhere
+        signatures.add(signature(2, jar, "BOFoffset", "504B"));                // PK at the start
+        signatures.add(signature(3, specialJar, "BOFoffset", "504B0304"));     // PK\3\4 at the start
+        signatures.add(signature(4, format(4, "fmt/1000"), "BOFoffset", "00")); // no match
+        collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(signatures);
+        collection.prepareForUse();
+        collection.buildLeadingByteIndex();
+        collection.buildPriorities();
+
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.size()).thenReturn((long) ZIP_FILE.length);
+        when(request.getWindowReader()).thenReturn(new ByteArrayReader(ZIP_FILE));
+        targetFile = new IdentificationRequestByteReaderAdapter(request);
+    }
+
+    @Test
+    public void testRanksSignaturesByFormatsWithPriorityOverThem() {
+        SignaturePriorities priorities = new SignaturePriorities(signatures);
+        assertEquals(2, priorities.getRank(0));
+        assertEquals(1, priorities.getRank(1));
+        assertEquals(0, priorities.getRank(2));
+        assertEquals(0, priorities.getRank(3));
+        assertEquals(2, priorities.getMaxRank());
+    }
+
+    @Test
+    public void testAllMatchingSignaturesFoundWithoutPriorities() {
+        assertEquals(signatures.subList(0, 3), collection.getMatchingSignatures(targetFile, -1));
+    }
+
+    @Test
+    public void testSkipsSignaturesWhichOnlyProduceLowerPriorityHits() {
+        // The zip hit would be removed by the jar hit, and removes nothing itself;
+        // the jar hit would be removed by the special jar hit, but removes the zip hit, so is still needed.
+        assertEquals(signatures.subList(1, 3),
+                collection.getMatchingSignatures(targetFile, -1, Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void testReportsLowerPriorityHitsForReportedPuids() {
+        Set<String> reported = new HashSet<String>(Arrays.asList("x-fmt/263"));
+        assertEquals(signatures.subList(0, 3), collection.getMatchingSignatures(targetFile, -1, reported));
+    }
+
+    @Test
+    public void testIgnoresCyclesInPriorities() {
+        FileFormat first = format(10, "fmt/10", 11);
+        FileFormat second = format(11, "fmt/11", 10);
+        List<InternalSignature> cyclic = new ArrayList<InternalSignature>();
+        cyclic.add(signature(10, first, "BOFoffset", "504B"));
+        cyclic.add(signature(11, second, "BOFoffset", "504B"));
+        SignaturePriorities priorities = new SignaturePriorities(cyclic);
+        assertEquals(2, priorities.getMaxRank());
+    }
+
+    private static FileFormat format(int id, String puid, int... priorityOver) {
+        FileFormat format = new FileFormat();
+        format.setAttributeValue("ID", Integer.toString(id));
+        format.setAttributeValue("PUID", puid);
+        for (int lowerPriorityID : priorityOver) {
+            format.setHasPriorityOverFileFormatID(Integer.toString(lowerPriorityID));
+        }
+        return format;
+    }
+
+    private static InternalSignature signature(int id, FileFormat format, String reference, String sequence) {
+        SubSequence subSequence = new SubSequence();
+        subSequence.setSequence(sequence);
+        ByteSequence byteSequence = new ByteSequence();
+        byteSequence.setReference(reference);
+        byteSequence.addSubSequence(subSequence);
+        InternalSignature signature = new InternalSignature();
+        signature.setID(Integer.toString(id));
+        signature.addByteSequence(byteSequence);
+        signature.addFileFormat(format);
+        return signature;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.reader.ByteArrayReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SubSequenceMemoTest {
+
+    private static final byte[] PDF_FILE = "%PDF-1.4 content".getBytes(StandardCharsets.US_ASCII);
+
+    private InternalSignatureCollection collection;
+    private List<InternalSignature> signatures;
+    private IdentificationRequest request;
+    private IdentificationRequestByteReaderAdapter targetFile;
+
+    @Before
+    public void setup() {
+        signatures = new ArrayList<InternalSignature>();
+        signatures.add(signature(1, "BOFoffset", "25504446", 0, 0)); // %PDF at offset zero
+        signatures.add(signature(2, "BOFoffset", "25504446", 0, 0)); // %PDF at offset zero again
+        signatures.add(signature(3, "BOFoffset", "25504446", 4, 4)); // %PDF at offset four
+        signatures.add(signature(4, "Variable", "25504446", 0, 0));  // %PDF anywhere
+        collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(signatures);
+        collection.prepareForUse();
+        collection.shareSubSequences();
+
+        request = mock(IdentificationRequest.class);
+        when(request.size()).thenReturn((long) PDF_FILE.length);
+        when(request.getWindowReader()).thenReturn(new ByteArrayReader(PDF_FILE));
+        targetFile = new IdentificationRequestByteReaderAdapter(request);
+    }
+
+    @Test
+    public void testSharesStructurallyIdenticalSubSequences() {
+        SubSequence first = firstSubSequence(0);
+        assertSame(first, firstSubSequence(1));
+        assertEquals(0, first.getSharedIndex());
+        assertNotSame(first, firstSubSequence(2));
+        assertNotSame(first, firstSubSequence(3));
+        assertEquals(-1, firstSubSequence(2).getSharedIndex());
+        assertEquals(-1, firstSubSequence(3).getSharedIndex());
+    }
+
+    @Test
+    public void testSearchesForSharedSubSequenceOnceInEachFile() {
+        List<InternalSignature> matching = collection.getMatchingSignatures(targetFile, -1);
+
+        assertEquals(3, matching.size());
+        assertTrue(matching.contains(signatures.get(0)));
+        assertTrue(matching.contains(signatures.get(1)));
+        assertFalse(matching.contains(signatures.get(2)));
+        assertTrue(matching.contains(signatures.get(3)));
+        // one search for the shared subsequence, and one each for the others.
+        verify(request, times(3)).getWindowReader();
+    }
+
+    @Test
+    public void testRepeatedSearchMovesFileMarkerPastMatch() {
+        SubSequenceMemo memo = new SubSequenceMemo(1);
+        SubSequence shared = firstSubSequence(0);
+
+        targetFile.setFileMarker(0);
+        assertTrue(memo.findSequenceFromPosition(shared, 0, targetFile, -1, true, false));
+        assertEquals(4, targetFile.getFileMarker());
+
+        targetFile.setFileMarker(0);
+        assertTrue(memo.findSequenceFromPosition(shared, 0, targetFile, -1, true, false));
+        assertEquals(4, targetFile.getFileMarker());
+        verify(request, times(1)).getWindowReader();
+
+        targetFile.setFileMarker(1);
+        assertFalse(memo.findSequenceFromPosition(shared, 1, targetFile, -1, true, false));
+        verify(request, times(2)).getWindowReader();
+    }
+
+    private SubSequence firstSubSequence(int signatureIndex) {
+        return signatures.get(signatureIndex).getByteSequences().get(0).getSubSequences().get(0);
+    }
+
+    private static InternalSignature signature(int id, String reference, String sequence, int minOffset, int maxOffset) {
+        SubSequence subSequence = new SubSequence();
+        subSequence.setSequence(sequence);
+        subSequence.setMinSeqOffset(minOffset);
+        subSequence.setMaxSeqOffset(maxOffset);
+        ByteSequence byteSequence = new ByteSequence();
+        byteSequence.setReference(reference);
+        byteSequence.addSubSequence(subSequence);
+        InternalSignature signature = new InternalSignature();
+        signature.setID(Integer.toString(id));
+        signature.addByteSequence(byteSequence);
+        return signature;
+    }
+}
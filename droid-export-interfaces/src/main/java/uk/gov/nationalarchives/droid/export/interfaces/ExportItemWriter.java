@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export.interfaces;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the items of an export.  Text exports are written by an {@link ItemWriter}, which is
+ * opened on a {@link java.io.Writer}, and binary exports by a {@link BinaryItemWriter}, which
+ * is opened on an {@link java.io.OutputStream}.
+ *
+ * @param <T> the type to write
+ */
+public interface ExportItemWriter<T> {
+
+    /**
+     * Writes the items.
+     * @param items the items to write.
+     */
+    void write(List<? extends T> items);
+
+    /**
+     * Closes the writer.
+     */
+    void close();
+
+    /**
+     * 
+     * @param options Sets the options to use when writing out the export.
+     */
+    void setOptions(ExportOptions options);
+
+    /**
+     * Customises the column headers in the export output.
+     * @param headersToSet - Map of headers to customise and values to set.
+     */
+    void setHeaders(Map<String, String> headersToSet);
+
+    /**
+     * Creates a writer for one partition of an export.  It writes items exactly as this writer
+     * does, with the same options and headers, but does not write the header row when opened.
+     * @return a new writer for a partition of the export, or null if this writer can't be partitioned.
+     */
+    ExportItemWriter<T> newPartitionWriter();
+}
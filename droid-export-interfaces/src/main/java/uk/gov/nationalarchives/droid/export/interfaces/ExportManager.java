@@ -70,4 +70,20 @@ public interface ExportManager {
     Future<?> exportProfiles(List<String> profileIds, String destination,
             Filter filter, ExportOptions options, String outputEncoding, boolean bom);
 
+    /**
+     * Exports one or more profiles to a file of the given format, optionally gzip compressed.
+     * 
+     * @param profileIds the list of profiles to export.
+     * @param destination the destination filename
+     * @param filter optional filter
+     * @param options the options for export.
+     * @param format the format of the export file.
+     * @param compress whether to gzip compress the export file.
+     * @param outputEncoding The character encoding to use in the output, null to use default encoding
+     * @param bom BOM flag.
+     * @return future for cancelling the task. 
+     */
+    Future<?> exportProfiles(List<String> profileIds, String destination, Filter filter, ExportOptions options,
+            ExportFormat format, boolean compress, String outputEncoding, boolean bom);
+
 }
@@ -32,42 +32,23 @@
 package uk.gov.nationalarchives.droid.export.interfaces;
 
 import java.io.Writer;
-import java.util.List;
-import java.util.Map;
 
 
 /**
  * @author rflitcroft, Brian O'Reilly
  * @param <T> the type to write
  */
-public interface ItemWriter<T> {
+public interface ItemWriter<T> extends ExportItemWriter<T> {
 
-    /**
-     * Writes the items.
-     * @param items the items to write.
-     */
-    void write(List<? extends T> items);
-    
     /**
      * Opens a writer for writing.
      * @param writer the writer to use
      */
     void open(Writer writer);
-    
-    /**
-     * Closes the writer.
-     */
-    void close();
-    
-    /**
-     * 
-     * @param options Sets the options to use when writing out the export.
-     */
-    void setOptions(ExportOptions options);
-    
+
     /**
-     * Customises the column headers in the export output.
-     * @param headersToSet - Map of headers to customise and values to set.
+     * {@inheritDoc}
      */
-    void setHeaders(Map<String, String> headersToSet);
+    @Override
+    ItemWriter<T> newPartitionWriter();
 }
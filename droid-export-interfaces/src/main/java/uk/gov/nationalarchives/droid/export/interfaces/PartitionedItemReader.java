@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export.interfaces;
+
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+
+/**
+ * An item reader which can read ranges of its items independently, so an export can be
+ * split into partitions which are read concurrently.
+ * <p>
+ * Each item has a partition key, starting from zero, and {@link #readAll} reads the items in
+ * ascending key order.  Reading consecutive key ranges one after another therefore gives the
+ * same items, in the same order, as reading them all.
+ *
+ * @param <T> the type to read
+ */
+public interface PartitionedItemReader<T> extends ItemReader<T> {
+
+    /**
+     * @return an exclusive upper bound on the partition keys of the items this reader can read.
+     */
+    long getPartitionKeyLimit();
+
+    /**
+     * Reads the items whose partition keys lie in a range and invokes the callback.
+     * @param callback the callback with items read
+     * @param filter an optional filter
+     * @param fromKey the first partition key to read (inclusive)
+     * @param toKey the partition key to read up to (exclusive)
+     * @throws JobCancellationException if the job was cancelled
+     */
+    void readRange(ItemReaderCallback<T> callback, Filter filter, long fromKey, long toKey)
+        throws JobCancellationException;
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Measures writing a chunk of nodes as CSV with {@link CsvItemWriter}, against building a
+ * String[] row for each node and writing it with univocity, as the writer used to.
+ * Run with: mvn -Pbenchmark test-compile exec:exec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvItemWriterBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({"ONE_ROW_PER_FILE", "ONE_ROW_PER_FORMAT"})
+    private ExportOptions options;
+
+    private List<ProfileResourceNode> nodes;
+    private CsvItemWriter itemWriter;
+    private CsvWriter univocityWriter;
+
+    /**
+     * Builds a chunk of nodes with two formats each, and opens the writers on a writer which discards its output.
+     */
+    @Setup
+    public void setup() {
+        nodes = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            nodes.add(buildNode(i));
+        }
+
+        itemWriter = new CsvItemWriter();
+        itemWriter.setHeaders(Collections.<String, String>emptyMap());
+        itemWriter.setOptions(options);
+        itemWriter.open(new NullWriter());
+
+        CsvWriterSettings settings = new CsvWriterSettings();
+        settings.setQuoteAllFields(true);
+        univocityWriter = new CsvWriter(new NullWriter(), settings);
+    }
+
+    /**
+     * Writes the chunk with the CSV item writer.
+     */
+    @Benchmark
+    public void csvItemWriter() {
+        itemWriter.write(nodes);
+    }
+
+    /**
+     * Writes the chunk as String[] rows with univocity.
+     */
+    @Benchmark
+    public void univocityRows() {
+        for (ProfileResourceNode node : nodes) {
+            if (options == ExportOptions.ONE_ROW_PER_FILE) {
+                List<String> row = nodeFields(node);
+                for (Format format : node.getFormatIdentifications()) {
+                    addFormatFields(row, format);
+                }
+                univocityWriter.writeRow(row.toArray(new String[0]));
+            } else {
+                for (Format format : node.getFormatIdentifications()) {
+                    List<String> row = nodeFields(node);
+                    addFormatFields(row, format);
+                    univocityWriter.writeRow(row.toArray(new String[0]));
+                }
+            }
+        }
+        univocityWriter.flush();
+    }
+
+    private static List<String> nodeFields(ProfileResourceNode node) {
+        NodeMetaData metaData = node.getMetaData();
+        List<String> row = new ArrayList<>();
+        row.add(node.getId().toString());
+        row.add(node.getParentId().toString());
+        row.add(DroidUrlFormat.format(node.getUri()));
+        row.add(Paths.get(node.getUri()).toAbsolutePath().toString());
+        row.add(FilenameUtils.getName(metaData.getName()));
+        row.add(metaData.getIdentificationMethod().toString());
+        row.add(metaData.getNodeStatus().getStatus());
+        row.add(metaData.getSize().toString());
+        row.add(metaData.getResourceType().getResourceType());
+        row.add(metaData.getExtension());
+        row.add(DateFormatUtils.ISO_DATETIME_FORMAT.format(metaData.getLastModifiedDate()));
+        row.add(node.getExtensionMismatch().toString());
+        row.add(metaData.getHash());
+        row.add(node.getIdentificationCount().toString());
+        return row;
+    }
+
+    private static void addFormatFields(List<String> row, Format format) {
+        row.add(format.getPuid());
+        row.add(format.getMimeType());
+        row.add(format.getName());
+        row.add(format.getVersion());
+    }
+
+    private static ProfileResourceNode buildNode(int i) {
+        ProfileResourceNode node = new ProfileResourceNode(new File("/data/collection/folder" + (i / 100) + "/file" + i + ".pdf").toURI());
+        node.setId((long) i + 1);
+        node.setParentId((long) i / 100);
+        node.setExtensionMismatch(false);
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setName("file" + i + ".pdf");
+        metaData.setExtension("pdf");
+        metaData.setIdentificationMethod(IdentificationMethod.BINARY_SIGNATURE);
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setSize(1000L + i);
+        metaData.setLastModifiedDate(new Date(1500000000000L + i * 1000L));
+        metaData.setHash("0123456789abcdef0123456789abcdef");
+        node.setMetaData(metaData);
+        for (int f = 0; f < 2; f++) {
+            Format format = new Format();
+            format.setPuid("fmt/" + (18 + f));
+            format.setMimeType("application/pdf");
+            format.setName("Acrobat PDF 1." + (4 + f) + " - Portable Document Format");
+            format.setVersion("1." + (4 + f));
+            node.addFormatIdentification(format);
+        }
+        return node;
+    }
+}
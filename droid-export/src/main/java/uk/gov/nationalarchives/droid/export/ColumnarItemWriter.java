@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
+import uk.gov.nationalarchives.droid.export.interfaces.BinaryItemWriter;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportItemWriter;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Writes an export as a binary columnar file.
+ * <p>
+ * Rows are buffered into row groups of up to {@link #ROW_GROUP_SIZE} rows, and each group is written
+ * column by column, so the memory used doesn't grow with the size of the export.  The columns are the
+ * CSV export headers up to FORMAT_COUNT, followed by a FORMATS column.  Formats are dictionary encoded:
+ * each distinct PUID is given an id the first time it is written, and the FORMATS column holds the
+ * ids of the formats of each row.  With one row per format, each row has a single format.
+ * <p>
+ * All values are big-endian, as written by a {@link DataOutputStream}:
+ * <pre>
+ * file       := MAGIC version:int columnCount:int column* rowGroup* 0:int
+ * column     := name:string type:byte
+ * rowGroup   := rowCount:int newFormatCount:int (puid mimeType name version):string* columnData*
+ * columnData := byteLength:int value*
+ * value      := LONG_COLUMN: present:boolean [long] | STRING_COLUMN: string | FORMATS_COLUMN: count:int id:int*
+ * string     := -1:int (null) | byteLength:int UTF-8 bytes
+ * </pre>
+ * New formats are numbered on from those in earlier row groups, starting from zero.
+ * Dates are written as milliseconds since the epoch.
+ */
+public class ColumnarItemWriter implements BinaryItemWriter<ProfileResourceNode> {
+
+    /**
+     * The first bytes of every columnar export.
+     */
+    static final byte[] MAGIC = {'D', 'R', 'O', 'I', 'D', 'C', 'O', 'L'};
+
+    /**
+     * The version of the file layout.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The most rows buffered before they are written out as a row group.
+     */
+    static final int ROW_GROUP_SIZE = 8192;
+
+    /**
+     * Column type of nullable longs.
+     */
+    static final byte LONG_COLUMN = 0;
+
+    /**
+     * Column type of nullable strings.
+     */
+    static final byte STRING_COLUMN = 1;
+
+    /**
+     * Column type of the dictionary encoded formats.
+     */
+    static final byte FORMATS_COLUMN = 2;
+
+    /**
+     * The name of the formats column.
+     */
+    static final String FORMATS_HEADER = "FORMATS";
+
+    private static final Set<String> LONG_HEADERS = new HashSet<String>(
+            Arrays.asList("ID", "PARENT_ID", "SIZE", "LAST_MODIFIED", "FORMAT_COUNT"));
+    private static final int FORMAT_HEADER_COUNT = 4;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private ExportOptions options = ExportOptions.ONE_ROW_PER_FILE;
+    private String[] headers = CsvItemWriter.HEADERS;
+    private String[] hashAlgorithms = new String[0];
+
+    private DataOutputStream out;
+    private ByteArrayOutputStream[] columnBuffers;
+    private DataOutputStream[] columns;
+    private int nextColumn;
+    private int rowCount;
+    private final Map<String, Integer> formatIds = new HashMap<String, Integer>();
+    private final List<Format> newFormats = new ArrayList<Format>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final OutputStream outputStream) {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE));
+        formatIds.clear();
+        newFormats.clear();
+        rowCount = 0;
+
+        final String[] columnNames = getColumnNames();
+        columnBuffers = new ByteArrayOutputStream[columnNames.length];
+        columns = new DataOutputStream[columnNames.length];
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(columnNames.length);
+            for (int i = 0; i < columnNames.length; i++) {
+                writeString(out, columnNames[i]);
+                out.writeByte(getColumnType(columnNames[i]));
+                columnBuffers[i] = new ByteArrayOutputStream();
+                columns[i] = new DataOutputStream(columnBuffers[i]);
+            }
+        } catch (final IOException e) {
+            throw newRuntimeException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(List<? extends ProfileResourceNode> nodes) {
+        try {
+            for (ProfileResourceNode node : nodes) {
+                if (options == ExportOptions.ONE_ROW_PER_FORMAT) {
+                    for (Format format : node.getFormatIdentifications()) {
+                        writeNodeFields(node);
+                        writeFormats(Arrays.asList(format));
+                        endRow();
+                    }
+                } else {
+                    writeNodeFields(node);
+                    writeFormats(node.getFormatIdentifications());
+                    endRow();
+                }
+            }
+        } catch (final IOException e) {
+            throw newRuntimeException(e);
+        }
+    }
+
+    private void writeNodeFields(ProfileResourceNode node) throws IOException {
+        NodeMetaData metaData = node.getMetaData();
+        nextColumn = 0;
+        writeLong(node.getId());
+        writeLong(node.getParentId());
+        writeString(DroidUrlFormat.format(node.getUri()));
+        writeString(CsvItemWriter.toFilePath(node.getUri()));
+        writeString(CsvItemWriter.toFileName(metaData.getName()));
+        writeString(metaData.getIdentificationMethod() == null ? null : metaData.getIdentificationMethod().toString());
+        writeString(metaData.getNodeStatus().getStatus());
+        writeLong(metaData.getSize());
+        writeString(metaData.getResourceType().getResourceType());
+        writeString(metaData.getExtension());
+        Date lastModified = metaData.getLastModifiedDate();
+        writeLong(lastModified == null ? null : lastModified.getTime());
+        writeString(node.getExtensionMismatch() == null ? null : node.getExtensionMismatch().toString());
+        writeString(metaData.getHash());
+        for (String algorithm : hashAlgorithms) {
+            writeString(metaData.getHash(algorithm));
+        }
+        Integer formatCount = node.getIdentificationCount();
+        writeLong(formatCount == null ? null : formatCount.longValue());
+    }
+
+    private void writeFormats(List<Format> formats) throws IOException {
+        DataOutputStream column = columns[nextColumn++];
+        column.writeInt(formats.size());
+        for (Format format : formats) {
+            column.writeInt(getFormatId(format));
+        }
+    }
+
+    private int getFormatId(Format format) {
+        String puid = format.getPuid() == null ? "" : format.getPuid();
+        Integer id = formatIds.get(puid);
+        if (id == null) {
+            id = formatIds.size();
+            formatIds.put(puid, id);
+            newFormats.add(format);
+        }
+        return id;
+    }
+
+    private void writeLong(Long value) throws IOException {
+        DataOutputStream column = columns[nextColumn++];
+        column.writeBoolean(value != null);
+        if (value != null) {
+            column.writeLong(value);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeString(columns[nextColumn++], value);
+    }
+
+    private void endRow() throws IOException {
+        if (++rowCount == ROW_GROUP_SIZE) {
+            writeRowGroup();
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        out.writeInt(rowCount);
+        out.writeInt(newFormats.size());
+        for (Format format : newFormats) {
+            writeString(out, format.getPuid());
+            writeString(out, format.getMimeType());
+            writeString(out, format.getName());
+            writeString(out, format.getVersion());
+        }
+        for (int i = 0; i < columns.length; i++) {
+            out.writeInt(columnBuffers[i].size());
+            columnBuffers[i].writeTo(out);
+            columnBuffers[i].reset();
+        }
+        newFormats.clear();
+        rowCount = 0;
+    }
+
+    private static void writeString(DataOutputStream stream, String value) throws IOException {
+        if (value == null) {
+            stream.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        }
+    }
+
+    private String[] getColumnNames() {
+        String[] columnNames = Arrays.copyOf(headers, headers.length - FORMAT_HEADER_COUNT + 1);
+        columnNames[columnNames.length - 1] = FORMATS_HEADER;
+        return columnNames;
+    }
+
+    private static byte getColumnType(String columnName) {
+        if (FORMATS_HEADER.equals(columnName)) {
+            return FORMATS_COLUMN;
+        }
+        return LONG_HEADERS.contains(columnName) ? LONG_COLUMN : STRING_COLUMN;
+    }
+
+    /**
+     * Writes out any rows still buffered and closes the output.
+     */
+    @Override
+    public void close() {
+        try {
+            if (rowCount > 0) {
+                writeRowGroup();
+            }
+            out.writeInt(0);
+            out.close();
+        } catch (final IOException e) {
+            throw newRuntimeException(e);
+        }
+    }
+
+    private RuntimeException newRuntimeException(IOException e) {
+        log.error(e);
+        return new RuntimeException(e.getMessage(), e);
+    }
+
+    /**
+     * A columnar export can't be partitioned, as format ids are given in the order formats are
+     * first written.
+     * @return null
+     */
+    @Override
+    public ExportItemWriter<ProfileResourceNode> newPartitionWriter() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOptions(ExportOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setHeaders(Map<String, String> headersToSet) {
+        this.hashAlgorithms = CsvItemWriter.getHashAlgorithms(headersToSet);
+        this.headers = CsvItemWriter.getHeaders(headersToSet, hashAlgorithms);
+    }
+}
@@ -31,23 +31,21 @@
  */
 package uk.gov.nationalarchives.droid.export;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang.time.DateFormatUtils;
-import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.univocity.parsers.csv.CsvWriter;
 import com.univocity.parsers.csv.CsvWriterSettings;
-import com.univocity.parsers.common.TextWritingException;
 
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
@@ -90,15 +88,22 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     private static final String FILE_URI_SCHEME = "file";
 
     private static final int HASH_ARRAY_INDEX = 12;
+
+    private static final String HASH_HEADER_SUFFIX = "_HASH";
     
     private final Log log = LogFactory.getLog(getClass());
 
     private CsvWriter csvWriter;
+    private CsvRowEncoder encoder;
     private DroidGlobalConfig config;
-    private FastDateFormat dateFormat = DateFormatUtils.ISO_DATETIME_FORMAT;
     private ExportOptions options = ExportOptions.ONE_ROW_PER_FILE;
     
     private String[] headers;
+
+    // Algorithms whose hashes have their own columns after the main hash column.
+    private String[] hashAlgorithms = new String[0];
+
+    private boolean writeHeaders = true;
     
     /**
      * {@inheritDoc}
@@ -128,38 +133,16 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     private void writeOneRowPerFile(List<? extends ProfileResourceNode> nodes) {
         try {
             for (ProfileResourceNode node : nodes) {
-                NodeMetaData metaData = node.getMetaData();
-                List<String> nodeEntries = new ArrayList<String>();
-                nodeEntries.add(nullSafeNumber(node.getId()));
-                //ProfileResourceNode parent = node.getParent();
-                //nodeEntries.add(parent != null ? nullSafeNumber(parent.getId()) : "");
-                nodeEntries.add(nullSafeNumber(node.getParentId()));
-                nodeEntries.add(DroidUrlFormat.format(node.getUri()));
-                nodeEntries.add(toFilePath(node.getUri()));
-                nodeEntries.add(toFileName(metaData.getName()));
-                nodeEntries.add(nullSafeName(metaData.getIdentificationMethod()));
-                nodeEntries.add(metaData.getNodeStatus().getStatus());
-                nodeEntries.add(nullSafeNumber(metaData.getSize()));
-                nodeEntries.add(metaData.getResourceType().getResourceType());
-                nodeEntries.add(metaData.getExtension());
-                nodeEntries.add(nullSafeDate(metaData.getLastModifiedDate(), dateFormat));
-                nodeEntries.add(node.getExtensionMismatch().toString());
-                nodeEntries.add(metaData.getHash());
-                nodeEntries.add(nullSafeNumber(node.getIdentificationCount()));
-                
+                encoder.startRow();
+                writeNodeFields(node);
                 for (Format format : node.getFormatIdentifications()) {
-                    nodeEntries.add(format.getPuid());
-                    nodeEntries.add(format.getMimeType());
-                    nodeEntries.add(format.getName());
-                    nodeEntries.add(format.getVersion());
+                    writeFormatFields(format);
                 }
-                
-
-                csvWriter.writeRow(nodeEntries.toArray(new String[0]));
+                encoder.endRow();
             }
-            csvWriter.flush();
+            encoder.flush();
             
-        } catch (final TextWritingException e) {
+        } catch (final IOException e) {
             log.error(e);
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -168,46 +151,54 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     private void writeOneRowPerFormat(List<? extends ProfileResourceNode> nodes) {
         try {
             for (ProfileResourceNode node : nodes) {
-                NodeMetaData metaData = node.getMetaData();
-                //ProfileResourceNode parent = node.getParent();
+                // The node's fields are the same in each of its rows, so they are only encoded once.
+                int nodeFieldsLength = -1;
                 for (Format format : node.getFormatIdentifications()) {
-                    String[] nodeEntries = new String[] {
-                        nullSafeNumber(node.getId()),
-                        //parent != null ? nullSafeNumber(parent.getId()) : "",
-                        nullSafeNumber(node.getParentId()),
-                        DroidUrlFormat.format(node.getUri()),
-                        toFilePath(node.getUri()),
-                        toFileName(metaData.getName()),
-                        nullSafeName(metaData.getIdentificationMethod()),
-                        metaData.getNodeStatus().getStatus(),
-                        nullSafeNumber(metaData.getSize()),
-                        metaData.getResourceType().getResourceType(),
-                        metaData.getExtension(),
-                        nullSafeDate(metaData.getLastModifiedDate(), dateFormat),
-                        node.getExtensionMismatch().toString(),
-                        metaData.getHash(),
-                        nullSafeNumber(node.getIdentificationCount()),
-                        format.getPuid(),
-                        format.getMimeType(),
-                        format.getName(),
-                        format.getVersion(),
-                    };
-                    csvWriter.writeRow(nodeEntries);
+                    if (nodeFieldsLength < 0) {
+                        encoder.startRow();
+                        writeNodeFields(node);
+                        nodeFieldsLength = encoder.getRowLength();
+                    } else {
+                        encoder.startRowLike(nodeFieldsLength);
+                    }
+                    writeFormatFields(format);
+                    encoder.endRow();
                 }
             }
-            csvWriter.flush();
+            encoder.flush();
             
-        } catch (final TextWritingException e) {
+        } catch (final IOException e) {
             log.error(e);
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    /**
-     * @param csvWriter the csvWriter to write to.
-     */
-    void setCsvWriter(CsvWriter csvWriter) {
-        this.csvWriter = csvWriter;
+    private void writeNodeFields(ProfileResourceNode node) {
+        NodeMetaData metaData = node.getMetaData();
+        encoder.field(node.getId());
+        encoder.field(node.getParentId());
+        encoder.field(DroidUrlFormat.format(node.getUri()));
+        encoder.field(toFilePath(node.getUri()));
+        encoder.field(toFileName(metaData.getName()));
+        encoder.field(nullSafeName(metaData.getIdentificationMethod()));
+        encoder.field(metaData.getNodeStatus().getStatus());
+        encoder.field(metaData.getSize());
+        encoder.field(metaData.getResourceType().getResourceType());
+        encoder.field(metaData.getExtension());
+        encoder.field(metaData.getLastModifiedDate());
+        encoder.field(node.getExtensionMismatch().toString());
+        encoder.field(metaData.getHash());
+        for (String algorithm : hashAlgorithms) {
+            encoder.field(metaData.getHash(algorithm));
+        }
+        encoder.field(node.getIdentificationCount());
+    }
+
+    private void writeFormatFields(Format format) {
+        encoder.field(format.getPuid());
+        encoder.field(format.getMimeType());
+        encoder.field(format.getName());
+        encoder.field(format.getVersion());
     }
 
     /**
@@ -218,6 +209,7 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         final CsvWriterSettings csvWriterSettings = new CsvWriterSettings();
         csvWriterSettings.setQuoteAllFields(true);
         csvWriter = new CsvWriter(writer, csvWriterSettings);
+        encoder = new CsvRowEncoder(writer, csvWriterSettings);
         if (headers == null) {
             headers = HEADERS;
         }
@@ -227,7 +219,25 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         //    headers[HASH_ARRAY_INDEX] = String.format(headers[HASH_ARRAY_INDEX], hashName);
         //}
 
-        csvWriter.writeHeaders(headers);
+        if (writeHeaders) {
+            csvWriter.writeHeaders(headers);
+            // Flushed, so anything written straight to the writer (e.g. partitions) follows the headers.
+            csvWriter.flush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ItemWriter<ProfileResourceNode> newPartitionWriter() {
+        final CsvItemWriter partitionWriter = new CsvItemWriter();
+        partitionWriter.config = config;
+        partitionWriter.options = options;
+        partitionWriter.headers = headers;
+        partitionWriter.hashAlgorithms = hashAlgorithms;
+        partitionWriter.writeHeaders = false;
+        return partitionWriter;
     }
 
     /**
@@ -251,15 +261,11 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         return value == null ? "" : value.toString();
     }
     
-    private static String nullSafeNumber(Number number) {
-        return number == null ? "" : number.toString();
-    }
-    
-    private static String nullSafeDate(Date date, FastDateFormat format) {
-        return date == null ? "" : format.format(date);
-    }
-    
-    private static String toFilePath(URI uri) {
+    /**
+     * @param uri the uri of a resource.
+     * @return the absolute file path of the resource, or null if it's not a file uri.
+     */
+    static String toFilePath(URI uri) {
         if (FILE_URI_SCHEME.equals(uri.getScheme())) {
             return Paths.get(uri).toAbsolutePath().toString();
         }
@@ -267,7 +273,11 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         return null;
     }
 
-    private static String toFileName(String name) {
+    /**
+     * @param name the name of a resource.
+     * @return the file name of the resource, without any path.
+     */
+    static String toFileName(String name) {
         return FilenameUtils.getName(name);
     }
     
@@ -283,15 +293,42 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
      */
     @Override
     public void setHeaders(Map<String, String> headersToSet) {
+        // Start from the default headers each time, as the writer may be reused for another export.
+        this.hashAlgorithms = getHashAlgorithms(headersToSet);
+        this.headers = getHeaders(headersToSet, hashAlgorithms);
+    }
 
-        if (this.headers == null) {
-            this.headers = HEADERS;
-        }
+    /**
+     * @param headersToSet the header customisations of an export.
+     * @return the algorithms whose hashes have their own columns after the main hash column.
+     */
+    static String[] getHashAlgorithms(Map<String, String> headersToSet) {
+        // A comma separated list of algorithms whose hashes get their own columns after the main hash column.
+        String algorithmHashes = headersToSet.get("hashes");
+        return algorithmHashes == null || algorithmHashes.isEmpty() ? new String[0] : algorithmHashes.split(",");
+    }
+
+    /**
+     * @param headersToSet the header customisations of an export.
+     * @param hashAlgorithms the algorithms whose hashes have their own columns after the main hash column.
+     * @return the default headers, customised for the export.
+     */
+    static String[] getHeaders(Map<String, String> headersToSet, String[] hashAlgorithms) {
+        String[] customised = HEADERS.clone();
 
         String hashHeader = headersToSet.get("hash");
         if (hashHeader != null) {
-            this.headers[HASH_ARRAY_INDEX] = hashHeader;
+            customised[HASH_ARRAY_INDEX] = hashHeader;
+        }
+
+        if (hashAlgorithms.length > 0) {
+            List<String> allHeaders = new ArrayList<String>(Arrays.asList(customised));
+            for (int i = 0; i < hashAlgorithms.length; i++) {
+                allHeaders.add(HASH_ARRAY_INDEX + 1 + i, hashAlgorithms[i].toUpperCase() + HASH_HEADER_SUFFIX);
+            }
+            customised = allHeaders.toArray(new String[0]);
         }
+        return customised;
     }
     
 }
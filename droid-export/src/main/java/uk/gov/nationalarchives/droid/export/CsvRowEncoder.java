@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+
+/**
+ * Encodes CSV rows straight into a reusable character buffer, quoting every field in the same way
+ * as a univocity {@link CsvWriter} which quotes all fields.
+ * <p>
+ * Most fields are copied into the buffer as they are.  The few univocity would change - those
+ * containing quotes, or with leading or trailing whitespace - are encoded by univocity itself,
+ * so the output is always the same.  Numbers are written without creating strings, and dates are
+ * rendered with {@link DateFormatUtils#ISO_DATETIME_FORMAT}, caching everything but the seconds.
+ */
+final class CsvRowEncoder {
+
+    private static final char QUOTE = '"';
+    private static final char DELIMITER = ',';
+    private static final char WHITESPACE = ' ';
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int FLUSH_THRESHOLD = 65536;
+    private static final int MAX_LONG_DIGITS = 20;
+    private static final int RADIX = 10;
+
+    // yyyy-MM-dd'T'HH:mm:ss, of which everything up to the seconds is cached.
+    private static final int DATE_LENGTH = 19;
+    private static final int MINUTE_PREFIX_LENGTH = 17;
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60000;
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private final Writer out;
+    private final CsvWriter fieldEncoder;
+    private final char[] lineSeparator;
+    private final FastDateFormat dateFormat = DateFormatUtils.ISO_DATETIME_FORMAT;
+    private final TimeZone timeZone = dateFormat.getTimeZone();
+    private final char[] minutePrefix = new char[MINUTE_PREFIX_LENGTH];
+    private long cachedMinute = Long.MIN_VALUE;
+
+    private char[] buffer = new char[INITIAL_CAPACITY];
+    private int length;
+    private int rowStart;
+    private int lastRowStart;
+    private boolean firstField = true;
+
+    /**
+     * @param out The writer to write rows to.
+     * @param settings The settings univocity would write the rows with.
+     */
+    CsvRowEncoder(Writer out, CsvWriterSettings settings) {
+        this.out = out;
+        this.fieldEncoder = new CsvWriter(settings);
+        this.lineSeparator = settings.getFormat().getLineSeparator();
+    }
+
+    /**
+     * Starts a new row, writing out any complete rows if enough have been buffered.
+     * @throws IOException if the rows could not be written.
+     */
+    void startRow() throws IOException {
+        if (length >= FLUSH_THRESHOLD) {
+            drain();
+        }
+        rowStart = length;
+        firstField = true;
+    }
+
+    /**
+     * @return the number of characters encoded so far in the current row.
+     */
+    int getRowLength() {
+        return length - rowStart;
+    }
+
+    /**
+     * Starts a new row with the same first characters as the last row ended, without encoding
+     * its fields again.
+     * @param prefixLength The number of characters of the last row to copy, from {@link #getRowLength()}.
+     */
+    void startRowLike(int prefixLength) {
+        ensureCapacity(prefixLength);
+        rowStart = length;
+        System.arraycopy(buffer, lastRowStart, buffer, length, prefixLength);
+        length += prefixLength;
+        firstField = prefixLength == 0;
+    }
+
+    /**
+     * Ends the current row.
+     */
+    void endRow() {
+        ensureCapacity(lineSeparator.length);
+        System.arraycopy(lineSeparator, 0, buffer, length, lineSeparator.length);
+        length += lineSeparator.length;
+        lastRowStart = rowStart;
+        rowStart = length;
+        firstField = true;
+    }
+
+    /**
+     * Encodes a text field.  Null values are written as empty fields.
+     * @param value The value of the field.
+     */
+    void field(String value) {
+        startField();
+        final int valueLength = value == null ? 0 : value.length();
+        ensureCapacity(valueLength + 2);
+        final int fieldStart = length;
+        buffer[length++] = QUOTE;
+        if (valueLength > 0) {
+            value.getChars(0, valueLength, buffer, length);
+            if (isPlain(length, valueLength)) {
+                length += valueLength;
+            } else {
+                length = fieldStart;
+                append(fieldEncoder.writeRowToString(new Object[] {value}));
+                return;
+            }
+        }
+        buffer[length++] = QUOTE;
+    }
+
+    /**
+     * Encodes a number field.  Null values are written as empty fields.
+     * @param value The value of the field.
+     */
+    void field(Number value) {
+        if (value == null) {
+            field((String) null);
+        } else {
+            field(value.longValue());
+        }
+    }
+
+    /**
+     * Encodes a number field.
+     * @param value The value of the field.
+     */
+    void field(long value) {
+        if (value == Long.MIN_VALUE) {
+            field(Long.toString(value));
+            return;
+        }
+        startField();
+        ensureCapacity(MAX_LONG_DIGITS + 2);
+        buffer[length++] = QUOTE;
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[length++] = '-';
+            remaining = -remaining;
+        }
+        final int digitsStart = length;
+        do {
+            buffer[length++] = (char) ('0' + (int) (remaining % RADIX));
+            remaining /= RADIX;
+        } while (remaining > 0);
+        reverse(digitsStart, length - 1);
+        buffer[length++] = QUOTE;
+    }
+
+    /**
+     * Encodes a date field in ISO 8601 format.  Null values are written as empty fields.
+     * @param date The value of the field.
+     */
+    void field(Date date) {
+        if (date == null) {
+            field((String) null);
+        } else {
+            final long millis = date.getTime();
+            final long localMillis = millis + timeZone.getOffset(millis);
+            final long minute = Math.floorDiv(localMillis, MILLIS_PER_MINUTE);
+            if (minute == cachedMinute || cacheMinutePrefix(date, minute)) {
+                final int second = (int) Math.floorMod(Math.floorDiv(localMillis, MILLIS_PER_SECOND), SECONDS_PER_MINUTE);
+                startField();
+                ensureCapacity(DATE_LENGTH + 2);
+                buffer[length++] = QUOTE;
+                System.arraycopy(minutePrefix, 0, buffer, length, MINUTE_PREFIX_LENGTH);
+                length += MINUTE_PREFIX_LENGTH;
+                buffer[length++] = (char) ('0' + second / RADIX);
+                buffer[length++] = (char) ('0' + second % RADIX);
+                buffer[length++] = QUOTE;
+            } else {
+                field(dateFormat.format(date));
+            }
+        }
+    }
+
+    // Dates outside four digit years don't have the usual length, so aren't cached.
+    private boolean cacheMinutePrefix(Date date, long minute) {
+        final String formatted = dateFormat.format(date);
+        final boolean cacheable = formatted.length() == DATE_LENGTH;
+        if (cacheable) {
+            formatted.getChars(0, MINUTE_PREFIX_LENGTH, minutePrefix, 0);
+            cachedMinute = minute;
+        }
+        return cacheable;
+    }
+
+    /**
+     * Writes out all the rows encoded so far, and flushes the writer.
+     * @throws IOException if the rows could not be written.
+     */
+    void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void drain() throws IOException {
+        final int pending = length - rowStart;
+        out.write(buffer, 0, rowStart);
+        System.arraycopy(buffer, rowStart, buffer, 0, pending);
+        length = pending;
+        rowStart = 0;
+        lastRowStart = 0;
+    }
+
+    /*
+     * Univocity trims whitespace (any char up to a space) from the ends of fields, escapes quotes,
+     * and normalizes line endings within quotes to the line separator it is set to write.
+     */
+    private boolean isPlain(int start, int count) {
+        boolean plain = buffer[start] > WHITESPACE && buffer[start + count - 1] > WHITESPACE;
+        for (int i = start; plain && i < start + count; i++) {
+            final char c = buffer[i];
+            plain = c != QUOTE && c != CR && c != LF;
+        }
+        return plain;
+    }
+
+    private void startField() {
+        if (firstField) {
+            firstField = false;
+        } else {
+            ensureCapacity(1);
+            buffer[length++] = DELIMITER;
+        }
+    }
+
+    private void append(String chars) {
+        ensureCapacity(chars.length());
+        chars.getChars(0, chars.length(), buffer, length);
+        length += chars.length();
+    }
+
+    private void reverse(int from, int to) {
+        for (int i = from, j = to; i < j; i++, j--) {
+            final char swap = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = swap;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -31,15 +31,19 @@
  */
 package uk.gov.nationalarchives.droid.export;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportFormat;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportManager;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportItemWriter;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemWriter;
 import uk.gov.nationalarchives.droid.profile.ProfileContextLocator;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
@@ -51,8 +55,11 @@ import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 public class ExportManagerImpl implements ExportManager {
     
     private ProfileContextLocator profileContextLocator;
-    private ItemWriter<ProfileResourceNode> itemWriter;
+    private final Map<ExportFormat, ExportItemWriter<ProfileResourceNode>> itemWriters =
+            new EnumMap<ExportFormat, ExportItemWriter<ProfileResourceNode>>(ExportFormat.class);
     
+    private int partitionCount = Runtime.getRuntime().availableProcessors();
+
     private ExecutorService executor = Executors.newSingleThreadExecutor();
     
     /**
@@ -61,8 +68,24 @@ public class ExportManagerImpl implements ExportManager {
     @Override
     public Future<?> exportProfiles(final List<String> profileIds, final String destination, 
         final Filter filter, final ExportOptions options, final String outputEncoding, final boolean bom) {
+        return exportProfiles(profileIds, destination, filter, options, ExportFormat.CSV, false, outputEncoding, bom);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<?> exportProfiles(final List<String> profileIds, final String destination, final Filter filter,
+        final ExportOptions options, final ExportFormat format, final boolean compress, final String outputEncoding,
+        final boolean bom) {
+        final ExportItemWriter<ProfileResourceNode> itemWriter = itemWriters.get(format);
+        if (itemWriter == null) {
+            throw new IllegalArgumentException(String.format("No item writer for export format: %s", format));
+        }
         final ExportTask exportTask = new ExportTask(destination,
                 profileIds, filter, options, outputEncoding, bom, itemWriter, profileContextLocator);
+        exportTask.setPartitionCount(partitionCount);
+        exportTask.setCompressed(compress);
         final FutureTask<?> task = new FutureTask<Object>(exportTask, null) {
             @Override
             public boolean cancel(final boolean mayInterruptIfRunning) {
@@ -85,10 +108,38 @@ public class ExportManagerImpl implements ExportManager {
     }
     
     /**
-     * @param itemWriter the itemWriter to set
+     * @param itemWriter the itemWriter to set for CSV exports
      */
     public void setItemWriter(final ItemWriter<ProfileResourceNode> itemWriter) {
-        this.itemWriter = itemWriter;
+        itemWriters.put(ExportFormat.CSV, itemWriter);
+    }
+
+    /**
+     * Sets the item writers for export formats.  A CSV item writer set here replaces
+     * any set with {@link #setItemWriter(ItemWriter)}.
+     * @param writers the item writer for each export format
+     */
+    public void setItemWriters(final Map<ExportFormat, ExportItemWriter<ProfileResourceNode>> writers) {
+        itemWriters.putAll(writers);
+    }
+
+    /**
+     * @return the number of partitions an export may be split into and written concurrently.
+     */
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Sets the number of partitions an export may be split into and written concurrently.
+     * Partitions are reassembled in order, so the output is the same whatever the count.
+     * A count of one exports profiles sequentially.
+     * Profiles in the profile database are only partitioned when export.nodeIdOrder is set;
+     * exports sorted by URI are read as a single partition whatever the count.
+     * @param partitionCount the number of partitions
+     */
+    public void setPartitionCount(final int partitionCount) {
+        this.partitionCount = Math.max(1, partitionCount);
     }
 
     /**
@@ -43,15 +43,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.export.interfaces.BinaryItemWriter;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportItemWriter;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
@@ -72,6 +77,7 @@ public class ExportTask implements Runnable {
     private static final int BOM_1 = 0xEF;
     private static final int BOM_2 = 0xBB;
     private static final int BOM_3 = 0xBF;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
 
     private final Log log = LogFactory.getLog(getClass());
 
@@ -81,11 +87,13 @@ public class ExportTask implements Runnable {
     private final ExportOptions options;
     private final String outputEncoding;
     private final boolean bom;
-    private final ItemWriter<ProfileResourceNode> itemWriter;
+    private final ExportItemWriter<ProfileResourceNode> itemWriter;
     private final ProfileContextLocator profileContextLocator;
 
     private volatile boolean cancelled;
-    
+
+    private int partitionCount = 1;
+    private boolean compressed;
 
     /**
      * @param destination Output file path
@@ -99,7 +107,7 @@ public class ExportTask implements Runnable {
      */
     public ExportTask(final String destination, final List<String> profileIds,
             final Filter filterOverride, final ExportOptions options,
-            final String outputEncoding, final boolean bom, final ItemWriter<ProfileResourceNode> itemWriter,
+            final String outputEncoding, final boolean bom, final ExportItemWriter<ProfileResourceNode> itemWriter,
             final ProfileContextLocator profileContextLocator) {
         this.destination = destination;
         this.profileIds = profileIds;
@@ -118,6 +126,30 @@ public class ExportTask implements Runnable {
         cancelled = true;
     }
 
+    /**
+     * @return whether the task has been cancelled.
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Sets how many partitions the export may be split into and written concurrently.
+     * A count of one exports the profiles sequentially.
+     * @param partitionCount The number of partitions.
+     */
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Sets whether the export is gzip compressed.
+     * @param compressed Whether to compress the export.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -125,11 +157,14 @@ public class ExportTask implements Runnable {
     public void run() {
         final Writer writer;
         final String destinationDescription = destination == null ? "System.out" : destination;
-        if (destination == null) {
+        if (itemWriter instanceof BinaryItemWriter) {
+            // Binary writers write straight to the output stream, and are opened once their headers are set.
+            writer = null;
+        } else if (destination == null && !compressed) {
             writer = new PrintWriter(System.out);
         } else {
             try {
-                writer = newOutputFileWriter();
+                writer = destination == null ? newWriter(newOutputStream(System.out)) : newOutputFileWriter();
             } catch (IOException e) {
                 String message = String.format("IO exception occurred trying to read from: %s",
                         destinationDescription);
@@ -172,7 +207,7 @@ public class ExportTask implements Runnable {
      *  a writer for the file
      */
     protected Writer newOutputFileWriterEncoded(final String encoding, final Path f) throws IOException {
-        final OutputStream outputStream = Files.newOutputStream(f);
+        final OutputStream outputStream = newOutputStream(Files.newOutputStream(f));
         if (bom) {
             outputStream.write(BOM_1);
             outputStream.write(BOM_2);
@@ -182,6 +217,33 @@ public class ExportTask implements Runnable {
         return new BufferedWriter(new OutputStreamWriter(outputStream, encoding));
     }
 
+    private Writer newWriter(final OutputStream outputStream) throws IOException {
+        final String encoding = outputEncoding != null ? outputEncoding : Charset.defaultCharset().name();
+        return new BufferedWriter(new OutputStreamWriter(outputStream, encoding));
+    }
+
+    // Wraps the output in a gzip stream if the export is compressed.
+    private OutputStream newOutputStream(final OutputStream outputStream) throws IOException {
+        return compressed ? new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE) : outputStream;
+    }
+
+    // Exports which are not binary are written as text, by an ItemWriter.
+    private ItemWriter<ProfileResourceNode> getTextItemWriter() {
+        return (ItemWriter<ProfileResourceNode>) itemWriter;
+    }
+
+    private void openBinaryItemWriter() {
+        try {
+            final OutputStream outputStream = destination == null ? System.out
+                    : Files.newOutputStream(Paths.get(destination));
+            ((BinaryItemWriter<ProfileResourceNode>) itemWriter).open(newOutputStream(outputStream));
+        } catch (IOException e) {
+            String message = String.format("IO exception occurred trying to write to: %s", destination);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
 
     private void doExport(final Writer writer, final String destinationDescription) {
         log.info(String.format("Exporting profiles to: [%s]", destinationDescription));
@@ -190,37 +252,17 @@ public class ExportTask implements Runnable {
         Map<String, String> headerCustomisations = getHeaderCustomisationsFromProfiles();
         itemWriter.setHeaders(headerCustomisations);
         itemWriter.setOptions(options);
-        itemWriter.open(writer);
+        if (writer == null) {
+            openBinaryItemWriter();
+        } else {
+            getTextItemWriter().open(writer);
+        }
         
-        StopWatch stopWatch = new StopWatch();
         try {
-            for (String profileId : profileIds) {
-                stopWatch.start();
-                if (!profileContextLocator.hasProfileContext(profileId)) {
-                    final String message = String.format(PROJECT_NOT_AVAILABLE_FOR_EXPORT, profileId);
-                    log.warn(message);
-                    throw new RuntimeException(message);
-                }
-                ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
-                ProfileInstanceManager profileContext = profileContextLocator.openProfileInstanceManager(profile);
-                ItemReader<ProfileResourceNode> reader = profileContext.getNodeItemReader();
-                ItemReaderCallback<ProfileResourceNode> callback = new ItemReaderCallback<ProfileResourceNode>() {
-                    @Override
-                    public void onItem(List<? extends ProfileResourceNode> itemChunk)
-                        throws JobCancellationException {
-                        itemWriter.write(itemChunk);
-                        if (cancelled) {
-                            log.info("Export interrupted");
-                            throw new JobCancellationException("Cancelled");
-                        }
-                    }
-                };
-
-                Filter filter = filterOverride != null ? filterOverride : profile.getFilter();
-                reader.readAll(callback, filter);
-                stopWatch.stop();
-                log.info(String.format("Time for export [%s]: %s ms", profileId, stopWatch.getTime()));
-                stopWatch.reset();
+            if (partitionCount > 1 && writer != null && itemWriter.newPartitionWriter() != null) {
+                exportPartitioned(writer);
+            } else {
+                exportSequentially();
             }
         } catch (JobCancellationException e) {
             String message = String.format("Export cancelled - deleting export destination: %s",
@@ -246,6 +288,64 @@ public class ExportTask implements Runnable {
         }
     }
     
+    private void exportSequentially() throws JobCancellationException {
+        StopWatch stopWatch = new StopWatch();
+        for (String profileId : profileIds) {
+            stopWatch.start();
+            ProfileInstance profile = getProfileForExport(profileId);
+            ProfileInstanceManager profileContext = profileContextLocator.openProfileInstanceManager(profile);
+            ItemReader<ProfileResourceNode> reader = profileContext.getNodeItemReader();
+            ItemReaderCallback<ProfileResourceNode> callback = new ItemReaderCallback<ProfileResourceNode>() {
+                @Override
+                public void onItem(List<? extends ProfileResourceNode> itemChunk)
+                    throws JobCancellationException {
+                    itemWriter.write(itemChunk);
+                    if (cancelled) {
+                        log.info("Export interrupted");
+                        throw new JobCancellationException("Cancelled");
+                    }
+                }
+            };
+
+            reader.readAll(callback, getFilter(profile));
+            stopWatch.stop();
+            log.info(String.format("Time for export [%s]: %s ms", profileId, stopWatch.getTime()));
+            stopWatch.reset();
+        }
+    }
+
+    private void exportPartitioned(final Writer writer) throws JobCancellationException {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        final Path tempDirectory = destination == null ? null : Paths.get(destination).toAbsolutePath().getParent();
+        final PartitionedExport export = new PartitionedExport(this, getTextItemWriter(), partitionCount, tempDirectory);
+        try {
+            for (String profileId : profileIds) {
+                ProfileInstance profile = getProfileForExport(profileId);
+                export.submit(profileContextLocator.openProfileInstanceManager(profile), getFilter(profile));
+            }
+            export.writeTo(writer);
+        } finally {
+            export.close();
+        }
+        stopWatch.stop();
+        log.info(String.format("Time for export of %s in up to %d partitions each: %s ms",
+                profileIds, partitionCount, stopWatch.getTime()));
+    }
+
+    private ProfileInstance getProfileForExport(String profileId) {
+        if (!profileContextLocator.hasProfileContext(profileId)) {
+            final String message = String.format(PROJECT_NOT_AVAILABLE_FOR_EXPORT, profileId);
+            log.warn(message);
+            throw new RuntimeException(message);
+        }
+        return profileContextLocator.getProfileInstance(profileId);
+    }
+
+    private Filter getFilter(ProfileInstance profile) {
+        return filterOverride != null ? filterOverride : profile.getFilter();
+    }
+
     private Map<String, String> getHeaderCustomisationsFromProfiles() {
 
         // Brian O'Reilly, July 2014:
@@ -256,6 +356,8 @@ public class ExportTask implements Runnable {
         Map<String, String> map = new HashMap<String, String>();
         String hashAlgorithmHeader = "HASH";
         Set<String> algorithmsFound = new HashSet<String>();
+        Set<String> allAlgorithms = new LinkedHashSet<String>();
+        boolean multipleAlgorithms = false;
  
         for (String profileId : this.profileIds) {
             if (!this.profileContextLocator.hasProfileContext(profileId)) {
@@ -265,7 +367,13 @@ public class ExportTask implements Runnable {
             }
             ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
             if (profile.getGenerateHash()) {
-                algorithmsFound.add(profile.getHashAlgorithm().toUpperCase());
+                // A profile can hash with several comma separated algorithms - the first goes in the main hash column.
+                String[] algorithms = profile.getHashAlgorithm().toLowerCase().split(",");
+                algorithmsFound.add(algorithms[0].trim().toUpperCase());
+                for (String algorithm : algorithms) {
+                    allAlgorithms.add(algorithm.trim());
+                }
+                multipleAlgorithms |= algorithms.length > 1;
             }
         } 
         
@@ -275,9 +383,15 @@ public class ExportTask implements Runnable {
         //the generic "HASH" header.
         if (algorithmsFound.size() == 1) {
             hashAlgorithmHeader = algorithmsFound.iterator().next() + "_HASH";
+            allAlgorithms.remove(algorithmsFound.iterator().next().toLowerCase());
         }
         
         map.put("hash", hashAlgorithmHeader);
+
+        // If any profile generated more than one hash, the other hashes get a column for each algorithm.
+        if (multipleAlgorithms) {
+            map.put("hashes", StringUtils.join(allAlgorithms, ','));
+        }
         return map;
     }
 }
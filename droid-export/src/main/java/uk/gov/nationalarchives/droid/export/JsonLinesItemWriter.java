@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemWriter;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Writes an export as JSON Lines: one JSON object on each line.
+ * <p>
+ * The object keys are the CSV export headers.  With one row per file, each object has a
+ * <code>FORMATS</code> array holding the PUID, MIME_TYPE, FORMAT_NAME and FORMAT_VERSION of each
+ * format identified.  With one row per format, there is an object for each format, and those
+ * keys are in the object itself.  Missing values are null, and numbers are JSON numbers.
+ */
+public class JsonLinesItemWriter implements ItemWriter<ProfileResourceNode> {
+
+    private static final String FORMATS_KEY = "FORMATS";
+    private static final int FORMAT_HEADER_COUNT = 4;
+    private static final String NULL = "null";
+    private static final String UNICODE_ESCAPE = "\\u0000";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final FastDateFormat dateFormat = DateFormatUtils.ISO_DATETIME_FORMAT;
+    private final StringBuilder line = new StringBuilder();
+
+    private Writer out;
+    private ExportOptions options = ExportOptions.ONE_ROW_PER_FILE;
+    private String[] headers = CsvItemWriter.HEADERS;
+    private String[] hashAlgorithms = new String[0];
+    private int nextKey;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(List<? extends ProfileResourceNode> nodes) {
+        try {
+            for (ProfileResourceNode node : nodes) {
+                if (options == ExportOptions.ONE_ROW_PER_FORMAT) {
+                    for (Format format : node.getFormatIdentifications()) {
+                        startObject(node);
+                        appendFormatFields(format);
+                        endObject();
+                    }
+                } else {
+                    startObject(node);
+                    line.append(",\"").append(FORMATS_KEY).append("\":[");
+                    List<Format> formats = node.getFormatIdentifications();
+                    for (int i = 0; i < formats.size(); i++) {
+                        line.append(i == 0 ? "{" : ",{");
+                        appendFormatFields(formats.get(i));
+                        line.append('}');
+                    }
+                    line.append(']');
+                    endObject();
+                }
+            }
+            out.flush();
+        } catch (final IOException e) {
+            log.error(e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void startObject(ProfileResourceNode node) {
+        NodeMetaData metaData = node.getMetaData();
+        line.setLength(0);
+        line.append('{');
+        nextKey = 0;
+        appendNumber(node.getId());
+        appendNumber(node.getParentId());
+        appendString(DroidUrlFormat.format(node.getUri()));
+        appendString(CsvItemWriter.toFilePath(node.getUri()));
+        appendString(CsvItemWriter.toFileName(metaData.getName()));
+        appendString(metaData.getIdentificationMethod() == null ? null : metaData.getIdentificationMethod().toString());
+        appendString(metaData.getNodeStatus().getStatus());
+        appendNumber(metaData.getSize());
+        appendString(metaData.getResourceType().getResourceType());
+        appendString(metaData.getExtension());
+        appendDate(metaData.getLastModifiedDate());
+        appendLiteral(node.getExtensionMismatch() == null ? NULL : node.getExtensionMismatch().toString());
+        appendString(metaData.getHash());
+        for (String algorithm : hashAlgorithms) {
+            appendString(metaData.getHash(algorithm));
+        }
+        appendNumber(node.getIdentificationCount());
+    }
+
+    private void appendFormatFields(Format format) {
+        // The format keys are the last headers.
+        nextKey = headers.length - FORMAT_HEADER_COUNT;
+        appendString(format.getPuid());
+        appendString(format.getMimeType());
+        appendString(format.getName());
+        appendString(format.getVersion());
+    }
+
+    private void endObject() throws IOException {
+        line.append("}\n");
+        out.append(line);
+    }
+
+    private void appendKey() {
+        if (line.charAt(line.length() - 1) != '{') {
+            line.append(',');
+        }
+        appendQuoted(headers[nextKey++]);
+        line.append(':');
+    }
+
+    private void appendLiteral(String value) {
+        appendKey();
+        line.append(value);
+    }
+
+    private void appendNumber(Number value) {
+        appendLiteral(value == null ? NULL : value.toString());
+    }
+
+    private void appendDate(Date value) {
+        appendKey();
+        if (value == null) {
+            line.append(NULL);
+        } else {
+            line.append('"').append(dateFormat.format(value)).append('"');
+        }
+    }
+
+    private void appendString(String value) {
+        appendKey();
+        if (value == null) {
+            line.append(NULL);
+        } else {
+            appendQuoted(value);
+        }
+    }
+
+    private void appendQuoted(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    line.append('\\').append(c);
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    appendChar(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void appendChar(char c) {
+        if (c < ' ') {
+            String hex = Integer.toHexString(c);
+            line.append(UNICODE_ESCAPE, 0, UNICODE_ESCAPE.length() - hex.length()).append(hex);
+        } else {
+            line.append(c);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final Writer writer) {
+        this.out = writer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ItemWriter<ProfileResourceNode> newPartitionWriter() {
+        // There is no header, so a partition is written exactly as the whole export would be.
+        final JsonLinesItemWriter partitionWriter = new JsonLinesItemWriter();
+        partitionWriter.options = options;
+        partitionWriter.headers = headers;
+        partitionWriter.hashAlgorithms = hashAlgorithms;
+        return partitionWriter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOptions(ExportOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Closes the output.
+     */
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (final IOException e) {
+            log.error(e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setHeaders(Map<String, String> headersToSet) {
+        this.hashAlgorithms = CsvItemWriter.getHashAlgorithms(headersToSet);
+        this.headers = CsvItemWriter.getHeaders(headersToSet, hashAlgorithms);
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemWriter;
+import uk.gov.nationalarchives.droid.export.interfaces.JobCancellationException;
+import uk.gov.nationalarchives.droid.export.interfaces.PartitionedItemReader;
+import uk.gov.nationalarchives.droid.profile.ProfileInstanceManager;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+/**
+ * Exports profiles as a sequence of partitions, which are read and written concurrently,
+ * each to its own temporary file, and then copied to the export output in order.
+ * <p>
+ * A profile whose reader is a {@link PartitionedItemReader} is split into consecutive ranges
+ * of partition keys, so the output is the same as exporting the profiles one after another.
+ * Profiles whose readers can't be partitioned are exported as a single partition.
+ */
+class PartitionedExport {
+
+    private static final long DEFAULT_MIN_PARTITION_KEYS = 10000;
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final long SHUTDOWN_WAIT_SECONDS = 60;
+    private static final String PARTITION_PREFIX = "droid-export-";
+    private static final String PARTITION_SUFFIX = ".part";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ExportTask task;
+    private final ItemWriter<ProfileResourceNode> itemWriter;
+    private final int partitionCount;
+    private final Path tempDirectory;
+    private final ExecutorService executor;
+    private final List<Future<Path>> partitions = new ArrayList<>();
+
+    private long minPartitionKeys = DEFAULT_MIN_PARTITION_KEYS;
+    private volatile boolean stopped;
+
+    /**
+     * @param task The export task, which is checked for cancellation as partitions are read.
+     * @param itemWriter The writer for the export, which creates a writer for each partition.
+     * @param partitionCount The most partitions to split a profile into, and to read concurrently.
+     * @param tempDirectory The directory to write partitions to, or null to use the default temporary directory.
+     */
+    PartitionedExport(ExportTask task, ItemWriter<ProfileResourceNode> itemWriter, int partitionCount,
+                      Path tempDirectory) {
+        this.task = task;
+        this.itemWriter = itemWriter;
+        this.partitionCount = partitionCount;
+        this.tempDirectory = tempDirectory;
+        this.executor = Executors.newFixedThreadPool(partitionCount);
+    }
+
+    /**
+     * @param minPartitionKeys The fewest partition keys worth giving a partition of their own.
+     */
+    void setMinPartitionKeys(long minPartitionKeys) {
+        this.minPartitionKeys = minPartitionKeys;
+    }
+
+    /**
+     * Submits the partitions of a profile for export, after any partitions already submitted.
+     * @param profileContext The profile to export.
+     * @param filter An optional filter for the nodes to export.
+     */
+    void submit(ProfileInstanceManager profileContext, Filter filter) {
+        final ItemReader<ProfileResourceNode> reader = profileContext.getNodeItemReader();
+        if (reader instanceof PartitionedItemReader) {
+            final PartitionedItemReader<ProfileResourceNode> firstReader = (PartitionedItemReader<ProfileResourceNode>) reader;
+            final long keyLimit = firstReader.getPartitionKeyLimit();
+            final int count = (int) Math.max(1, Math.min(partitionCount, keyLimit / minPartitionKeys));
+            final long keysPerPartition = (keyLimit + count - 1) / count;
+            log.debug(String.format("Exporting %d partition keys in %d partitions", keyLimit, count));
+            for (int i = 0; i < count; i++) {
+                final PartitionedItemReader<ProfileResourceNode> partitionReader = i == 0 ? firstReader
+                        : (PartitionedItemReader<ProfileResourceNode>) profileContext.getNodeItemReader();
+                final long toKey = i == count - 1 ? Long.MAX_VALUE : keysPerPartition * (i + 1);
+                partitions.add(executor.submit(new Partition(partitionReader, filter, keysPerPartition * i, toKey)));
+            }
+        } else {
+            partitions.add(executor.submit(new Partition(reader, filter, 0, Long.MAX_VALUE)));
+        }
+    }
+
+    /**
+     * Writes the partitions submitted so far to the writer, in the order they were submitted,
+     * waiting for each one to finish.
+     * @param writer The writer to copy the partitions to.
+     * @throws JobCancellationException if the export was cancelled.
+     */
+    void writeTo(Writer writer) throws JobCancellationException {
+        final char[] buffer = new char[COPY_BUFFER_SIZE];
+        for (Future<Path> partition : partitions) {
+            final Path partitionFile = getPartitionFile(partition);
+            try {
+                try (Reader in = Files.newBufferedReader(partitionFile, StandardCharsets.UTF_8)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        writer.write(buffer, 0, read);
+                    }
+                }
+                writer.flush();
+                Files.deleteIfExists(partitionFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not copy export partition " + partitionFile, e);
+            }
+        }
+    }
+
+    /**
+     * Stops any partitions still being read, waits for them, and deletes their temporary files.
+     */
+    void close() {
+        stopped = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<Path> partition : partitions) {
+            if (partition.isDone()) {
+                try {
+                    Files.deleteIfExists(partition.get());
+                } catch (InterruptedException | ExecutionException | IOException e) {
+                    log.debug("Export partition was not written, or could not be deleted", e);
+                }
+            }
+        }
+    }
+
+    private Path getPartitionFile(Future<Path> partition) throws JobCancellationException {
+        try {
+            return partition.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobCancellationException("Interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof JobCancellationException) {
+                throw (JobCancellationException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private Path createPartitionFile() throws IOException {
+        return tempDirectory == null ? Files.createTempFile(PARTITION_PREFIX, PARTITION_SUFFIX)
+                : Files.createTempFile(tempDirectory, PARTITION_PREFIX, PARTITION_SUFFIX);
+    }
+
+    /**
+     * Reads a range of a profile and writes it to a temporary file, whose path it returns.
+     */
+    private final class Partition implements Callable<Path> {
+
+        private final ItemReader<ProfileResourceNode> reader;
+        private final Filter filter;
+        private final long fromKey;
+        private final long toKey;
+
+        Partition(ItemReader<ProfileResourceNode> reader, Filter filter, long fromKey, long toKey) {
+            this.reader = reader;
+            this.filter = filter;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        @Override
+        public Path call() throws IOException, JobCancellationException {
+            final Path partitionFile = createPartitionFile();
+            boolean written = false;
+            try (Writer out = Files.newBufferedWriter(partitionFile, StandardCharsets.UTF_8)) {
+                final ItemWriter<ProfileResourceNode> partitionWriter = itemWriter.newPartitionWriter();
+                partitionWriter.open(out);
+                try {
+                    read(partitionWriter);
+                } finally {
+                    partitionWriter.close();
+                }
+                written = true;
+            } finally {
+                if (!written) {
+                    Files.deleteIfExists(partitionFile);
+                }
+            }
+            return partitionFile;
+        }
+
+        private void read(final ItemWriter<ProfileResourceNode> partitionWriter) throws JobCancellationException {
+            final ItemReaderCallback<ProfileResourceNode> callback = new ItemReaderCallback<ProfileResourceNode>() {
+                @Override
+                public void onItem(List<? extends ProfileResourceNode> itemChunk) throws JobCancellationException {
+                    partitionWriter.write(itemChunk);
+                    if (stopped || task.isCancelled()) {
+                        throw new JobCancellationException("Cancelled");
+                    }
+                }
+            };
+            if (reader instanceof PartitionedItemReader) {
+                ((PartitionedItemReader<ProfileResourceNode>) reader).readRange(callback, filter, fromKey, toKey);
+            } else {
+                reader.readAll(callback, filter);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+public class ColumnarItemWriterTest {
+
+    private static final int ID_COLUMN = 0;
+    private static final int NAME_COLUMN = 4;
+    private static final int SIZE_COLUMN = 7;
+    private static final int LAST_MODIFIED_COLUMN = 10;
+    private static final int FORMATS_COLUMN = 14;
+
+    private ColumnarItemWriter itemWriter;
+    private ByteArrayOutputStream out;
+
+    @Before
+    public void setup() {
+        itemWriter = new ColumnarItemWriter();
+        itemWriter.setHeaders(Collections.<String, String>emptyMap());
+        out = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testWritesColumnsAndRowGroupsWithDictionaryEncodedFormats() throws IOException {
+        int rows = ColumnarItemWriter.ROW_GROUP_SIZE + 10;
+        List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>();
+        for (int i = 0; i < rows; i++) {
+            ProfileResourceNode node = buildNode(i);
+            node.addFormatIdentification(buildFormat(i % 3));
+            nodes.add(node);
+        }
+        nodes.get(1).getMetaData().setSize(null);
+
+        itemWriter.open(out);
+        itemWriter.write(nodes.subList(0, 100));
+        itemWriter.write(nodes.subList(100, rows));
+        itemWriter.close();
+
+        ColumnarExport export = new ColumnarExport(out.toByteArray());
+        assertEquals(15, export.columnNames.size());
+        assertEquals("ID", export.columnNames.get(ID_COLUMN));
+        assertEquals(ColumnarItemWriter.LONG_COLUMN, (byte) export.columnTypes.get(ID_COLUMN));
+        assertEquals("NAME", export.columnNames.get(NAME_COLUMN));
+        assertEquals(ColumnarItemWriter.STRING_COLUMN, (byte) export.columnTypes.get(NAME_COLUMN));
+        assertEquals(ColumnarItemWriter.FORMATS_HEADER, export.columnNames.get(FORMATS_COLUMN));
+        assertEquals(ColumnarItemWriter.FORMATS_COLUMN, (byte) export.columnTypes.get(FORMATS_COLUMN));
+
+        assertEquals(Arrays.asList(ColumnarItemWriter.ROW_GROUP_SIZE, 10), export.rowGroupSizes);
+        assertEquals(Arrays.asList("fmt/0", "fmt/1", "fmt/2"), export.puids);
+        assertEquals(rows, export.rows.size());
+        for (int i = 0; i < rows; i++) {
+            Object[] row = export.rows.get(i);
+            assertEquals(Long.valueOf(i), row[ID_COLUMN]);
+            assertEquals("file" + i + ".txt", row[NAME_COLUMN]);
+            assertEquals(Long.valueOf(12345678L), row[LAST_MODIFIED_COLUMN]);
+            assertArrayEquals(new int[] {i % 3}, (int[]) row[FORMATS_COLUMN]);
+        }
+        assertNull(export.rows.get(1)[SIZE_COLUMN]);
+        assertEquals(Long.valueOf(10), export.rows.get(2)[SIZE_COLUMN]);
+    }
+
+    @Test
+    public void testWritesARowPerFormat() throws IOException {
+        ProfileResourceNode node = buildNode(1);
+        node.addFormatIdentification(buildFormat(7));
+        node.addFormatIdentification(buildFormat(8));
+
+        itemWriter.setOptions(ExportOptions.ONE_ROW_PER_FORMAT);
+        itemWriter.open(out);
+        itemWriter.write(Arrays.asList(node, buildNode(2)));
+        itemWriter.close();
+
+        ColumnarExport export = new ColumnarExport(out.toByteArray());
+        assertEquals(Arrays.asList("fmt/7", "fmt/8"), export.puids);
+        assertEquals(2, export.rows.size());
+        assertArrayEquals(new int[] {0}, (int[]) export.rows.get(0)[FORMATS_COLUMN]);
+        assertArrayEquals(new int[] {1}, (int[]) export.rows.get(1)[FORMATS_COLUMN]);
+        assertEquals(Long.valueOf(1), export.rows.get(1)[ID_COLUMN]);
+    }
+
+    @Test
+    public void testWritesAnEmptyExport() throws IOException {
+        itemWriter.open(out);
+        itemWriter.close();
+
+        ColumnarExport export = new ColumnarExport(out.toByteArray());
+        assertEquals(0, export.rows.size());
+        assertEquals(0, export.rowGroupSizes.size());
+    }
+
+    private static ProfileResourceNode buildNode(long id) {
+        ProfileResourceNode node = new ProfileResourceNode(new File("/my/file" + id + ".txt").toURI());
+        node.setId(id);
+        node.setExtensionMismatch(false);
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setExtension("txt");
+        metaData.setIdentificationMethod(IdentificationMethod.BINARY_SIGNATURE);
+        metaData.setLastModified(12345678L);
+        metaData.setName("file" + id + ".txt");
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setSize(10L);
+        node.setMetaData(metaData);
+        return node;
+    }
+
+    private static Format buildFormat(int i) {
+        Format format = new Format();
+        format.setPuid("fmt/" + i);
+        format.setMimeType("text/plain");
+        format.setName("Plain Text");
+        return format;
+    }
+
+    /**
+     * Reads back a whole columnar export into rows.
+     */
+    private static final class ColumnarExport {
+        private final List<String> columnNames = new ArrayList<String>();
+        private final List<Byte> columnTypes = new ArrayList<Byte>();
+        private final List<Integer> rowGroupSizes = new ArrayList<Integer>();
+        private final List<String> puids = new ArrayList<String>();
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+
+        ColumnarExport(byte[] bytes) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte[] magic = new byte[ColumnarItemWriter.MAGIC.length];
+            in.readFully(magic);
+            assertArrayEquals(ColumnarItemWriter.MAGIC, magic);
+            assertEquals(ColumnarItemWriter.VERSION, in.readInt());
+            int columnCount = in.readInt();
+            for (int i = 0; i < columnCount; i++) {
+                columnNames.add(readString(in));
+                columnTypes.add(in.readByte());
+            }
+            int rowCount;
+            while ((rowCount = in.readInt()) > 0) {
+                rowGroupSizes.add(rowCount);
+                int newFormats = in.readInt();
+                for (int i = 0; i < newFormats; i++) {
+                    puids.add(readString(in));
+                    readString(in);
+                    readString(in);
+                    readString(in);
+                }
+                Object[][] group = new Object[rowCount][columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    int length = in.readInt();
+                    byte[] columnBytes = new byte[length];
+                    in.readFully(columnBytes);
+                    DataInputStream columnIn = new DataInputStream(new ByteArrayInputStream(columnBytes));
+                    for (int row = 0; row < rowCount; row++) {
+                        group[row][column] = readValue(columnIn, columnTypes.get(column));
+                    }
+                    assertEquals(0, columnIn.available());
+                }
+                rows.addAll(Arrays.asList(group));
+            }
+            assertEquals(0, in.available());
+        }
+
+        private static Object readValue(DataInputStream in, byte type) throws IOException {
+            switch (type) {
+                case ColumnarItemWriter.LONG_COLUMN:
+                    return in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+                case ColumnarItemWriter.STRING_COLUMN:
+                    return readString(in);
+                default:
+                    int[] ids = new int[in.readInt()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = in.readInt();
+                    }
+                    return ids;
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -33,9 +33,13 @@ package uk.gov.nationalarchives.droid.export;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -402,6 +406,31 @@ public class CsvItemWriterTest {
         }
     }
     
+    @Test
+    public void testWriteHashesForEachAlgorithm() throws IOException {
+        try(final Writer writer = new StringWriter()) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("hash", "MD5_HASH");
+            headers.put("hashes", "sha256");
+            itemWriter.setHeaders(headers);
+            itemWriter.setOptions(ExportOptions.ONE_ROW_PER_FILE);
+
+            ProfileResourceNode node = buildProfileResourceNode(1, 1L);
+            node.getMetaData().setSha256Hash("2222222222222222222222222222222222222222222222222222222222222222");
+            node.addFormatIdentification(buildFormat(1));
+
+            itemWriter.open(writer);
+            itemWriter.write(Collections.singletonList(node));
+
+            final String[] lines = writer.toString().split(LINE_SEPARATOR);
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].contains("\"MD5_HASH\",\"SHA256_HASH\",\"FORMAT_COUNT\""));
+            assertTrue(lines[1].contains("\"11111111111111111111111111111111\","
+                    + "\"2222222222222222222222222222222222222222222222222222222222222222\",\"1\""));
+            assertEquals("HASH", CsvItemWriter.HEADERS[12]);
+        }
+    }
+
     private static boolean isNotWindows() {
         return !SystemUtils.IS_OS_WINDOWS;
     }
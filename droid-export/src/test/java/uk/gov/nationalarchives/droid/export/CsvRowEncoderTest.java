@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+
+/**
+ * Checks that CsvRowEncoder writes the same CSV as univocity does with the settings CsvItemWriter uses.
+ */
+public class CsvRowEncoderTest {
+
+    private static final char[] TRICKY_CHARS = {'a', 'Z', '0', ' ', '\t', '\r', '\n', '"', ',', '#', '\'', '\u0000', ' ', 'é', '中'};
+
+    private CsvWriterSettings settings;
+    private StringWriter expected;
+    private CsvWriter csvWriter;
+    private StringWriter actual;
+    private CsvRowEncoder encoder;
+    private Random random;
+
+    @Before
+    public void setup() {
+        settings = new CsvWriterSettings();
+        settings.setQuoteAllFields(true);
+        expected = new StringWriter();
+        csvWriter = new CsvWriter(expected, settings);
+        actual = new StringWriter();
+        encoder = new CsvRowEncoder(actual, settings);
+        random = new Random(42);
+    }
+
+    @Test
+    public void testTextFieldsAreTheSameAsUnivocity() throws IOException {
+        for (int row = 0; row < 20000; row++) {
+            String[] values = new String[1 + random.nextInt(5)];
+            encoder.startRow();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = randomText();
+                encoder.field(values[i]);
+            }
+            encoder.endRow();
+            csvWriter.writeRow((Object[]) values);
+        }
+        assertSameOutput();
+    }
+
+    @Test
+    public void testLineEndingsInFieldsAreTheSameAsUnivocityWithWindowsLineSeparators() throws IOException {
+        settings.getFormat().setLineSeparator("\r\n");
+        csvWriter = new CsvWriter(expected, settings);
+        encoder = new CsvRowEncoder(actual, settings);
+        String[] values = {"one\ntwo", "one\r\ntwo", "one\rtwo", "x\n\ny"};
+        for (String value : values) {
+            encoder.startRow();
+            encoder.field(value);
+            encoder.endRow();
+            csvWriter.writeRow(new Object[] {value});
+        }
+        assertSameOutput();
+    }
+
+    @Test
+    public void testNumberFieldsAreTheSameAsUnivocity() throws IOException {
+        long[] specialValues = {0, 1, -1, 9, 10, -10, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE};
+        for (long value : specialValues) {
+            writeNumber(value);
+        }
+        for (int i = 0; i < 10000; i++) {
+            writeNumber(random.nextLong() >> random.nextInt(64));
+        }
+        encoder.startRow();
+        encoder.field((Long) null);
+        encoder.endRow();
+        csvWriter.writeRow(new Object[] {""});
+        assertSameOutput();
+    }
+
+    @Test
+    public void testDateFieldsAreTheSameAsIsoDateFormat() throws IOException {
+        long millis = 0;
+        for (int i = 0; i < 20000; i++) {
+            // Mostly close together, so dates are rendered from the cache, with the odd jump to anywhere.
+            millis = i % 100 == 0 ? random.nextLong() % 100000000000000L : millis + random.nextInt(100000);
+            Date date = new Date(millis);
+            encoder.startRow();
+            encoder.field(date);
+            encoder.endRow();
+            csvWriter.writeRow(new Object[] {DateFormatUtils.ISO_DATETIME_FORMAT.format(date)});
+        }
+        assertSameOutput();
+    }
+
+    @Test
+    public void testRowsStartedLikeTheLastRowRepeatItsFirstFields() throws IOException {
+        for (int row = 0; row < 5000; row++) {
+            String first = randomText();
+            long second = random.nextLong();
+            encoder.startRow();
+            encoder.field(first);
+            encoder.field(second);
+            int prefixLength = encoder.getRowLength();
+            for (int repeat = 0; repeat < 3; repeat++) {
+                if (repeat > 0) {
+                    encoder.startRowLike(prefixLength);
+                }
+                String last = randomText();
+                encoder.field(last);
+                encoder.endRow();
+                csvWriter.writeRow(new Object[] {first, Long.toString(second), last});
+            }
+        }
+        assertSameOutput();
+    }
+
+    private void writeNumber(long value) throws IOException {
+        encoder.startRow();
+        encoder.field(value);
+        encoder.field(Long.valueOf(value));
+        encoder.endRow();
+        csvWriter.writeRow(new Object[] {Long.toString(value), Long.toString(value)});
+    }
+
+    private String randomText() {
+        if (random.nextInt(10) == 0) {
+            return random.nextBoolean() ? null : "";
+        }
+        StringBuilder text = new StringBuilder();
+        int length = 1 + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            // Mostly plain characters, so some fields take the fast path.
+            text.append(random.nextInt(4) == 0 ? TRICKY_CHARS[random.nextInt(TRICKY_CHARS.length)] : (char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    private void assertSameOutput() throws IOException {
+        encoder.flush();
+        csvWriter.flush();
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
@@ -31,11 +31,18 @@
  */
 package uk.gov.nationalarchives.droid.export;
 
+import java.io.File;
 import java.io.Writer;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Matchers.any;
@@ -52,12 +59,16 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.export.interfaces.*;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
 import uk.gov.nationalarchives.droid.profile.ProfileContextLocator;
 import uk.gov.nationalarchives.droid.profile.ProfileInstance;
 import uk.gov.nationalarchives.droid.profile.ProfileInstanceManager;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
 /**
  * @author rflitcroft
@@ -133,4 +144,112 @@ public class ExportManagerImplTest {
         verify(writer).close();
     }
 
+    @Test
+    public void testPartitionedExportIsTheSameAsSequentialExport() throws Exception {
+        final AtomicInteger rangesRead = new AtomicInteger();
+        mockPartitionedProfile("profile1", 25000, rangesRead);
+        mockPartitionedProfile("profile2", 100, rangesRead);
+        List<String> profileIdList = Arrays.asList("profile1", "profile2");
+
+        Path dir = Files.createTempDirectory("partitioned-export");
+        File sequential = dir.resolve("sequential.csv").toFile();
+        File partitioned = dir.resolve("partitioned.csv").toFile();
+
+        exportManager.setItemWriter(new CsvItemWriter());
+        exportManager.setPartitionCount(1);
+        exportManager.exportProfiles(profileIdList, sequential.getPath(), null, ExportOptions.ONE_ROW_PER_FORMAT, "UTF-8", false).get();
+        assertEquals(2, rangesRead.getAndSet(0));
+
+        exportManager.setPartitionCount(4);
+        exportManager.exportProfiles(profileIdList, partitioned.getPath(), null, ExportOptions.ONE_ROW_PER_FORMAT, "UTF-8", false).get();
+        assertEquals(3, rangesRead.get());
+
+        assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(partitioned.toPath()));
+        assertEquals(2, dir.toFile().list().length);
+
+        sequential.delete();
+        partitioned.delete();
+        dir.toFile().delete();
+    }
+
+    private void mockPartitionedProfile(String profileId, int nodeCount, AtomicInteger rangesRead) throws Exception {
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>();
+        for (int i = 0; i < nodeCount; i++) {
+            ProfileResourceNode node = new ProfileResourceNode(new URI("file:/" + profileId + "/file" + i + ".txt"));
+            node.setId((long) i);
+            node.setExtensionMismatch(false);
+            NodeMetaData metaData = new NodeMetaData();
+            metaData.setName("file" + i + ".txt");
+            metaData.setNodeStatus(NodeStatus.DONE);
+            metaData.setResourceType(ResourceType.FILE);
+            metaData.setSize((long) i);
+            node.setMetaData(metaData);
+            Format format = new Format();
+            format.setPuid("fmt/" + (i % 10));
+            node.addFormatIdentification(format);
+            nodes.add(node);
+        }
+
+        ProfileInstance profile = mock(ProfileInstance.class);
+        ProfileInstanceManager profileInstanceManager = mock(ProfileInstanceManager.class);
+        when(profileContextLocator.getProfileInstance(profileId)).thenReturn(profile);
+        when(profileContextLocator.hasProfileContext(profileId)).thenReturn(true);
+        when(profileContextLocator.openProfileInstanceManager(profile)).thenReturn(profileInstanceManager);
+        when(profileInstanceManager.getNodeItemReader()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return new ListItemReader(nodes, rangesRead);
+            }
+        });
+    }
+
+    /**
+     * A partitioned reader over a list of nodes, whose indexes are the partition keys.
+     */
+    private static class ListItemReader implements PartitionedItemReader<ProfileResourceNode> {
+
+        private static final int CHUNK_SIZE = 1000;
+
+        private final List<ProfileResourceNode> nodes;
+        private final AtomicInteger rangesRead;
+
+        ListItemReader(List<ProfileResourceNode> nodes, AtomicInteger rangesRead) {
+            this.nodes = nodes;
+            this.rangesRead = rangesRead;
+        }
+
+        @Override
+        public long getPartitionKeyLimit() {
+            return nodes.size();
+        }
+
+        @Override
+        public void readRange(ItemReaderCallback<ProfileResourceNode> callback, Filter filter, long fromKey, long toKey)
+                throws JobCancellationException {
+            rangesRead.incrementAndGet();
+            int end = (int) Math.min(toKey, nodes.size());
+            for (int i = (int) fromKey; i < end; i += CHUNK_SIZE) {
+                callback.onItem(new ArrayList<ProfileResourceNode>(nodes.subList(i, Math.min(i + CHUNK_SIZE, end))));
+            }
+        }
+
+        @Override
+        public void readAll(ItemReaderCallback<ProfileResourceNode> callback, Filter filter) throws JobCancellationException {
+            readRange(callback, filter, 0, Long.MAX_VALUE);
+        }
+
+        @Override
+        public ProfileResourceNode read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void open(Filter filter) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
 }
@@ -39,9 +39,17 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+
+import static org.junit.Assert.assertArrayEquals;
 
 import static org.mockito.Mockito.*;
 
@@ -81,4 +89,30 @@ public class ExportTaskTest {
 
         verify(pmExportTask, times(1)).newOutputFileWriterEncoded(encoding, tempFile);
     }
+
+    @Test
+    public void testCompressedExportIsGzipped() throws IOException {
+        final String destination = tempFile.toAbsolutePath().toString();
+
+        final ExportTask exportTask = new ExportTask(destination, new ArrayList<String>(), null,
+                ExportOptions.ONE_ROW_PER_FILE, "UTF-8", true, new JsonLinesItemWriter(), null);
+        exportTask.setCompressed(true);
+        exportTask.run();
+
+        try (final InputStream in = new GZIPInputStream(Files.newInputStream(tempFile))) {
+            assertArrayEquals(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testBinaryExportIsWrittenWithoutBom() throws IOException {
+        final String destination = tempFile.toAbsolutePath().toString();
+
+        final ExportTask exportTask = new ExportTask(destination, new ArrayList<String>(), null,
+                ExportOptions.ONE_ROW_PER_FILE, "UTF-8", true, new ColumnarItemWriter(), null);
+        exportTask.run();
+
+        final byte[] exported = Files.readAllBytes(tempFile);
+        assertArrayEquals(ColumnarItemWriter.MAGIC, Arrays.copyOf(exported, ColumnarItemWriter.MAGIC.length));
+    }
 }
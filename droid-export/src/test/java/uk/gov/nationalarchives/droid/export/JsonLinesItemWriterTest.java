@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.export;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang.time.DateFormatUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
+import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+public class JsonLinesItemWriterTest {
+
+    private static final long LAST_MODIFIED = 12345678L;
+
+    private JsonLinesItemWriter itemWriter;
+    private StringWriter out;
+
+    @Before
+    public void setup() {
+        itemWriter = new JsonLinesItemWriter();
+        out = new StringWriter();
+    }
+
+    @Test
+    public void testWritesAnObjectPerFileWithAnArrayOfFormats() {
+        ProfileResourceNode node = buildNode(1, "file1.txt");
+        node.addFormatIdentification(buildFormat(1));
+        node.addFormatIdentification(buildFormat(2));
+        ProfileResourceNode folder = buildNode(2, "folder");
+        folder.setParentId(1L);
+        folder.getMetaData().setSize(null);
+
+        itemWriter.setHeaders(Collections.<String, String>emptyMap());
+        itemWriter.open(out);
+        itemWriter.write(Arrays.asList(node, folder));
+        itemWriter.close();
+
+        assertEquals(nodeFields(node, "file1.txt", "1", "10", "2")
+                + ",\"FORMATS\":[" + formatFields(1) + "," + formatFields(2) + "]}\n"
+                + nodeFields(folder, "folder", "2", "null", "null") + ",\"FORMATS\":[]}\n", out.toString());
+    }
+
+    @Test
+    public void testWritesAnObjectPerFormat() {
+        ProfileResourceNode node = buildNode(1, "file1.txt");
+        node.addFormatIdentification(buildFormat(1));
+        node.addFormatIdentification(buildFormat(2));
+
+        itemWriter.setHeaders(Collections.<String, String>emptyMap());
+        itemWriter.setOptions(ExportOptions.ONE_ROW_PER_FORMAT);
+        itemWriter.open(out);
+        itemWriter.write(Arrays.asList(node, buildNode(2, "no formats")));
+        itemWriter.close();
+
+        String fields = nodeFields(node, "file1.txt", "1", "10", "2");
+        String format1 = formatFields(1);
+        String format2 = formatFields(2);
+        assertEquals(fields + "," + format1.substring(1) + "\n" + fields + "," + format2.substring(1) + "\n",
+                out.toString());
+    }
+
+    @Test
+    public void testEscapesStrings() {
+        ProfileResourceNode node = buildNode(1, "file1.txt");
+        node.getMetaData().setExtension("a \"quoted\"\\extension\twith\ncontrol\u0001chars");
+
+        itemWriter.setHeaders(Collections.<String, String>emptyMap());
+        itemWriter.open(out);
+        itemWriter.write(Arrays.asList(node));
+
+        assertEquals(true, out.toString().contains(
+                "\"EXT\":\"a \\\"quoted\\\"\\\\extension\\twith\\ncontrol\\u0001chars\""));
+    }
+
+    @Test
+    public void testUsesCustomisedHashHeaders() {
+        ProfileResourceNode node = buildNode(1, "file1.txt");
+        node.getMetaData().setHash("abc");
+        node.getMetaData().setSha1Hash("def");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("hash", "MD5_HASH");
+        headers.put("hashes", "sha1");
+
+        itemWriter.setHeaders(headers);
+        itemWriter.open(out);
+        itemWriter.write(Arrays.asList(node));
+
+        assertEquals(true, out.toString().contains("\"EXTENSION_MISMATCH\":false,\"MD5_HASH\":\"abc\",\"SHA1_HASH\":\"def\","));
+    }
+
+    private static String nodeFields(ProfileResourceNode node, String name, String id, String size, String count) {
+        String path = CsvItemWriter.toFilePath(node.getUri()).replace("\\", "\\\\");
+        String parentId = node.getParentId() == null ? "null" : node.getParentId().toString();
+        return "{\"ID\":" + id + ",\"PARENT_ID\":" + parentId
+                + ",\"URI\":\"" + DroidUrlFormat.format(node.getUri()) + "\",\"FILE_PATH\":\"" + path
+                + "\",\"NAME\":\"" + name + "\",\"METHOD\":\"Signature\",\"STATUS\":\"Done\",\"SIZE\":" + size
+                + ",\"TYPE\":\"File\",\"EXT\":\"txt\",\"LAST_MODIFIED\":\""
+                + DateFormatUtils.ISO_DATETIME_FORMAT.format(LAST_MODIFIED)
+                + "\",\"EXTENSION_MISMATCH\":false,\"HASH\":\"hash" + id + "\",\"FORMAT_COUNT\":" + count;
+    }
+
+    private static String formatFields(int i) {
+        return "{\"PUID\":\"fmt/" + i + "\",\"MIME_TYPE\":\"text/plain\",\"FORMAT_NAME\":\"Plain Text\","
+                + "\"FORMAT_VERSION\":null}";
+    }
+
+    private static ProfileResourceNode buildNode(long id, String name) {
+        ProfileResourceNode node = new ProfileResourceNode(new File("/my/file" + id + ".txt").toURI());
+        node.setId(id);
+        node.setExtensionMismatch(false);
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setExtension("txt");
+        metaData.setIdentificationMethod(IdentificationMethod.BINARY_SIGNATURE);
+        metaData.setLastModified(LAST_MODIFIED);
+        metaData.setName(name);
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setSize(10L);
+        metaData.setHash("hash" + id);
+        node.setMetaData(metaData);
+        return node;
+    }
+
+    private static Format buildFormat(int i) {
+        Format format = new Format();
+        format.setPuid("fmt/" + i);
+        format.setMimeType("text/plain");
+        format.setName("Plain Text");
+        return format;
+    }
+}
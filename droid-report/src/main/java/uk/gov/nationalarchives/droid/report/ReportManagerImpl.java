@@ -39,6 +39,10 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.logging.Log;
@@ -52,6 +56,8 @@ import uk.gov.nationalarchives.droid.profile.ProfileContextLocator;
 import uk.gov.nationalarchives.droid.profile.ProfileInstance;
 import uk.gov.nationalarchives.droid.profile.ProfileInstanceManager;
 import uk.gov.nationalarchives.droid.report.dao.ReportLineItem;
+import uk.gov.nationalarchives.droid.report.dao.ReportQuery;
+import uk.gov.nationalarchives.droid.report.dao.ReportReadObserver;
 import uk.gov.nationalarchives.droid.report.interfaces.CancellableProgressObserver;
 import uk.gov.nationalarchives.droid.report.interfaces.GroupedFieldItem;
 import uk.gov.nationalarchives.droid.report.interfaces.Report;
@@ -83,6 +89,7 @@ public class ReportManagerImpl implements ReportManager {
     private ReportSpecDao reportSpecDao;
     private ProgressObserver observer;
     private DroidGlobalConfig config;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
     
     /**
      * {@inheritDoc}
@@ -122,31 +129,76 @@ public class ReportManagerImpl implements ReportManager {
             CancellableProgressObserver progressObserver) 
         throws ReportCancelledException {
         log.info(String.format("Generating report: %s", request.getReportSpec().getName()));
-        final int totalSteps = request.getProfileIds().size() * request.getReportSpec().getItems().size();
-        int stepCount = 0;
+        final List<ReportSpecItem> specItems = request.getReportSpec().getItems();
+        final List<String> profileIds = request.getProfileIds();
+        final List<ProfileInstance> profiles = new ArrayList<ProfileInstance>(profileIds.size());
+        final List<List<List<ReportLineItem>>> profileReportData =
+                new ArrayList<List<List<ReportLineItem>>>(profileIds.size());
+        final ReportReadProgress readProgress = new ReportReadProgress(progressObserver);
 
+        // Each profile's report data is read in a single pass for all the report items,
+        // and the profiles are read concurrently:
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount,
+                profileIds.size())));
+        try {
+            final List<Future<List<List<ReportLineItem>>>> profileFutures =
+                    new ArrayList<Future<List<List<ReportLineItem>>>>(profileIds.size());
+            for (String profileId : profileIds) {
+                ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
+                profiles.add(profile);
+
+                final ProfileInstanceManager profileInstanceManager =
+                    profileContextLocator.openProfileInstanceManager(profile);
+
+                Filter filterToUse = optionalFilter == null ? profile.getFilter() : optionalFilter;
+
+                final List<ReportQuery> queries = new ArrayList<ReportQuery>(specItems.size());
+                for (ReportSpecItem specItem : specItems) {
+                    Criterion filter = ReportUtils.buildFilter(filterToUse, specItem.getFilter());
+                    queries.add(new ReportQuery(filter, specItem.getField(), specItem.getGroupByFields()));
+                }
+                final ReportReadObserver readObserver = readProgress.newProfileObserver();
+                profileFutures.add(executor.submit(new Callable<List<List<ReportLineItem>>>() {
+                    @Override
+                    public List<List<ReportLineItem>> call() {
+                        return profileInstanceManager.getReportData(queries, readObserver);
+                    }
+                }));
+            }
+
+            // Progress is reported, and cancellation checked, while the profiles are read:
+            for (Future<List<List<ReportLineItem>>> profileFuture : profileFutures) {
+                profileReportData.add(readProgress.await(profileFuture));
+                readProgress.update();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return buildReport(request, profiles, profileReportData);
+    }
+
+    /**
+     * Merges the report data of each profile into report items, grouping the data
+     * for each item by its group by values, in profile order.
+     */
+    private Report buildReport(ReportRequest request, List<ProfileInstance> profiles,
+            List<List<List<ReportLineItem>>> profileReportData) {
         Report report = new Report();
         report.setTitle(request.getReportSpec().getName());
-        for (ReportSpecItem specItem : request.getReportSpec().getItems()) {
+        final List<ReportSpecItem> specItems = request.getReportSpec().getItems();
+        for (int itemIndex = 0; itemIndex < specItems.size(); itemIndex++) {
             ReportItem item = new ReportItem();
-            item.setReportSpecItem(specItem);
+            item.setReportSpecItem(specItems.get(itemIndex));
             report.addItem(item);
             
             Map<String, GroupedFieldItem> groups = new LinkedHashMap<String, GroupedFieldItem>();
             
-            for (String profileId : request.getProfileIds()) {
-                ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
+            for (int profileIndex = 0; profileIndex < profiles.size(); profileIndex++) {
+                ProfileInstance profile = profiles.get(profileIndex);
                 report.addProfile(profile);
                 
-                ProfileInstanceManager profileInstanceManager = 
-                    profileContextLocator.openProfileInstanceManager(profile);
-                
-                Filter filterToUse = optionalFilter == null ? profile.getFilter() : optionalFilter; 
-                
-                Criterion filter = ReportUtils.buildFilter(filterToUse, specItem.getFilter());
-                
-                List<ReportLineItem> reportData = profileInstanceManager.getReportData(
-                        filter, specItem.getField(), specItem.getGroupByFields());
+                List<ReportLineItem> reportData = profileReportData.get(profileIndex).get(itemIndex);
     
                 for (ReportLineItem reportLineItem : reportData) {
                     final List<String> groupByValues = reportLineItem.getGroupByValues();
@@ -162,13 +214,6 @@ public class ReportManagerImpl implements ReportManager {
                     groupedFieldItem.addProfileData(
                             ReportUtils.buildProfileReportData(profile, reportLineItem));
                 }
-                
-                if (progressObserver != null) {
-                    progressObserver.onProgress((ProgressObserver.UNITY_PERCENT * stepCount++) / totalSteps);
-                    if (progressObserver.isCancelled()) {
-                        throw new ReportCancelledException();
-                    }
-                }
             }
         }
         
@@ -289,5 +334,21 @@ public class ReportManagerImpl implements ReportManager {
         this.config = config;
     }
 
+    /**
+     * @return the most profiles whose report data is read concurrently.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the most profiles whose report data is read concurrently.
+     * Profile data is merged in profile order, so the report is the same whatever the count.
+     * @param threadCount the number of profiles to read concurrently
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
     
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import uk.gov.nationalarchives.droid.report.dao.ReportReadObserver;
+import uk.gov.nationalarchives.droid.report.interfaces.CancellableProgressObserver;
+import uk.gov.nationalarchives.droid.report.interfaces.ReportCancelledException;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressObserver;
+
+/**
+ * Follows the progress of reading the report data of several profiles on other threads.
+ * The threads reading the data record their progress, which is passed on to the report's
+ * progress observer by the thread waiting for the data. If the report is cancelled,
+ * the threads stop reading the data when they next record their progress.
+ */
+final class ReportReadProgress {
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+    private final CancellableProgressObserver progressObserver;
+    private final List<ProfileReadObserver> profileObservers = new ArrayList<ProfileReadObserver>();
+    private volatile boolean cancelled;
+
+    /**
+     * @param progressObserver An optional observer of the progress of the report.
+     */
+    ReportReadProgress(CancellableProgressObserver progressObserver) {
+        this.progressObserver = progressObserver;
+    }
+
+    /**
+     * @return a new observer of reading the report data of a profile.
+     */
+    ReportReadObserver newProfileObserver() {
+        final ProfileReadObserver observer = new ProfileReadObserver();
+        profileObservers.add(observer);
+        return observer;
+    }
+
+    /**
+     * Waits for the report data of a profile, reporting progress while it is read.
+     * @param future The future report data of a profile.
+     * @param <T> The type of the report data.
+     * @return the report data of the profile.
+     * @throws ReportCancelledException if the report was cancelled.
+     */
+    <T> T await(Future<T> future) throws ReportCancelledException {
+        try {
+            while (true) {
+                try {
+                    return future.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    update();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReportCancelledException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) {
+                throw new ReportCancelledException();
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Reports the progress of reading the report data of all the profiles,
+     * and stops reading it if the report was cancelled.
+     * @throws ReportCancelledException if the report was cancelled.
+     */
+    void update() throws ReportCancelledException {
+        if (progressObserver != null) {
+            progressObserver.onProgress(getPercent());
+            if (progressObserver.isCancelled()) {
+                cancelled = true;
+                throw new ReportCancelledException();
+            }
+        }
+    }
+
+    private int getPercent() {
+        double done = 0;
+        for (ProfileReadObserver observer : profileObservers) {
+            done += observer.getFractionDone();
+        }
+        return profileObservers.isEmpty() ? 0
+                : (int) (ProgressObserver.UNITY_PERCENT * done / profileObservers.size());
+    }
+
+    /**
+     * Records the progress of reading the report data of a profile.
+     */
+    private final class ProfileReadObserver implements ReportReadObserver {
+
+        private volatile long stepsDone;
+        private volatile long stepCount;
+
+        @Override
+        public void onProgress(long done, long count) {
+            stepCount = count;
+            stepsDone = done;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        double getFractionDone() {
+            final long count = stepCount;
+            return count == 0 ? 0 : (double) Math.min(stepsDone, count) / count;
+        }
+    }
+}
@@ -38,6 +38,8 @@ import java.nio.file.Path;
 
 import javax.xml.transform.TransformerException;
 
+import uk.gov.nationalarchives.droid.report.interfaces.Report;
+
 /**
  * @author rflitcroft
  *
@@ -66,6 +68,17 @@ public interface ReportTransformer {
     void transformUsingXsl(Reader sourceReader, Path xslFile, Writer out)
         throws TransformerException;
 
+    /**
+     * Transforms a report with an xsl file, without writing out the report xml first.
+     *
+     * @param report the report to export.
+     * @param xslFile an xsl file to transform with.
+     * @param out the destination of the export
+     * @throws TransformerException if the transform failed
+     */
+    void transformUsingXsl(Report report, Path xslFile, Writer out)
+        throws TransformerException;
+
     /**
      * Transforms a report xml to PDF format.
      * 
@@ -76,4 +89,14 @@ public interface ReportTransformer {
      */
     void transformToPdf(Reader in, String transformLocation, OutputStream out) throws ReportTransformException;
 
+    /**
+     * Transforms a report to PDF format, without writing out the report xml first.
+     *
+     * @param report the report to transform
+     * @param transformLocation the location of the XSLT transform
+     * @param out the stream to write the PDF to
+     * @throws ReportTransformException if the transform failed
+     */
+    void transformToPdf(Report report, String transformLocation, OutputStream out) throws ReportTransformException;
+
 }
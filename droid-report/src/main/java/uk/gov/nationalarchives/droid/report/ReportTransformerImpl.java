@@ -31,35 +31,33 @@
  */
 package uk.gov.nationalarchives.droid.report;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.util.JAXBSource;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 import com.itextpdf.text.DocumentException;
 
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
-import uk.gov.nationalarchives.droid.util.FileUtil;
+import uk.gov.nationalarchives.droid.report.interfaces.Report;
 
 
 /**
@@ -68,7 +66,7 @@ import uk.gov.nationalarchives.droid.util.FileUtil;
  */
 public class ReportTransformerImpl implements ReportTransformer {
 
-    private static final String UTF8 = "UTF-8";
+    private static JAXBContext reportContext;
 
     private DroidGlobalConfig globalConfig;
     private Log log = LogFactory.getLog(this.getClass());
@@ -85,11 +83,7 @@ public class ReportTransformerImpl implements ReportTransformer {
     @Override
     public void transformUsingXsl(final Reader sourceReader, final String xslScriptLocation, final Writer out)
         throws TransformerException {
-        try (final InputStream transform = new BufferedInputStream(getClass().getClassLoader().getResourceAsStream(xslScriptLocation))) {
-            transform(sourceReader, transform, out);
-        } catch (final IOException e) {
-            throw new TransformerException(e);
-        }
+        transform(new StreamSource(sourceReader), XslTemplatesCache.getTemplates(xslScriptLocation), new StreamResult(out));
     }
     
     /**
@@ -104,23 +98,44 @@ public class ReportTransformerImpl implements ReportTransformer {
     @Override
     public void transformUsingXsl(final Reader sourceReader, final Path xslFile, final Writer out)
         throws TransformerException {
-        try (final InputStream transform = new BufferedInputStream(Files.newInputStream(xslFile))) {
-            transform(sourceReader, transform, out);
-        } catch (final IOException e) {
-            throw new TransformerException(e);
-        }
+        transform(new StreamSource(sourceReader), XslTemplatesCache.getTemplates(xslFile), new StreamResult(out));
     }
-    
-    
-    private void transform(Reader sourceReader, InputStream xsl, Writer out) throws TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Source transformSource = new StreamSource(new BufferedReader(new InputStreamReader(xsl, UTF_8)));
-        Transformer transformer = transformerFactory.newTransformer(transformSource);
-        Source source = new StreamSource(sourceReader);
-        Result result = new StreamResult(out);
+
+    /**
+     * Transforms a report using xsl, streaming the report into the transform
+     * as it is marshalled rather than writing its xml out first.
+     *
+     * @param report the report to export.
+     * @param xslFile the xsl file to use to transform the report.
+     * @param out the destination of the export
+     * @throws TransformerException if the transform failed
+     */
+    @Override
+    public void transformUsingXsl(final Report report, final Path xslFile, final Writer out)
+        throws TransformerException {
+        transform(getReportSource(report), XslTemplatesCache.getTemplates(xslFile), new StreamResult(out));
+    }
+
+    private void transform(Source source, Templates templates, Result result) throws TransformerException {
+        Transformer transformer = templates.newTransformer();
         transformer.setParameter("reportDir", getReportDir());
         transformer.transform(source, result);        
     }
+
+    private static Source getReportSource(Report report) throws TransformerException {
+        try {
+            return new JAXBSource(getReportContext(), report);
+        } catch (final JAXBException e) {
+            throw new TransformerException(e);
+        }
+    }
+
+    private static synchronized JAXBContext getReportContext() throws JAXBException {
+        if (reportContext == null) {
+            reportContext = JAXBContext.newInstance(Report.class);
+        }
+        return reportContext;
+    }
     
     private String getReportDir() {
         String dir = "";
@@ -142,24 +157,41 @@ public class ReportTransformerImpl implements ReportTransformer {
     @Override
     public void transformToPdf(final Reader in, final String transformLocation, final OutputStream out)
         throws ReportTransformException {
+        renderPdf(new StreamSource(in), transformLocation, out);
+    }
+
+    /**
+     * Transforms a report to PDF format, streaming the report into the transform as it is marshalled.
+     *
+     * @param report the report to transform
+     * @param transformLocation the location of the XSLT transform
+     * @param out the stream to write the PDF to
+     * @throws ReportTransformException if the transform failed
+     */
+    @Override
+    public void transformToPdf(final Report report, final String transformLocation, final OutputStream out)
+        throws ReportTransformException {
+        try {
+            renderPdf(getReportSource(report), transformLocation, out);
+        } catch (final TransformerException e) {
+            throw new ReportTransformException(e);
+        }
+    }
 
+    /**
+     * Transforms a report to an XHTML document in memory, and renders the document as PDF.
+     */
+    private void renderPdf(final Source source, final String transformLocation, final OutputStream out)
+        throws ReportTransformException {
         try {
-            final Path tmpXhtml = Files.createTempFile(globalConfig.getTempDir(), "xhtml~", null);
-            tmpXhtml.toFile().deleteOnExit();
-
-            try (final Writer buffer = Files.newBufferedWriter(tmpXhtml, UTF_8))  {
-                transformUsingXsl(in, transformLocation, buffer);
-                
-                final ITextRenderer renderer = new ITextRenderer();
-                renderer.setDocument(tmpXhtml.toFile());
-                renderer.layout();
-                renderer.createPDF(out);
-            } catch (TransformerException | DocumentException e) {
-                throw new ReportTransformException(e);
-            } finally {
-                FileUtil.deleteQuietly(tmpXhtml);
-            }
-        } catch (final IOException e) {
+            final DOMResult xhtml = new DOMResult();
+            transform(source, XslTemplatesCache.getTemplates(transformLocation), xhtml);
+
+            final ITextRenderer renderer = new ITextRenderer();
+            renderer.setDocument((Document) xhtml.getNode(), globalConfig.getTempDir().toUri().toString());
+            renderer.layout();
+            renderer.createPDF(out);
+        } catch (final TransformerException | DocumentException | IOException e) {
             throw new ReportTransformException(e);
         }
     }
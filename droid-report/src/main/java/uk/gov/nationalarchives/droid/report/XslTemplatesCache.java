@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Compiled report stylesheets, shared by all report transformers.
+ * Templates are thread safe, so a stylesheet is only compiled the first time it is used,
+ * or again if it is a file which has been modified since it was compiled.
+ */
+final class XslTemplatesCache {
+
+    private static final String RESOURCE_PREFIX = "resource:";
+
+    private static final ConcurrentMap<String, CompiledTransform> TEMPLATES =
+            new ConcurrentHashMap<String, CompiledTransform>();
+
+    private static final Log LOG = LogFactory.getLog(XslTemplatesCache.class);
+
+    private XslTemplatesCache() {
+    }
+
+    /**
+     * @param xslScriptLocation the location of the xsl script as a resource.
+     * @return the compiled templates for the xsl script.
+     * @throws TransformerException if the xsl script could not be read or compiled.
+     */
+    static Templates getTemplates(final String xslScriptLocation) throws TransformerException {
+        final String key = RESOURCE_PREFIX + xslScriptLocation;
+        CompiledTransform compiled = TEMPLATES.get(key);
+        if (compiled == null) {
+            try (final InputStream transform = new BufferedInputStream(
+                    XslTemplatesCache.class.getClassLoader().getResourceAsStream(xslScriptLocation))) {
+                compiled = new CompiledTransform(compile(transform), null);
+            } catch (final IOException e) {
+                throw new TransformerException(e);
+            }
+            TEMPLATES.put(key, compiled);
+        }
+        return compiled.getTemplates();
+    }
+
+    /**
+     * @param xslFile an xsl file.
+     * @return the compiled templates for the xsl file.
+     * @throws TransformerException if the xsl file could not be read or compiled.
+     */
+    static Templates getTemplates(final Path xslFile) throws TransformerException {
+        try {
+            final String key = xslFile.toAbsolutePath().toString();
+            final FileTime lastModified = Files.getLastModifiedTime(xslFile);
+            CompiledTransform compiled = TEMPLATES.get(key);
+            if (compiled == null || !lastModified.equals(compiled.getLastModified())) {
+                try (final InputStream transform = new BufferedInputStream(Files.newInputStream(xslFile))) {
+                    compiled = new CompiledTransform(compile(transform), lastModified);
+                }
+                TEMPLATES.put(key, compiled);
+            }
+            return compiled.getTemplates();
+        } catch (final IOException e) {
+            throw new TransformerException(e);
+        }
+    }
+
+    private static Templates compile(InputStream xsl) throws TransformerException {
+        TransformerFactory transformerFactory = TransformerFactory.newInstance();
+        Source transformSource = new StreamSource(new BufferedReader(new InputStreamReader(xsl, UTF_8)));
+        LOG.debug("Compiling report transform");
+        return transformerFactory.newTemplates(transformSource);
+    }
+
+    /**
+     * A stylesheet compiled into templates, with the modification time of the file it was compiled from.
+     */
+    private static final class CompiledTransform {
+
+        private final Templates templates;
+        private final FileTime lastModified;
+
+        CompiledTransform(Templates templates, FileTime lastModified) {
+            this.templates = templates;
+            this.lastModified = lastModified;
+        }
+
+        Templates getTemplates() {
+            return templates;
+        }
+
+        FileTime getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.report.dao.ReportReadObserver;
+import uk.gov.nationalarchives.droid.report.interfaces.CancellableProgressObserver;
+import uk.gov.nationalarchives.droid.report.interfaces.ReportCancelledException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReportReadProgressTest {
+
+    @Test
+    public void testProgressIsAveragedOverProfiles() throws Exception {
+        final CancellableProgressObserver progressObserver = mock(CancellableProgressObserver.class);
+        final ReportReadProgress readProgress = new ReportReadProgress(progressObserver);
+        final ReportReadObserver first = readProgress.newProfileObserver();
+        final ReportReadObserver second = readProgress.newProfileObserver();
+
+        first.onProgress(50, 100);
+        second.onProgress(0, 10);
+        readProgress.update();
+        verify(progressObserver).onProgress(25);
+
+        second.onProgress(10, 10);
+        readProgress.update();
+        verify(progressObserver).onProgress(75);
+    }
+
+    @Test
+    public void testCancellingReportCancelsReadingProfiles() throws Exception {
+        final CancellableProgressObserver progressObserver = mock(CancellableProgressObserver.class);
+        final ReportReadProgress readProgress = new ReportReadProgress(progressObserver);
+        final ReportReadObserver profileObserver = readProgress.newProfileObserver();
+        readProgress.update();
+        assertFalse(profileObserver.isCancelled());
+
+        when(progressObserver.isCancelled()).thenReturn(true);
+        try {
+            readProgress.update();
+            fail("Expected the report to be cancelled");
+        } catch (ReportCancelledException e) {
+            assertTrue(profileObserver.isCancelled());
+        }
+    }
+
+    @Test
+    public void testAwaitReturnsReportData() throws Exception {
+        final ReportReadProgress readProgress = new ReportReadProgress(null);
+        assertEquals("data", readProgress.await(CompletableFuture.completedFuture("data")));
+    }
+
+    @Test(expected = ReportCancelledException.class)
+    public void testCancelledReadingIsReportedAsCancelledReport() throws Exception {
+        final ReportReadProgress readProgress = new ReportReadProgress(null);
+        final FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                throw new CancellationException();
+            }
+        });
+        future.run();
+        readProgress.await(future);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import javax.xml.transform.Templates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class XslTemplatesCacheTest {
+
+    private static final String TEXT_XSL = "Text.txt.xsl";
+    private static final String HTML_XSL = "Web page.html.xsl";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReusesTemplatesForSameResource() throws Exception {
+        Templates templates = XslTemplatesCache.getTemplates(TEXT_XSL);
+        assertSame(templates, XslTemplatesCache.getTemplates(TEXT_XSL));
+    }
+
+    @Test
+    public void testCompilesDifferentResourceSeparately() throws Exception {
+        assertNotSame(XslTemplatesCache.getTemplates(TEXT_XSL), XslTemplatesCache.getTemplates(HTML_XSL));
+    }
+
+    @Test
+    public void testReusesTemplatesForSameFile() throws Exception {
+        Path xslFile = writeStylesheet("first.xsl", "first");
+        Templates templates = XslTemplatesCache.getTemplates(xslFile);
+        assertSame(templates, XslTemplatesCache.getTemplates(xslFile));
+    }
+
+    @Test
+    public void testCompilesDifferentFileSeparately() throws Exception {
+        Path firstFile = writeStylesheet("first.xsl", "first");
+        Path secondFile = writeStylesheet("second.xsl", "second");
+        assertNotSame(XslTemplatesCache.getTemplates(firstFile), XslTemplatesCache.getTemplates(secondFile));
+    }
+
+    @Test
+    public void testRecompilesModifiedFile() throws Exception {
+        Path xslFile = writeStylesheet("modified.xsl", "before");
+        Templates templates = XslTemplatesCache.getTemplates(xslFile);
+        writeStylesheet("modified.xsl", "after");
+        Files.setLastModifiedTime(xslFile,
+                FileTime.fromMillis(Files.getLastModifiedTime(xslFile).toMillis() + 60000));
+        assertNotSame(templates, XslTemplatesCache.getTemplates(xslFile));
+    }
+
+    private Path writeStylesheet(String name, String text) throws IOException {
+        String xsl = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:output method=\"text\"/>"
+                + "<xsl:template match=\"/\">" + text + "</xsl:template>"
+                + "</xsl:stylesheet>";
+        Path xslFile = folder.getRoot().toPath().resolve(name);
+        Files.write(xslFile, xsl.getBytes(StandardCharsets.UTF_8));
+        return xslFile;
+    }
+}
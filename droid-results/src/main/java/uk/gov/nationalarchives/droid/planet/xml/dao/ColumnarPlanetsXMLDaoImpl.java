@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.planet.xml.dao;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Criterion;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.NodePropertyValues;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.SqlUtils;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarProfileStore;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+
+/**
+ * Reads the data for planets XML from the columnar profile store of a {@link ColumnarResultHandlerDao}.
+ * <p>
+ * Like the ColumnarReportDaoImpl, every statistic is aggregated in memory from a single read of the
+ * rows of the store, and the filter is matched against each node read.  Folders are only counted as
+ * unreadable folders, and a node matching a filter on its formats is counted once.
+ */
+public class ColumnarPlanetsXMLDaoImpl implements PlanetsXMLDao {
+
+    private final Log log = LogFactory.getLog(getClass());
+    private ColumnarResultHandlerDao resultHandlerDao;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PlanetsXMLData getDataForPlanetsXML(Filter filter) {
+        final Criterion criterion = filter != null && filter.isEnabled() && !filter.getCriteria().isEmpty()
+                ? SqlUtils.getQueryBuilder(filter) : null;
+        PlanetsXMLData planetsXMLData = null;
+        try {
+            planetsXMLData = new PlanetsScan(criterion).run();
+        } catch (IOException e) {
+            log.error("Error reading planets XML data from the columnar profile store", e);
+        }
+        return planetsXMLData;
+    }
+
+    /**
+     * @param resultHandlerDao The result handler dao holding the columnar profile store.
+     */
+    public void setResultHandlerDao(ColumnarResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /**
+     * Reads every node in the store once, adding each file to the profile statistics and the
+     * groups of its year and of each of its identifications.
+     */
+    private final class PlanetsScan {
+
+        private final Criterion criterion;
+        private final SizeAndCount files = new SizeAndCount();
+        private final Map<Integer, SizeAndCount> byYear = new TreeMap<Integer, SizeAndCount>();
+        private final Map<String, SizeAndCount> byPuid = new TreeMap<String, SizeAndCount>();
+        private final Map<String, Format> formats = new TreeMap<String, Format>();
+        private final Calendar calendar = Calendar.getInstance();
+        private long readableFiles;
+        private long unreadableFiles;
+        private long unreadableFolders;
+
+        PlanetsScan(Criterion criterion) {
+            this.criterion = criterion;
+        }
+
+        PlanetsXMLData run() throws IOException {
+            final ColumnarProfileStore store = resultHandlerDao.getStore();
+            final Map<String, Format> puidFormatMap = resultHandlerDao.getPUIDFormatMap();
+            resultHandlerDao.commit();
+            final int rowCount = store.getRowCount();
+            for (int row = 0; row < rowCount; row++) {
+                final ProfileResourceNode node = store.loadRow(row, puidFormatMap);
+                if (node != null && (criterion == null || NodePropertyValues.matches(criterion, node))) {
+                    readNode(node);
+                }
+            }
+            final PlanetsXMLData planetsXMLData = new PlanetsXMLData();
+            planetsXMLData.setProfileStat(getProfileStat());
+            planetsXMLData.setGroupByPuid(getGroupByPuid());
+            planetsXMLData.setGroupByYear(getGroupByYear());
+            return planetsXMLData;
+        }
+
+        private void readNode(ProfileResourceNode node) {
+            final NodeMetaData metaData = node.getMetaData();
+            final NodeStatus status = metaData.getNodeStatus();
+            final boolean unreadable = status == NodeStatus.ACCESS_DENIED || status == NodeStatus.NOT_FOUND;
+            if (metaData.getResourceType() == ResourceType.FOLDER) {
+                unreadableFolders += unreadable ? 1 : 0;
+            } else {
+                if (unreadable) {
+                    unreadableFiles++;
+                } else {
+                    readableFiles++;
+                }
+                final Long size = metaData.getSize();
+                files.add(size);
+                getSizeAndCount(byYear, getYear(metaData.getLastModifiedDate())).add(size);
+                for (Format format : NodePropertyValues.getIdentifications(node)) {
+                    final String puid = StringUtils.defaultString(format.getPuid());
+                    formats.put(puid, format);
+                    getSizeAndCount(byPuid, puid).add(size);
+                }
+            }
+        }
+
+        private ProfileStat getProfileStat() {
+            final ProfileStat profileStat = new ProfileStat();
+            profileStat.setProfileSmallestSize(BigInteger.valueOf(files.smallest));
+            profileStat.setProfileLargestSize(BigInteger.valueOf(files.largest));
+            profileStat.setProfileMeanSize(files.getMean());
+            profileStat.setProfileTotalSize(BigInteger.valueOf(files.total));
+            profileStat.setProfileTotalReadableFiles(BigInteger.valueOf(readableFiles));
+            profileStat.setProfileTotalUnReadableFiles(BigInteger.valueOf(unreadableFiles));
+            profileStat.setProfileTotalUnReadableFolders(BigInteger.valueOf(unreadableFolders));
+            return profileStat;
+        }
+
+        private List<GroupByPuidSizeAndCountRow> getGroupByPuid() {
+            final List<GroupByPuidSizeAndCountRow> rows = new ArrayList<GroupByPuidSizeAndCountRow>(byPuid.size());
+            for (Map.Entry<String, SizeAndCount> entry : byPuid.entrySet()) {
+                final Format format = formats.get(entry.getKey());
+                final GroupByPuidSizeAndCountRow row = new GroupByPuidSizeAndCountRow();
+                row.setPuid(entry.getKey());
+                row.setCount(BigInteger.valueOf(entry.getValue().count));
+                row.setSize(entry.getValue().getTotal());
+                row.setFormatName(format.getName());
+                row.setFormatVersion(format.getVersion());
+                row.setMimeType(format.getMimeType());
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        private List<GroupByYearSizeAndCountRow> getGroupByYear() {
+            final List<GroupByYearSizeAndCountRow> rows = new ArrayList<GroupByYearSizeAndCountRow>(byYear.size());
+            for (Map.Entry<Integer, SizeAndCount> entry : byYear.entrySet()) {
+                final GroupByYearSizeAndCountRow row = new GroupByYearSizeAndCountRow();
+                row.setYear(entry.getKey());
+                row.setCount(BigInteger.valueOf(entry.getValue().count));
+                row.setSize(entry.getValue().getTotal());
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        /*
+         * Files without a last modified date are in year 0, as the database returns them.
+         */
+        private int getYear(Date date) {
+            int year = 0;
+            if (date != null) {
+                calendar.setTime(date);
+                year = calendar.get(Calendar.YEAR);
+            }
+            return year;
+        }
+
+        private <K> SizeAndCount getSizeAndCount(Map<K, SizeAndCount> groups, K key) {
+            SizeAndCount sizeAndCount = groups.get(key);
+            if (sizeAndCount == null) {
+                sizeAndCount = new SizeAndCount();
+                groups.put(key, sizeAndCount);
+            }
+            return sizeAndCount;
+        }
+    }
+
+    /**
+     * A count of files, and the total, smallest and largest of their sizes.  As in the database,
+     * files without a size are counted, but are not part of the size aggregates.
+     */
+    private static final class SizeAndCount {
+
+        private long count;
+        private long sized;
+        private long total;
+        private long smallest;
+        private long largest;
+
+        void add(Long size) {
+            count++;
+            if (size != null) {
+                smallest = sized == 0 ? size : Math.min(smallest, size);
+                largest = sized == 0 ? size : Math.max(largest, size);
+                total += size;
+                sized++;
+            }
+        }
+
+        BigDecimal getTotal() {
+            return BigDecimal.valueOf(total).setScale(1);
+        }
+
+        /*
+         * The database averages whole numbers of bytes, so the mean is a whole number too.
+         */
+        BigDecimal getMean() {
+            return BigDecimal.valueOf(sized == 0 ? 0 : total / sized).setScale(1);
+        }
+    }
+}
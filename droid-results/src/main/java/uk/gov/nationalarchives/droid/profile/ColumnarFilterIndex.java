@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.QueryBuilder;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarProfileStore;
+
+/**
+ * The filter status of each node in a {@link ColumnarProfileStore} for one filter, as the
+ * JDBCProfileDao finds it with SQL: 1 if a node matches the filter itself, 2 if it is not a file
+ * and one of its descendants matches, or 0 if it is filtered out.
+ * <p>
+ * Every row of the store is read once to find the statuses, and after that only the rows appended
+ * since are read.  If a node which matched is saved again and no longer matches, or nodes are
+ * deleted, its ancestors may no longer have a matching descendant, so every row is read again.
+ */
+final class ColumnarFilterIndex {
+
+    private static final int MATCHES = 1;
+    private static final int DESCENDANT_MATCHES = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ColumnarProfileStore store;
+    private final QueryBuilder criterion;
+    private final String key;
+
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private int rowsRead;
+    private long deletionCount;
+
+    /**
+     * @param store The store holding the nodes to filter.
+     * @param criterion The criterion of the filter.
+     */
+    ColumnarFilterIndex(ColumnarProfileStore store, QueryBuilder criterion) {
+        this.store = store;
+        this.criterion = criterion;
+        this.key = getKey(criterion);
+    }
+
+    /**
+     * @param filterCriterion The criterion of a filter.
+     * @return Whether this index holds the statuses for a filter with the same criteria.
+     */
+    boolean isFor(QueryBuilder filterCriterion) {
+        return key.equals(getKey(filterCriterion));
+    }
+
+    /**
+     * Reads any rows appended to the store since the statuses were last updated.
+     * @param puidFormatMap A map of PUIDs to the formats to add as identifications.
+     * @throws IOException If the rows could not be read.
+     */
+    synchronized void update(Map<String, Format> puidFormatMap) throws IOException {
+        final long deletions = store.getDeletionCount();
+        if (deletions != deletionCount) {
+            clear();
+            deletionCount = deletions;
+        }
+        final int rowCount = store.getRowCount();
+        while (!readRows(rowCount, puidFormatMap)) {
+            clear();
+        }
+    }
+
+    /**
+     * @param node A node loaded from the store.
+     * @return The filter status of the node: 1 if it matches, 2 if a descendant matches, or 0 if neither does.
+     */
+    synchronized int getFilterStatus(ProfileResourceNode node) {
+        final int nodeFlags = getFlags(node.getId());
+        final int status;
+        if ((nodeFlags & MATCHES) != 0) {
+            status = MATCHES;
+        } else if ((nodeFlags & DESCENDANT_MATCHES) != 0
+                && node.getMetaData().getResourceType() != ResourceType.FILE) {
+            status = DESCENDANT_MATCHES;
+        } else {
+            status = 0;
+        }
+        return status;
+    }
+
+    /**
+     * @param nodeId The id of a node.
+     * @return Whether the node or any of its descendants matches, without loading the node.
+     */
+    synchronized boolean mayMatch(long nodeId) {
+        return getFlags(nodeId) != 0;
+    }
+
+    /*
+     * Returns false if a node which matched no longer matches, as its ancestors can't be updated.
+     */
+    private boolean readRows(int rowCount, Map<String, Format> puidFormatMap) throws IOException {
+        for (; rowsRead < rowCount; rowsRead++) {
+            final ProfileResourceNode node = store.loadRow(rowsRead, puidFormatMap);
+            if (node != null) {
+                final int id = (int) node.getId().longValue();
+                ensureCapacity(id);
+                if (NodePropertyValues.matches(criterion, node)) {
+                    flags[id] |= MATCHES;
+                } else if ((flags[id] & MATCHES) != 0) {
+                    return false;
+                }
+                // A node may be saved after its children, so its ancestors are marked once it has a row.
+                if (flags[id] != 0) {
+                    markAncestors(node.getParentId());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void markAncestors(Long parentId) throws IOException {
+        Long ancestor = parentId;
+        while (ancestor != null && (getFlags(ancestor) & DESCENDANT_MATCHES) == 0) {
+            final int id = (int) ancestor.longValue();
+            ensureCapacity(id);
+            flags[id] |= DESCENDANT_MATCHES;
+            ancestor = store.getParentId(id);
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(flags, (byte) 0);
+        rowsRead = 0;
+    }
+
+    private int getFlags(long nodeId) {
+        return nodeId > 0 && nodeId < flags.length ? flags[(int) nodeId] : 0;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= flags.length) {
+            flags = Arrays.copyOf(flags, Math.max(id + 1, flags.length * 2));
+        }
+    }
+
+    private static String getKey(QueryBuilder criterion) {
+        return criterion.toEjbQl() + Arrays.deepToString(criterion.getValues());
+    }
+}
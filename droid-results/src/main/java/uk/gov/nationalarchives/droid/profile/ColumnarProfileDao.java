@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.QueryBuilder;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarProfileStore;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+
+/**
+ * A ProfileDao which finds profile resource nodes in the columnar profile store of a
+ * {@link ColumnarResultHandlerDao}.  Formats are still held in the profile database,
+ * so format operations are delegated to the format dao.
+ * <p>
+ * Filters are matched against the nodes in memory.  The filter status of every node for the
+ * last filter used is kept in a {@link ColumnarFilterIndex}, so a folder is shown if any of its
+ * descendants match, as it is when the JDBCProfileDao filters with SQL.
+ */
+public class ColumnarProfileDao implements ProfileDao {
+
+    private static final int CHILDREN_PER_READ = 256;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private ProfileDao formatDao;
+    private ColumnarResultHandlerDao resultHandlerDao;
+    private ColumnarFilterIndex filterIndex;
+
+    @Override
+    public void saveFormat(Format format) {
+        formatDao.saveFormat(format);
+    }
+
+    @Override
+    public List<Format> getAllFormats() {
+        return formatDao.getAllFormats();
+    }
+
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodes(Long parentId) {
+        try {
+            final List<ProfileResourceNode> childNodes = resultHandlerDao.getStore().loadChildren(
+                    parentId, resultHandlerDao.getPUIDFormatMap());
+            for (final ProfileResourceNode child : childNodes) {
+                setDisplayStatus(child);
+            }
+            return childNodes;
+        } catch (IOException e) {
+            log.error("An exception occurred finding nodes with parent id " + parentId, e);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodes(Long parentId, Filter filter) {
+        return filter != null && filter.isEnabled()
+                ? findProfileResourceNodes(parentId, filter, 0, Integer.MAX_VALUE)
+                : findProfileResourceNodes(parentId);
+    }
+
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodes(Long parentId, Filter filter, long afterNodeId, int pageSize) {
+        List<ProfileResourceNode> childNodes = Collections.emptyList();
+        if (filter != null && filter.isEnabled()) {
+            childNodes = findFilteredNodes(parentId, filter, afterNodeId, pageSize);
+        } else {
+            try {
+                childNodes = resultHandlerDao.getStore().loadChildren(
+                        parentId, afterNodeId, pageSize, resultHandlerDao.getPUIDFormatMap());
+                for (final ProfileResourceNode child : childNodes) {
+                    setDisplayStatus(child);
+                }
+            } catch (IOException e) {
+                log.error("An exception occurred finding a page of nodes with parent id " + parentId, e);
+            }
+        }
+        return childNodes;
+    }
+
+    @Override
+    public void initialise() {
+        formatDao.initialise();
+    }
+
+    /**
+     * @param formatDao The dao to save and find formats with.
+     */
+    public void setFormatDao(ProfileDao formatDao) {
+        this.formatDao = formatDao;
+    }
+
+    /**
+     * @param resultHandlerDao The result handler dao holding the columnar profile store.
+     */
+    public void setResultHandlerDao(ColumnarResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /*
+     * Child ids are read a few at a time, and only children which match the filter, or have a
+     * descendant which does, are loaded.
+     */
+    private List<ProfileResourceNode> findFilteredNodes(Long parentId, Filter filter, long afterNodeId, int pageSize) {
+        final ColumnarProfileStore store = resultHandlerDao.getStore();
+        final Map<String, Format> puidFormatMap = resultHandlerDao.getPUIDFormatMap();
+        final List<ProfileResourceNode> childNodes = new ArrayList<>();
+        try {
+            final ColumnarFilterIndex index = getFilterIndex(SqlUtils.getQueryBuilder(filter));
+            index.update(puidFormatMap);
+            long after = afterNodeId;
+            int[] childIds;
+            do {
+                childIds = store.getChildIds(parentId, after, CHILDREN_PER_READ);
+                for (int i = 0; i < childIds.length && childNodes.size() < pageSize; i++) {
+                    final ProfileResourceNode child = index.mayMatch(childIds[i]) ? store.load(childIds[i], puidFormatMap) : null;
+                    final int filterStatus = child == null ? 0 : index.getFilterStatus(child);
+                    if (filterStatus > 0) {
+                        child.setFilterStatus(filterStatus);
+                        setDisplayStatus(child);
+                        childNodes.add(child);
+                    }
+                }
+                after = childIds.length == 0 ? after : childIds[childIds.length - 1];
+            } while (childIds.length > 0 && childNodes.size() < pageSize);
+            return childNodes;
+        } catch (IOException e) {
+            log.error("An exception occurred finding filtered nodes with parent id " + parentId, e);
+        }
+        return Collections.emptyList();
+    }
+
+    private synchronized ColumnarFilterIndex getFilterIndex(QueryBuilder criterion) {
+        if (filterIndex == null || !filterIndex.isFor(criterion)) {
+            filterIndex = new ColumnarFilterIndex(resultHandlerDao.getStore(), criterion);
+        }
+        return filterIndex;
+    }
+
+    /*
+     * Shows folders without children as empty, and files without identifications as having none,
+     * as the JDBCProfileDao does, so the GUI displays the appropriate icons.
+     */
+    private void setDisplayStatus(ProfileResourceNode node) {
+        final NodeMetaData metaData = node.getMetaData();
+        if (metaData.getResourceType() == ResourceType.FOLDER) {
+            if (metaData.getNodeStatus() == NodeStatus.DONE && !resultHandlerDao.getStore().hasChildren(node.getId())) {
+                metaData.setNodeStatus(NodeStatus.EMPTY);
+            }
+        } else if (node.getIdentificationCount() == null) {
+            node.setZeroIdentifications();
+        }
+    }
+
+}
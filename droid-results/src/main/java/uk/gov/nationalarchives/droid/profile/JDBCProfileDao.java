@@ -142,6 +142,11 @@ public class JDBCProfileDao implements ProfileDao {
 
             nodeMetaData.setExtension(getNullableString("EXTENSION", rs));
             nodeMetaData.setHash(getNullableString("HASH", rs));
+            if (SqlUtils.hasColumn(rs, "SHA256_HASH")) { // profiles made before hashes had their own columns won't.
+                nodeMetaData.setMd5Hash(getNullableString("MD5_HASH", rs));
+                nodeMetaData.setSha1Hash(getNullableString("SHA1_HASH", rs));
+                nodeMetaData.setSha256Hash(getNullableString("SHA256_HASH", rs));
+            }
 
             Integer identificationMethodIndex = getNullableInteger("IDENTIFICATION_METHOD", rs);
             nodeMetaData.setIdentificationMethod(identificationMethodIndex == null ? null : IdentificationMethod.values()[identificationMethodIndex]);
@@ -188,6 +193,10 @@ public class JDBCProfileDao implements ProfileDao {
                                                            + "ON ID.NODE_ID = PRN.NODE_ID";
     private static final String FIND_CHILD_IDS           = FIND_CHILDREN + " AND PRN.PARENT_ID = ?";
     private static final String FIND_TOP_LEVEL_CHILD_IDS = FIND_CHILDREN + " AND PRN.PARENT_ID IS NULL";
+    private static final String NEXT_PAGE                = " AND NODE_ID > ? ORDER BY NODE_ID FETCH FIRST %d ROWS ONLY";
+    private static final String NEXT_FILTERED_NODES      = " and profile.node_id > ?";
+    private static final String NEXT_FILTERED_PAGE       = ") AS PAGE WHERE PAGE.FILTERSTATUS > 0 ORDER BY PAGE.NODE_ID FETCH FIRST %d ROWS ONLY";
+    private static final String PAGE_CHILD_IDS           = " AND PRN.NODE_ID BETWEEN ? AND ?";
 
     private static final String dummyPuid = "INSERT INTO FORMAT (PUID,MIME_TYPE,NAME,VERSION) VALUES ('','','','')";
     //CHECKSTYLE:ON
@@ -334,11 +343,83 @@ public class JDBCProfileDao implements ProfileDao {
         return Collections.emptyList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodes(final Long parentId, final Filter filter,
+                                                              final long afterNodeId, final int pageSize) {
+        try {
+            final List<ProfileResourceNode> childNodes;
+            if (filter == null) {
+                final String query = SELECT_MAIN + "WHERE PARENT_ID " + getParentIdQuery(parentId)
+                        + String.format(NEXT_PAGE, pageSize);
+                childNodes = jdbcTemplate.query(query, PROFILE_RESOURCE_NODE_ROW_MAPPER_WITH_EMPTY_FOLDER,
+                        getPageParameters(new Object[0], parentId, afterNodeId));
+            } else {
+                final QueryBuilder queryBuilder = SqlUtils.getQueryBuilder(filter);
+                // Only nodes after the page start have their filter status worked out.
+                final String query = "SELECT * FROM (" + getSQLQueryString(queryBuilder.toEjbQl(), parentId)
+                        + NEXT_FILTERED_NODES + String.format(NEXT_FILTERED_PAGE, pageSize);
+                childNodes = jdbcTemplate.query(query, PROFILE_RESOURCE_NODE_ROW_MAPPER_WITH_FILTER,
+                        getPageParameters(queryBuilder.getValues(), parentId, afterNodeId));
+            }
+
+            loadPageIdentifications(parentId, childNodes);
+
+            return childNodes;
+        } catch (DataAccessException ex) {
+            log.error("A database exception occurred finding a page of nodes with parent id " + parentId, ex);
+        }
+        return Collections.emptyList();
+    }
+
     @Override
     public void initialise() {
         populateResultHandlerReferenceData();
     }
 
+    /*
+     * The filter values are used twice by the filter query, once for the nodes and once for their children,
+     * followed by the parent id if there is one, and the node id the page starts after.
+     */
+    private Object[] getPageParameters(final Object[] filterValues, final Long parentId, final long afterNodeId) {
+        final List<Object> parameters = new ArrayList<>(filterValues.length * 2 + 2);
+        Collections.addAll(parameters, filterValues);
+        Collections.addAll(parameters, filterValues);
+        if (parentId != null) {
+            parameters.add(parentId);
+        }
+        parameters.add(afterNodeId);
+        return parameters.toArray();
+    }
+
+    /*
+     * A page of child nodes is in node id order, so only the identifications of children
+     * between the first and last nodes in the page are needed.
+     */
+    private void loadPageIdentifications(final Long parentId, final List<ProfileResourceNode> childNodes) {
+        if (!childNodes.isEmpty()) {
+            final ResultSetExtractor extractor = new ResultSetExtractor() {
+                @Override
+                public Object extractData(ResultSet rs) throws SQLException {
+                    addIdentificationsToNodes(rs, childNodes, resultHandlerDao.getPUIDFormatMap());
+                    return null;
+                }
+            };
+
+            final Long firstNodeId = childNodes.get(0).getId();
+            final Long lastNodeId = childNodes.get(childNodes.size() - 1).getId();
+            if (parentId == null) {
+                jdbcTemplate.query(FIND_TOP_LEVEL_CHILD_IDS + PAGE_CHILD_IDS,
+                        new Object[] {firstNodeId, lastNodeId}, extractor);
+            } else {
+                jdbcTemplate.query(FIND_CHILD_IDS + PAGE_CHILD_IDS,
+                        new Object[] {parentId, firstNodeId, lastNodeId}, extractor);
+            }
+        }
+    }
+
 
     private void loadIdentifications(Long parentId, final List<ProfileResourceNode> childNodes) {
         if (childNodes.size() > 0) {
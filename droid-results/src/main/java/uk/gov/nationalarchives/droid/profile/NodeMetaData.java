@@ -32,10 +32,12 @@
 package uk.gov.nationalarchives.droid.profile;
 
 import java.util.Date;
+import java.util.Map;
 
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
 import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.MultiHashGenerator;
 
 /**
  * @author rflitcroft
@@ -64,6 +66,12 @@ public class NodeMetaData {
     
     private String hash;
 
+    private String md5Hash;
+
+    private String sha1Hash;
+
+    private String sha256Hash;
+
     /**
      * Default constructor.
      */
@@ -84,6 +92,9 @@ public class NodeMetaData {
         this.identificationMethod = toCopy.identificationMethod;
         this.resourceType         = toCopy.resourceType;
         this.hash                 = toCopy.hash;
+        this.md5Hash              = toCopy.md5Hash;
+        this.sha1Hash             = toCopy.sha1Hash;
+        this.sha256Hash           = toCopy.sha256Hash;
     }
 
     /**
@@ -217,4 +228,80 @@ public class NodeMetaData {
         return hash;
     }
 
+    /**
+     * @return the md5 hash
+     */
+    public String getMd5Hash() {
+        return md5Hash;
+    }
+
+    /**
+     * @param md5Hash the md5 hash to set
+     */
+    public void setMd5Hash(String md5Hash) {
+        this.md5Hash = md5Hash;
+    }
+
+    /**
+     * @return the sha1 hash
+     */
+    public String getSha1Hash() {
+        return sha1Hash;
+    }
+
+    /**
+     * @param sha1Hash the sha1 hash to set
+     */
+    public void setSha1Hash(String sha1Hash) {
+        this.sha1Hash = sha1Hash;
+    }
+
+    /**
+     * @return the sha256 hash
+     */
+    public String getSha256Hash() {
+        return sha256Hash;
+    }
+
+    /**
+     * @param sha256Hash the sha256 hash to set
+     */
+    public void setSha256Hash(String sha256Hash) {
+        this.sha256Hash = sha256Hash;
+    }
+
+    /**
+     * Sets the hashes for each algorithm they were generated with.
+     * @param hashes the hashes keyed by algorithm name, or null if no hashes were generated.
+     */
+    public void setHashes(Map<String, String> hashes) {
+        if (hashes != null) {
+            md5Hash = hashes.get(MultiHashGenerator.MD5);
+            sha1Hash = hashes.get(MultiHashGenerator.SHA1);
+            sha256Hash = hashes.get(MultiHashGenerator.SHA256);
+        }
+    }
+
+    /**
+     * @param algorithm the name of a hash algorithm.
+     * @return the hash generated with the algorithm, or null if there isn't one.
+     */
+    public String getHash(String algorithm) {
+        final String result;
+        switch (algorithm) {
+            case MultiHashGenerator.MD5:
+                result = md5Hash;
+                break;
+            case MultiHashGenerator.SHA1:
+                result = sha1Hash;
+                break;
+            case MultiHashGenerator.SHA256:
+                result = sha256Hash;
+                break;
+            default:
+                result = null;
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Criterion;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.PropertyValues;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * The filter property values of a profile resource node and one of its identifications,
+ * as the profile database holds them.  File names, extensions and format names are
+ * upper case, as filters on them are compared with upper case columns, and a node
+ * without identifications has a single identification of the NULL format.
+ */
+public final class NodePropertyValues implements PropertyValues {
+
+    private static final List<Format> NO_IDENTIFICATIONS = Collections.singletonList(Format.NULL);
+
+    private final ProfileResourceNode node;
+    private Format format = Format.NULL;
+
+    /**
+     * @param node The node to supply the property values of.
+     */
+    public NodePropertyValues(ProfileResourceNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Returns whether a node matches a criterion, which it does if any of its
+     * identifications match, as it does when the database joins nodes to their identifications.
+     * @param criterion The criterion to match.
+     * @param node The node to match.
+     * @return whether the node matches the criterion.
+     */
+    public static boolean matches(Criterion criterion, ProfileResourceNode node) {
+        final NodePropertyValues values = new NodePropertyValues(node);
+        for (Format identification : getIdentifications(node)) {
+            values.setFormat(identification);
+            if (criterion.matches(values)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param node The node to get the identifications of.
+     * @return the formats the node is identified as, or the NULL format if there are none.
+     */
+    public static List<Format> getIdentifications(ProfileResourceNode node) {
+        final List<Format> identifications = node.getFormatIdentifications();
+        return identifications.isEmpty() ? NO_IDENTIFICATIONS : identifications;
+    }
+
+    /**
+     * @param format The identification to supply format property values for.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public Object getValue(String propertyName) {
+        final Object value;
+        if (propertyName.startsWith("metaData.")) {
+            value = getMetaDataValue(propertyName);
+        } else if (propertyName.startsWith("format.")) {
+            value = getFormatValue(propertyName);
+        } else if ("identificationCount".equals(propertyName)) {
+            value = getIdentificationCount();
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    private Object getMetaDataValue(String propertyName) {
+        final NodeMetaData metaData = node.getMetaData();
+        final Object value;
+        switch (propertyName) {
+            case "metaData.name":
+                value = StringUtils.upperCase(metaData.getName());
+                break;
+            case "metaData.extension":
+                value = StringUtils.upperCase(metaData.getExtension());
+                break;
+            case "metaData.size":
+                value = metaData.getSize();
+                break;
+            case "metaData.lastModifiedDate":
+                value = metaData.getLastModifiedDate();
+                break;
+            case "metaData.resourceType":
+                value = metaData.getResourceType();
+                break;
+            case "metaData.identificationMethod":
+                value = metaData.getIdentificationMethod();
+                break;
+            case "metaData.nodeStatus":
+                value = metaData.getNodeStatus();
+                break;
+            case "metaData.extensionMismatch":
+                value = node.getExtensionMismatch();
+                break;
+            default:
+                value = null;
+        }
+        return value;
+    }
+
+    private Object getFormatValue(String propertyName) {
+        final Object value;
+        switch (propertyName) {
+            case "format.puid":
+                value = StringUtils.defaultString(format.getPuid());
+                break;
+            case "format.name":
+                value = StringUtils.upperCase(StringUtils.defaultString(format.getName()));
+                break;
+            case "format.mimeType":
+                value = StringUtils.defaultString(format.getMimeType());
+                break;
+            case "format.version":
+                value = StringUtils.defaultString(format.getVersion());
+                break;
+            default:
+                value = null;
+        }
+        return value;
+    }
+
+    /*
+     * Files without identifications are saved with an identification count of zero, which the
+     * node only keeps if it was not loaded from a store which leaves the count out.
+     */
+    private Integer getIdentificationCount() {
+        final Integer count = node.getIdentificationCount();
+        return count == null && node.getMetaData().getResourceType() != ResourceType.FOLDER ? Integer.valueOf(0) : count;
+    }
+}
@@ -63,6 +63,7 @@ public class ProfileContextLocator {
     private static final String HIBERNATE_CREATE = "hibernate.hbm2ddl.auto";
     private static final String BLANK_PROFILE = "profile.template";
     private static final String SIG_PROFILE = "profile\\.\\d+\\.template";
+    private static final String RESULT_CACHE_FILE = "result_cache/identification_results.cache";
     
     private final Log log = LogFactory.getLog(getClass());
     private DroidGlobalConfig globalConfig;
@@ -98,6 +99,8 @@ public class ProfileContextLocator {
                     .getLong(DroidGlobalProperty.MAX_BYTES_TO_SCAN.getName()));
             profileInstance.setMatchAllExtensions(globalConfig.getProperties()
                     .getBoolean(DroidGlobalProperty.EXTENSION_ALL.getName()));
+            profileInstance.setResultStore(globalConfig.getProperties()
+                    .getString(DroidGlobalProperty.RESULT_STORE.getName(), null));
             return profileInstance;
         }
     }
@@ -164,6 +167,7 @@ public class ProfileContextLocator {
         props.setProperty("signatureFilePath", signatureFile.toAbsolutePath().toString());
         props.setProperty("submissionQueueFile", submissionQueueFile.toAbsolutePath().toString());
         props.setProperty("tempDirLocation", globalConfig.getTempDir().toAbsolutePath().toString());
+        props.setProperty("signatureSnapshotDir", globalConfig.getSignatureSnapshotDir().toAbsolutePath().toString());
         props.setProperty("profileHome", profileHome.toAbsolutePath().toString());
         
         props.setProperty("containerSigPath", containerSignatureFile.toAbsolutePath().toString());
@@ -173,6 +177,17 @@ public class ProfileContextLocator {
         props.setProperty("hashAlgorithm", String.valueOf(profile.getHashAlgorithm()));
         props.setProperty("maxBytesToScan", String.valueOf(profile.getMaxBytesToScan()));
         props.setProperty("matchAllExtensions", String.valueOf(profile.getMatchAllExtensions()));
+        props.setProperty("resultStore", profile.getResultStore());
+        props.setProperty("resultCacheMaxEntries", String.valueOf(
+                globalConfig.getProperties().getInt(DroidGlobalProperty.RESULT_CACHE_MAX_ENTRIES.getName(), 0)));
+        props.setProperty("postProcessThreads", String.valueOf(
+                globalConfig.getProperties().getInt(DroidGlobalProperty.POST_PROCESS_THREADS.getName(), 4)));
+        props.setProperty("postProcessQueueCapacity", String.valueOf(
+                globalConfig.getProperties().getInt(DroidGlobalProperty.POST_PROCESS_QUEUE_CAPACITY.getName(), 256)));
+        props.setProperty("exportNodeIdOrder", String.valueOf(
+                globalConfig.getProperties().getBoolean(DroidGlobalProperty.EXPORT_NODE_ID_ORDER.getName(), false)));
+        props.setProperty("resultCacheFile",
+                globalConfig.getDroidWorkDir().resolve(RESULT_CACHE_FILE).toAbsolutePath().toString());
  
         String createUrl = globalConfig.getProperties().getString("database.createUrl");
         if (createUrl == null || createUrl.isEmpty()) {
@@ -75,6 +75,22 @@ public interface ProfileDao {
      */
     List<ProfileResourceNode> findProfileResourceNodes(Long parentId, Filter filter);
 
+    /**
+     * Finds a page of the children of a node, in node id order.  The next page starts
+     * after the node id of the last node in the previous one.
+     *
+     * @param parentId
+     *            the parentId of the nodes sought, or null for the top level nodes
+     * @param filter
+     *            to filter the results, or null for all nodes.
+     * @param afterNodeId
+     *            only nodes with a node id greater than this are returned.
+     * @param pageSize
+     *            the maximum number of nodes to return.
+     * @return a page of the child nodes, which is shorter than the page size if there are no more.
+     */
+    List<ProfileResourceNode> findProfileResourceNodes(Long parentId, Filter filter, long afterNodeId, int pageSize);
+
     /**
      * Allows for customised initialisation behaviour (e.g. for new versus existing installation).
      */
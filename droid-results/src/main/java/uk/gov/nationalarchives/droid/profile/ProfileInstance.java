@@ -54,8 +54,13 @@ import org.apache.commons.logging.LogFactory;
 @XmlAccessorType(XmlAccessType.FIELD)
 public class ProfileInstance {
 
+    /** The result store of profiles whose results are stored in a columnar profile store. */
+    public static final String COLUMNAR_RESULT_STORE = "columnar";
+
     private static final Log LOG = LogFactory.getLog(ProfileInstance.class);
 
+    private static final String DEFAULT_RESULT_STORE = "jdbc";
+
     @XmlAttribute(name = "Id")
     private String uuid;
 
@@ -135,6 +140,9 @@ public class ProfileInstance {
     
     @XmlElement(name = "MatchAllExtensions")
     private Boolean matchAllExtensions;
+
+    @XmlElement(name = "ResultStore")
+    private String resultStore;
     
     @XmlTransient
     private Set<ProfileEventListener> eventListeners = new HashSet<ProfileEventListener>();
@@ -624,5 +632,22 @@ public class ProfileInstance {
     public Boolean getMatchAllExtensions() {
         return matchAllExtensions;
     }
+
+    /**
+     *
+     * @return Where the results of the profile are stored: jdbc for the profile database,
+     * or columnar for a columnar profile store.  Profiles saved before this could be chosen use jdbc.
+     */
+    public String getResultStore() {
+        return resultStore == null ? DEFAULT_RESULT_STORE : resultStore;
+    }
+
+    /**
+     *
+     * @param resultStore Where the results of the profile are stored: jdbc or columnar.
+     */
+    public void setResultStore(String resultStore) {
+        this.resultStore = resultStore;
+    }
     
 }
@@ -45,6 +45,8 @@ import uk.gov.nationalarchives.droid.profile.referencedata.ReferenceData;
 import uk.gov.nationalarchives.droid.report.dao.GroupByField;
 import uk.gov.nationalarchives.droid.report.dao.ReportFieldEnum;
 import uk.gov.nationalarchives.droid.report.dao.ReportLineItem;
+import uk.gov.nationalarchives.droid.report.dao.ReportQuery;
+import uk.gov.nationalarchives.droid.report.dao.ReportReadObserver;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 
 /**
@@ -96,6 +98,19 @@ public interface ProfileInstanceManager {
      */
     List<ProfileResourceNode> findAllProfileResourceNodes(Long parentId);
 
+    /**
+     * Finds a page of the children of a profile resource node, in node id order.
+     *
+     * @param parentId
+     *            the ID of the node to search under
+     * @param afterNodeId
+     *            only children with a node id greater than this are returned
+     * @param pageSize
+     *            the maximum number of children to return
+     * @return a page of the immediate children, shorter than the page size if there are no more
+     */
+    List<ProfileResourceNode> findProfileResourceNodes(Long parentId, long afterNodeId, int pageSize);
+
     /**
      * @return the progress moniot for this profile manager.
      */
@@ -160,4 +175,13 @@ public interface ProfileInstanceManager {
     List<ReportLineItem> getReportData(Criterion filter, ReportFieldEnum reportField, 
             List<GroupByField> groupByFields);
 
+    /**
+     * Gets report data for several report items, reading the profile once for all of them.
+     * @param queries The report items to get data for.
+     * @param observer An optional observer of the progress of reading the data, which can cancel reading it.
+     * @return Report data for each item, in the same order as the queries.
+     * @throws java.util.concurrent.CancellationException if the observer cancelled reading the data.
+     */
+    List<List<ReportLineItem>> getReportData(List<ReportQuery> queries, ReportReadObserver observer);
+
 }
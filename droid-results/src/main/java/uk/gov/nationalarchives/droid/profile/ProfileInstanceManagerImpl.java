@@ -66,6 +66,8 @@ import uk.gov.nationalarchives.droid.report.dao.GroupByField;
 import uk.gov.nationalarchives.droid.report.dao.ReportDao;
 import uk.gov.nationalarchives.droid.report.dao.ReportFieldEnum;
 import uk.gov.nationalarchives.droid.report.dao.ReportLineItem;
+import uk.gov.nationalarchives.droid.report.dao.ReportQuery;
+import uk.gov.nationalarchives.droid.report.dao.ReportReadObserver;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 import uk.gov.nationalarchives.droid.signature.FormatCallback;
 import uk.gov.nationalarchives.droid.signature.SaxSignatureFileParser;
@@ -397,6 +399,16 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         return profileDao.findProfileResourceNodes(parentId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodes(Long parentId, long afterNodeId, int pageSize) {
+        final Filter filter = profileInstance.getFilter();
+        final Filter pageFilter = filter.isEnabled() && filter.hasCriteria() ? filter : null;
+        return profileDao.findProfileResourceNodes(parentId, pageFilter, afterNodeId, pageSize);
+    }
+
     /**
      * @return the profileInstance
      */
@@ -478,6 +490,14 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         return reportDao.getReportData(filter, reportField, groupByFields);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<List<ReportLineItem>> getReportData(List<ReportQuery> queries, ReportReadObserver observer) {
+        return reportDao.getReportData(queries, observer);
+    }
+
     /**
      * @param planetsDao
      *            the planetsDao to set
@@ -136,6 +136,20 @@ public interface ProfileManager {
     List<ProfileResourceNode> findProfileResourceNodeAndImmediateChildren(
             String profileUuid, Long parentId);
 
+    /**
+     * @param profileUuid
+     *            the profile ID
+     * @param parentId
+     *            the ID of the parent of the nodes
+     * @param afterNodeId
+     *            only children with a node id greater than this are returned
+     * @param pageSize
+     *            the maximum number of children to return
+     * @return a page of the immediate children of the node, in node id order.
+     */
+    List<ProfileResourceNode> findProfileResourceNodeChildren(
+            String profileUuid, Long parentId, long afterNodeId, int pageSize);
+
     /**
      * @param profileUuid
      *            the profile ID
@@ -241,6 +241,16 @@ public class ProfileManagerImpl implements ProfileManager {
         return profileInstanceManager.findAllProfileResourceNodes(parentId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ProfileResourceNode> findProfileResourceNodeChildren(
+            String profileId, Long parentId, long afterNodeId, int pageSize) {
+        ProfileInstanceManager profileInstanceManager = getProfileInstanceManager(profileId);
+        return profileInstanceManager.findProfileResourceNodes(parentId, afterNodeId, pageSize);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -271,6 +271,23 @@ public final class SqlUtils {
         return rsmd.getColumnCount();
     }
 
+    /**
+     * Returns whether the specified ResultSet has a column.
+     * @param resultSet The ResultSet to look for the column in
+     * @param column The name of the column
+     * @return true if the ResultSet has a column with that name
+     * @throws SQLException SQL Exception
+     */
+    public static boolean hasColumn(final ResultSet resultSet, final String column) throws SQLException {
+        final ResultSetMetaData rsmd = resultSet.getMetaData();
+        for (int i = rsmd.getColumnCount(); i > 0; i--) {
+            if (column.equalsIgnoreCase(rsmd.getColumnName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Retrieves an integer value (or null) from a given position in a ResultSet.
      * @param position Column index within ResultSet to look for an integer value
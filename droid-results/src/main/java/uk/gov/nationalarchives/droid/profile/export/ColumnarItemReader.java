@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.export;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Criterion;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
+import uk.gov.nationalarchives.droid.export.interfaces.JobCancellationException;
+import uk.gov.nationalarchives.droid.export.interfaces.PartitionedItemReader;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.NodePropertyValues;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.SqlUtils;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarProfileStore;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+
+/**
+ * Reads the profile resource nodes in the columnar profile store of a {@link ColumnarResultHandlerDao},
+ * in the order they were first saved.  Rows of the store are used as partition keys.
+ * <p>
+ * There is no query engine behind the columnar store, so an enabled filter is evaluated in memory
+ * against each node read.  As with the JDBC export, a node is read if any of its identifications
+ * match the filter, and all of its identifications are exported.
+ */
+public class ColumnarItemReader implements PartitionedItemReader<ProfileResourceNode> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private ColumnarResultHandlerDao resultHandlerDao;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private ColumnarProfileStore store;
+    private Map<String, Format> puidFormatMap;
+    private Criterion criterion;
+    private int endRow;
+    private int nextRow;
+
+    @Override
+    public void open(Filter filter) {
+        criterion = filter != null && filter.isEnabled() ? SqlUtils.getQueryBuilder(filter) : null;
+        store = resultHandlerDao.getStore();
+        puidFormatMap = resultHandlerDao.getPUIDFormatMap();
+        resultHandlerDao.commit();
+        endRow = store.getRowCount();
+        nextRow = 0;
+    }
+
+    @Override
+    public long getPartitionKeyLimit() {
+        resultHandlerDao.commit();
+        return resultHandlerDao.getStore().getRowCount();
+    }
+
+    @Override
+    public ProfileResourceNode read() {
+        ProfileResourceNode node = null;
+        try {
+            while (node == null && nextRow < endRow) {
+                node = store.loadRow(nextRow++, puidFormatMap);
+                if (node != null && criterion != null && !NodePropertyValues.matches(criterion, node)) {
+                    node = null;
+                }
+            }
+        } catch (IOException e) {
+            log.error("An exception occurred reading a node from the columnar profile store", e);
+            nextRow = endRow;
+        }
+        if (node != null) {
+            setDisplayStatus(node);
+        }
+        return node;
+    }
+
+    @Override
+    public void readAll(ItemReaderCallback<ProfileResourceNode> callback, Filter filter)
+        throws JobCancellationException {
+        readRange(callback, filter, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void readRange(ItemReaderCallback<ProfileResourceNode> callback, Filter filter, long fromRow, long toRow)
+        throws JobCancellationException {
+        open(filter);
+        nextRow = (int) Math.min(fromRow, endRow);
+        endRow = (int) Math.min(toRow, endRow);
+        try {
+            List<ProfileResourceNode> chunk = new ArrayList<>(chunkSize);
+            ProfileResourceNode node;
+            while ((node = read()) != null) {
+                chunk.add(node);
+                if (chunk.size() == chunkSize) {
+                    callback.onItem(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                callback.onItem(chunk);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        store = null;
+        puidFormatMap = null;
+        criterion = null;
+    }
+
+    /**
+     * @param resultHandlerDao The result handler dao holding the columnar profile store.
+     */
+    public void setResultHandlerDao(ColumnarResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /**
+     * @param chunkSize The number of nodes to pass to the callback at a time.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    private void setDisplayStatus(ProfileResourceNode node) {
+        final NodeMetaData metaData = node.getMetaData();
+        if (metaData.getResourceType() == ResourceType.FOLDER) {
+            if (metaData.getNodeStatus() == NodeStatus.DONE && !store.hasChildren(node.getId())) {
+                metaData.setNodeStatus(NodeStatus.EMPTY);
+            }
+        } else if (node.getIdentificationCount() == null) {
+            node.setZeroIdentifications();
+        }
+    }
+
+}
@@ -34,13 +34,11 @@ package uk.gov.nationalarchives.droid.profile.export;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLDataException;
 import java.sql.SQLException;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Collections;
 
 import javax.sql.DataSource;
 
@@ -51,9 +49,9 @@ import org.apache.commons.logging.LogFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.QueryBuilder;
-import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
 import uk.gov.nationalarchives.droid.export.interfaces.JobCancellationException;
+import uk.gov.nationalarchives.droid.export.interfaces.PartitionedItemReader;
 import uk.gov.nationalarchives.droid.profile.JDBCProfileDao;
 import uk.gov.nationalarchives.droid.profile.NodeMetaData;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
@@ -65,7 +63,7 @@ import uk.gov.nationalarchives.droid.results.handlers.JDBCBatchResultHandlerDao;
  * @author Brian O'Reilly (based on SQLItemReader).
  * @param <T> The type of the item to read.
  */
-public class JDBCSqlItemReader<T> implements ItemReader<T> {
+public class JDBCSqlItemReader<T> implements PartitionedItemReader<T> {
 
     private static final String PUID = "PUID";
     private static final String NODE_ID = "NODE_ID";
@@ -77,15 +75,24 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
             + "\t\t  \t\telse false\n"
             + "\t\t  \tEND\n"
             + "\t\t  ELSE false\n"
-            + "\t\tEND as EMPTY_DIR,  ";
+            + "\t\tEND as EMPTY_DIR ";
 
 
-    private static final String SELECT_PROFILE_ALL_FIELDS = "select p.*, ";
+    private static final String SELECT_PROFILE_ALL_FIELDS = "select p.* ";
+    private static final String SELECT_IDENTIFICATION_PUID = ", i.puid ";
+    private static final String JOIN_IDENTIFICATIONS = "inner join identification i on i.node_id = p.node_id ";
+    private static final String ORDER_BY_NODE_ID = "order by p.node_id";
+    private static final String ORDER_BY_URI = "order by p.uri, p.node_id";
+    private static final String NODE_ID_RANGE = " p.node_id >= ? and p.node_id < ? ";
+    private static final String SELECT_MAX_NODE_ID = "SELECT MAX(NODE_ID) FROM PROFILE_RESOURCE_NODE";
 
     private ResultSet cursor;
+    private boolean onNodeRow;
     private PreparedStatement profileStatement;
+    private Connection profileConnection;
     private int fetchSize;
     private int chunkSize;
+    private boolean nodeIdOrder;
 
     private DataSource datasource;
 
@@ -144,39 +151,31 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
 
     /**
      * Reads the next profileResourceNode from the cursor.
+     * In URI order, each node is joined to its identifications, so a node with several formats is
+     * read from consecutive rows of the cursor.  In node id order, nodes and identifications are both
+     * read in NODE_ID order, so the formats for each node are merged in from the identification cursor
+     * rather than queried for node by node.
      * @return The ProfileResourceNode to read, or null if there are no further nodes.
      */
-    //CHECKSTYLE:OFF  One statement too many ...
     @SuppressWarnings("unchecked")
     private ProfileResourceNode readNode() {
 
         try {
-            if (cursor.next()) {
+            if (nodeIdOrder ? cursor.next() : onNodeRow) {
 
                 ProfileResourceNode profileResourceNode;
                 if (filter != null && filter.isEnabled()) {
-                    profileResourceNode = JDBCProfileDao.PROFILE_RESOURCE_NODE_ROW_MAPPER.mapRow(cursor, 0); //We don't filter for export with filter column like in GUI.
-                }else {
+                    //We don't filter for export with filter column like in GUI.
+                    profileResourceNode = JDBCProfileDao.PROFILE_RESOURCE_NODE_ROW_MAPPER.mapRow(cursor, 0);
+                } else {
                     profileResourceNode = JDBCProfileDao.PROFILE_RESOURCE_NODE_ROW_MAPPER_WITH_EMPTY_FOLDER.mapRow(cursor, 0);
                 }
                 NodeMetaData metaData = profileResourceNode.getMetaData();
 
-                int numberOfIdentifications =  cursor.getInt("id_count");
-
-                for (int i = numberOfIdentifications; i > 0; i--) {
-                    String puid = cursor.getString(PUID);
-                    if (cursor.getLong(NODE_ID) == profileResourceNode.getId()) {
-                        Format format = this.identificationReader.getFormatForPuid(puid);
-                        profileResourceNode.addFormatIdentification(format);
-                    } else {
-                        throw new SQLDataException("Unexpected node ID during traversal of identification results!");
-                    }
-
-                    if (i > 1) {
-                        if (!cursor.next()) {
-                            break;
-                        }
-                    }
+                if (nodeIdOrder) {
+                    this.identificationReader.addFormatsTo(profileResourceNode);
+                } else {
+                    addJoinedFormatsTo(profileResourceNode);
                 }
 
                 if (metaData.getResourceType() != ResourceType.FOLDER
@@ -192,7 +191,18 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
 
         return null;
     }
-    //CHECKSTYLE:ON
+
+    /*
+     * Adds the formats on the rows joined to a node, leaving the cursor on the first row of the next node.
+     */
+    private void addJoinedFormatsTo(ProfileResourceNode node) throws SQLException {
+        final long nodeId = node.getId();
+        do {
+            node.addFormatIdentification(this.identificationReader.getFormatForPuid(cursor.getString(PUID)));
+            onNodeRow = cursor.next();
+        } while (onNodeRow && cursor.getLong(NODE_ID) == nodeId);
+    }
+
     /**
      *
      * @return The item read from the  cursor (which must be a ProfileResourceNode or subclass thereof
@@ -215,9 +225,29 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
      * @throws JobCancellationException If the caller cancels the operation
      */
     public void readAll(ItemReaderCallback<T> callback, Filter itemFilter) throws JobCancellationException {
-        open(itemFilter);
+        readRange(callback, itemFilter, 0, Long.MAX_VALUE);
+    }
 
-        this.identificationReader = new IdentificationReader();
+    /**
+     * Reads the nodes whose partition keys lie in a range.  In node id order, the partition key of a node
+     * is its node id.  In URI order, every node has a partition key of zero, so the nodes are all read
+     * in a single range.
+     * @param callback the callback with items read
+     * @param itemFilter an optional filter
+     * @param fromKey the first partition key to read (inclusive)
+     * @param toKey the partition key to read up to (exclusive)
+     * @throws JobCancellationException If the caller cancels the operation
+     */
+    @Override
+    public void readRange(ItemReaderCallback<T> callback, Filter itemFilter, long fromKey, long toKey)
+        throws JobCancellationException {
+        if (nodeIdOrder) {
+            open(itemFilter, fromKey, toKey);
+        } else if (fromKey <= 0 && toKey > 0) {
+            open(itemFilter, 0, Long.MAX_VALUE);
+        } else {
+            return;
+        }
 
         try {
             List<T> chunk = new ArrayList<T>();
@@ -248,8 +278,50 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
      */
     //@Override
     public void open(Filter itemFilter) {
+        open(itemFilter, 0, Long.MAX_VALUE);
+    }
+
+    private void open(Filter itemFilter, long fromNodeId, long toNodeId) {
         this.filter = itemFilter;
-        this.cursor = getProfileCursor(itemFilter);
+        this.cursor = getProfileCursor(itemFilter, fromNodeId, toNodeId);
+        this.identificationReader = new IdentificationReader();
+        this.onNodeRow = false;
+        try {
+            if (nodeIdOrder) {
+                this.identificationReader.openIdentifications(fromNodeId, toNodeId);
+            } else if (this.cursor != null) {
+                this.onNodeRow = this.cursor.next();
+            }
+        } catch (SQLException ex) {
+            log.error("A database exception occurred reading the first node", ex);
+        }
+    }
+
+    /**
+     * In node id order, node ids are used as partition keys, so the limit is one more than the largest node id.
+     * In URI order, every node has a partition key of zero, so the export is always read as a single
+     * partition whatever partition count is asked for: only exports in node id order
+     * (export.nodeIdOrder=true) can be split into concurrent partitions.
+     * @return One more than the largest partition key in the profile, or zero if it has no nodes.
+     */
+    @Override
+    public long getPartitionKeyLimit() {
+        long limit = 0;
+        if (nodeIdOrder) {
+            try (Connection conn = datasource.getConnection();
+                 PreparedStatement maxNodeId = conn.prepareStatement(SELECT_MAX_NODE_ID);
+                 ResultSet results = maxNodeId.executeQuery()) {
+                if (results.next()) {
+                    limit = results.getLong(1) + 1;
+                }
+            } catch (SQLException ex) {
+                log.error("A database exception occurred getting the largest node id", ex);
+            }
+        } else {
+            log.info("Exporting in URI order as a single partition: set export.nodeIdOrder=true to export in concurrent partitions");
+            limit = 1;
+        }
+        return limit;
     }
 
     /**
@@ -267,41 +339,43 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
                 this.profileStatement.close();
             }
 
-            this.identificationReader.closeResources();
+            if (this.profileConnection != null) {
+                this.profileConnection.close();
+            }
+
+            if (this.identificationReader != null) {
+                this.identificationReader.closeResources();
+            }
         } catch (SQLException e) {
             log.error("Error cleaning up JDBSCSqlItemReader", e);
         }
     }
 
     /**
-     * Get a cursor over all of the results, with the forward-only flag set.
+     * Get a cursor over all of the results in a range of node ids, with the forward-only flag set.
      * 
      * @return a forward-only {@link ResultSet}
      */
     //CHECKSTYLE:OFF Too mant statements and a few other minor issues, revisit when time allows..
-    private ResultSet getProfileCursor(Filter filter)  {
+    private ResultSet getProfileCursor(Filter filter, long fromNodeId, long toNodeId)  {
 
         ResultSet profileResultSet = null;
 
         try {
             final Connection conn = datasource.getConnection();
+            this.profileConnection = conn;
 
             String queryString = "";
             boolean filterExists = filter != null && filter.isEnabled();
             if (filterExists) {
                 QueryBuilder queryBuilder = SqlUtils.getQueryBuilder(filter);
                 String ejbFragment = queryBuilder.toEjbQl();
-                boolean formatCriteriaExist = ejbFragment.contains("format.");
                 String sqlFilter = SqlUtils.transformEJBtoSQLFields(ejbFragment, "p", "f");
                 queryString = SELECT_PROFILE_ALL_FIELDS;
 
-                queryString += "(select count('x') from identification i1 where i1.node_id = p.node_id) AS id_count, i.PUID ";
-
-                queryString += "from profile_resource_node p inner join identification i on p.node_id = i.node_id ";
-
-                if (formatCriteriaExist) {
-                    queryString += " inner join format f on f.puid = i.puid ";
-                }
+                queryString += getIdentificationPuid();
+                queryString += "from profile_resource_node p ";
+                queryString += getIdentificationJoin();
 
                 //(1) To get only rows including the filter value e.g. if there are multiple PUIDs but only one is
                 // listed in the filter, only the matching one will be returned:
@@ -310,12 +384,12 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
                 //(2) TO get all identifications where any of the identifications matches a filter condition.
                 // E.g. if there are 2 PUIDs but only one is listed in the filter, both will be returned.
                 // This is the current behaviour with DROID 6.1.5
-                queryString += "where p.node_id IN (SELECT p2.node_id FROM profile_resource_node p2 ";
+                queryString += "where" + NODE_ID_RANGE + "and p.node_id IN (SELECT p2.node_id FROM profile_resource_node p2 ";
                 queryString += " INNER JOIN identification i2 ON p2.node_id = i2.node_id ";
                 queryString += "INNER JOIN format f2 on i2.puid = f2.puid ";
-                queryString += "WHERE " + sqlFilter.replace("f.", "f2.") + ") order by p.uri,p.node_id";
+                queryString += "WHERE " + sqlFilter.replace("f.", "f2.") + ") " + getOrder();
 
-                int i = 0;
+                int i = 2;
 
                 this.profileStatement = conn.prepareStatement(queryString);
 
@@ -345,12 +419,18 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
                     }
                 }
             } else {
-                queryString = SELECT_PROFILE_ALL_FIELDS;
+                queryString = SELECT_PROFILE_ALL_FIELDS + ", ";
                 queryString += EMPTY_FOLTER_SUBSELECT;
-                queryString += "(select count('x') from identification i1 where i1.node_id = p.node_id) AS id_count, i.PUID ";
-                queryString += "from profile_resource_node p  inner join identification i on p.node_id = i.node_id order by p.uri,p.node_id";
+                queryString += getIdentificationPuid();
+                queryString += "from profile_resource_node p " + getIdentificationJoin();
+                queryString += "where" + NODE_ID_RANGE + getOrder();
                 profileStatement = conn.prepareStatement(queryString);
             }
+            profileStatement.setLong(1, fromNodeId);
+            profileStatement.setLong(2, toNodeId);
+            if (fetchSize > 0) {
+                profileStatement.setFetchSize(fetchSize);
+            }
             profileResultSet = profileStatement.executeQuery();
 
         } catch (SQLException ex) {
@@ -361,6 +441,19 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
 
     }
     //CHECKSTYLE:ON
+
+    private String getIdentificationPuid() {
+        return nodeIdOrder ? "" : SELECT_IDENTIFICATION_PUID;
+    }
+
+    private String getIdentificationJoin() {
+        return nodeIdOrder ? "" : JOIN_IDENTIFICATIONS;
+    }
+
+    private String getOrder() {
+        return nodeIdOrder ? ORDER_BY_NODE_ID : ORDER_BY_URI;
+    }
+
     /**
      * Set the cursor fetch size.
      * @param fetchSize  The number of records to fetch each time.
@@ -377,65 +470,69 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
         this.chunkSize = chunkSize;
     }
 
-    private class IdentificationReader {
+    /**
+     * Sets whether nodes are read in node id (discovery) order rather than URI order.
+     * Node id order needs no sort, and lets an export be read in concurrent partitions,
+     * but the order of the nodes depends on the order they were found in when profiling.
+     * @param nodeIdOrder Whether to read nodes in node id order.
+     */
+    public void setNodeIdOrder(boolean nodeIdOrder) {
+        this.nodeIdOrder = nodeIdOrder;
+    }
 
-        //CHECKSTYLE:OFF  1 char over line limit.  Let's have some common sense, please...
-        private static final String FORMAT_QUERY = "SELECT T1.NODE_ID, T1.PUID, T2.MIME_TYPE, T2.NAME, T2.VERSION "
-                + "FROM IDENTIFICATION AS T1 INNER JOIN FORMAT AS T2 ON T1.PUID = T2.PUID "
-                + "WHERE T1.NODE_ID = ?";
+    private class IdentificationReader {
 
-        private static final String FORMAT_QUERY_RANGE = "SELECT T1.NODE_ID, T1.PUID, T2.MIME_TYPE, T2.NAME, T2.VERSION "
-                + "FROM IDENTIFICATION AS T1 INNER JOIN FORMAT AS T2 ON T1.PUID = T2.PUID "
-                + "WHERE T1.NODE_ID BETWEEN ? AND ?";
-        //CHECKSTYLE:ON
+        private static final String IDENTIFICATION_QUERY = "SELECT NODE_ID, PUID FROM IDENTIFICATION "
+                + "WHERE NODE_ID >= ? AND NODE_ID < ? ORDER BY NODE_ID";
         private static final String SELECT_FORMATS               = "SELECT * FROM FORMAT";
-        private static final String SELECT_FORMAT_COUNT          = "SELECT COUNT('x') AS total FROM FORMAT";
 
         private Map<String, Format> formats;
         private Connection connection;
-        private PreparedStatement formatsStatement;
+        private PreparedStatement identificationsStatement;
+        private ResultSet identifications;
+        private boolean hasIdentification;
 
         IdentificationReader()  {
+            this.formats = loadAllFormats();
+        }
+
+        /**
+         * Opens a cursor over the identifications of the nodes in a range of node ids, in NODE_ID order.
+         * @param fromNodeId the first node id to read identifications for (inclusive)
+         * @param toNodeId the node id to read identifications up to (exclusive)
+         */
+        void openIdentifications(long fromNodeId, long toNodeId) {
             try {
                 this.connection  = JDBCSqlItemReader.this.datasource.getConnection();
-                this.formatsStatement = this.connection.prepareStatement(FORMAT_QUERY);
-                this.formats = loadAllFormats();
+                this.identificationsStatement = this.connection.prepareStatement(IDENTIFICATION_QUERY);
+                if (fetchSize > 0) {
+                    this.identificationsStatement.setFetchSize(fetchSize);
+                }
+                this.identificationsStatement.setLong(1, fromNodeId);
+                this.identificationsStatement.setLong(2, toNodeId);
+                this.identifications = this.identificationsStatement.executeQuery();
+                this.hasIdentification = this.identifications.next();
             } catch (SQLException ex) {
                 log.error("Error retrieving SQL connection for format identifications", ex);
             }
         }
 
-        List<Format> getFormatsForResourceNode(long nodeId) {
-        /*
-        BNO.  Another possible implementation is to retrieve all rows ordered by node id
-        into the ResultSet.  We would then iterate the ResultSet to retrieve identifications for
-        nodeId.  Since the nodes are also retrieved in ascending order, we should always be at the
-        correct point - if the current node id is < nodeId, we would iterate until the current node id
-        was > nodeId (ideally we would fetch beyond here but see below re.fetch size.
-        However, given the lack of Derby support for forward only cursors and that it
-        only appears to support a fetch size of 1, it's unclear if this would be more performant than
-        the current approach.
+        /**
+         * Adds the formats identified for a node, advancing the identification cursor past them.
+         * Nodes must be passed in ascending NODE_ID order; identifications for nodes which are
+         * not exported (e.g. filtered out) are skipped over.
+         * @param node The node to add formats to.
+         * @throws SQLException if the identification cursor could not be read.
          */
-            try {
-                this.formatsStatement.setLong(1, nodeId);
-                ResultSet rs = formatsStatement.executeQuery();
-                List formatsList = new ArrayList<Format>();
-
-                while (rs.next()) {
-                    Format format = new Format();
-                    format.setPuid(rs.getString(PUID));
-                    format.setMimeType(rs.getString("MIME_TYPE"));
-                    format.setName(rs.getString(NAME));
-                    format.setVersion(rs.getString("VERSION"));
-                    formatsList.add(format);
-                }
-                rs.close();
-                return formatsList;
-
-            } catch (SQLException ex) {
-                log.error("Error retrieving format identifications", ex);
+        void addFormatsTo(ProfileResourceNode node) throws SQLException {
+            final long nodeId = node.getId();
+            while (hasIdentification && identifications.getLong(NODE_ID) < nodeId) {
+                hasIdentification = identifications.next();
+            }
+            while (hasIdentification && identifications.getLong(NODE_ID) == nodeId) {
+                node.addFormatIdentification(getFormatForPuid(identifications.getString(PUID)));
+                hasIdentification = identifications.next();
             }
-            return Collections.EMPTY_LIST;
         }
 
         private Map<String, Format> loadAllFormats() {
@@ -483,12 +580,15 @@ public class JDBCSqlItemReader<T> implements ItemReader<T> {
 
         private void closeResources() {
             try {
-                if (this.formatsStatement != null) {
-                    this.formatsStatement.close();
+                if (this.identifications != null) {
+                    this.identifications.close();
+                }
+                if (this.identificationsStatement != null) {
+                    this.identificationsStatement.close();
+                }
+                if (this.connection != null) {
+                    this.connection.close();
                 }
-/*
-            BNO: Note that we do not close the connection - since it was not opened in this class
-*/
             } catch (SQLException e) {
                 log.error("Error cleaning up resources for IdentificationReader", e);
             }
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report.dao;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Criterion;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.QueryBuilder;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.NodePropertyValues;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarProfileStore;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+
+/**
+ * Reads report data from the columnar profile store of a {@link ColumnarResultHandlerDao}.
+ * <p>
+ * There is no query engine behind the store, so every query is aggregated in memory from a
+ * single read of its rows, and filters are matched against each node read.  Each field is given
+ * the value the profile database would hold for it, so groups and aggregates are the same as
+ * the SqlReportDaoImpl returns for a profile stored in the database.
+ */
+public class ColumnarReportDaoImpl implements ReportDao {
+
+    private static final int NODES_PER_PROGRESS = 1000;
+
+    private final Log log = LogFactory.getLog(getClass());
+    private ColumnarResultHandlerDao resultHandlerDao;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ReportLineItem> getReportData(Criterion filter, ReportFieldEnum reportField) {
+        return getReportData(filter, reportField, new ArrayList<GroupByField>());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ReportLineItem> getReportData(Criterion filter, ReportFieldEnum reportField,
+            List<GroupByField> groupByFields) {
+        final ReportQuery query = new ReportQuery(filter, reportField, groupByFields);
+        return getReportData(Collections.singletonList(query), null).get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Queries which can't be aggregated in memory, as they use a grouping function other than
+     * year, month, upper or lower, have no report data.
+     */
+    @Override
+    public List<List<ReportLineItem>> getReportData(List<ReportQuery> queries, ReportReadObserver observer) {
+        final List<String> filterKeys = new ArrayList<String>();
+        final List<Criterion> filters = new ArrayList<Criterion>();
+        final List<ReportAggregation> aggregations = new ArrayList<ReportAggregation>(queries.size());
+        for (ReportQuery query : queries) {
+            ReportAggregation aggregation = null;
+            if (ReportAggregation.canAggregate(query)) {
+                aggregation = new ReportAggregation(query, getFilterIndex(filterKeys, filters, query.getFilter()));
+            } else {
+                log.error("The report data for " + query.getReportField()
+                        + " can't be aggregated from a columnar profile store.");
+            }
+            aggregations.add(aggregation);
+        }
+
+        boolean scanned = false;
+        try {
+            new ReportScan(filters, aggregations, observer).run();
+            scanned = true;
+        } catch (IOException e) {
+            log.error("Error reading report data from the columnar profile store", e);
+        }
+
+        final List<List<ReportLineItem>> reportData = new ArrayList<List<ReportLineItem>>(queries.size());
+        for (ReportAggregation aggregation : aggregations) {
+            reportData.add(scanned && aggregation != null
+                    ? aggregation.getReportLineItems() : new ArrayList<ReportLineItem>());
+        }
+        return reportData;
+    }
+
+    /**
+     * @param resultHandlerDao The result handler dao holding the columnar profile store.
+     */
+    public void setResultHandlerDao(ColumnarResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    private static int getFilterIndex(List<String> filterKeys, List<Criterion> filters, Criterion filter) {
+        final QueryBuilder queryBuilder = QueryBuilder.forAlias("profileResourceNode").createAlias("format");
+        queryBuilder.add(filter);
+        final String ejbQl = queryBuilder.toEjbQl();
+        if (ejbQl.isEmpty()) {
+            return -1;
+        }
+        final String key = ejbQl + Arrays.deepToString(queryBuilder.getValues());
+        int index = filterKeys.indexOf(key);
+        if (index < 0) {
+            index = filters.size();
+            filterKeys.add(key);
+            filters.add(queryBuilder);
+        }
+        return index;
+    }
+
+    /**
+     * Reads every node in the store once, adding it, or each of its identifications, to the
+     * aggregations which include it.
+     */
+    private final class ReportScan {
+
+        private final List<Criterion> filters;
+        private final List<ReportAggregation> nodeAggregations = new ArrayList<ReportAggregation>();
+        private final List<ReportAggregation> identificationAggregations = new ArrayList<ReportAggregation>();
+        private final Object[] values = new Object[ReportFieldEnum.values().length];
+        private final boolean[] filterMatches;
+        private final ReportReadObserver observer;
+
+        ReportScan(List<Criterion> filters, List<ReportAggregation> aggregations, ReportReadObserver observer) {
+            this.filters = filters;
+            this.filterMatches = new boolean[filters.size()];
+            this.observer = observer;
+            for (ReportAggregation aggregation : aggregations) {
+                if (aggregation != null && aggregation.isIdentificationRows()) {
+                    identificationAggregations.add(aggregation);
+                } else if (aggregation != null) {
+                    nodeAggregations.add(aggregation);
+                }
+            }
+        }
+
+        void run() throws IOException {
+            final ColumnarProfileStore store = resultHandlerDao.getStore();
+            final Map<String, Format> puidFormatMap = resultHandlerDao.getPUIDFormatMap();
+            resultHandlerDao.commit();
+            final int rowCount = store.getRowCount();
+            for (int row = 0; row < rowCount; row++) {
+                final ProfileResourceNode node = store.loadRow(row, puidFormatMap);
+                if (node != null) {
+                    readNode(node);
+                }
+                if ((row + 1) % NODES_PER_PROGRESS == 0) {
+                    onProgress(row + 1, rowCount);
+                }
+            }
+            onProgress(rowCount, rowCount);
+        }
+
+        private void readNode(ProfileResourceNode node) {
+            for (int i = 0; i < filterMatches.length; i++) {
+                filterMatches[i] = NodePropertyValues.matches(filters.get(i), node);
+            }
+            setNodeValues(node);
+            for (ReportAggregation aggregation : nodeAggregations) {
+                if (matches(aggregation)) {
+                    aggregation.add(values);
+                }
+            }
+            if (!identificationAggregations.isEmpty()) {
+                // Every format loaded from the store is in the format table, so all identifications are known.
+                for (Format format : NodePropertyValues.getIdentifications(node)) {
+                    setFormatValues(format);
+                    for (ReportAggregation aggregation : identificationAggregations) {
+                        if (matches(aggregation)) {
+                            aggregation.add(values);
+                        }
+                    }
+                }
+            }
+        }
+
+        /*
+         * Sets the node fields as the database returns them: enums as their ordinals, and dates as timestamps.
+         */
+        private void setNodeValues(ProfileResourceNode node) {
+            final NodeMetaData metaData = node.getMetaData();
+            final Date lastModified = metaData.getLastModifiedDate();
+            values[ReportFieldEnum.FILE_NAME.ordinal()] = metaData.getName();
+            values[ReportFieldEnum.FILE_SIZE.ordinal()] = metaData.getSize();
+            values[ReportFieldEnum.LAST_MODIFIED_DATE.ordinal()] =
+                    lastModified == null ? null : new Timestamp(lastModified.getTime());
+            values[ReportFieldEnum.RESOURCE_TYPE.ordinal()] = getOrdinal(metaData.getResourceType());
+            values[ReportFieldEnum.IDENTIFICATION_METHOD.ordinal()] = getOrdinal(metaData.getIdentificationMethod());
+            values[ReportFieldEnum.IDENTIFICATION_STATUS.ordinal()] = getOrdinal(metaData.getNodeStatus());
+            values[ReportFieldEnum.FILE_EXTENSION.ordinal()] = metaData.getExtension();
+        }
+
+        private void setFormatValues(Format format) {
+            values[ReportFieldEnum.PUID.ordinal()] = StringUtils.defaultString(format.getPuid());
+            values[ReportFieldEnum.MIME_TYPE.ordinal()] = format.getMimeType();
+            values[ReportFieldEnum.FILE_FORMAT.ordinal()] = format.getName();
+            values[ReportFieldEnum.FORMAT_VERSION.ordinal()] = format.getVersion();
+        }
+
+        private boolean matches(ReportAggregation aggregation) {
+            final int filterIndex = aggregation.getFilterIndex();
+            return filterIndex < 0 || filterMatches[filterIndex];
+        }
+
+        private void onProgress(long rowsRead, long rowCount) {
+            if (observer != null) {
+                observer.onProgress(rowsRead, rowCount);
+                if (observer.isCancelled()) {
+                    throw new CancellationException("Reading report data was cancelled");
+                }
+            }
+        }
+
+        private Integer getOrdinal(Enum<?> value) {
+            return value == null ? null : value.ordinal();
+        }
+    }
+}
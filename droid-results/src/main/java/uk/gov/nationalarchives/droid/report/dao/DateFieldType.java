@@ -196,6 +196,22 @@ public class DateFieldType implements ReportFieldType {
         return field;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReportLineItem populateReportLineItem(ReportAggregate aggregate) {
+        final ReportLineItem reportLineItem = new ReportLineItem();
+        reportLineItem.setCount(aggregate.getCount());
+        if (aggregate.getMinimum() != null) {
+            reportLineItem.setEarliestDate((Timestamp) aggregate.getMinimum());
+        }
+        if (aggregate.getMaximum() != null) {
+            reportLineItem.setLatestDate((Timestamp) aggregate.getMaximum());
+        }
+        return reportLineItem;
+    }
+
     private String getFieldValue(Object value) {
         return (value == null) ? "" : value.toString();
     }    
@@ -208,6 +208,24 @@ public class NumericFieldType implements ReportFieldType {
         return reportData;
     }
 
+    /**
+     * {@inheritDoc}
+     * The average is truncated to a whole number, as the database average of a BIGINT column is.
+     */
+    @Override
+    public ReportLineItem populateReportLineItem(ReportAggregate aggregate) {
+        final ReportLineItem reportLineItem = new ReportLineItem();
+        final long count = aggregate.getCount();
+        reportLineItem.setCount(count);
+        if (count > 0) {
+            reportLineItem.setSum(aggregate.getSum());
+            reportLineItem.setAverage((double) (aggregate.getSum() / count));
+            reportLineItem.setMinimum(((Number) aggregate.getMinimum()).longValue());
+            reportLineItem.setMaximum(((Number) aggregate.getMaximum()).longValue());
+        }
+        return reportLineItem;
+    }
+
     private String getFieldValue(Object value) {
         return (value == null) ? "" : value.toString();
     }    
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report.dao;
+
+/**
+ * Running aggregates of a reported field, for one group of report data
+ * which is aggregated in memory rather than by the database.
+ * Null values are ignored, as they are by SQL aggregate functions.
+ */
+public class ReportAggregate {
+
+    private long count;
+    private long sum;
+    private Comparable<Object> minimum;
+    private Comparable<Object> maximum;
+
+    /**
+     * Adds a value of the reported field to the aggregates.
+     * @param value The value to add, which may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public void add(Object value) {
+        if (value != null) {
+            count++;
+            if (value instanceof Number) {
+                sum += ((Number) value).longValue();
+            }
+            if (value instanceof Comparable) {
+                final Comparable<Object> comparable = (Comparable<Object>) value;
+                if (minimum == null || comparable.compareTo(minimum) < 0) {
+                    minimum = comparable;
+                }
+                if (maximum == null || comparable.compareTo(maximum) > 0) {
+                    maximum = comparable;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of non null values added.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the numeric values added.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the smallest value added, or null if no values were added.
+     */
+    public Object getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * @return the largest value added, or null if no values were added.
+     */
+    public Object getMaximum() {
+        return maximum;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report.dao;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the data for one report query in memory, using a hash table of groups,
+ * as the node and identification data is read.
+ * <p>
+ * Rows are added at the same grain as the SQL report query would join them:
+ * once per node, or once per identification when grouping on the PUID,
+ * or once per identification of a known format when grouping on format metadata.
+ * The report line items are returned in group by value order, nulls last,
+ * which is the order the database returns grouped rows in.
+ */
+final class ReportAggregation {
+
+    private static final String YEAR = "year";
+    private static final String MONTH = "month";
+    private static final String UPPER = "upper";
+    private static final String LOWER = "lower";
+
+    private static final List<Object> NO_GROUP = Collections.emptyList();
+
+    private static final Comparator<List<Object>> GROUP_ORDER = new Comparator<List<Object>>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compare(List<Object> group1, List<Object> group2) {
+            int result = 0;
+            for (int i = 0; i < group1.size() && result == 0; i++) {
+                final Object value1 = group1.get(i);
+                final Object value2 = group2.get(i);
+                if (value1 == null || value2 == null) {
+                    result = value1 == null ? (value2 == null ? 0 : 1) : -1;
+                } else {
+                    result = ((Comparable<Object>) value1).compareTo(value2);
+                }
+            }
+            return result;
+        }
+    };
+
+    private final ReportQuery query;
+    private final int filterIndex;
+    private final boolean identificationRows;
+    private final boolean knownFormatRows;
+    private final Map<List<Object>, ReportAggregate> groups = new HashMap<List<Object>, ReportAggregate>();
+    private final Calendar calendar = Calendar.getInstance();
+
+    /**
+     * @param query The report query to aggregate.
+     * @param filterIndex The index of the query's filter in the filters matched for each node,
+     *                    or -1 if the query has no filter.
+     */
+    ReportAggregation(ReportQuery query, int filterIndex) {
+        this.query = query;
+        this.filterIndex = filterIndex;
+        this.knownFormatRows = groupsOnFormatMetadata(query);
+        this.identificationRows = knownFormatRows || groupsOn(query, ReportFieldEnum.PUID);
+        if (query.getGroupByFields().isEmpty()) {
+            groups.put(NO_GROUP, new ReportAggregate());
+        }
+    }
+
+    /**
+     * Returns whether a query can be aggregated in memory. It can't if it uses a grouping function
+     * other than year, month, upper or lower, or a format field which the SQL query would not join to.
+     * @param query The query to check.
+     * @return whether the query can be aggregated in memory.
+     */
+    static boolean canAggregate(ReportQuery query) {
+        final boolean knownFormats = groupsOnFormatMetadata(query);
+        final boolean identifications = knownFormats || groupsOn(query, ReportFieldEnum.PUID);
+        boolean result = isAvailable(query.getReportField(), identifications, knownFormats);
+        for (GroupByField group : query.getGroupByFields()) {
+            result &= isAvailable(group.getGroupByField(), identifications, knownFormats)
+                    && isSupportedFunction(group.getFunction());
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the query's filter, or -1 if it has no filter.
+     */
+    int getFilterIndex() {
+        return filterIndex;
+    }
+
+    /**
+     * @return whether a row is added for each identification rather than for each node.
+     */
+    boolean isIdentificationRows() {
+        return identificationRows;
+    }
+
+    /**
+     * @return whether rows are only added for identifications of formats which are known.
+     */
+    boolean isKnownFormatRows() {
+        return knownFormatRows;
+    }
+
+    /**
+     * Adds a row to the aggregates of its group.
+     * @param values The values of each report field for the row, indexed by the field ordinal.
+     */
+    void add(Object[] values) {
+        final List<Object> group = getGroup(values);
+        ReportAggregate aggregate = groups.get(group);
+        if (aggregate == null) {
+            aggregate = new ReportAggregate();
+            groups.put(group, aggregate);
+        }
+        aggregate.add(values[query.getReportField().ordinal()]);
+    }
+
+    /**
+     * @return the report line items for each group, in group order.
+     */
+    List<ReportLineItem> getReportLineItems() {
+        final List<List<Object>> groupValues = new ArrayList<List<Object>>(groups.keySet());
+        Collections.sort(groupValues, GROUP_ORDER);
+        final ReportFieldType type = query.getReportField().getType();
+        final List<ReportLineItem> reportData = new ArrayList<ReportLineItem>(groupValues.size());
+        for (List<Object> group : groupValues) {
+            final ReportLineItem reportLineItem = type.populateReportLineItem(groups.get(group));
+            if (!group.isEmpty()) {
+                final List<String> values = new ArrayList<String>(group.size());
+                for (Object value : group) {
+                    values.add(value == null ? "" : value.toString());
+                }
+                reportLineItem.setGroupByValues(values);
+            }
+            reportData.add(reportLineItem);
+        }
+        return reportData;
+    }
+
+    private List<Object> getGroup(Object[] values) {
+        final List<GroupByField> groupByFields = query.getGroupByFields();
+        if (groupByFields.isEmpty()) {
+            return NO_GROUP;
+        }
+        final List<Object> group = new ArrayList<Object>(groupByFields.size());
+        for (GroupByField groupByField : groupByFields) {
+            group.add(applyFunction(groupByField.getFunction(), values[groupByField.getGroupByField().ordinal()]));
+        }
+        return group;
+    }
+
+    private Object applyFunction(String function, Object value) {
+        Object result = value;
+        if (value != null && function != null && !function.isEmpty()) {
+            final String name = function.toLowerCase();
+            if (YEAR.equals(name) || MONTH.equals(name)) {
+                calendar.setTime((Date) value);
+                result = YEAR.equals(name) ? calendar.get(Calendar.YEAR) : calendar.get(Calendar.MONTH) + 1;
+            } else {
+                result = UPPER.equals(name) ? value.toString().toUpperCase() : value.toString().toLowerCase();
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSupportedFunction(String function) {
+        if (function == null || function.isEmpty()) {
+            return true;
+        }
+        final String name = function.toLowerCase();
+        return YEAR.equals(name) || MONTH.equals(name) || UPPER.equals(name) || LOWER.equals(name);
+    }
+
+    private static boolean isAvailable(ReportFieldEnum field, boolean identifications, boolean knownFormats) {
+        final boolean result;
+        if (field == ReportFieldEnum.PUID) {
+            result = identifications;
+        } else if (field == ReportFieldEnum.MIME_TYPE || field == ReportFieldEnum.FILE_FORMAT
+                || field == ReportFieldEnum.FORMAT_VERSION) {
+            result = knownFormats;
+        } else {
+            result = true;
+        }
+        return result;
+    }
+
+    private static boolean groupsOnFormatMetadata(ReportQuery query) {
+        return groupsOn(query, ReportFieldEnum.FILE_FORMAT) || groupsOn(query, ReportFieldEnum.MIME_TYPE);
+    }
+
+    private static boolean groupsOn(ReportQuery query, ReportFieldEnum field) {
+        for (GroupByField group : query.getGroupByFields()) {
+            if (group.getGroupByField() == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -60,5 +60,15 @@ public interface ReportDao {
      */
     List<ReportLineItem> getReportData(Criterion filter, ReportFieldEnum reportField);
 
+    /**
+     * Returns Data for reporting XML for several report items at once.
+     * The node and identification data is read once for all of the items,
+     * rather than queried once for each item.
+     * @param queries The report items to aggregate.
+     * @param observer An optional observer of the progress of reading the data, which can cancel reading it.
+     * @return Data required for reports, in the same order as the queries.
+     * @throws java.util.concurrent.CancellationException if the observer cancelled reading the data.
+     */
+    List<List<ReportLineItem>> getReportData(List<ReportQuery> queries, ReportReadObserver observer);
     
 }
@@ -70,6 +70,14 @@ public interface ReportFieldType {
      */
     List<ReportLineItem> populateReportedData(ResultSet results) throws SQLException;
 
+    /**
+     * Builds a report line item from aggregates of the field made in memory,
+     * with the same values that populateReportedData reads from the database.
+     * @param aggregate The aggregated values of the field.
+     * @return a ReportLineItem without any group by values.
+     */
+    ReportLineItem populateReportLineItem(ReportAggregate aggregate);
+
     /**
      * Returns field string to be used in the query. 
      * @return String the persistence field name 
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Criterion;
+
+/**
+ * One item of report data to aggregate: a reported field, with an optional filter
+ * and any fields to group by.
+ */
+public class ReportQuery {
+
+    private final Criterion filter;
+    private final ReportFieldEnum reportField;
+    private final List<GroupByField> groupByFields;
+
+    /**
+     * @param filter Filter to be applied, or null for all nodes.
+     * @param reportField Reported field.
+     * @param groupByFields Fields to group by, including any grouping functions associated with them.
+     */
+    public ReportQuery(Criterion filter, ReportFieldEnum reportField, List<GroupByField> groupByFields) {
+        this.filter = filter;
+        this.reportField = reportField;
+        this.groupByFields = groupByFields == null ? new ArrayList<GroupByField>() : groupByFields;
+    }
+
+    /**
+     * @return the filter to be applied, or null for all nodes.
+     */
+    public Criterion getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the reported field.
+     */
+    public ReportFieldEnum getReportField() {
+        return reportField;
+    }
+
+    /**
+     * @return the fields to group by, which may be empty.
+     */
+    public List<GroupByField> getGroupByFields() {
+        return groupByFields;
+    }
+}
@@ -35,8 +35,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import javax.sql.DataSource;
 
@@ -55,6 +60,19 @@ import uk.gov.nationalarchives.droid.profile.SqlUtils;
 public class SqlReportDaoImpl implements ReportDao {
 
     private static String formatfilter = "formatfilter";
+
+    private static final String NODE_TABLE_ALIAS = "profile.";
+    private static final String IDENTIFICATION_QUERY = "SELECT NODE_ID, PUID FROM IDENTIFICATION ORDER BY NODE_ID";
+    private static final String SELECT_FORMATS = "SELECT PUID, MIME_TYPE, NAME, VERSION FROM FORMAT";
+    private static final String COUNT_NODES = "SELECT COUNT(*) FROM profile_resource_node";
+    private static final int NODES_PER_PROGRESS = 1000;
+    private static final ReportFieldEnum[] FORMAT_FIELDS = {ReportFieldEnum.PUID, ReportFieldEnum.MIME_TYPE,
+        ReportFieldEnum.FILE_FORMAT, ReportFieldEnum.FORMAT_VERSION, };
+    private static final List<ReportFieldEnum> NODE_FIELDS = getNodeFields();
+
+    // Report field types keep the grouping fields of the query they are running, and are shared by
+    // the DAOs of all profiles, so queries on any profile take turns on the field types:
+    private static final Object FIELD_TYPE_LOCK = new Object();
     
     private final Log log = LogFactory.getLog(getClass());
     private DataSource datasource;
@@ -85,15 +103,17 @@ public class SqlReportDaoImpl implements ReportDao {
         ResultSet resultset = null;
         Connection connection = null;
 
-        final String sqlQuery = getQueryString(reportField, groupByFields, filter);
         try {
-            connection = this.datasource.getConnection();
-            statement = connection.prepareStatement(sqlQuery);
-            setFilterParameters(statement, filter);
-            resultset = statement.executeQuery();
-            List<ReportLineItem> reportData = new ArrayList<ReportLineItem>();
-            reportData = reportField.getType().populateReportedData(resultset);
-            return reportData;
+            synchronized (FIELD_TYPE_LOCK) {
+                final String sqlQuery = getQueryString(reportField, groupByFields, filter);
+                connection = this.datasource.getConnection();
+                statement = connection.prepareStatement(sqlQuery);
+                setFilterParameters(statement, filter);
+                resultset = statement.executeQuery();
+                List<ReportLineItem> reportData = new ArrayList<ReportLineItem>();
+                reportData = reportField.getType().populateReportedData(resultset);
+                return reportData;
+            }
         } catch (SQLException ex) {
             log.error("Error executing report query", ex);
         } finally {
@@ -117,6 +137,76 @@ public class SqlReportDaoImpl implements ReportDao {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * Queries which can be aggregated in memory are all aggregated from a single read of the
+     * nodes, merged in node id order with their identifications and with the nodes matching any
+     * filters on formats. Filters on node fields only are evaluated as columns of the node query.
+     * Any other queries are run as their own SQL query.
+     * Progress is reported, and cancellation checked, after each batch of nodes and each separate query.
+     */
+    @Override
+    public List<List<ReportLineItem>> getReportData(List<ReportQuery> queries, ReportReadObserver observer) {
+        final List<FilterInfo> filters = new ArrayList<FilterInfo>();
+        final List<ReportAggregation> aggregations = new ArrayList<ReportAggregation>(queries.size());
+        final List<ReportAggregation> scanAggregations = new ArrayList<ReportAggregation>(queries.size());
+        for (ReportQuery query : queries) {
+            ReportAggregation aggregation = null;
+            if (ReportAggregation.canAggregate(query)) {
+                aggregation = new ReportAggregation(query, getFilterIndex(filters, getFilterInfo(query.getFilter())));
+                scanAggregations.add(aggregation);
+            }
+            aggregations.add(aggregation);
+        }
+
+        final ReadProgress progress = new ReadProgress(observer, queries.size() - scanAggregations.size());
+        boolean scanned = false;
+        if (!scanAggregations.isEmpty()) {
+            try {
+                new ReportScan(filters, scanAggregations, progress).run();
+                scanned = true;
+            } catch (SQLException ex) {
+                log.error("Error reading report data, running report queries separately", ex);
+                progress.restart(queries.size());
+            }
+        }
+
+        final List<List<ReportLineItem>> reportData = new ArrayList<List<ReportLineItem>>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            final ReportAggregation aggregation = aggregations.get(i);
+            if (scanned && aggregation != null) {
+                reportData.add(aggregation.getReportLineItems());
+            } else {
+                final ReportQuery query = queries.get(i);
+                reportData.add(getReportData(query.getFilter(), query.getReportField(), query.getGroupByFields()));
+                progress.addSteps(1);
+            }
+        }
+        return reportData;
+    }
+
+    private int getFilterIndex(List<FilterInfo> filters, FilterInfo filterInfo) {
+        if (filterInfo.getEjbQl().isEmpty()) {
+            return -1;
+        }
+        int index = filters.indexOf(filterInfo);
+        if (index < 0) {
+            index = filters.size();
+            filters.add(filterInfo);
+        }
+        return index;
+    }
+
+    private static List<ReportFieldEnum> getNodeFields() {
+        final List<ReportFieldEnum> nodeFields = new ArrayList<ReportFieldEnum>();
+        for (ReportFieldEnum field : ReportFieldEnum.values()) {
+            if (field.getType().getField().startsWith(NODE_TABLE_ALIAS)) {
+                nodeFields.add(field);
+            }
+        }
+        return nodeFields;
+    }
+
 
     private String getQueryString(ReportFieldEnum reportField, List<GroupByField> groupByFields, Criterion filter) {
         final String selectStatement = getSelectStatement(reportField, groupByFields);
@@ -144,6 +234,7 @@ public class SqlReportDaoImpl implements ReportDao {
         
         // If we have a filter, get its SQL query string and parameter values:
         if (ejbQl.length() > 0) {
+            filterInfo.setEjbQl(ejbQl);
             filterInfo.setFilterSubQuery(buildFilterSubQuery(ejbQl));
             filterInfo.setFilterValues(queryBuilder.getValues());
         }
@@ -199,8 +290,13 @@ public class SqlReportDaoImpl implements ReportDao {
     }
     
     private String buildFilterSubQuery(final String ejbQl) {
-        final String filterSQL = SqlUtils.transformEJBtoSQLFields(ejbQl, "filter", formatfilter);
-        String subQuery = " INNER JOIN (SELECT DISTINCT filter.node_id "
+        return " INNER JOIN (" + buildFilterQuery(ejbQl) + ") AS filtered "
+            + " ON filtered.node_id = profile.node_id ";
+    }
+
+    private String buildFilterQuery(final String ejbQl) {
+        final String filterSQL = getFilterSQL(ejbQl);
+        String subQuery = "SELECT DISTINCT filter.node_id "
             + " FROM profile_resource_node AS filter ";
 
         // Only add joins to referenced tables, to increase performance:
@@ -212,10 +308,13 @@ public class SqlReportDaoImpl implements ReportDao {
                 subQuery += " INNER JOIN identification as formatfilter ON formatfilter.node_id = filter.node_id ";
             }
         }
-        subQuery += " WHERE " + filterSQL + ") AS filtered "
-            + " ON filtered.node_id = profile.node_id ";
+        subQuery += " WHERE " + filterSQL;
         return subQuery;
     }
+
+    private String getFilterSQL(final String ejbQl) {
+        return SqlUtils.transformEJBtoSQLFields(ejbQl, "filter", formatfilter);
+    }
     
     
     private boolean filterOnFormats(final String queryString) {
@@ -250,9 +349,14 @@ public class SqlReportDaoImpl implements ReportDao {
      * Private class to model the filter information
      */
     private class FilterInfo {
+        private String ejbQl = "";
         private String filterSubQuery = "";
         private Object[] filterValues = new Object[0];
         
+        public String getEjbQl() {
+            return ejbQl;
+        }
+        
         public String getFilterSubQuery() {
             return filterSubQuery;
         }
@@ -268,6 +372,24 @@ public class SqlReportDaoImpl implements ReportDao {
         public void setFilterValues(final Object[] values) {
             filterValues = values;
         }
+        
+        public void setEjbQl(final String ejbQl) {
+            this.ejbQl = ejbQl;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FilterInfo)) {
+                return false;
+            }
+            final FilterInfo other = (FilterInfo) obj;
+            return ejbQl.equals(other.ejbQl) && Arrays.equals(filterValues, other.filterValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return ejbQl.hashCode();
+        }
     }
 
     /**
@@ -278,8 +400,18 @@ public class SqlReportDaoImpl implements ReportDao {
     private void setFilterParameters(PreparedStatement s, Criterion filter) {
 
         final FilterInfo filterInfo = getFilterInfo(filter);
-        Object[] filterParams = filterInfo.getFilterValues();
-        int pos = 0;
+        setFilterParameters(s, filterInfo.getFilterValues(), 0);
+    }
+
+    /**
+     * Sets filter parameter values within a PreparedStatement, after any parameters already set.
+     * @param s The PreparedStatement in which to set filter parameters.
+     * @param filterParams The parameter values to set.
+     * @param position The number of parameters already set.
+     * @return the number of parameters set, including the ones already set.
+     */
+    private int setFilterParameters(PreparedStatement s, Object[] filterParams, int position) {
+        int pos = position;
         for (Object param : filterParams) {
             Object transformedValue = SqlUtils.transformParameterToSQLValue(param);
 
@@ -309,6 +441,7 @@ public class SqlReportDaoImpl implements ReportDao {
                 log.error(e);
             }
         }
+        return pos;
     }
 
     /**
@@ -326,4 +459,261 @@ public class SqlReportDaoImpl implements ReportDao {
     public DataSource getDatasource() {
         return this.datasource;
     }
+
+    /**
+     * Reads the node and identification data once, adding each row to the aggregations which include it.
+     */
+    private final class ReportScan {
+
+        private final List<FilterInfo> filters;
+        private final List<ReportAggregation> nodeAggregations = new ArrayList<ReportAggregation>();
+        private final List<ReportAggregation> identificationAggregations = new ArrayList<ReportAggregation>();
+        private final Object[] values = new Object[ReportFieldEnum.values().length];
+        private final boolean[] filterMatches;
+        private final NodeCursor[] filterCursors;
+        private final ReadProgress progress;
+
+        ReportScan(List<FilterInfo> filters, List<ReportAggregation> aggregations, ReadProgress progress) {
+            this.filters = filters;
+            this.progress = progress;
+            this.filterMatches = new boolean[filters.size()];
+            this.filterCursors = new NodeCursor[filters.size()];
+            for (ReportAggregation aggregation : aggregations) {
+                if (aggregation.isIdentificationRows()) {
+                    identificationAggregations.add(aggregation);
+                } else {
+                    nodeAggregations.add(aggregation);
+                }
+            }
+        }
+
+        void run() throws SQLException {
+            final List<Statement> statements = new ArrayList<Statement>();
+            try (Connection connection = datasource.getConnection()) {
+                try {
+                    if (progress.isObserved()) {
+                        progress.addStepCount(countNodes(connection));
+                    }
+                    final List<Object> nodeQueryValues = new ArrayList<Object>();
+                    final String nodeQuery = getNodeQuery(nodeQueryValues);
+                    final ResultSet nodes = executeQuery(connection, statements, nodeQuery, nodeQueryValues.toArray());
+                    for (int i = 0; i < filters.size(); i++) {
+                        final FilterInfo filterInfo = filters.get(i);
+                        if (filterOnFormats(getFilterSQL(filterInfo.getEjbQl()))) {
+                            filterCursors[i] = new NodeCursor(executeQuery(connection, statements,
+                                    buildFilterQuery(filterInfo.getEjbQl()) + " ORDER BY filter.node_id",
+                                    filterInfo.getFilterValues()));
+                        }
+                    }
+                    NodeCursor identifications = null;
+                    Map<String, Object[]> formats = null;
+                    if (!identificationAggregations.isEmpty()) {
+                        identifications = new NodeCursor(
+                                executeQuery(connection, statements, IDENTIFICATION_QUERY, new Object[0]));
+                        formats = loadFormats(connection);
+                    }
+                    readNodes(nodes, identifications, formats);
+                } finally {
+                    for (Statement statement : statements) {
+                        statement.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds the node query, with a column for each filter on node fields only which is 1 if the
+         * node matches the filter. Nodes are ordered by node id if they are merged with other cursors.
+         */
+        private String getNodeQuery(List<Object> parameterValues) {
+            final StringBuilder query = new StringBuilder("SELECT profile.node_id");
+            for (ReportFieldEnum field : NODE_FIELDS) {
+                query.append(',').append(field.getType().getField());
+            }
+            boolean ordered = !identificationAggregations.isEmpty();
+            for (FilterInfo filterInfo : filters) {
+                if (filterOnFormats(getFilterSQL(filterInfo.getEjbQl()))) {
+                    ordered = true;
+                } else {
+                    query.append(", CASE WHEN (")
+                         .append(SqlUtils.transformEJBtoSQLFields(filterInfo.getEjbQl(), "profile", formatfilter))
+                         .append(") THEN 1 ELSE 0 END");
+                    parameterValues.addAll(Arrays.asList(filterInfo.getFilterValues()));
+                }
+            }
+            query.append(" FROM profile_resource_node AS profile");
+            if (ordered) {
+                query.append(" ORDER BY profile.node_id");
+            }
+            return query.toString();
+        }
+
+        private void readNodes(ResultSet nodes, NodeCursor identifications, Map<String, Object[]> formats)
+            throws SQLException {
+            long nodesRead = 0;
+            while (nodes.next()) {
+                readNode(nodes, identifications, formats);
+                if (++nodesRead % NODES_PER_PROGRESS == 0) {
+                    progress.addSteps(NODES_PER_PROGRESS);
+                }
+            }
+            progress.addSteps(nodesRead % NODES_PER_PROGRESS);
+        }
+
+        private void readNode(ResultSet nodes, NodeCursor identifications, Map<String, Object[]> formats)
+            throws SQLException {
+            final long nodeId = nodes.getLong(1);
+            int column = 2;
+            for (ReportFieldEnum field : NODE_FIELDS) {
+                values[field.ordinal()] = nodes.getObject(column++);
+            }
+            for (int i = 0; i < filterMatches.length; i++) {
+                if (filterCursors[i] == null) {
+                    filterMatches[i] = nodes.getInt(column++) == 1;
+                } else {
+                    filterMatches[i] = filterCursors[i].moveTo(nodeId);
+                }
+            }
+            for (ReportAggregation aggregation : nodeAggregations) {
+                if (matches(aggregation)) {
+                    aggregation.add(values);
+                }
+            }
+            if (identifications != null) {
+                while (identifications.moveTo(nodeId)) {
+                    readIdentification(identifications.getResults().getString(2), formats);
+                    identifications.next();
+                }
+            }
+        }
+
+        private void readIdentification(String puid, Map<String, Object[]> formats) {
+            final Object[] format = puid == null ? null : formats.get(puid);
+            values[ReportFieldEnum.PUID.ordinal()] = puid;
+            for (int i = 1; i < FORMAT_FIELDS.length; i++) {
+                values[FORMAT_FIELDS[i].ordinal()] = format == null ? null : format[i];
+            }
+            for (ReportAggregation aggregation : identificationAggregations) {
+                if (matches(aggregation) && (format != null || !aggregation.isKnownFormatRows())) {
+                    aggregation.add(values);
+                }
+            }
+        }
+
+        private boolean matches(ReportAggregation aggregation) {
+            final int filterIndex = aggregation.getFilterIndex();
+            return filterIndex < 0 || filterMatches[filterIndex];
+        }
+
+        private ResultSet executeQuery(Connection connection, List<Statement> statements, String query,
+                                       Object[] parameterValues) throws SQLException {
+            final PreparedStatement statement = connection.prepareStatement(query);
+            statements.add(statement);
+            setFilterParameters(statement, parameterValues, 0);
+            return statement.executeQuery();
+        }
+
+        private long countNodes(Connection connection) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(COUNT_NODES);
+                 ResultSet results = statement.executeQuery()) {
+                return results.next() ? results.getLong(1) : 0;
+            }
+        }
+
+        /**
+         * Loads the value of each format field for each PUID in the format table, as the database
+         * returns them, since the report groups on the values stored rather than on Format objects.
+         */
+        private Map<String, Object[]> loadFormats(Connection connection) throws SQLException {
+            final Map<String, Object[]> formats = new HashMap<String, Object[]>();
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_FORMATS);
+                 ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    final Object[] format = new Object[FORMAT_FIELDS.length];
+                    for (int i = 0; i < format.length; i++) {
+                        format[i] = results.getObject(i + 1);
+                    }
+                    formats.put((String) format[0], format);
+                }
+            }
+            return formats;
+        }
+    }
+
+    /**
+     * Counts the nodes and separate queries read, reporting them to any observer, and stops
+     * reading by throwing a CancellationException once the observer is cancelled.
+     */
+    private static final class ReadProgress {
+
+        private final ReportReadObserver observer;
+        private long stepsDone;
+        private long stepCount;
+
+        ReadProgress(ReportReadObserver observer, long stepCount) {
+            this.observer = observer;
+            this.stepCount = stepCount;
+        }
+
+        boolean isObserved() {
+            return observer != null;
+        }
+
+        void addStepCount(long count) {
+            stepCount += count;
+        }
+
+        /**
+         * Starts counting again, when the data read so far is discarded.
+         * @param count The number of steps to read.
+         */
+        void restart(long count) {
+            stepsDone = 0;
+            stepCount = count;
+        }
+
+        void addSteps(long count) {
+            if (observer != null) {
+                stepsDone += count;
+                observer.onProgress(stepsDone, stepCount);
+                if (observer.isCancelled()) {
+                    throw new CancellationException("Reading report data was cancelled");
+                }
+            }
+        }
+    }
+
+    /**
+     * A cursor whose first column is a node id, read in ascending node id order.
+     */
+    private static final class NodeCursor {
+
+        private final ResultSet results;
+        private boolean hasRow;
+
+        NodeCursor(ResultSet results) throws SQLException {
+            this.results = results;
+            this.hasRow = results.next();
+        }
+
+        /**
+         * Advances the cursor past any rows for nodes before a node.
+         * @param nodeId The node id to move to.
+         * @return whether the cursor is on a row for the node.
+         */
+        boolean moveTo(long nodeId) throws SQLException {
+            while (hasRow && results.getLong(1) < nodeId) {
+                hasRow = results.next();
+            }
+            return hasRow && results.getLong(1) == nodeId;
+        }
+
+        void next() throws SQLException {
+            hasRow = results.next();
+        }
+
+        ResultSet getResults() {
+            return results;
+        }
+    }
 }
@@ -178,6 +178,16 @@ public class StringOrSetFieldType implements ReportFieldType {
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReportLineItem populateReportLineItem(ReportAggregate aggregate) {
+        final ReportLineItem reportLineItem = new ReportLineItem();
+        reportLineItem.setCount(aggregate.getCount());
+        return reportLineItem;
+    }
+
     private String getFieldValue(Object value) {
         return (value == null) ? "" : value.toString();
     }
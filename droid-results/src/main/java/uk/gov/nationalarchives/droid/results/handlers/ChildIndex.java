@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.util.Arrays;
+
+/**
+ * The ids of the children of each node of a {@link ColumnarProfileStore}, kept in node id order.
+ * <p>
+ * Children are nearly always added in node id order, so they are usually appended to the end
+ * of their parent's ids.  A page of children is found with a binary search for the id it starts
+ * after.  The index has its own lock, so finding children does not hold the lock of the store.
+ */
+final class ChildIndex {
+
+    private static final int[] NO_CHILDREN = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_CHILD_CAPACITY = 4;
+
+    private int[][] childIds = new int[INITIAL_CAPACITY][];
+    private int[] childCounts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Adds a child to a parent.  A child must only be added once.
+     * @param parent The id of the parent, or zero for a top level node.
+     * @param child The id of the child.
+     */
+    synchronized void add(int parent, int child) {
+        ensureCapacity(parent);
+        int[] ids = childIds[parent];
+        final int count = childCounts[parent];
+        if (ids == null) {
+            ids = new int[INITIAL_CHILD_CAPACITY];
+        } else if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        childIds[parent] = ids;
+        int position = count;
+        if (count > 0 && ids[count - 1] > child) {
+            position = -Arrays.binarySearch(ids, 0, count, child) - 1;
+            System.arraycopy(ids, position, ids, position + 1, count - position);
+        }
+        ids[position] = child;
+        childCounts[parent] = count + 1;
+    }
+
+    /**
+     * Finds the ids of the children of a parent after a node id, in node id order.
+     * @param parent The id of the parent, or zero for the top level nodes.
+     * @param afterNodeId Only children with an id greater than this are returned.
+     * @param maxChildren The most child ids to return.
+     * @return The ids of the children.
+     */
+    synchronized int[] getChildren(int parent, long afterNodeId, int maxChildren) {
+        if (parent < 0 || parent >= childIds.length || childIds[parent] == null) {
+            return NO_CHILDREN;
+        }
+        final int[] ids = childIds[parent];
+        final int count = childCounts[parent];
+        final int start = firstIndexAfter(ids, count, (int) Math.max(-1L, Math.min(afterNodeId, Integer.MAX_VALUE)));
+        return Arrays.copyOfRange(ids, start, start + Math.min(count - start, Math.max(0, maxChildren)));
+    }
+
+    private static int firstIndexAfter(int[] ids, int count, int afterNodeId) {
+        final int index = Arrays.binarySearch(ids, 0, count, afterNodeId);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private void ensureCapacity(int parent) {
+        if (parent >= childIds.length) {
+            final int newLength = Math.max(parent + 1, childIds.length * 2);
+            childIds = Arrays.copyOf(childIds, newLength);
+            childCounts = Arrays.copyOf(childCounts, newLength);
+        }
+    }
+}
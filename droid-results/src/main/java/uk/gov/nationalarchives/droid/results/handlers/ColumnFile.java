@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single append-only column file of a {@link ColumnarProfileStore}.
+ * <p>
+ * Values are appended through a write buffer, and read back through read-only memory mapped
+ * segments of the file.  Segments are mapped lazily as the file grows, so values can be read
+ * back as soon as they have been flushed.  A segment which is still being written is mapped
+ * again each time it doubles in size, and values past its mapping are read from the file until
+ * then.  Each column writes its buffer when it fills, so columns reach the disk independently
+ * of each other.
+ */
+final class ColumnFile implements Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long SEGMENT_SIZE = 1024L * 1024 * 1024; // a multiple of every fixed value width.
+    private static final int LONG_BYTES = 8;
+    private static final int INT_BYTES = 4;
+    private static final String POSITION = "Position ";
+    private static final String BEYOND_END_OF_COLUMN = " is beyond the end of the column: ";
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private long length;
+    private long flushedLength;
+    private long mappedLength;
+
+    /**
+     * Opens a column file, creating it if it doesn't exist yet.  New values are appended to the end of it.
+     * @param path The path of the column file.
+     * @throws IOException If the file could not be opened.
+     */
+    ColumnFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        length = channel.size();
+        flushedLength = length;
+    }
+
+    /**
+     * @return The length of the column in bytes, including any values which have not been flushed yet.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Cuts the column back to a shorter length, e.g. to drop a partially written row.
+     * Values which are still buffered are discarded without being written.
+     * @param newLength The new length of the column.
+     * @throws IOException If the file could not be truncated.
+     */
+    void truncate(long newLength) throws IOException {
+        if (newLength < length) {
+            if (newLength >= flushedLength) {
+                buffer.position((int) (newLength - flushedLength));
+            } else {
+                buffer.clear();
+                segments.clear();
+                mappedLength = 0;
+                channel.truncate(newLength);
+                flushedLength = newLength;
+            }
+            length = newLength;
+        }
+    }
+
+    /**
+     * @param value The long to append.
+     * @throws IOException If the value could not be written.
+     */
+    void writeLong(long value) throws IOException {
+        ensureBuffered(LONG_BYTES);
+        buffer.putLong(value);
+        length += LONG_BYTES;
+    }
+
+    /**
+     * @param value The int to append.
+     * @throws IOException If the value could not be written.
+     */
+    void writeInt(int value) throws IOException {
+        ensureBuffered(INT_BYTES);
+        buffer.putInt(value);
+        length += INT_BYTES;
+    }
+
+    /**
+     * @param bytes The bytes to append.
+     * @throws IOException If the bytes could not be written.
+     */
+    void write(byte[] bytes) throws IOException {
+        ensureBuffered(bytes.length);
+        if (bytes.length > buffer.capacity()) {
+            final ByteBuffer toWrite = ByteBuffer.wrap(bytes);
+            while (toWrite.hasRemaining()) {
+                final int written = channel.write(toWrite, flushedLength);
+                flushedLength += written;
+                length += written;
+            }
+        } else {
+            buffer.put(bytes);
+            length += bytes.length;
+        }
+    }
+
+    /**
+     * Writes any buffered values to the file.
+     * @throws IOException If the values could not be written.
+     */
+    void flush() throws IOException {
+        if (flushedLength < length) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * @param position The byte position of the long in the column.
+     * @return The long at that position.
+     * @throws IOException If the column could not be read.
+     */
+    long getLong(long position) throws IOException {
+        final ByteBuffer segment = getSegment(position, LONG_BYTES);
+        return segment == null ? ByteBuffer.wrap(read(position, LONG_BYTES)).getLong()
+                               : segment.getLong((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * @param position The byte position of the int in the column.
+     * @return The int at that position.
+     * @throws IOException If the column could not be read.
+     */
+    int getInt(long position) throws IOException {
+        final ByteBuffer segment = getSegment(position, INT_BYTES);
+        return segment == null ? ByteBuffer.wrap(read(position, INT_BYTES)).getInt()
+                               : segment.getInt((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Reads bytes from the column, which may span more than one mapped segment.
+     * @param position The byte position to read from.
+     * @param count The number of bytes to read.
+     * @return The bytes read.
+     * @throws IOException If the column could not be read.
+     */
+    byte[] read(long position, int count) throws IOException {
+        final byte[] bytes = new byte[count];
+        if (isMapped(position + count)) {
+            int copied = 0;
+            while (copied < count) {
+                final long from = position + copied;
+                final ByteBuffer segment = segments.get((int) (from / SEGMENT_SIZE)).duplicate();
+                segment.position((int) (from % SEGMENT_SIZE));
+                final int toCopy = Math.min(count - copied, segment.remaining());
+                segment.get(bytes, copied, toCopy);
+                copied += toCopy;
+            }
+        } else {
+            readChannel(ByteBuffer.wrap(bytes), position);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads bytes from the column without mapping it, so it can still be truncated afterwards
+     * on platforms which can't truncate a mapped file.
+     * @param position The byte position to read from.
+     * @param count The number of bytes to read.
+     * @return A buffer holding the bytes read.
+     * @throws IOException If the column could not be read.
+     */
+    ByteBuffer readUnmapped(long position, int count) throws IOException {
+        if (position + count > length) {
+            throw new IOException(POSITION + (position + count) + BEYOND_END_OF_COLUMN + length);
+        }
+        flush();
+        final ByteBuffer bytes = ByteBuffer.allocate(count);
+        readChannel(bytes, position);
+        bytes.flip();
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            segments.clear();
+            mappedLength = 0;
+            channel.close();
+        }
+    }
+
+    private void ensureBuffered(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            writeBuffer();
+        }
+    }
+
+    /*
+     * Writes the buffer at the end of the file.  Whatever could not be written stays in the buffer.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                flushedLength += channel.write(buffer, flushedLength);
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    /*
+     * Fills a buffer from the file, without mapping it.
+     */
+    private void readChannel(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException(POSITION + (position + bytes.limit()) + " is beyond the end of the file");
+            }
+        }
+    }
+
+    /*
+     * Returns the mapped segment holding a value, or null if the value spans two segments or is not mapped yet.
+     */
+    private ByteBuffer getSegment(long position, int width) throws IOException {
+        final int index = (int) (position / SEGMENT_SIZE);
+        return isMapped(position + width) && (position + width - 1) / SEGMENT_SIZE == index ? segments.get(index) : null;
+    }
+
+    /*
+     * Maps the column up to a position, if it has grown enough since it was last mapped.  A whole segment is only
+     * mapped once.  The last segment may be only partly mapped, and it is only mapped again when the file has
+     * grown to twice the mapped part of it, or to the whole segment, so live reads don't leave a new mapping behind
+     * every time the column grows.  Returns false if the position is not mapped, so it must be read from the file.
+     */
+    private boolean isMapped(long upTo) throws IOException {
+        if (upTo > mappedLength) {
+            if (upTo > length) {
+                throw new IOException(POSITION + upTo + BEYOND_END_OF_COLUMN + length);
+            }
+            flush();
+            final int last = segments.size() - 1;
+            final long partlyMapped = last >= 0 && segments.get(last).capacity() < SEGMENT_SIZE
+                                    ? segments.get(last).capacity() : 0;
+            final long available = Math.min(SEGMENT_SIZE, flushedLength - (mappedLength - partlyMapped));
+            if (available == SEGMENT_SIZE || available >= 2 * partlyMapped) {
+                if (partlyMapped > 0) {
+                    segments.remove(last);
+                    mappedLength -= partlyMapped;
+                }
+                while (mappedLength < flushedLength) {
+                    final long size = Math.min(SEGMENT_SIZE, flushedLength - mappedLength);
+                    segments.add(channel.map(FileChannel.MapMode.READ_ONLY, mappedLength, size));
+                    mappedLength += size;
+                }
+            }
+        }
+        return upTo <= mappedLength;
+    }
+
+}
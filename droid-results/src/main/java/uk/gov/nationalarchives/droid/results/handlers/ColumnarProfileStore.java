@@ -0,0 +1,695 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * An append-only, columnar store of profile resource nodes.
+ * <p>
+ * Each field of a node is appended to its own column file: node and parent ids, sizes and
+ * timestamps as fixed width primitives, status, resource type, identification method and extension
+ * mismatch packed into a single int, and the offsets of URIs, names, extensions, prefixes and
+ * hashes in a shared string heap.  Identifications are stored as dictionary codes for their PUIDs.
+ * <p>
+ * Saving a node which already has a row appends a new version of it; the latest row for a node id
+ * wins.  Deleted node ids are appended to a tombstone column.  If a row can't be written, whatever
+ * was appended for it is rolled back, so the columns stay aligned.  Each column reaches the disk
+ * independently, so when the store is opened again, rows missing from any fixed width column, or whose
+ * strings or identifications were not written, are dropped.
+ * <p>
+ * Node ids are allocated sequentially from one, so the latest row of each node and the children
+ * of each node are indexed in primitive arrays by node id.  Children are found in their own
+ * {@link ChildIndex}, and only reading their rows holds the lock of the store.
+ */
+public class ColumnarProfileStore implements Closeable {
+
+    private static final long NULL_VALUE = Long.MIN_VALUE;
+    private static final int LONG_BYTES = 8;
+    private static final int INT_BYTES = 4;
+
+    private static final int URI_FIELD = 0;
+    private static final int NAME_FIELD = 1;
+    private static final int EXTENSION_FIELD = 2;
+    private static final int PREFIX_FIELD = 3;
+    private static final int PREFIX_PLUS_ONE_FIELD = 4;
+    private static final int HASH_FIELD = 5;
+    private static final int MD5_HASH_FIELD = 6;
+    private static final int SHA1_HASH_FIELD = 7;
+    private static final int SHA256_HASH_FIELD = 8;
+    private static final int STRING_FIELDS = 9;
+
+    private static final int STATUS_SHIFT = 0;
+    private static final int RESOURCE_TYPE_SHIFT = 8;
+    private static final int METHOD_SHIFT = 16;
+    private static final int ENUM_MASK = 0xFF;
+    private static final int EXTENSION_MISMATCH_FLAG = 0x1000000;
+
+    private static final int ROOT = 0;
+    private static final int NOT_SEEN = 0;
+    private static final int DELETED = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHILDREN_PER_READ = 256;
+
+    private final Path directory;
+
+    private ColumnFile nodeIds;
+    private ColumnFile parentIds;
+    private ColumnFile sizes;
+    private ColumnFile lastModified;
+    private ColumnFile finished;
+    private ColumnFile flags;
+    private ColumnFile formatStarts;
+    private ColumnFile formatCounts;
+    private ColumnFile stringOffsets;
+    private ColumnFile stringHeap;
+    private ColumnFile puidCodes;
+    private ColumnFile puidDictionary;
+    private ColumnFile tombstones;
+
+    private final List<String> puids = new ArrayList<>();
+    private final Map<String, Integer> puidToCode = new HashMap<>();
+
+    private ColumnFile[] rowColumns;
+    private boolean failed;
+
+    private int rowCount;
+    private long maxNodeId;
+    private int[] rowsById = new int[INITIAL_CAPACITY];    // row + 1, NOT_SEEN or DELETED.
+    private final ChildIndex childIndex = new ChildIndex();
+
+    /**
+     * @param directory The directory holding the column files of the store.
+     */
+    public ColumnarProfileStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the store, creating it if it does not exist yet, and indexes any nodes already in it.
+     * @throws IOException If the store could not be opened.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        nodeIds = openColumn("node_id");
+        parentIds = openColumn("parent_id");
+        sizes = openColumn("file_size");
+        lastModified = openColumn("last_modified");
+        finished = openColumn("finished");
+        flags = openColumn("flags");
+        formatStarts = openColumn("format_start");
+        formatCounts = openColumn("format_count");
+        stringOffsets = openColumn("string_offset");
+        stringHeap = openColumn("string_heap");
+        puidCodes = openColumn("puid_code");
+        puidDictionary = openColumn("puid_dictionary");
+        tombstones = openColumn("deleted");
+        rowColumns = new ColumnFile[] {nodeIds, parentIds, sizes, lastModified, finished, flags, formatStarts,
+            formatCounts, stringOffsets, stringHeap, puidCodes, puidDictionary, };
+        loadPuidDictionary();
+        dropPartialRows();
+        indexRows();
+    }
+
+    /**
+     * @return The highest node id in the store, or zero if it is empty.
+     */
+    public synchronized long getMaxNodeId() {
+        return maxNodeId;
+    }
+
+    /**
+     * @return The number of rows in the store, including superseded and deleted rows.
+     */
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The number of nodes deleted from the store.
+     */
+    public synchronized long getDeletionCount() {
+        return tombstones.length() / LONG_BYTES;
+    }
+
+    /**
+     * Appends a node to the store.  The node must already have an id.
+     * If the node has been saved before, the new row supersedes the old one.
+     * If the node can't be written, the part of the row already written is rolled back.
+     * @param node The node to append.
+     * @throws IOException If the node could not be written.
+     */
+    public synchronized void append(ProfileResourceNode node) throws IOException {
+        if (failed) {
+            throw new IOException("The columnar profile store in " + directory
+                    + " can't save nodes, as a row which could not be written was not rolled back.");
+        }
+        checkNodeId(node.getId());
+        final long[] lengths = new long[rowColumns.length];
+        for (int i = 0; i < rowColumns.length; i++) {
+            lengths[i] = rowColumns[i].length();
+        }
+        final int puidCount = puids.size();
+        try {
+            writeRow(node);
+        //CHECKSTYLE:OFF - whatever stopped the row being written, the part of it already written must be rolled back.
+        } catch (IOException | RuntimeException e) {
+        //CHECKSTYLE:ON
+            rollback(lengths, puidCount, e);
+            throw e;
+        }
+        indexRow(rowCount++, node.getId(), node.getParentId());
+    }
+
+    private void writeRow(ProfileResourceNode node) throws IOException {
+        final NodeMetaData metaData = node.getMetaData();
+        final long formatStart = puidCodes.length() / INT_BYTES;
+        final List<Format> formats = node.getFormatIdentifications();
+        for (final Format format : formats) {
+            final String puid = format.getPuid();
+            puidCodes.writeInt(getPuidCode(puid == null ? "" : puid));
+        }
+        writeStrings(node, metaData);
+        parentIds.writeLong(toLong(node.getParentId()));
+        sizes.writeLong(toLong(metaData.getSize()));
+        lastModified.writeLong(toLong(metaData.getLastModifiedDate()));
+        finished.writeLong(toLong(node.getFinished()));
+        flags.writeInt(packFlags(node, metaData));
+        formatStarts.writeLong(formatStart);
+        formatCounts.writeInt(formats.size());
+        nodeIds.writeLong(node.getId());
+    }
+
+    /*
+     * Cuts every column back to the length it had before a row was written, and forgets any PUIDs
+     * added to the dictionary for it.  If that fails, the columns may no longer be aligned, so
+     * no more rows are appended.
+     */
+    private void rollback(long[] lengths, int puidCount, Exception cause) {
+        for (int i = 0; i < rowColumns.length; i++) {
+            try {
+                rowColumns[i].truncate(lengths[i]);
+            } catch (IOException e) {
+                failed = true;
+                cause.addSuppressed(e);
+            }
+        }
+        while (puids.size() > puidCount) {
+            puidToCode.remove(puids.remove(puids.size() - 1));
+        }
+    }
+
+    /**
+     * Writes all appended rows to disk.
+     * @throws IOException If the rows could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        puidCodes.flush();
+        stringHeap.flush();
+        stringOffsets.flush();
+        puidDictionary.flush();
+        parentIds.flush();
+        sizes.flush();
+        lastModified.flush();
+        finished.flush();
+        flags.flush();
+        formatStarts.flush();
+        formatCounts.flush();
+        nodeIds.flush();
+        tombstones.flush();
+    }
+
+    /**
+     * Loads the latest version of a node.
+     * @param nodeId The id of the node to load.
+     * @param puidFormatMap A map of PUIDs to the formats to add as identifications.
+     * @return The node, or null if there is no node with that id, or it was deleted.
+     * @throws IOException If the node could not be read.
+     */
+    public synchronized ProfileResourceNode load(long nodeId, Map<String, Format> puidFormatMap) throws IOException {
+        final int row = getLatestRow(nodeId);
+        return row < 0 ? null : readRow(row, puidFormatMap);
+    }
+
+    /**
+     * Loads a row of the store, if it holds the latest version of a node which has not been deleted.
+     * Reading every row from zero up to {@link #getRowCount()} visits each node once, in the order
+     * they were first saved.
+     * @param row The row to load.
+     * @param puidFormatMap A map of PUIDs to the formats to add as identifications.
+     * @return The node in the row, or null if the row was superseded or deleted.
+     * @throws IOException If the row could not be read.
+     */
+    public synchronized ProfileResourceNode loadRow(int row, Map<String, Format> puidFormatMap) throws IOException {
+        final long nodeId = nodeIds.getLong((long) row * LONG_BYTES);
+        return getLatestRow(nodeId) == row ? readRow(row, puidFormatMap) : null;
+    }
+
+    /**
+     * Loads the children of a node, in node id order.
+     * @param parentId The id of the parent, or null to load the top level nodes.
+     * @param puidFormatMap A map of PUIDs to the formats to add as identifications.
+     * @return The children of the node.
+     * @throws IOException If the children could not be read.
+     */
+    public List<ProfileResourceNode> loadChildren(Long parentId, Map<String, Format> puidFormatMap)
+        throws IOException {
+        return loadChildren(parentId, ROOT, Integer.MAX_VALUE, puidFormatMap);
+    }
+
+    /**
+     * Loads a page of the children of a node, in node id order.
+     * @param parentId The id of the parent, or null to load the top level nodes.
+     * @param afterNodeId Only children with a node id greater than this are loaded.
+     * @param pageSize The maximum number of children to load.
+     * @param puidFormatMap A map of PUIDs to the formats to add as identifications.
+     * @return The page of children.
+     * @throws IOException If the children could not be read.
+     */
+    public List<ProfileResourceNode> loadChildren(Long parentId, long afterNodeId, int pageSize,
+                                                  Map<String, Format> puidFormatMap) throws IOException {
+        // Children are found in the child index, and read a few at a time, so other users of the store
+        // only wait for the rows being read.  More children are found if any were deleted.
+        final int parent = parentId == null ? ROOT : (int) parentId.longValue();
+        final List<ProfileResourceNode> children = new ArrayList<>(Math.min(pageSize, CHILDREN_PER_READ));
+        long after = afterNodeId;
+        int[] childIds;
+        do {
+            childIds = childIndex.getChildren(parent, after, Math.min(pageSize - children.size(), CHILDREN_PER_READ));
+            readLatestRows(childIds, puidFormatMap, children);
+            after = childIds.length == 0 ? after : childIds[childIds.length - 1];
+        } while (childIds.length > 0 && children.size() < pageSize);
+        return children;
+    }
+
+    /**
+     * Finds the ids of a page of the children of a node, in node id order, without reading their rows.
+     * Some of the children may have been deleted.
+     * @param parentId The id of the parent, or null for the top level nodes.
+     * @param afterNodeId Only children with a node id greater than this are found.
+     * @param maxChildren The most child ids to find.
+     * @return The ids of the children.
+     */
+    public int[] getChildIds(Long parentId, long afterNodeId, int maxChildren) {
+        return childIndex.getChildren(parentId == null ? ROOT : (int) parentId.longValue(), afterNodeId, maxChildren);
+    }
+
+    /**
+     * @param nodeId The id of a node.
+     * @return The id of the parent of the latest version of the node, or null if it is a top level node,
+     *         there is no node with that id, or it was deleted.
+     * @throws IOException If the parent id could not be read.
+     */
+    public synchronized Long getParentId(long nodeId) throws IOException {
+        final int row = getLatestRow(nodeId);
+        return row < 0 ? null : toNullableLong(parentIds.getLong((long) row * LONG_BYTES));
+    }
+
+    /**
+     * @param nodeId The id of a node.
+     * @return Whether the node has any children which have not been deleted.
+     */
+    public boolean hasChildren(long nodeId) {
+        boolean found = false;
+        if (nodeId > ROOT && nodeId < Integer.MAX_VALUE) {
+            long after = ROOT;
+            int[] childIds;
+            do {
+                childIds = childIndex.getChildren((int) nodeId, after, CHILDREN_PER_READ);
+                found = hasLatestRow(childIds);
+                after = childIds.length == 0 ? after : childIds[childIds.length - 1];
+            } while (!found && childIds.length > 0);
+        }
+        return found;
+    }
+
+    /**
+     * Deletes a node from the store.
+     * @param nodeId The id of the node to delete.
+     * @throws IOException If the deletion could not be recorded.
+     */
+    public synchronized void delete(long nodeId) throws IOException {
+        if (getLatestRow(nodeId) >= 0) {
+            tombstones.writeLong(nodeId);
+            rowsById[(int) nodeId] = DELETED;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        final ColumnFile[] columns = {nodeIds, parentIds, sizes, lastModified, finished, flags, formatStarts,
+            formatCounts, stringOffsets, stringHeap, puidCodes, puidDictionary, tombstones, };
+        IOException firstError = null;
+        for (final ColumnFile column : columns) {
+            try {
+                if (column != null) {
+                    column.close();
+                }
+            } catch (IOException e) {
+                firstError = firstError == null ? e : firstError;
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    private synchronized void readLatestRows(int[] childIds, Map<String, Format> puidFormatMap,
+                                             List<ProfileResourceNode> children) throws IOException {
+        for (final int child : childIds) {
+            final int row = getLatestRow(child);
+            if (row >= 0) {
+                children.add(readRow(row, puidFormatMap));
+            }
+        }
+    }
+
+    private synchronized boolean hasLatestRow(int[] childIds) {
+        for (final int child : childIds) {
+            if (getLatestRow(child) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ColumnFile openColumn(String name) throws IOException {
+        return new ColumnFile(directory.resolve(name + ".col"));
+    }
+
+    /*
+     * Cuts every fixed width column back to the number of complete rows.  A row is only complete
+     * if every fixed width column holds it, and its strings and identifications were written too.
+     * The string heap and identifications are written in row order, so if the last row is
+     * complete, so are all the rows before it.
+     */
+    private void dropPartialRows() throws IOException {
+        long rows = Math.min(flags.length() / INT_BYTES, formatCounts.length() / INT_BYTES);
+        rows = Math.min(rows, stringOffsets.length() / ((long) LONG_BYTES * STRING_FIELDS));
+        for (final ColumnFile column : new ColumnFile[] {nodeIds, parentIds, sizes, lastModified, finished,
+            formatStarts, }) {
+            rows = Math.min(rows, column.length() / LONG_BYTES);
+        }
+        while (rows > 0 && !isComplete((int) rows - 1)) {
+            rows--;
+        }
+        rowCount = (int) rows;
+        final long longColumnLength = rows * LONG_BYTES;
+        nodeIds.truncate(longColumnLength);
+        parentIds.truncate(longColumnLength);
+        sizes.truncate(longColumnLength);
+        lastModified.truncate(longColumnLength);
+        finished.truncate(longColumnLength);
+        formatStarts.truncate(longColumnLength);
+        flags.truncate(rows * INT_BYTES);
+        formatCounts.truncate(rows * INT_BYTES);
+        stringOffsets.truncate(longColumnLength * STRING_FIELDS);
+        puidCodes.truncate(puidCodes.length() - puidCodes.length() % INT_BYTES);
+        tombstones.truncate(tombstones.length() - tombstones.length() % LONG_BYTES);
+    }
+
+    /*
+     * Columns are read without mapping them, so they can still be truncated afterwards.
+     */
+    private boolean isComplete(int row) throws IOException {
+        return hasCompleteFormats(row) && hasCompleteStrings(row);
+    }
+
+    private boolean hasCompleteFormats(int row) throws IOException {
+        final long formatStart = formatStarts.readUnmapped((long) row * LONG_BYTES, LONG_BYTES).getLong();
+        final int formatCount = formatCounts.readUnmapped((long) row * INT_BYTES, INT_BYTES).getInt();
+        boolean complete = formatStart >= 0 && formatCount >= 0
+                && (formatStart + formatCount) * INT_BYTES <= puidCodes.length();
+        for (int i = 0; complete && i < formatCount; i++) {
+            final int code = puidCodes.readUnmapped((formatStart + i) * INT_BYTES, INT_BYTES).getInt();
+            complete = code >= 0 && code < puids.size();
+        }
+        return complete;
+    }
+
+    private boolean hasCompleteStrings(int row) throws IOException {
+        boolean complete = true;
+        final long heapLength = stringHeap.length();
+        final ByteBuffer offsets = stringOffsets.readUnmapped((long) row * LONG_BYTES * STRING_FIELDS,
+                LONG_BYTES * STRING_FIELDS);
+        for (int field = 0; complete && field < STRING_FIELDS; field++) {
+            final long offset = offsets.getLong();
+            if (offset != NULL_VALUE) {
+                complete = offset >= 0 && offset + INT_BYTES <= heapLength;
+                if (complete) {
+                    final int size = stringHeap.readUnmapped(offset, INT_BYTES).getInt();
+                    complete = size >= 0 && offset + INT_BYTES + size <= heapLength;
+                }
+            }
+        }
+        return complete;
+    }
+
+    private void loadPuidDictionary() throws IOException {
+        long position = 0;
+        final long length = puidDictionary.length();
+        while (position + INT_BYTES <= length) {
+            final int size = puidDictionary.readUnmapped(position, INT_BYTES).getInt();
+            if (size < 0 || position + INT_BYTES + size > length) {
+                break; // a partly written entry.
+            }
+            final String puid = new String(puidDictionary.readUnmapped(position + INT_BYTES, size).array(),
+                    StandardCharsets.UTF_8);
+            puidToCode.put(puid, puids.size());
+            puids.add(puid);
+            position += INT_BYTES + size;
+        }
+        puidDictionary.truncate(position);
+    }
+
+    private void indexRows() throws IOException {
+        for (int row = 0; row < rowCount; row++) {
+            final long parentId = parentIds.getLong((long) row * LONG_BYTES);
+            indexRow(row, nodeIds.getLong((long) row * LONG_BYTES), parentId == NULL_VALUE ? null : parentId);
+        }
+        final long deletedCount = tombstones.length() / LONG_BYTES;
+        for (long i = 0; i < deletedCount; i++) {
+            final long nodeId = tombstones.getLong(i * LONG_BYTES);
+            if (nodeId < rowsById.length) {
+                rowsById[(int) nodeId] = DELETED;
+            }
+        }
+    }
+
+    private void indexRow(int row, long nodeId, Long parentId) {
+        checkNodeId(nodeId);
+        final int id = (int) nodeId;
+        ensureCapacity(id);
+        final boolean firstSeen = rowsById[id] == NOT_SEEN;
+        if (rowsById[id] != DELETED) {
+            rowsById[id] = row + 1;
+        }
+        if (firstSeen) {
+            // Added once the row is indexed, so a child found in the index always has a row.
+            childIndex.add(parentId == null ? ROOT : (int) parentId.longValue(), id);
+        }
+        maxNodeId = Math.max(maxNodeId, nodeId);
+    }
+
+    private static void checkNodeId(Long nodeId) {
+        if (nodeId == null || nodeId <= ROOT || nodeId >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Node ids in a columnar profile store must be between 1 and "
+                    + Integer.MAX_VALUE + ": " + nodeId);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= rowsById.length) {
+            final int newLength = Math.max(id + 1, rowsById.length * 2);
+            rowsById = Arrays.copyOf(rowsById, newLength);
+        }
+    }
+
+    private int getLatestRow(long nodeId) {
+        return nodeId > ROOT && nodeId < rowsById.length ? rowsById[(int) nodeId] - 1 : -1;
+    }
+
+    private int getPuidCode(String puid) throws IOException {
+        Integer code = puidToCode.get(puid);
+        if (code == null) {
+            code = puids.size();
+            final byte[] bytes = puid.getBytes(StandardCharsets.UTF_8);
+            puidDictionary.writeInt(bytes.length);
+            puidDictionary.write(bytes);
+            puidToCode.put(puid, code);
+            puids.add(puid);
+        }
+        return code;
+    }
+
+    private void writeStrings(ProfileResourceNode node, NodeMetaData metaData) throws IOException {
+        final String[] values = new String[STRING_FIELDS];
+        values[URI_FIELD] = node.getUri() == null ? null : node.getUri().toString();
+        values[NAME_FIELD] = metaData.getName();
+        values[EXTENSION_FIELD] = metaData.getExtension();
+        values[PREFIX_FIELD] = node.getPrefix();
+        values[PREFIX_PLUS_ONE_FIELD] = node.getPrefixPlusOne();
+        values[HASH_FIELD] = metaData.getHash();
+        values[MD5_HASH_FIELD] = metaData.getMd5Hash();
+        values[SHA1_HASH_FIELD] = metaData.getSha1Hash();
+        values[SHA256_HASH_FIELD] = metaData.getSha256Hash();
+        for (final String value : values) {
+            if (value == null) {
+                stringOffsets.writeLong(NULL_VALUE);
+            } else {
+                stringOffsets.writeLong(stringHeap.length());
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                stringHeap.writeInt(bytes.length);
+                stringHeap.write(bytes);
+            }
+        }
+    }
+
+    private String[] readStrings(int row) throws IOException {
+        final ByteBuffer offsets = ByteBuffer.wrap(
+                stringOffsets.read((long) row * LONG_BYTES * STRING_FIELDS, LONG_BYTES * STRING_FIELDS));
+        final String[] values = new String[STRING_FIELDS];
+        for (int field = 0; field < STRING_FIELDS; field++) {
+            final long offset = offsets.getLong();
+            if (offset != NULL_VALUE) {
+                final int size = stringHeap.getInt(offset);
+                values[field] = new String(stringHeap.read(offset + INT_BYTES, size), StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    private ProfileResourceNode readRow(int row, Map<String, Format> puidFormatMap) throws IOException {
+        final long longPosition = (long) row * LONG_BYTES;
+        final String[] strings = readStrings(row);
+        final ProfileResourceNode node = new ProfileResourceNode(toUri(strings[URI_FIELD]));
+        final NodeMetaData metaData = new NodeMetaData();
+        node.setMetaData(metaData);
+        node.setId(nodeIds.getLong(longPosition));
+        node.setParentId(toNullableLong(parentIds.getLong(longPosition)));
+        node.setPrefix(strings[PREFIX_FIELD]);
+        node.setPrefixPlusOne(strings[PREFIX_PLUS_ONE_FIELD]);
+        node.setFinished(toDate(finished.getLong(longPosition)));
+        metaData.setSize(toNullableLong(sizes.getLong(longPosition)));
+        metaData.setLastModifiedDate(toDate(lastModified.getLong(longPosition)));
+        metaData.setName(strings[NAME_FIELD]);
+        metaData.setExtension(strings[EXTENSION_FIELD]);
+        metaData.setHash(strings[HASH_FIELD]);
+        metaData.setMd5Hash(strings[MD5_HASH_FIELD]);
+        metaData.setSha1Hash(strings[SHA1_HASH_FIELD]);
+        metaData.setSha256Hash(strings[SHA256_HASH_FIELD]);
+        unpackFlags(flags.getInt((long) row * INT_BYTES), node, metaData);
+        addFormats(node, formatStarts.getLong(longPosition), formatCounts.getInt((long) row * INT_BYTES),
+                puidFormatMap);
+        return node;
+    }
+
+    private void addFormats(ProfileResourceNode node, long formatStart, int formatCount,
+                            Map<String, Format> puidFormatMap) throws IOException {
+        for (int i = 0; i < formatCount; i++) {
+            final String puid = puids.get(puidCodes.getInt((formatStart + i) * INT_BYTES));
+            final Format format = puid.isEmpty() ? Format.NULL : puidFormatMap.get(puid);
+            if (format != null) {
+                node.addFormatIdentification(format);
+            }
+        }
+    }
+
+    private static int packFlags(ProfileResourceNode node, NodeMetaData metaData) {
+        final NodeStatus status = metaData.getNodeStatus();
+        final ResourceType resourceType = metaData.getResourceType();
+        final IdentificationMethod method = metaData.getIdentificationMethod();
+        int packed = (status == null ? 0 : status.ordinal() + 1) << STATUS_SHIFT;
+        packed |= (resourceType == null ? 0 : resourceType.ordinal() + 1) << RESOURCE_TYPE_SHIFT;
+        packed |= (method == null ? 0 : method.ordinal() + 1) << METHOD_SHIFT;
+        if (Boolean.TRUE.equals(node.getExtensionMismatch())) {
+            packed |= EXTENSION_MISMATCH_FLAG;
+        }
+        return packed;
+    }
+
+    private static void unpackFlags(int packed, ProfileResourceNode node, NodeMetaData metaData) {
+        final int status = (packed >>> STATUS_SHIFT) & ENUM_MASK;
+        final int resourceType = (packed >>> RESOURCE_TYPE_SHIFT) & ENUM_MASK;
+        final int method = (packed >>> METHOD_SHIFT) & ENUM_MASK;
+        metaData.setNodeStatus(status == 0 ? null : NodeStatus.values()[status - 1]);
+        metaData.setResourceType(resourceType == 0 ? null : ResourceType.values()[resourceType - 1]);
+        metaData.setIdentificationMethod(method == 0 ? null : IdentificationMethod.values()[method - 1]);
+        node.setExtensionMismatch((packed & EXTENSION_MISMATCH_FLAG) != 0);
+    }
+
+    private static URI toUri(String uri) throws IOException {
+        try {
+            return uri == null ? null : new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new IOException("The URI for the node obtained from the columnar store: [" + uri
+                    + "] could not be converted into a URI", e);
+        }
+    }
+
+    private static long toLong(Long value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    private static long toLong(Date value) {
+        return value == null ? NULL_VALUE : value.getTime();
+    }
+
+    private static Long toNullableLong(long value) {
+        return value == NULL_VALUE ? null : value;
+    }
+
+    private static Date toDate(long value) {
+        return value == NULL_VALUE ? null : new Date(value);
+    }
+
+}
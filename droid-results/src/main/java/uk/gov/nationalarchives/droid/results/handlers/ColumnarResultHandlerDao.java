@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * An implementation of the ResultHandlerDao interface which saves nodes to a {@link ColumnarProfileStore}
+ * in the profile folder, instead of to the profile database.
+ * <p>
+ * Nodes are appended to the store directly on the calling thread, so there is no writer thread or batching.
+ * Format reference data still lives in the profile database, so format look ups are delegated to
+ * the reference data dao.
+ */
+public class ColumnarResultHandlerDao implements ResultHandlerDao {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private ResultHandlerDao referenceDataDao;
+    private ColumnarProfileStore store;
+    private Path storeDirectory;
+    private AtomicLong nodeIds;
+
+    @Override
+    public void init() {
+        store = new ColumnarProfileStore(storeDirectory);
+        try {
+            store.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the columnar profile store in " + storeDirectory, e);
+        }
+        nodeIds = new AtomicLong(store.getMaxNodeId());
+    }
+
+    /**
+     * Closes the columnar profile store.
+     */
+    public void cleanup() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            log.error("An exception occurred closing the columnar profile store in " + storeDirectory, e);
+        }
+    }
+
+    @Override
+    public void save(ProfileResourceNode node, ResourceId parentId) {
+        if (node.getId() == null) {
+            JDBCBatchResultHandlerDao.setNodeIds(node, parentId, nodeIds.incrementAndGet());
+        }
+        try {
+            store.append(node);
+        } catch (IOException e) {
+            // The store rolls back the part of the row it wrote, so later rows stay aligned.
+            log.error("An exception occurred saving a node with id " + node.getId() + ", so it was not saved", e);
+        }
+    }
+
+    @Override
+    public void commit() {
+        try {
+            store.flush();
+        } catch (IOException e) {
+            log.error("An exception occurred committing the columnar profile store in " + storeDirectory, e);
+        }
+    }
+
+    @Override
+    public Format loadFormat(String puid) {
+        return referenceDataDao.loadFormat(puid);
+    }
+
+    @Override
+    public List<Format> getAllFormats() {
+        return referenceDataDao.getAllFormats();
+    }
+
+    @Override
+    public Map<String, Format> getPUIDFormatMap() {
+        return referenceDataDao.getPUIDFormatMap();
+    }
+
+    @Override
+    public ProfileResourceNode loadNode(Long nodeId) {
+        try {
+            return store.load(nodeId, getPUIDFormatMap());
+        } catch (IOException e) {
+            log.error("An exception occurred loading a node with id " + nodeId, e);
+        }
+        return null;
+    }
+
+    @Override
+    public void deleteNode(Long nodeId) {
+        try {
+            store.delete(nodeId);
+        } catch (IOException e) {
+            log.error("An exception occurred deleting a node with id " + nodeId, e);
+        }
+    }
+
+    @Override
+    public void initialiseForNewTemplate() {
+        referenceDataDao.initialiseForNewTemplate();
+    }
+
+    /**
+     * @return The store the nodes are saved in.
+     */
+    public ColumnarProfileStore getStore() {
+        return store;
+    }
+
+    /**
+     * @param storeDirectory The directory holding the column files of the store.
+     */
+    public void setStoreDirectory(Path storeDirectory) {
+        this.storeDirectory = storeDirectory;
+    }
+
+    /**
+     * @param referenceDataDao The dao to look up formats with.
+     */
+    public void setReferenceDataDao(ResultHandlerDao referenceDataDao) {
+        this.referenceDataDao = referenceDataDao;
+    }
+
+}
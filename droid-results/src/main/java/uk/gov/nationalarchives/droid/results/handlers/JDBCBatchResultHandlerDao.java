@@ -35,6 +35,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -70,9 +71,12 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     //CHECKSTYLE:OFF  Various formatting issues with SQL Statements.  E.g. some longer than 120 lines but
     // splitting them likely to hamper rather than assist readability here.
 
-    // How many results in the batch before committing.
+    // How many results in the batch before committing, to begin with and at the least.
     public static final int BATCH_LIMIT = 100;
 
+    // The most results in a batch before committing, when the writer is falling behind.
+    public static final int MAX_BATCH_LIMIT = 2000;
+
     // A "poison-pill" node info to signal to the writing thread that
     // it should terminate and commit any results so far.
     private static final NodeInfo COMMIT_SO_FAR = new NodeInfo(null, false);
@@ -81,27 +85,12 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             "INSERT INTO PROFILE_RESOURCE_NODE " +
                     "(NODE_ID,EXTENSION_MISMATCH,FINISHED_TIMESTAMP,IDENTIFICATION_COUNT," +
                     " EXTENSION,HASH,IDENTIFICATION_METHOD,LAST_MODIFIED_DATE,NAME,NODE_STATUS," +
-                    " RESOURCE_TYPE,FILE_SIZE,PARENT_ID,PREFIX,PREFIX_PLUS_ONE,URI) " +
-                    "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+                    " RESOURCE_TYPE,FILE_SIZE,PARENT_ID,PREFIX,PREFIX_PLUS_ONE,URI," +
+                    " MD5_HASH,SHA1_HASH,SHA256_HASH) " +
+                    "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     private static final String INSERT_IDENTIFICATIONS       = "INSERT INTO IDENTIFICATION (NODE_ID,PUID) VALUES ";
-    private static final String INSERT_ZERO_IDENTIFICATIONS  = INSERT_IDENTIFICATIONS + "(?,'')";
     private static final String INSERT_ONE_IDENTIFICATION    = INSERT_IDENTIFICATIONS + "(?,?)";
-    private static final String INSERT_TWO_IDENTIFICATIONS   = INSERT_IDENTIFICATIONS + "(?,?),(?,?)";
-    private static final String INSERT_THREE_IDENTIFICATIONS = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?)";
-    private static final String INSERT_FOUR_IDENTIFICATIONS  = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_FIVE_IDENTIFICATIONS  = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_SIX_IDENTIFICATIONS   = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_SEVEN_IDENTIFICATIONS = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_EIGHT_IDENTIFICATIONS = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_NINE_IDENTIFICATIONS  = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)";
-    private static final String INSERT_TEN_IDENTIFICATIONS   = INSERT_IDENTIFICATIONS + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)";
-
-    private static final String[] INSERT_IDENTIFICATION      = {
-        INSERT_ZERO_IDENTIFICATIONS, INSERT_ONE_IDENTIFICATION,
-        INSERT_TWO_IDENTIFICATIONS, INSERT_THREE_IDENTIFICATIONS, INSERT_FOUR_IDENTIFICATIONS,
-        INSERT_FIVE_IDENTIFICATIONS, INSERT_SIX_IDENTIFICATIONS, INSERT_SEVEN_IDENTIFICATIONS,
-        INSERT_EIGHT_IDENTIFICATIONS, INSERT_NINE_IDENTIFICATIONS, INSERT_TEN_IDENTIFICATIONS, };
 
     private static final String UPDATE_NODE_STATUS = "UPDATE PROFILE_RESOURCE_NODE SET NODE_STATUS = ? WHERE NODE_ID = ?";
     private static final String DELETE_NODE = "DELETE FROM PROFILE_RESOURCE_NODE WHERE NODE_ID = ?";
@@ -131,6 +120,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                                                 + "NODE_STATUS INTEGER, RESOURCE_TYPE INTEGER NOT NULL, FILE_SIZE BIGINT, PARENT_ID BIGINT, PREFIX VARCHAR(255), "
                                                 + "PREFIX_PLUS_ONE VARCHAR(255), TEXT_ENCODING INTEGER, URI VARCHAR(4000) NOT NULL, "
                                                 + "U_EXTENSION GENERATED ALWAYS AS (UPPER(EXTENSION)), U_NAME GENERATED ALWAYS AS (UPPER(NAME)), "
+                                                + "MD5_HASH VARCHAR(32), SHA1_HASH VARCHAR(40), SHA256_HASH VARCHAR(64), "
                                                 + "PRIMARY KEY (NODE_ID))";
     private static final String CREATE_IDX_MIME_TYPE_ON_FORMAT = "CREATE INDEX IDX_MIME_TYPE ON FORMAT (MIME_TYPE)";
     private static final String CREATE_IDX_FORMAT_NAME_ON_FORMAT = "CREATE INDEX IDX_FORMAT_NAME ON FORMAT (U_NAME)";
@@ -143,7 +133,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private static final String CREATE_IDX_PRN_NODE_STATUS_ON_PRN = "CREATE INDEX IDX_PRN_NODE_STATUS ON PROFILE_RESOURCE_NODE (NODE_STATUS)";
     private static final String CREATE_IDX_ID_RESOURCE_ON_PRN = "CREATE INDEX IDX_PRN_ID_RESOURCETYPE ON PROFILE_RESOURCE_NODE (RESOURCE_TYPE)";
     private static final String CREATE_IDX_PRN_FILE_SIZE_ON_PRN = "CREATE INDEX IDX_PRN_FILE_SIZE ON PROFILE_RESOURCE_NODE (FILE_SIZE)";
-    private static final String CREATE_IDX_PARENT_ID_ON_PRN = "CREATE INDEX IDX_PARENT_ID ON PROFILE_RESOURCE_NODE (PARENT_ID)";
+    private static final String CREATE_IDX_PARENT_NODE_ID_ON_PRN = "CREATE INDEX IDX_PARENT_NODE_ID ON PROFILE_RESOURCE_NODE (PARENT_ID, NODE_ID)";
+    private static final String DROP_IDX_PARENT_ID_ON_PRN = "DROP INDEX IDX_PARENT_ID";
     private static final String CREATE_IDX_PREFIX_ON_PRN = "CREATE INDEX IDX_PREFIX ON PROFILE_RESOURCE_NODE (PREFIX)";
     private static final String CREATE_IDX_PREFIX_PLUS_ONE_ON_PRN = "CREATE INDEX IDX_PREFIX_PLUS_ONE ON PROFILE_RESOURCE_NODE (PREFIX_PLUS_ONE)";
     //private static String CREATE_IDX_TEXT_ENCODING_ON_PRN = "CREATE INDEX IDX_TEXT_ENCODING ON PROFILE_RESOURCE_NODE (TEXT_ENCODING)";
@@ -156,15 +147,36 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private static final String CREATE_UCASE_FMT_NAME_COL = "ALTER TABLE FORMAT ADD COLUMN U_NAME GENERATED ALWAYS AS (UPPER(NAME))";
 
     private static final String ALTER_NAME_COLUMN_SIZE = "ALTER TABLE PROFILE_RESOURCE_NODE ALTER COLUMN NAME SET DATA TYPE VARCHAR(1000)";
+
+    private static final String CREATE_MD5_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN MD5_HASH VARCHAR(32)";
+    private static final String CREATE_SHA1_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN SHA1_HASH VARCHAR(40)";
+    private static final String CREATE_SHA256_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN SHA256_HASH VARCHAR(64)";
+
+    // Secondary indexes which are dropped while a new profile is bulk loaded, and built again once it is committed.
+    // The parent and node id index is kept, since the tree view browses a profile while it is running.
+    static final String[][] DEFERRED_INDEXES = {
+        {"IDX_ID_COUNT", CREATE_IDX_ID_COUNT_ON_PRN},
+        {"IDX_PRN_EXTENSION", CREATE_IDX_PRN_EXT_ON_PRN},
+        {"IDX_PRN_ID_METHOD", CREATE_IDX_PRN_ID_METHOD_ON_PRN},
+        {"IDX_PRN_LAST_MODIFIED", CREATE_IDX_PRN_LAST_MODIFIED_ON_PRN},
+        {"IDX_PRN_NAME", CREATE_IDX_PRN_NAME_ON_PRN},
+        {"IDX_PRN_NODE_STATUS", CREATE_IDX_PRN_NODE_STATUS_ON_PRN},
+        {"IDX_PRN_ID_RESOURCETYPE", CREATE_IDX_ID_RESOURCE_ON_PRN},
+        {"IDX_PRN_FILE_SIZE", CREATE_IDX_PRN_FILE_SIZE_ON_PRN},
+        {"IDX_PREFIX", CREATE_IDX_PREFIX_ON_PRN},
+        {"IDX_PREFIX_PLUS_ONE", CREATE_IDX_PREFIX_PLUS_ONE_ON_PRN},
+    };
     //CHECKSTYLE:ON
     private static final int PRN_COL_COUNT_SANS_UCASE_COLS = 17;
     private static final int PRN_COL_COUNT_WITH_UCASE_COLS = 19;
+    private static final int PRN_COL_COUNT_WITH_HASH_COLS = 22;
 
     private static boolean freshTemplate;
     private static final Object LOCKER = new Object();
 
     private static final int BLOCKING_QUEUE_SIZE = 256;
-    private static final int MOST_RECENTLY_ADDED_NODE_CACHE_SIZE = 512;
+    // Big enough to hold every node which may not be committed yet: a full batch, and everything queued behind it.
+    private static final int MOST_RECENTLY_ADDED_NODE_CACHE_SIZE = MAX_BATCH_LIMIT + BLOCKING_QUEUE_SIZE;
     private static final int PUID_FORMAT_MAP_SIZE = 2500;
 
     private final Log log = LogFactory.getLog(getClass());
@@ -248,6 +260,9 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     // In addition, we increase the size of the NAME column in the PROFILE_RESOURCE_NODE table to 1000
     // characters (it was 255 in the previous DROID version).  This is required to accommodate the long
     // extracted names in ARC and WARC files.
+    // The MD5_HASH, SHA1_HASH and SHA256_HASH columns are also added, so a profile can store more than one hash.
+    // The index on the parent id is replaced by one on the parent and node ids, so the tree view can find a page
+    // of children in node id order from the index alone.
     private void checkCreateUpperCaseColumns() {
 
         Connection conn = null;
@@ -263,30 +278,19 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             result.close();
             int x;
 
-            switch(numberOfColumnsInPrnTable) {
-                case PRN_COL_COUNT_SANS_UCASE_COLS:
-                    String[] statements =
-                    {ALTER_NAME_COLUMN_SIZE, CREATE_UCASE_PRN_EXTN_COL, CREATE_UCASE_PRN_NAME_COL,
-                        CREATE_UCASE_FMT_NAME_COL, };
-
-                    for (String s : statements) {
-                        try {
-                            createColumn = conn.prepareStatement(s);
-                            x = createColumn.executeUpdate();
-                        } catch (SQLException ex) {
-                            log.error(ex.getMessage());
-                        } finally {
-                            createColumn.close();
-                        }
-                    }
-                    conn.commit();
-                    break;
-                case PRN_COL_COUNT_WITH_UCASE_COLS:
-                    //Do nothing - the required columns already exist in the template
-                    break;
-                default:
-                    throw new SQLException("Invalid number of columns in profile_resource_node table!");
+            final List<String> upgradeStatements = getSchemaUpgradeStatements(numberOfColumnsInPrnTable);
+            upgradeStatements.addAll(getIndexUpgradeStatements(conn));
+            for (String s : upgradeStatements) {
+                try {
+                    createColumn = conn.prepareStatement(s);
+                    x = createColumn.executeUpdate();
+                } catch (SQLException ex) {
+                    log.error(ex.getMessage());
+                } finally {
+                    createColumn.close();
+                }
             }
+            conn.commit();
         } catch (SQLException e) {
             log.error(e);
         } finally {
@@ -309,12 +313,51 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
     }
 
+    private static List<String> getIndexUpgradeStatements(final Connection conn) throws SQLException {
+        final List<String> statements = new ArrayList<String>();
+        final List<String> indexNames = getIndexNames(conn);
+        if (!indexNames.contains("IDX_PARENT_NODE_ID")) {
+            statements.add(CREATE_IDX_PARENT_NODE_ID_ON_PRN);
+        }
+        if (indexNames.contains("IDX_PARENT_ID")) {
+            statements.add(DROP_IDX_PARENT_ID_ON_PRN);
+        }
+        return statements;
+    }
+
+    private static List<String> getSchemaUpgradeStatements(int numberOfColumnsInPrnTable) throws SQLException {
+        final List<String> statements = new ArrayList<String>();
+        switch(numberOfColumnsInPrnTable) {
+            case PRN_COL_COUNT_SANS_UCASE_COLS:
+                statements.add(ALTER_NAME_COLUMN_SIZE);
+                statements.add(CREATE_UCASE_PRN_EXTN_COL);
+                statements.add(CREATE_UCASE_PRN_NAME_COL);
+                statements.add(CREATE_UCASE_FMT_NAME_COL);
+                //fall through - the hash columns are also needed.
+            case PRN_COL_COUNT_WITH_UCASE_COLS:
+                statements.add(CREATE_MD5_HASH_COL);
+                statements.add(CREATE_SHA1_HASH_COL);
+                statements.add(CREATE_SHA256_HASH_COL);
+                break;
+            case PRN_COL_COUNT_WITH_HASH_COLS:
+                //Do nothing - the required columns already exist in the template
+                break;
+            default:
+                throw new SQLException("Invalid number of columns in profile_resource_node table!");
+        }
+        return statements;
+    }
+
     private void setUpFormatsAndDatabaseWriter() {
         formats = loadAllFormats();
         for (final Format format : formats) {
             puidFormatMap.put(format.getPuid(), format);
         }
-        nodeIds = new AtomicLong(getMaxNodeId() + 1);
+        final long maxNodeId = getMaxNodeId();
+        nodeIds = new AtomicLong(maxNodeId + 1);
+        if (maxNodeId > 0) {
+            createMissingDeferredIndexes(); // in case a bulk load was stopped before its indexes were built.
+        }
 
         //Formats will not have been populated if this method is called from init() and this is the first run for a new
         // template (See comments under init(), scenario (ii)).  In which case, we delay creating the writer until the
@@ -356,7 +399,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 createIndexesAndConstraints.add(CREATE_IDX_PRN_NODE_STATUS_ON_PRN);
                 createIndexesAndConstraints.add(CREATE_IDX_ID_RESOURCE_ON_PRN);
                 createIndexesAndConstraints.add(CREATE_IDX_PRN_FILE_SIZE_ON_PRN);
-                createIndexesAndConstraints.add(CREATE_IDX_PARENT_ID_ON_PRN);
+                createIndexesAndConstraints.add(CREATE_IDX_PARENT_NODE_ID_ON_PRN);
                 createIndexesAndConstraints.add(CREATE_IDX_PREFIX_ON_PRN);
                 createIndexesAndConstraints.add(CREATE_IDX_PREFIX_PLUS_ONE_ON_PRN);
                 //createIndexesAndConstraints.add(CREATE_IDX_TEXT_ENCODING_ON_PRN);
@@ -423,7 +466,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
 
         final boolean insertNode = node.getId() == null;
         if (insertNode) {
-            setNodeIds(node, parentId);
+            setNodeIds(node, parentId, nodeIds.incrementAndGet());
         }
         try {
             synchronized (nodeCache) { // different threads can add nodes.
@@ -444,9 +487,14 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
     }
 
-    private void setNodeIds(ProfileResourceNode node, ResourceId parentId) {
+    /**
+     * Sets the id, parent id and prefixes of a new node.
+     * @param node The node to set the ids of.
+     * @param parentId The id of the node's parent, or null if it has no parent.
+     * @param nodeId The new id of the node.
+     */
+    static void setNodeIds(ProfileResourceNode node, ResourceId parentId, long nodeId) {
 
-        final Long nodeId = nodeIds.incrementAndGet();
         node.setId(nodeId);
         String parentsPrefixString = "";
         if (parentId != null) {
@@ -669,7 +717,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     }
 
     private void createAndRunDatabaseWriterThread() {
-        writer = new DatabaseWriter(blockingQueue, datasource, BATCH_LIMIT);
+        writer = new DatabaseWriter(blockingQueue, datasource, getMaxNodeId() == 0);
         try {
             writer.init();
         } catch (SQLException e) {
@@ -686,12 +734,91 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
     }
 
+    private void createMissingDeferredIndexes() {
+        try {
+            final Connection conn = datasource.getConnection();
+            try {
+                createDeferredIndexes(conn);
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("A database exception occurred creating the profile indexes", e);
+        }
+    }
+
+    /**
+     * @param conn The connection to the profile database.
+     * @return The names of the indexes on the profile resource node table.
+     * @throws SQLException If the database metadata could not be read.
+     */
+    static List<String> getIndexNames(final Connection conn) throws SQLException {
+        final List<String> indexNames = new ArrayList<String>();
+        final ResultSet indexes = conn.getMetaData().getIndexInfo(null, null, "PROFILE_RESOURCE_NODE", false, true);
+        try {
+            while (indexes.next()) {
+                indexNames.add(indexes.getString("INDEX_NAME"));
+            }
+        } finally {
+            indexes.close();
+        }
+        return indexNames;
+    }
+
+    private static void dropDeferredIndexes(final Connection conn) throws SQLException {
+        final List<String> indexNames = getIndexNames(conn);
+        final Statement statement = conn.createStatement();
+        try {
+            for (final String[] index : DEFERRED_INDEXES) {
+                if (indexNames.contains(index[0])) {
+                    statement.execute("DROP INDEX " + index[0]);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        conn.commit();
+    }
+
+    /**
+     * Creates any of the deferred indexes which do not exist yet, and commits them.
+     * @param conn The connection to the profile database.
+     * @throws SQLException If an index could not be created.
+     */
+    static void createDeferredIndexes(final Connection conn) throws SQLException {
+        final List<String> indexNames = getIndexNames(conn);
+        final Statement statement = conn.createStatement();
+        try {
+            for (final String[] index : DEFERRED_INDEXES) {
+                if (!indexNames.contains(index[0])) {
+                    statement.execute(index[1]);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        conn.commit();
+    }
+
+    private static String buildInsertIdentificationString(final int numIdentifications) {
+
+        final int baseInsertStatementSize = 60;
+        final int sizeForEachIdentification = 6;
+
+        final StringBuilder builder =
+                new StringBuilder(baseInsertStatementSize + numIdentifications * sizeForEachIdentification);
+        builder.append(INSERT_IDENTIFICATIONS);
+        for (int i = 0; i < numIdentifications - 1; i++) {
+            builder.append("(?,?),");
+        }
+        builder.append("(?,?)");
+        return builder.toString();
+    }
+
     /**
      * Cleans up resources after profile processing completed.
      */
     public void cleanup() {
-        //System.out.println("In cleanUp() not doing anything...");
-        //System.out.println("Cleaning up JDBCBatchResultHandlerDao, calling closeResources()");
         this.writer.closeResources();
     }
 
@@ -711,20 +838,33 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         return freshTemplate;
     }
 
-    private static class NodeInfo {
+    /**
+     * A node on the queue for the database writer, and whether it is to be inserted or have its status updated.
+     */
+    static class NodeInfo {
 
         private ProfileResourceNode node;
         private boolean insertNode;
 
+        /**
+         * @param node The node to write.
+         * @param insertNode True if the node is inserted, false if only its status is updated.
+         */
         public NodeInfo(ProfileResourceNode node, boolean insertNode) {
             this.node = node;
             this.insertNode = insertNode;
         }
 
+        /**
+         * @return The node to write.
+         */
         public ProfileResourceNode getNode() {
             return node;
         }
 
+        /**
+         * @return True if the node is inserted, false if only its status is updated.
+         */
         public boolean isInsertNode() {
             return insertNode;
         }
@@ -762,9 +902,17 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     /**
      * Class to run in a thread which takes from the blocking queue and batch commits
      * to the database.
+     * <p>
+     * Batches start at BATCH_LIMIT nodes.  They grow when the queue is backing up, so each commit is shared by more
+     * nodes, and shrink again when commits take too long.  Identifications are inserted several rows at a time,
+     * across nodes.  When loading into an empty profile, secondary indexes are dropped, and built again when the
+     * profile is next committed, e.g. when it finishes or is paused.
      */
-    private static class DatabaseWriter implements Runnable {
+    static class DatabaseWriter implements Runnable {
 
+        private static final int INSERT_NODE_SHA256_HASH_INDEX = 19;
+        private static final int INSERT_NODE_SHA1_HASH_INDEX = 18;
+        private static final int INSERT_NODE_MD5_HASH_INDEX = 17;
         private static final int INSERT_NODE_URI_INDEX = 16;
         private static final int INSERT_NODE_PREFIX_PLUS_ONE_INDEX = 15;
         private static final int INSERT_NODE_PREFIX_INDEX = 14;
@@ -782,22 +930,35 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         private static final int INSERT_NODE_MISMATCH_INDEX = 2;
         private static final int INSERT_NODE_ID_INDEX = 1;
 
+        private static final int IDENTIFICATIONS_PER_INSERT = 10;
+        private static final long TARGET_COMMIT_MILLIS = 250;
+
         private final Log log = LogFactory.getLog(getClass());
         private BlockingQueue<NodeInfo> blockingQueue;
         private DataSource datasource;
         private Connection connection;
         private PreparedStatement insertNodeStatement;
         private PreparedStatement updateNodeStatement;
-        private Map<Integer, PreparedStatement> insertIdentifications;
+        private PreparedStatement insertIdentificationRows;
+        private PreparedStatement insertIdentification;
+        private final long[] pendingNodeIds = new long[IDENTIFICATIONS_PER_INSERT];
+        private final String[] pendingPuids = new String[IDENTIFICATIONS_PER_INSERT];
+        private int pendingIdentifications;
         private volatile int batchCount;
-        private final int batchLimit;
+        private int batchLimit = BATCH_LIMIT;
+        private boolean bulkLoad;
 
+        /**
+         * @param blockingQueue The queue of nodes to write.
+         * @param datasource The profile database.
+         * @param bulkLoad Whether the deferred indexes are dropped until the profile is next committed.
+         */
         DatabaseWriter(final BlockingQueue<NodeInfo> blockingQueue,
                        final DataSource datasource,
-                       final int batchLimit) {
+                       final boolean bulkLoad) {
             this.blockingQueue = blockingQueue;
             this.datasource    = datasource;
-            this.batchLimit    = batchLimit;
+            this.bulkLoad      = bulkLoad;
         }
 
         /**
@@ -805,18 +966,17 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
          * <p>
          * This must be called before running the writer.
          *
-         * @throws SQLException
+         * @throws SQLException If the prepared statements could not be created.
          */
         public void init() throws SQLException {
             connection = datasource.getConnection();
             insertNodeStatement = connection.prepareStatement(INSERT_PROFILE_RESOURCE_NODE);
             updateNodeStatement = connection.prepareStatement(UPDATE_NODE_STATUS);
-            final int maxStatements = 64;
-
-            insertIdentifications = new HashMap<Integer, PreparedStatement>(maxStatements);
-            for (int i = 0; i < INSERT_IDENTIFICATION.length; i++) {
-                final PreparedStatement insertStatement = connection.prepareStatement(INSERT_IDENTIFICATION[i]);
-                insertIdentifications.put(i, insertStatement);
+            insertIdentificationRows = connection.prepareStatement(
+                    buildInsertIdentificationString(IDENTIFICATIONS_PER_INSERT));
+            insertIdentification = connection.prepareStatement(INSERT_ONE_IDENTIFICATION);
+            if (bulkLoad) {
+                dropDeferredIndexes(connection);
             }
         }
 
@@ -844,15 +1004,14 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 log.debug("The database writer thread was interrupted.", e);
             }
             //TODO: unless the thread is interrupted, how does it clean up resources?
-            System.out.println("Calling closeResources() from  the run method");
             closeResources();
         }
 
-
-
-        private void closeResources() {
-            //System.out.println("In JDBCBatchResultHandlerDao - closeResources()");
-            for (final PreparedStatement statement : insertIdentifications.values()) {
+        /**
+         * Closes the prepared statements and the connection of the writer.
+         */
+        void closeResources() {
+            for (final PreparedStatement statement : new PreparedStatement[] {insertIdentificationRows, insertIdentification}) {
                 try {
                     statement.close();
                 } catch (SQLException s) {
@@ -872,7 +1031,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
 
         //CHECKSTYLE:OFF  Too many statements..
-        private void batchInsertNode(final ProfileResourceNode node) throws SQLException {
+        void batchInsertNode(final ProfileResourceNode node) throws SQLException {
             // insert main node:
             final long nodeId = node.getId();
             final NodeMetaData metadata = node.getMetaData();
@@ -908,24 +1067,23 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             SqlUtils.setNullableString(INSERT_NODE_PREFIX_INDEX, nodePrefix, insertNode);
             SqlUtils.setNullableString(INSERT_NODE_PREFIX_PLUS_ONE_INDEX, nodePrefixPlusOne, insertNode);
             insertNode.setString(INSERT_NODE_URI_INDEX, uri);
+            SqlUtils.setNullableString(INSERT_NODE_MD5_HASH_INDEX, metadata.getMd5Hash(), insertNode);
+            SqlUtils.setNullableString(INSERT_NODE_SHA1_HASH_INDEX, metadata.getSha1Hash(), insertNode);
+            SqlUtils.setNullableString(INSERT_NODE_SHA256_HASH_INDEX, metadata.getSha256Hash(), insertNode);
             insertNode.addBatch();
 
             // insert its identifications:
             //TODO: check for NULL format weirdness...
 
             final int identifications = numIdentifications == null ? 0 : numIdentifications;
-            final PreparedStatement statement = getIdentificationStatement(identifications);
             if (identifications == 0) {
-                statement.setLong(1, nodeId);
+                addIdentification(nodeId, "");
             } else {
-                int parameterCount = 1;
                 for (final Format format : node.getFormatIdentifications()) {
-                    statement.setLong(parameterCount++, nodeId);
                     String p = format.getPuid();
-                    statement.setString(parameterCount++, p == null ? "" : p);
+                    addIdentification(nodeId, p == null ? "" : p);
                 }
             }
-            statement.addBatch();
 
             commitBatchIfLargeEnough();
         }
@@ -950,60 +1108,93 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
         }
 
+        /*
+         * Identifications are added to the multi-row insert batch once there are enough of them, whichever nodes
+         * they belong to.  Any left over when the batch is committed are inserted a row at a time.
+         */
+        private void addIdentification(final long nodeId, final String puid) throws SQLException {
+            pendingNodeIds[pendingIdentifications] = nodeId;
+            pendingPuids[pendingIdentifications] = puid;
+            if (++pendingIdentifications == IDENTIFICATIONS_PER_INSERT) {
+                int parameterCount = 1;
+                for (int i = 0; i < IDENTIFICATIONS_PER_INSERT; i++) {
+                    insertIdentificationRows.setLong(parameterCount++, pendingNodeIds[i]);
+                    insertIdentificationRows.setString(parameterCount++, pendingPuids[i]);
+                }
+                insertIdentificationRows.addBatch();
+                pendingIdentifications = 0;
+            }
+        }
+
         private void commitBatchIfLargeEnough() {
             // Commit if exceeded batch limit:
             if (batchCount++ >= batchLimit) {
-                batchCount = 0;
-                try {
-                    // Insert new nodes:
-                    insertNodeStatement.executeBatch();
+                final long startTime = System.currentTimeMillis();
+                commitBatch();
+                adjustBatchLimit(System.currentTimeMillis() - startTime);
+            }
+        }
 
-                    // Update node status:
-                    updateNodeStatement.executeBatch();
+        /**
+         * Executes the batched node inserts, status updates and identification inserts, and commits them.
+         */
+        void commitBatch() {
+            batchCount = 0;
+            try {
+                // Insert new nodes:
+                insertNodeStatement.executeBatch();
 
-                    // Insert identifications of new nodes:
-                    for (final PreparedStatement identifications : insertIdentifications.values()) {
-                        identifications.executeBatch();
-                        //TODO: optimise? what about identification statements not used in this run?
-                    }
-                    connection.commit();
-                } catch (SQLException e) {
-                    log.error("A problem occurred attempting to batch commit nodes into the database. ", e);
+                // Update node status:
+                updateNodeStatement.executeBatch();
+
+                // Insert identifications of new nodes:
+                for (int i = 0; i < pendingIdentifications; i++) {
+                    insertIdentification.setLong(1, pendingNodeIds[i]);
+                    insertIdentification.setString(2, pendingPuids[i]);
+                    insertIdentification.addBatch();
                 }
+                pendingIdentifications = 0;
+                insertIdentificationRows.executeBatch();
+                insertIdentification.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                log.error("A problem occurred attempting to batch commit nodes into the database. ", e);
             }
         }
 
         /**
-         * Commits everything batched so far.
+         * Larger batches share the cost of each commit between more nodes, so they grow while the queue is more
+         * than half full, but shrink again if commits start to take too long.
+         * @param commitMillis How long the last commit took, in milliseconds.
          */
-        public void commit() {
-            batchCount = BATCH_LIMIT;
-            commitBatchIfLargeEnough();
-        }
-
-        private PreparedStatement getIdentificationStatement(final int numIdentifications) throws SQLException {
-            PreparedStatement statement = insertIdentifications.get(numIdentifications);
-            if (statement == null) {
-                final String newIdentificationSQL = buildInsertIdentificationString(numIdentifications);
-                statement = connection.prepareStatement(newIdentificationSQL);
-                insertIdentifications.put(numIdentifications, statement);
+        void adjustBatchLimit(final long commitMillis) {
+            if (commitMillis > TARGET_COMMIT_MILLIS) {
+                batchLimit = Math.max(BATCH_LIMIT, batchLimit / 2);
+            } else if (blockingQueue.size() > blockingQueue.remainingCapacity()) {
+                batchLimit = Math.min(MAX_BATCH_LIMIT, batchLimit * 2);
             }
-            return statement;
         }
 
-        private String buildInsertIdentificationString(final int numIdentifications) {
-
-            final int baseInsertStatementSize = 60;
-            final int sizeForEachIdentification = 6;
+        /**
+         * @return How many results are batched before they are committed.
+         */
+        int getBatchLimit() {
+            return batchLimit;
+        }
 
-            final StringBuilder builder =
-                    new StringBuilder(baseInsertStatementSize + numIdentifications * sizeForEachIdentification);
-            builder.append(INSERT_IDENTIFICATIONS);
-            for (int i = 0; i < numIdentifications - 1; i++) {
-                builder.append("(?,?),");
+        /**
+         * Commits everything batched so far, and builds any indexes deferred by a bulk load.
+         */
+        public void commit() {
+            commitBatch();
+            if (bulkLoad) {
+                bulkLoad = false;
+                try {
+                    createDeferredIndexes(connection);
+                } catch (SQLException e) {
+                    log.error("A problem occurred creating the profile indexes after a bulk load.", e);
+                }
             }
-            builder.append("(?,?)");
-            return builder.toString();
         }
     }
 }
@@ -93,6 +93,7 @@ public class JDBCResultHandler implements ResultHandler {
         metaData.setExtension(ResourceUtils.getExtension(requestMetaData.getName()));
         metaData.setResourceType(results.isArchive() ? ResourceType.CONTAINER : ResourceType.FILE);
         metaData.setHash(requestMetaData.getHash());
+        metaData.setHashes(requestMetaData.getHashes());
 
         metaData.setNodeStatus(NodeStatus.DONE);
 
@@ -145,6 +146,7 @@ public class JDBCResultHandler implements ResultHandler {
             metaData.setExtension(request.getExtension());
             metaData.setLastModified(request.getRequestMetaData().getTime());
             metaData.setHash(requestMetaData.getHash());
+            metaData.setHashes(requestMetaData.getHashes());
             node.addFormatIdentification(Format.NULL); //TODO: check what happens with Format.NULL.
             node.setFinished(new Date());
         }
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The children of a directory, together with the basic file attributes of each child
+ * read while iterating over the directory.
+ * <p>
+ * Reading the attributes once while listing means the walker does not need to stat each
+ * child again to find out whether it is a directory.  On file systems which return
+ * attributes with the directory entries (e.g. Windows), this costs no extra calls at all.
+ * <p>
+ * Listings of sub directories can be prefetched concurrently on a shared work-stealing pool,
+ * using a {@link Prefetcher}, so that directory listing latency on network file systems
+ * overlaps with processing the directory the walker is currently in.
+ */
+final class DirectoryListing {
+
+    private static final int THREADS_PER_PROCESSOR = 4;
+    private static final ForkJoinPool LISTING_POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors() * THREADS_PER_PROCESSOR,
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    private final Path[] children;
+    private final BasicFileAttributes[] attributes;
+
+    private DirectoryListing(final Path[] children, final BasicFileAttributes[] attributes) {
+        this.children = children;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Lists a directory, reading the basic attributes of each child.
+     * @param directory the directory to list.
+     * @return the listing of the directory, or null if access to the directory was denied.
+     * @throws IOException if the directory could not be listed.
+     */
+    static DirectoryListing list(final Path directory) throws IOException {
+        final List<Path> childList = new ArrayList<>();
+        final List<BasicFileAttributes> attributeList = new ArrayList<>();
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory)) {
+            for (final Path child : dirStream) {
+                childList.add(child);
+                attributeList.add(readAttributes(child));
+            }
+        } catch (AccessDeniedException e) {
+            return null;
+        }
+        return new DirectoryListing(childList.toArray(new Path[childList.size()]),
+                attributeList.toArray(new BasicFileAttributes[attributeList.size()]));
+    }
+
+    /**
+     * @return the children of the directory.
+     */
+    Path[] getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the number of children in the directory.
+     */
+    int size() {
+        return children.length;
+    }
+
+    /**
+     * @param index the index of the child.
+     * @return the child at the index.
+     */
+    Path getChild(final int index) {
+        return children[index];
+    }
+
+    /**
+     * @param index the index of the child.
+     * @return the attributes of the child, or null if they could not be read.
+     */
+    BasicFileAttributes getAttributes(final int index) {
+        return attributes[index];
+    }
+
+    /**
+     * @param index the index of the child.
+     * @return true if the child is a directory.
+     */
+    boolean isDirectory(final int index) {
+        return attributes[index] != null && attributes[index].isDirectory();
+    }
+
+    private static BasicFileAttributes readAttributes(final Path child) {
+        try {
+            return Files.readAttributes(child, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null; // as Files.isDirectory() would treat it.
+        }
+    }
+
+    /**
+     * Lists the sub directories of a directory listing ahead of the walker, keeping
+     * a bounded number of listings in flight at any one time.
+     */
+    static final class Prefetcher {
+
+        private static final int MAX_PREFETCH = 32;
+
+        private final DirectoryListing parent;
+        private final List<Future<DirectoryListing>> inFlight;
+        private int nextToPrefetch;
+
+        /**
+         * @param parent the listing whose sub directories will be walked.
+         */
+        Prefetcher(final DirectoryListing parent) {
+            this.parent = parent;
+            this.inFlight = new ArrayList<>(parent.size());
+            for (int i = 0; i < parent.size(); i++) {
+                inFlight.add(null);
+            }
+        }
+
+        /**
+         * Returns the listing of the sub directory at the index, and starts listing
+         * the sub directories which follow it.
+         * @param index the index of a sub directory in the parent listing.
+         * @return the listing of the sub directory.
+         * @throws IOException if the sub directory could not be listed.
+         */
+        DirectoryListing take(final int index) throws IOException {
+            final Future<DirectoryListing> listing = inFlight.set(index, null);
+            nextToPrefetch = Math.max(nextToPrefetch, index + 1);
+            prefetch(index + 1);
+            return listing == null ? list(parent.getChild(index)) : await(listing);
+        }
+
+        /**
+         * Cancels any listings which have not yet been taken.
+         */
+        void cancel() {
+            for (int i = 0; i < inFlight.size(); i++) {
+                final Future<DirectoryListing> listing = inFlight.set(i, null);
+                if (listing != null) {
+                    listing.cancel(false);
+                }
+            }
+        }
+
+        private void prefetch(final int from) {
+            int pending = 0;
+            for (int i = from; i < nextToPrefetch; i++) {
+                if (inFlight.get(i) != null) {
+                    pending++;
+                }
+            }
+            while (pending < MAX_PREFETCH && nextToPrefetch < parent.size()) {
+                final int child = nextToPrefetch++;
+                if (parent.isDirectory(child)) {
+                    inFlight.set(child, LISTING_POOL.submit(new ListingTask(parent.getChild(child))));
+                    pending++;
+                }
+            }
+        }
+
+        private static DirectoryListing await(final Future<DirectoryListing> listing) throws IOException {
+            try {
+                return listing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Lists a directory on the listing pool.
+     */
+    private static final class ListingTask implements Callable<DirectoryListing> {
+
+        private final Path directory;
+
+        ListingTask(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public DirectoryListing call() throws IOException {
+            return list(directory);
+        }
+    }
+}
@@ -34,9 +34,9 @@ package uk.gov.nationalarchives.droid.submitter;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.util.Date;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -68,6 +68,7 @@ public class FileEventHandler {
     private IdentificationRequestFactory<Path> requestFactory;
 
     private SubmissionThrottle submissionThrottle;
+    private boolean deferOpen;
 
     private StringBuilder uriStringBuilder = new StringBuilder(URI_STRING_BUILDER_CAPACITY);
 
@@ -97,12 +98,29 @@ public class FileEventHandler {
      *            an optional node ID for the request.
      */
     public void onEvent(final Path file, ResourceId parentId, ResourceId nodeId) {
+        onEvent(file, readAttributesQuietly(file), parentId, nodeId);
+    }
+
+    /**
+     * Creates a job in the database and submits the job to the identification
+     * engine, using the file attributes already read by the caller to avoid
+     * making further calls to the file system for the file metadata.
+     * 
+     * @param file
+     *            the node file to handle
+     * @param attributes
+     *            the attributes of the file, or null if they could not be read.
+     * @param parentId
+     *            the ID of the node's parent
+     * @param nodeId
+     *            an optional node ID for the request.
+     */
+    public void onEvent(final Path file, final BasicFileAttributes attributes, ResourceId parentId, ResourceId nodeId) {
 
         URI uri = SubmitterUtils.toURI(file.toFile(), uriStringBuilder);
-        final FileTime lastModified = FileUtil.lastModifiedQuietly(file);
         RequestMetaData metaData = new RequestMetaData(
-                FileUtil.sizeQuietly(file),
-                lastModified == null ? new Date(0).getTime() : new Date(lastModified.toMillis()).getTime(),
+                attributes == null ? -1 : attributes.size(),
+                attributes == null ? 0 : attributes.lastModifiedTime().toMillis(),
                 FileUtil.fileName(file));
 
         RequestIdentifier identifier = new RequestIdentifier(uri);
@@ -110,12 +128,17 @@ public class FileEventHandler {
         identifier.setResourceId(nodeId);
         IdentificationRequest<Path> request = requestFactory.newRequest(metaData, identifier);
         try {
-            request.open(file);
-            droidCore.submit(request);
+            if (deferOpen) {
+                droidCore.submit(request, file);
+            } else {
+                request.open(file);
+                droidCore.submit(request);
+            }
             submissionThrottle.apply();
         } catch (IOException e) {
-            IdentificationErrorType error = Files.exists(file) ? IdentificationErrorType.ACCESS_DENIED
-                    : IdentificationErrorType.FILE_NOT_FOUND;
+            // The attributes already say whether the file was there, so there is no need to ask the file system again.
+            IdentificationErrorType error = attributes == null || e instanceof NoSuchFileException
+                    ? IdentificationErrorType.FILE_NOT_FOUND : IdentificationErrorType.ACCESS_DENIED;
             if (error.equals(IdentificationErrorType.ACCESS_DENIED)) {
                 log.warn(String.format("Access was denied to the file: [%s]", file.toAbsolutePath().toString()));
             } else {
@@ -127,6 +150,14 @@ public class FileEventHandler {
         }
     }
 
+    private static BasicFileAttributes readAttributesQuietly(final Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     /**
      * @return the submission throttle
      */
@@ -141,6 +172,14 @@ public class FileEventHandler {
         this.submissionThrottle = submissionThrottle;
     }
     
+    /**
+     * @param deferOpen whether requests are opened by the identification engine when
+     *                  it processes them, rather than on the thread raising the event.
+     */
+    public void setDeferOpen(boolean deferOpen) {
+        this.deferOpen = deferOpen;
+    }
+    
     /**
      * @param droidCore the droidCore to set
      */
@@ -33,10 +33,10 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -53,7 +53,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
-import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
  * A file walker which supports resume.
@@ -144,24 +143,45 @@ public class FileWalker {
 
     private void walk(final Path directory, final int depth) throws IOException {
         if (handleDirectory(directory, depth)) {
-            final List<Path> children = FileUtil.listFiles(directory, false, (DirectoryStream.Filter<Path>) null);
-            if (children != null) {
-                handleDirectoryStart(directory, depth, children.toArray(new Path[children.size()]));
-                if (recursive || depth == 0) {
-                    final int childDepth = depth + 1;
-                    for (final Path child : children) {
-                        if (Files.isDirectory(child)) {
-                            walk(child, childDepth);
-                        } else {
-                            handleFile(child, childDepth);
-                        }
+            walkListing(directory, depth, DirectoryListing.list(directory));
+        }
+    }
+
+    private void walk(final Path directory, final int depth, final DirectoryListing.Prefetcher prefetcher,
+                      final int index) throws IOException {
+        if (handleDirectory(directory, depth)) {
+            walkListing(directory, depth, prefetcher.take(index));
+        }
+    }
+
+    private void walkListing(final Path directory, final int depth, final DirectoryListing listing) throws IOException {
+        if (listing == null) { // can't access children - restricted directory.
+            handleRestrictedDirectory(directory, depth);
+            return;
+        }
+        handleDirectoryStart(directory, depth, listing.getChildren());
+        if (recursive || depth == 0) {
+            final int childDepth = depth + 1;
+            // Don't list ahead while fast forwarding, as most directories will be skipped.
+            final DirectoryListing.Prefetcher prefetcher = fastForward ? null : new DirectoryListing.Prefetcher(listing);
+            try {
+                for (int i = 0; i < listing.size(); i++) {
+                    final Path child = listing.getChild(i);
+                    if (!listing.isDirectory(i)) {
+                        handleFile(child, childDepth, listing.getAttributes(i));
+                    } else if (prefetcher == null) {
+                        walk(child, childDepth);
+                    } else {
+                        walk(child, childDepth, prefetcher, i);
                     }
                 }
-                handleDirectoryEnd(directory, depth);
-            } else { // can't access children - restricted directory.
-                handleRestrictedDirectory(directory, depth);
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.cancel();
+                }
             }
         }
+        handleDirectoryEnd(directory, depth);
     }
 
     /**
@@ -222,8 +242,23 @@ public class FileWalker {
      */
     protected void handleFile(final Path file, final int depth)
         throws IOException {
+        handleFile(file, depth, null);
+    }
+
+    /**
+     *
+     * @param file file to hanndle.
+     * @param depth level to whhich to check
+     * @param attributes the attributes of the file read when its directory was listed,
+     *                   or null if they are not known.
+     * @throws IOException  An error occurs in accessing the resource
+     */
+    protected void handleFile(final Path file, final int depth, final BasicFileAttributes attributes)
+        throws IOException {
 
-        if (!SubmitterUtils.isFileSystemAvailable(file, topLevelAbsolutePath)) {
+        // If the attributes were read when listing the directory, we already know the file
+        // system was available and the file is not a directory, so we don't stat it again.
+        if (attributes == null && !SubmitterUtils.isFileSystemAvailable(file, topLevelAbsolutePath)) {
             log.error(String.format(FILE_SYSTEM_UNAVAILABLE, file.toAbsolutePath().toString()));
             throw new IOException(file.toAbsolutePath().toString());
         }
@@ -238,7 +273,9 @@ public class FileWalker {
         }
 
         final ProgressEntry progressEntry = progress.peek();
-        if (!Files.isDirectory(file)) {
+        if (attributes != null && fileHandler instanceof FileWalkerAttributesHandler) {
+            ((FileWalkerAttributesHandler) fileHandler).handle(file, attributes, depth, progressEntry);
+        } else if (attributes != null || !Files.isDirectory(file)) {
             fileHandler.handle(file, depth, progressEntry);
         }
         progressEntry.removeChild(file);
@@ -0,0 +1,385 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+/**
+ * A persistent, size bounded cache of identification results, so that files which have
+ * already been identified with the same signature files do not have to be matched again.
+ * <p>
+ * Entries are keyed on digests of the signature file contents, the maximum bytes to scan, and either the
+ * content hash of the file (if one has been generated) or its uri, size and last modified time.
+ * A signature file which is edited or replaced under the same name therefore gets new entries.
+ * The cached value is the list of PUIDs and identification methods which resulted from binary
+ * and container identification, before any extension matching is done, as that can depend on
+ * the name of the file rather than its content.
+ * <p>
+ * The least recently used entries are evicted once the maximum number of entries is reached.
+ * A maximum of zero or less disables the cache.
+ * <p>
+ * Each profile has its own cache, but they all share the cache file.  Saving merges the entries
+ * with those already in the file, so a profile does not remove the entries saved by another.
+ */
+public class IdentificationResultCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final char SEPARATOR = '|';
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Saves read, merge and replace the shared cache file, so only one can run at a time.
+    private static final Object SAVE_LOCK = new Object();
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private Path cacheFile;
+    private int maxEntries;
+    private Path binarySignatureFile;
+    private Path containerSignatureFile;
+    private String signatureKey;
+    private boolean modified;
+    private boolean cleared;
+    private long hits;
+    private long misses;
+    private Map<String, CachedResult> entries = newEntryMap();
+
+    /**
+     * Digests the signature files and loads any previously saved entries from the cache file,
+     * if the cache is enabled.  If the signature files can't be read, nothing is cached.
+     */
+    public void init() {
+        if (isEnabled()) {
+            signatureKey = digestSignatureFiles();
+            if (cacheFile != null && Files.exists(cacheFile)) {
+                try {
+                    readEntries(entries);
+                } catch (IOException e) {
+                    log.warn(String.format("Could not read the identification result cache %s: %s", cacheFile, e.getMessage()));
+                    clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the cache entries to the cache file, if the cache is enabled and has been modified.
+     * Entries saved to the file since it was loaded are kept, unless the cache has been cleared.
+     */
+    public void save() {
+        if (isEnabled() && cacheFile != null) {
+            synchronized (SAVE_LOCK) {
+                saveEntries();
+            }
+        }
+    }
+
+    private synchronized void saveEntries() {
+        log.info(String.format("Identification result cache: %d hits, %d misses, %d entries.",
+                hits, misses, entries.size()));
+        if (modified) {
+            final Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + TEMP_SUFFIX);
+            try {
+                entries = mergeWithSavedEntries();
+                Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    writeEntries(out);
+                }
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                modified = false;
+                cleared = false;
+            } catch (IOException e) {
+                log.warn(String.format("Could not save the identification result cache %s: %s", cacheFile, e.getMessage()));
+            }
+        }
+    }
+
+    // Entries in this cache are more recent than those in the file, so they are added last.
+    private Map<String, CachedResult> mergeWithSavedEntries() {
+        final Map<String, CachedResult> merged = newEntryMap();
+        if (!cleared && Files.exists(cacheFile)) {
+            try {
+                readEntries(merged);
+            } catch (IOException e) {
+                log.warn(String.format("Could not merge the identification result cache %s: %s", cacheFile, e.getMessage()));
+                merged.clear();
+            }
+        }
+        merged.putAll(entries);
+        return merged;
+    }
+
+    private String digestSignatureFiles() {
+        try {
+            return digest(binarySignatureFile) + SEPARATOR + digest(containerSignatureFile);
+        } catch (IOException e) {
+            log.warn(String.format("Could not digest the signature files, so no results will be cached: %s", e.getMessage()));
+            return null;
+        }
+    }
+
+    private static String digest(Path signatureFile) throws IOException {
+        if (signatureFile == null) {
+            return "";
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(signatureFile))) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+    /**
+     * Returns the key under which the results for a request are cached, or null if the request
+     * cannot be cached because it has neither a hash nor a size and last modified time, or
+     * because the signature files could not be read.
+     *
+     * @param request The request to get a cache key for.
+     * @param maxBytesToScan The maximum bytes to scan which the request is identified with.
+     * @return The cache key for the request, or null if it cannot be cached.
+     */
+    public String getKey(IdentificationRequest request, long maxBytesToScan) {
+        final RequestMetaData metaData = request.getRequestMetaData();
+        final StringBuilder key = new StringBuilder(String.valueOf(signatureKey)).append(SEPARATOR)
+                .append(maxBytesToScan).append(SEPARATOR);
+        String cacheKey = null;
+        if (signatureKey != null && metaData.getHash() != null) {
+            cacheKey = key.append('#').append(metaData.getHash()).toString();
+        } else if (signatureKey != null && metaData.getSize() != null && metaData.getTime() != null) {
+            cacheKey = key.append(request.getIdentifier().getUri()).append(SEPARATOR)
+                    .append(metaData.getSize()).append(SEPARATOR).append(metaData.getTime()).toString();
+        }
+        return cacheKey;
+    }
+
+    /**
+     * Returns the cached results for a request, or null if there are none.
+     *
+     * @param key The cache key for the request.
+     * @param request The request to return results for.
+     * @return The cached results for the request, or null if there are none.
+     */
+    public IdentificationResultCollection get(String key, IdentificationRequest request) {
+        final CachedResult cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if (cached == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        final IdentificationResultCollection results = new IdentificationResultCollection(request);
+        results.setRequestMetaData(request.getRequestMetaData());
+        results.setFileLength(request.size());
+        final String[] puids = cached.puids;
+        for (int i = 0; i < puids.length; i++) {
+            final IdentificationResultImpl result = new IdentificationResultImpl();
+            result.setPuid(puids[i]);
+            result.setMethod(cached.methods[i]);
+            result.setIdentifier(request.getIdentifier());
+            result.setRequestMetaData(request.getRequestMetaData());
+            results.addResult(result);
+        }
+        return results;
+    }
+
+    /**
+     * Caches the results of identifying a request.
+     *
+     * @param key The cache key for the request.
+     * @param results The binary and container identification results for the request.
+     */
+    public void put(String key, IdentificationResultCollection results) {
+        final List<IdentificationResult> resultList = results.getResults();
+        final int numResults = resultList.size();
+        final String[] puids = new String[numResults];
+        final IdentificationMethod[] methods = new IdentificationMethod[numResults];
+        for (int i = 0; i < numResults; i++) {
+            final IdentificationResult result = resultList.get(i);
+            puids[i] = result.getPuid();
+            methods[i] = result.getMethod();
+        }
+        synchronized (this) {
+            entries.put(key, new CachedResult(puids, methods));
+            modified = true;
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries = newEntryMap();
+        modified = true;
+        cleared = true;
+    }
+
+    /**
+     * @return Whether the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * @return The number of entries in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of times a request was found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times a request was not found in the cache.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param cacheFile The file the cache is persisted to.
+     */
+    public void setCacheFile(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @param maxEntries The maximum number of entries in the cache.  Zero or less disables it.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param binarySignatureFile The binary signature file results are cached for.
+     */
+    public void setBinarySignatureFile(Path binarySignatureFile) {
+        this.binarySignatureFile = binarySignatureFile;
+    }
+
+    /**
+     * @param containerSignatureFile The container signature file results are cached for.
+     */
+    public void setContainerSignatureFile(Path containerSignatureFile) {
+        this.containerSignatureFile = containerSignatureFile;
+    }
+
+    private Map<String, CachedResult> newEntryMap() {
+        return new LinkedHashMap<String, CachedResult>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private void readEntries(Map<String, CachedResult> target) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            readEntries(in, target);
+        }
+    }
+
+    private synchronized void readEntries(DataInputStream in, Map<String, CachedResult> target) throws IOException {
+        if (in.readInt() == FORMAT_VERSION) {
+            final int numEntries = in.readInt();
+            for (int entry = 0; entry < numEntries; entry++) {
+                final String key = in.readUTF();
+                final int numResults = in.readInt();
+                final String[] puids = new String[numResults];
+                final IdentificationMethod[] methods = new IdentificationMethod[numResults];
+                for (int i = 0; i < numResults; i++) {
+                    puids[i] = in.readUTF();
+                    methods[i] = IdentificationMethod.valueOf(in.readUTF());
+                }
+                target.put(key, new CachedResult(puids, methods));
+            }
+        }
+    }
+
+    // Entries are written least recently used first, so the order survives reloading the cache.
+    private void writeEntries(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, CachedResult> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            final CachedResult cached = entry.getValue();
+            out.writeInt(cached.puids.length);
+            for (int i = 0; i < cached.puids.length; i++) {
+                out.writeUTF(cached.puids[i]);
+                out.writeUTF(cached.methods[i].name());
+            }
+        }
+    }
+
+    /**
+     * The PUIDs and identification methods cached for a file.
+     */
+    private static final class CachedResult {
+        private final String[] puids;
+        private final IdentificationMethod[] methods;
+
+        CachedResult(String[] puids, IdentificationMethod[] methods) {
+            this.puids = puids;
+            this.methods = methods;
+        }
+    }
+}
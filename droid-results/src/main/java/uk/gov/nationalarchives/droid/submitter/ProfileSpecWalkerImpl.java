@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -104,16 +105,20 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
                 
                 fileWalker = walkState.getCurrentFileWalker();
                 
-                fileWalker.setFileHandler(new FileWalkerHandler() {
+                fileWalker.setFileHandler(new FileWalkerAttributesHandler() {
 
                     @Override
                     public ResourceId handle(final Path file, final int depth, final ProgressEntry parent) {
-                        if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
-                                || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
-                            progressMonitor.startJob(toURI(file));
-                        }
-                        ResourceId parentId = parent == null ? null : parent.getResourceId();
-                        fileEventHandler.onEvent(file, parentId, null);
+                        startFileJob(file, depth);
+                        fileEventHandler.onEvent(file, parent == null ? null : parent.getResourceId(), null);
+                        return null;
+                    }
+
+                    @Override
+                    public ResourceId handle(final Path file, final BasicFileAttributes attributes,
+                                             final int depth, final ProgressEntry parent) {
+                        startFileJob(file, depth);
+                        fileEventHandler.onEvent(file, attributes, parent == null ? null : parent.getResourceId(), null);
                         return null;
                     }
                 });
@@ -155,6 +160,13 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         progressMonitor.setTargetCount(progressMonitor.getIdentificationCount());
     }
     
+    private void startFileJob(final Path file, final int depth) {
+        if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
+                || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
+            progressMonitor.startJob(toURI(file));
+        }
+    }
+
     /**
      * @param fileEventHandler
      *            an event handler to be fired when a file is encountered.
@@ -33,15 +33,21 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -63,6 +69,8 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.control.PauseBefore;
 import uk.gov.nationalarchives.droid.core.interfaces.hash.HashGenerator;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.MultiHashGenerator;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
  * Acts as a DroidCore proxy by keeping track of in-flight identification
@@ -84,12 +92,23 @@ public class SubmissionGateway implements AsynchDroid {
      */
     private static final String ARCHIVE_ERROR = "Could not process the archival format(%s): %s\t%s\t%s";
 
+    // Logged with the error type and URI when a request could not be opened.
+    private static final String OPEN_ERROR = "Could not open the request (%s): %s";
+
+    private static final String QUEUE_DEPTHS = "Submitted %d requests: match queue depth %d, post process queue depth %d";
+
+    /**
+     * How many requests are submitted between each log of the queue depths.
+     */
+    private static final int QUEUE_DEPTH_LOG_INTERVAL = 1000;
+
     //CHECKSTYLE:ON    
     private final Log log = LogFactory.getLog(getClass());
 
     private DroidCore droidCore;
     private ResultHandler resultHandler;
     private ExecutorService executorService;
+    private ExecutorService postProcessExecutorService;
     private boolean processArchives;
     private boolean processWebArchives;
     private ArchiveFormatResolver archiveFormatResolver;
@@ -102,8 +121,11 @@ public class SubmissionGateway implements AsynchDroid {
     private boolean matchAllExtensions;
     private long maxBytesToScan = -1;
     
+    private IdentificationResultCache resultCache;
+    
     private SubmissionQueue submissionQueue;
     private final JobCounter jobCounter = new JobCounter();
+    private final AtomicLong submissions = new AtomicLong();
     private ReplaySubmitter replaySubmitter;
     
     private Set<IdentificationRequest> requests = Collections.synchronizedSet(new HashSet<IdentificationRequest>());
@@ -115,23 +137,35 @@ public class SubmissionGateway implements AsynchDroid {
     @Override
     @PauseBefore
     public Future<IdentificationResultCollection> submit(final IdentificationRequest request) {
+        return submit(request, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @PauseBefore
+    public <T> Future<IdentificationResultCollection> submit(final IdentificationRequest<T> request, final T byteSource) {
         jobCounter.increment();
         requests.add(request);
         
         // old code blocking identification:
-        Callable<IdentificationResultCollection> callable = new Callable<IdentificationResultCollection>() {
-            @Override
-            public IdentificationResultCollection call() throws IOException {
-                droidCore.setMaxBytesToScan(maxBytesToScan);
-                IdentificationResultCollection results = droidCore.matchBinarySignatures(request);
-                return results;
-            }
-        };
-        
+        IdentificationCallable callable = new IdentificationCallable(request, byteSource);
         FutureTask<IdentificationResultCollection> task = new SubmissionFutureTask(callable, request);
-        executorService.submit(task);
+        executorService.execute(task); // not submit(), so a task left queued at shutdown can be discarded.
+        logQueueDepths(submissions.incrementAndGet());
         return task;
     }
+
+    /*
+     * A growing match queue means signature matching is the bottleneck; a growing post process
+     * queue means hashing, containers, archives or result handling are holding the profile up.
+     */
+    private void logQueueDepths(long submitted) {
+        if (submitted % QUEUE_DEPTH_LOG_INTERVAL == 0 && log.isDebugEnabled()) {
+            log.debug(String.format(QUEUE_DEPTHS, submitted, getMatchQueueDepth(), getPostProcessQueueDepth()));
+        }
+    }
     
     /**
      * {@inheritDoc}
@@ -141,25 +175,109 @@ public class SubmissionGateway implements AsynchDroid {
         replaySubmitter.replay();
     }
     
+    /**
+     * Matches binary signatures for a request, unless its results are already in the result cache.
+     * If the request was submitted with a byte source, it is opened here first, so the
+     * first read of the source happens on the pool thread rather than the submitting thread.
+     */
+    private final class IdentificationCallable implements Callable<IdentificationResultCollection> {
+
+        private final IdentificationRequest request;
+        private Object byteSource;
+        private String cacheKey;
+        private boolean cached;
+        private boolean openFailed;
+
+        IdentificationCallable(IdentificationRequest request, Object byteSource) {
+            this.request = request;
+            this.byteSource = byteSource;
+        }
+
+        @Override
+        public IdentificationResultCollection call() throws IOException, IdentificationException {
+            if (byteSource != null) {
+                open();
+            }
+            if (resultCache != null && resultCache.isEnabled()) {
+                generateHash(request); // a hash lets identical content share a cache entry.
+                cacheKey = resultCache.getKey(request, maxBytesToScan);
+                if (cacheKey != null) {
+                    IdentificationResultCollection cachedResults = resultCache.get(cacheKey, request);
+                    if (cachedResults != null) {
+                        cached = true;
+                        return cachedResults;
+                    }
+                }
+            }
+            droidCore.setMaxBytesToScan(maxBytesToScan);
+            IdentificationResultCollection results = droidCore.matchBinarySignatures(request);
+            return results;
+        }
+
+        private void open() throws IdentificationException {
+            try {
+                request.open(byteSource);
+            } catch (IOException e) {
+                openFailed = true;
+                IdentificationErrorType error = byteSource instanceof Path && !Files.exists((Path) byteSource)
+                        ? IdentificationErrorType.FILE_NOT_FOUND : IdentificationErrorType.ACCESS_DENIED;
+                log.warn(String.format(OPEN_ERROR, error, request.getIdentifier().getUri()));
+                throw new IdentificationException(request, error, e);
+            } finally {
+                byteSource = null;
+            }
+        }
+    }
+
     private final class SubmissionFutureTask extends FutureTask<IdentificationResultCollection> {
 
         private IdentificationRequest request;
+        private IdentificationCallable callable;
+        private final Thread submitter = Thread.currentThread();
         
-        SubmissionFutureTask(Callable<IdentificationResultCollection> callable, IdentificationRequest request) {
+        SubmissionFutureTask(IdentificationCallable callable, IdentificationRequest request) {
             super(callable);
+            this.callable = callable;
             this.request = request;
         }
 
+        /*
+         * The post process pool makes a full queue wait for room, which is only safe on the match threads.
+         * A request matched on the thread which submitted it is post processed there too: that thread may be
+         * a post process thread expanding an archive, or a thread one is waiting on, so it must never wait.
+         */
         @Override
         protected void done() {
+            if (postProcessExecutorService == null || Thread.currentThread() == submitter) {
+                postProcess();
+            } else {
+                try {
+                    postProcessExecutorService.execute(new PostProcessTask(this));
+                } catch (RejectedExecutionException e) {
+                    // The post processing pool has shut down - finish the request on this thread.
+                    postProcess();
+                }
+            }
+        }
+
+        /*
+         * Hashing, container identification, extension matching, archive expansion and result handling
+         * stay serialized within a single post process task: each step needs the request still open and
+         * the results of the step before, and the request is closed once they are done.  Persisting the
+         * results is already decoupled from this by the database writer's queue.
+         */
+        private void postProcess() {
             boolean jobCountDecremented = false;
             try {
-                generateHash(request);
+                if (!callable.openFailed) {
+                    generateHash(request);
+                }
                 IdentificationResultCollection results = get();
-                IdentificationResultCollection containerResults = handleContainer(request, results);
+                IdentificationResultCollection containerResults = identifyContainer(results);
                 if (containerResults == null) {
                     // no container results - process the normal results.
                     droidCore.removeLowerPriorityHits(results);
+                    cacheResults(results);
                     results = handleExtensions(request, results);
                     
                     // Are we processing archive formats?
@@ -172,15 +290,13 @@ public class SubmissionGateway implements AsynchDroid {
                     }
                 } else { // we have possible container formats:
                     droidCore.removeLowerPriorityHits(containerResults);
+                    cacheResults(containerResults);
                     containerResults = handleExtensions(request, containerResults);
                     ResourceId id = resultHandler.handle(containerResults);
                     request.getIdentifier().setResourceId(id);
                 }
             } catch (ExecutionException e) {
-                final Throwable cause = e.getCause();
-                log.error(cause.getStackTrace(), cause);
-                resultHandler.handleError(new IdentificationException(
-                        request, IdentificationErrorType.OTHER, cause));
+                handleFailure(e.getCause());
             } catch (InterruptedException e) {
                 log.debug(e);
             } catch (IOException e) {
@@ -194,6 +310,36 @@ public class SubmissionGateway implements AsynchDroid {
             }
         }
         
+        private IdentificationResultCollection identifyContainer(IdentificationResultCollection results)
+            throws IOException {
+            // cached results already include any container identification.
+            return callable.cached ? null : handleContainer(request, results);
+        }
+
+        private void handleFailure(Throwable cause) {
+            if (cause instanceof IdentificationException) {
+                resultHandler.handleError((IdentificationException) cause);
+            } else {
+                log.error(cause.getStackTrace(), cause);
+                resultHandler.handleError(new IdentificationException(
+                        request, IdentificationErrorType.OTHER, cause));
+            }
+        }
+
+        private void cacheResults(IdentificationResultCollection results) {
+            if (callable.cacheKey != null && !callable.cached) {
+                resultCache.put(callable.cacheKey, results);
+            }
+        }
+
+        /**
+         * Closes the request and counts it as finished, for a task which will never be run or post processed.
+         */
+        void discard() {
+            closeRequest();
+            jobCounter.decrement();
+        }
+
         private void closeRequest() {
             requests.remove(request);
             try {
@@ -204,16 +350,37 @@ public class SubmissionGateway implements AsynchDroid {
         }
     }
     
+    /**
+     * Post processes the results of a submission task on the post process executor.
+     */
+    private static final class PostProcessTask implements Runnable {
+
+        private final SubmissionFutureTask task;
+
+        PostProcessTask(SubmissionFutureTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.postProcess();
+        }
+    }
+
     private void generateHash(IdentificationRequest request) throws IOException {
-        if (generateHash) {
+        if (generateHash && request.getRequestMetaData().getHash() == null) {
             try {
-                InputStream in = request.getSourceInputStream();
-                try {
-                    String hash = hashGenerator.hash(in);
-                    request.getRequestMetaData().setHash(hash);
-                } finally {
-                    if (in != null) {
-                        in.close();
+                if (hashGenerator instanceof MultiHashGenerator) {
+                    generateHashes(request, (MultiHashGenerator) hashGenerator);
+                } else {
+                    InputStream in = request.getSourceInputStream();
+                    try {
+                        String hash = hashGenerator.hash(in);
+                        request.getRequestMetaData().setHash(hash);
+                    } finally {
+                        if (in != null) {
+                            in.close();
+                        }
                     }
                 }
             //CHECKSTYLE:OFF - generating a hash can't prejudice any other results
@@ -224,6 +391,17 @@ public class SubmissionGateway implements AsynchDroid {
         }
     }
 
+    /*
+     * Hashes with every algorithm in one pass over the request's reader, reusing any
+     * windows it cached while the binary signatures were matched.
+     */
+    private void generateHashes(IdentificationRequest request, MultiHashGenerator generator) throws IOException {
+        final Map<String, String> hashes = generator.hashAll(request.getWindowReader());
+        final RequestMetaData metaData = request.getRequestMetaData();
+        metaData.setHash(hashes.get(generator.getPrimaryAlgorithm()));
+        metaData.setHashes(hashes);
+    }
+
     private IdentificationResultCollection handleExtensions(IdentificationRequest request, 
             IdentificationResultCollection results) {
         IdentificationResultCollection extensionResults = results;
@@ -440,6 +618,35 @@ public class SubmissionGateway implements AsynchDroid {
         this.executorService = executorService;
     }
     
+    /**
+     * Sets the executor which hashes, identifies containers, matches extensions, expands archives
+     * and hands results to the result handler, once binary signature matching has finished.
+     * If not set, this happens on the thread which did the binary signature matching.
+     * 
+     * @param postProcessExecutorService the postProcessExecutorService to set
+     */
+    public void setPostProcessExecutorService(ExecutorService postProcessExecutorService) {
+        this.postProcessExecutorService = postProcessExecutorService;
+    }
+    
+    /**
+     * @return the number of requests waiting for a thread to match binary signatures.
+     */
+    public int getMatchQueueDepth() {
+        return getQueueDepth(executorService);
+    }
+    
+    /**
+     * @return the number of requests which have been matched, waiting for a thread to post process them.
+     */
+    public int getPostProcessQueueDepth() {
+        return getQueueDepth(postProcessExecutorService);
+    }
+    
+    private static int getQueueDepth(ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+    
     /**
      * @param processArchives set whether to process Archives
      */
@@ -476,6 +683,9 @@ public class SubmissionGateway implements AsynchDroid {
     public void save() {
         resultHandler.commit(); // flush any remaining entities out to the database.
         submissionQueue.save();
+        if (resultCache != null) {
+            resultCache.save();
+        }
     }
     
     /**
@@ -507,16 +717,37 @@ public class SubmissionGateway implements AsynchDroid {
     }
     
     /**
-     * Shuts down the executor service and closes any in-flight requests.
+     * @param resultCache the cache of previous identification results, or null if results are not cached.
+     */
+    public void setResultCache(IdentificationResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    
+    /**
+     * Shuts down the executor services and closes any in-flight requests.
+     * Tasks which were still queued are discarded, so each is counted as finished.
      * @throws IOException if temp files could not be deleted.
      */
     public void close() throws IOException {
-        executorService.shutdownNow();
+        discardTasks(executorService.shutdownNow());
+        if (postProcessExecutorService != null) {
+            discardTasks(postProcessExecutorService.shutdownNow());
+        }
         for (IdentificationRequest request : requests) {
             request.close();
         }
     }
 
+    private static void discardTasks(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task instanceof SubmissionFutureTask) {
+                ((SubmissionFutureTask) task).discard();
+            } else if (task instanceof PostProcessTask) {
+                ((PostProcessTask) task).task.discard();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
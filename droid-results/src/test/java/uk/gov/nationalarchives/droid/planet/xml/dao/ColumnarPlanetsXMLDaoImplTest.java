@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.planet.xml.dao;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionFieldEnum;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.FilterValue;
+import uk.gov.nationalarchives.droid.profile.FilterCriterionImpl;
+import uk.gov.nationalarchives.droid.profile.FilterImpl;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.handlers.ResultHandlerDao;
+
+public class ColumnarPlanetsXMLDaoImplTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Map<String, Format> puidFormatMap;
+    private ColumnarResultHandlerDao resultHandlerDao;
+    private ColumnarPlanetsXMLDaoImpl planetsDao;
+
+    @Before
+    public void setup() {
+        puidFormatMap = new HashMap<>();
+        puidFormatMap.put("fmt/18", newFormat("fmt/18", "Acrobat PDF", "application/pdf"));
+        puidFormatMap.put("x-fmt/111", newFormat("x-fmt/111", "Plain Text File", "text/plain"));
+        ResultHandlerDao referenceDataDao = mock(ResultHandlerDao.class);
+        when(referenceDataDao.getPUIDFormatMap()).thenReturn(puidFormatMap);
+        resultHandlerDao = new ColumnarResultHandlerDao();
+        resultHandlerDao.setReferenceDataDao(referenceDataDao);
+        resultHandlerDao.setStoreDirectory(temp.getRoot().toPath().resolve("columnar"));
+        resultHandlerDao.init();
+        planetsDao = new ColumnarPlanetsXMLDaoImpl();
+        planetsDao.setResultHandlerDao(resultHandlerDao);
+
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER, NodeStatus.DONE, null, 0);
+        resultHandlerDao.save(folder, null);
+        ResourceId parent = new ResourceId(folder.getId(), folder.getPrefix());
+        resultHandlerDao.save(newNode("file:/folder/a.pdf", ResourceType.FILE, NodeStatus.DONE, 100L, 2010, "fmt/18"), parent);
+        resultHandlerDao.save(newNode("file:/folder/b.pdf", ResourceType.FILE, NodeStatus.DONE, 300L, 2012,
+                "fmt/18", "x-fmt/111"), parent);
+        resultHandlerDao.save(newNode("file:/folder/c.txt", ResourceType.FILE, NodeStatus.DONE, 50L, 2010, "x-fmt/111"), parent);
+        resultHandlerDao.save(newNode("file:/folder/d.bin", ResourceType.FILE, NodeStatus.ACCESS_DENIED, null, 0), parent);
+        resultHandlerDao.save(newNode("file:/folder/locked/", ResourceType.FOLDER, NodeStatus.ACCESS_DENIED, null, 0), parent);
+        resultHandlerDao.commit();
+    }
+
+    @After
+    public void tearDown() {
+        resultHandlerDao.cleanup();
+    }
+
+    @Test
+    public void testProfileStatisticsAreAggregatedOverFiles() {
+        ProfileStat stat = planetsDao.getDataForPlanetsXML(null).getProfileStat();
+        assertEquals(BigInteger.valueOf(50), stat.getProfileSmallestSize());
+        assertEquals(BigInteger.valueOf(300), stat.getProfileLargestSize());
+        assertEquals(new BigDecimal("150.0"), stat.getProfileMeanSize());
+        assertEquals(BigInteger.valueOf(450), stat.getProfileTotalSize());
+        assertEquals(BigInteger.valueOf(3), stat.getProfileTotalReadableFiles());
+        assertEquals(BigInteger.valueOf(1), stat.getProfileTotalUnReadableFiles());
+        assertEquals(BigInteger.valueOf(1), stat.getProfileTotalUnReadableFolders());
+    }
+
+    @Test
+    public void testFilesAreGroupedByEachIdentificationAndByYear() {
+        PlanetsXMLData data = planetsDao.getDataForPlanetsXML(null);
+
+        List<String> puids = new ArrayList<>();
+        for (GroupByPuidSizeAndCountRow row : data.getGroupByPuid()) {
+            puids.add(row.getPuid() + ":" + row.getCount() + ":" + row.getSize() + ":" + row.getFormatName());
+        }
+        assertEquals("[:1:0.0:, fmt/18:2:400.0:Acrobat PDF, x-fmt/111:2:350.0:Plain Text File]", puids.toString());
+
+        List<String> years = new ArrayList<>();
+        for (GroupByYearSizeAndCountRow row : data.getGroupByYear()) {
+            years.add(row.getYear() + ":" + row.getCount() + ":" + row.getSize());
+        }
+        assertEquals("[0:1:0.0, 2010:2:150.0, 2012:1:300.0]", years.toString());
+    }
+
+    @Test
+    public void testFilterIsMatchedAgainstEachNode() {
+        FilterImpl filter = new FilterImpl();
+        filter.setEnabled(true);
+        filter.setNarrowed(true);
+        FilterCriterionImpl criterion = new FilterCriterionImpl();
+        criterion.setSelectedValues(new ArrayList<FilterValue>());
+        criterion.setField(CriterionFieldEnum.PUID);
+        criterion.setOperator(CriterionOperator.ANY_OF);
+        criterion.addSelectedValue(new FilterValue(0, "", "fmt/18"));
+        filter.addFilterCiterion(criterion, 0);
+
+        PlanetsXMLData data = planetsDao.getDataForPlanetsXML(filter);
+        assertEquals(BigInteger.valueOf(400), data.getProfileStat().getProfileTotalSize());
+        assertEquals(BigInteger.valueOf(2), data.getProfileStat().getProfileTotalReadableFiles());
+        assertEquals(2, data.getGroupByPuid().size());
+    }
+
+    private ProfileResourceNode newNode(String uri, ResourceType resourceType, NodeStatus status, Long size,
+                                        int year, String... puids) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create(uri));
+        NodeMetaData metaData = new NodeMetaData();
+        String path = URI.create(uri).getPath();
+        metaData.setName(path.substring(path.lastIndexOf('/', path.length() - 2) + 1));
+        metaData.setNodeStatus(status);
+        metaData.setResourceType(resourceType);
+        metaData.setSize(size);
+        if (year > 0) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(year, Calendar.JUNE, 1);
+            metaData.setLastModifiedDate(calendar.getTime());
+        }
+        node.setMetaData(metaData);
+        for (String puid : puids) {
+            node.addFormatIdentification(puidFormatMap.get(puid));
+        }
+        return node;
+    }
+
+    private static Format newFormat(String puid, String name, String mimeType) {
+        Format format = new Format();
+        format.setPuid(puid);
+        format.setName(name);
+        format.setMimeType(mimeType);
+        return format;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionFieldEnum;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.FilterValue;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.handlers.ResultHandlerDao;
+
+public class ColumnarProfileDaoTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Map<String, Format> puidFormatMap;
+    private ColumnarResultHandlerDao resultHandlerDao;
+    private ColumnarProfileDao profileDao;
+
+    private ProfileResourceNode pdfFolder;
+    private ProfileResourceNode pdfSubFolder;
+    private ProfileResourceNode textFolder;
+
+    @Before
+    public void setup() {
+        puidFormatMap = new HashMap<>();
+        puidFormatMap.put("fmt/18", newFormat("fmt/18"));
+        puidFormatMap.put("x-fmt/111", newFormat("x-fmt/111"));
+        ResultHandlerDao referenceDataDao = mock(ResultHandlerDao.class);
+        when(referenceDataDao.getPUIDFormatMap()).thenReturn(puidFormatMap);
+        resultHandlerDao = new ColumnarResultHandlerDao();
+        resultHandlerDao.setReferenceDataDao(referenceDataDao);
+        resultHandlerDao.setStoreDirectory(temp.getRoot().toPath().resolve("columnar"));
+        resultHandlerDao.init();
+        profileDao = new ColumnarProfileDao();
+        profileDao.setResultHandlerDao(resultHandlerDao);
+
+        pdfFolder = save(newNode("file:/pdfs/", ResourceType.FOLDER), null);
+        pdfSubFolder = save(newNode("file:/pdfs/sub/", ResourceType.FOLDER), pdfFolder);
+        save(newFile("file:/pdfs/sub/a.pdf", "fmt/18"), pdfSubFolder);
+        save(newFile("file:/pdfs/sub/b.txt", "x-fmt/111"), pdfSubFolder);
+        textFolder = save(newNode("file:/texts/", ResourceType.FOLDER), null);
+        save(newFile("file:/texts/c.txt", "x-fmt/111"), textFolder);
+        resultHandlerDao.commit();
+    }
+
+    @After
+    public void tearDown() {
+        resultHandlerDao.cleanup();
+    }
+
+    @Test
+    public void testFilteredFoldersAreShownIfADescendantMatches() {
+        FilterImpl filter = newPuidFilter("fmt/18");
+
+        List<ProfileResourceNode> topLevel = profileDao.findProfileResourceNodes(null, filter);
+        assertEquals(1, topLevel.size());
+        assertEquals(pdfFolder.getId(), topLevel.get(0).getId());
+        assertEquals(2, topLevel.get(0).getFilterStatus());
+
+        List<ProfileResourceNode> subFolders = profileDao.findProfileResourceNodes(pdfFolder.getId(), filter);
+        assertEquals(1, subFolders.size());
+        assertEquals(2, subFolders.get(0).getFilterStatus());
+
+        List<ProfileResourceNode> files = profileDao.findProfileResourceNodes(pdfSubFolder.getId(), filter);
+        assertEquals(1, files.size());
+        assertEquals("a.pdf", files.get(0).getMetaData().getName());
+        assertEquals(1, files.get(0).getFilterStatus());
+
+        assertEquals(0, profileDao.findProfileResourceNodes(textFolder.getId(), filter).size());
+    }
+
+    @Test
+    public void testFilterStatusesFollowNodesSavedAndDeletedAfterFiltering() {
+        FilterImpl filter = newPuidFilter("fmt/18");
+        assertEquals(1, profileDao.findProfileResourceNodes(null, filter).size());
+
+        ProfileResourceNode pdf = save(newFile("file:/texts/d.pdf", "fmt/18"), textFolder);
+        resultHandlerDao.commit();
+        assertEquals(2, profileDao.findProfileResourceNodes(null, filter).size());
+
+        resultHandlerDao.deleteNode(pdf.getId());
+        resultHandlerDao.commit();
+        List<ProfileResourceNode> topLevel = profileDao.findProfileResourceNodes(null, filter);
+        assertEquals(1, topLevel.size());
+        assertEquals(pdfFolder.getId(), topLevel.get(0).getId());
+    }
+
+    @Test
+    public void testFilteredPagesSkipNodesWhichDoNotMatch() {
+        FilterImpl filter = newPuidFilter("x-fmt/111");
+        save(newFile("file:/pdfs/sub/e.txt", "x-fmt/111"), pdfSubFolder);
+        resultHandlerDao.commit();
+
+        List<ProfileResourceNode> firstPage = profileDao.findProfileResourceNodes(pdfSubFolder.getId(), filter, 0, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals("b.txt", firstPage.get(0).getMetaData().getName());
+
+        List<ProfileResourceNode> secondPage = profileDao.findProfileResourceNodes(pdfSubFolder.getId(), filter,
+                firstPage.get(0).getId(), 1);
+        assertEquals(1, secondPage.size());
+        assertEquals("e.txt", secondPage.get(0).getMetaData().getName());
+
+        assertEquals(0, profileDao.findProfileResourceNodes(pdfSubFolder.getId(), filter,
+                secondPage.get(0).getId(), 1).size());
+    }
+
+    @Test
+    public void testDisabledFiltersShowAllNodes() {
+        FilterImpl filter = newPuidFilter("fmt/18");
+        filter.setEnabled(false);
+        assertEquals(2, profileDao.findProfileResourceNodes(null, filter).size());
+    }
+
+    private ProfileResourceNode save(ProfileResourceNode node, ProfileResourceNode parent) {
+        resultHandlerDao.save(node, parent == null ? null : new ResourceId(parent.getId(), parent.getPrefix()));
+        return node;
+    }
+
+    private ProfileResourceNode newFile(String uri, String puid) {
+        ProfileResourceNode node = newNode(uri, ResourceType.FILE);
+        node.addFormatIdentification(puidFormatMap.get(puid));
+        return node;
+    }
+
+    private static ProfileResourceNode newNode(String uri, ResourceType resourceType) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create(uri));
+        NodeMetaData metaData = new NodeMetaData();
+        String path = URI.create(uri).getPath();
+        metaData.setName(path.substring(path.lastIndexOf('/', path.length() - 2) + 1));
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(resourceType);
+        node.setMetaData(metaData);
+        return node;
+    }
+
+    private static FilterImpl newPuidFilter(String puid) {
+        FilterImpl filter = new FilterImpl();
+        filter.setEnabled(true);
+        filter.setNarrowed(true);
+        FilterCriterionImpl criterion = new FilterCriterionImpl();
+        criterion.setSelectedValues(new ArrayList<FilterValue>());
+        criterion.setField(CriterionFieldEnum.PUID);
+        criterion.setOperator(CriterionOperator.ANY_OF);
+        criterion.addSelectedValue(new FilterValue(0, "", puid));
+        filter.addFilterCiterion(criterion, 0);
+        return filter;
+    }
+
+    private static Format newFormat(String puid) {
+        Format format = new Format();
+        format.setPuid(puid);
+        return format;
+    }
+}
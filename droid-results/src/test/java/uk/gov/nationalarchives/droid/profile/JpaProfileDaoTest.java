@@ -32,13 +32,17 @@
 package uk.gov.nationalarchives.droid.profile;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import javax.sql.DataSource;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.dbunit.database.DatabaseConnection;
 import org.dbunit.database.IDatabaseConnection;
@@ -110,6 +114,40 @@ public class JpaProfileDaoTest {
         
     }
     
+    @Test
+    public void testFindProfileResourceNodesPagesThroughChildrenInNodeIdOrder() {
+
+        List<ProfileResourceNode> firstPage = profileDao.findProfileResourceNodes(1L, null, 0, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(Long.valueOf(11), firstPage.get(0).getId());
+        assertEquals("fmt/alok", firstPage.get(0).getFormatIdentifications().get(0).getPuid());
+
+        List<ProfileResourceNode> secondPage = profileDao.findProfileResourceNodes(1L, null, 11, 1);
+        assertEquals(1, secondPage.size());
+        assertEquals(Long.valueOf(12), secondPage.get(0).getId());
+        assertEquals("fmt/alok", secondPage.get(0).getFormatIdentifications().get(0).getPuid());
+
+        assertEquals(0, profileDao.findProfileResourceNodes(1L, null, 12, 1).size());
+        assertEquals(1, profileDao.findProfileResourceNodes(null, null, 0, 1).size());
+    }
+
+    @Test
+    public void testChildrenArePagedWithAnIndexOnTheParentAndNodeIds() throws Exception {
+        final List<String> indexNames = new ArrayList<String>();
+        final Connection con = DataSourceUtils.getConnection(dataSource);
+        try {
+            final ResultSet indexes = con.getMetaData().getIndexInfo(null, null, "PROFILE_RESOURCE_NODE", false, true);
+            while (indexes.next()) {
+                indexNames.add(indexes.getString("INDEX_NAME"));
+            }
+            indexes.close();
+        } finally {
+            DataSourceUtils.releaseConnection(con, dataSource);
+        }
+        assertTrue(indexNames.contains("IDX_PARENT_NODE_ID"));
+        assertFalse(indexNames.contains("IDX_PARENT_ID"));
+    }
+
     @Test
     public void testFindRootNodeGetsAllResultsInOneQuery() throws Exception {
         conn = getConnection();
@@ -159,6 +159,29 @@ public class JpaProfileFilterTest {
     }
 
     
+    @Test
+    public void testFilterOnExtensionPagesThroughMatchingChildren() {
+
+        filter = new FilterImpl();
+        filter.setEnabled(true);
+        filter.setNarrowed(true);
+
+        FilterCriterionImpl criterion = new FilterCriterionImpl();
+        criterion.setSelectedValues(new ArrayList<FilterValue>());
+
+        criterion.setField(CriterionFieldEnum.FILE_EXTENSION);
+        criterion.setOperator(CriterionOperator.EQ);
+        criterion.setValueFreeText("doc");
+        filter.addFilterCiterion(criterion, 0);
+
+        List<ProfileResourceNode> nodes = profileDao.findProfileResourceNodes(1L, filter, 0, 1);
+        assertEquals(1, nodes.size());
+        assertEquals("doc", nodes.get(0).getMetaData().getExtension());
+        assertEquals("fmt/alok", nodes.get(0).getFormatIdentifications().get(0).getPuid());
+
+        assertEquals(0, profileDao.findProfileResourceNodes(1L, filter, nodes.get(0).getId(), 1).size());
+    }
+
     @Test
     public void testFilterOnSize() {
         FilterCriterionImpl criterion = new FilterCriterionImpl();
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.export;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionFieldEnum;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.FilterValue;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
+import uk.gov.nationalarchives.droid.profile.FilterCriterionImpl;
+import uk.gov.nationalarchives.droid.profile.FilterImpl;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.JDBCBatchResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.handlers.TestProfileDatabase;
+
+/**
+ * Reads a profile database in URI order, where identifications are joined to their nodes,
+ * and in node id order, where identifications are merged in from a cursor of their own.
+ * <p>
+ * The word document has two formats, so the profile is a {@link TestProfileDatabase}.
+ */
+public class JDBCSqlItemReaderTest {
+
+    private static final String[] TEST_PUIDS = {"", "test/ole2", "test/text", "test/word"};
+
+    private static IDataSet testData;
+    private static HikariDataSource dataSource;
+    private static JDBCBatchResultHandlerDao resultHandlerDao;
+
+    @BeforeClass
+    public static void getTestData() throws Exception {
+        testData = new FlatXmlDataSetBuilder().build(
+                JDBCSqlItemReaderTest.class.getResource("item-reader-test-data.xml"));
+        dataSource = TestProfileDatabase.create("jdbcSqlItemReaderTest", TEST_PUIDS);
+        resultHandlerDao = new JDBCBatchResultHandlerDao();
+        resultHandlerDao.setDatasource(dataSource);
+        resultHandlerDao.init();
+    }
+
+    @AfterClass
+    public static void closeDatabase() {
+        resultHandlerDao.cleanup();
+        dataSource.close();
+    }
+
+    @Test
+    public void testReadsNodesInUriOrderByDefault() throws Exception {
+        final List<ProfileResourceNode> nodes = readAll(newReader(false), null);
+
+        assertEquals(Arrays.asList(1L, 3L, 2L, 4L, 5L), getIds(nodes));
+        assertFormats(nodes);
+    }
+
+    @Test
+    public void testReadsNodesInNodeIdOrderWhenEnabled() throws Exception {
+        final List<ProfileResourceNode> nodes = readAll(newReader(true), null);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), getIds(nodes));
+        assertFormats(nodes);
+    }
+
+    @Test
+    public void testSkipsIdentificationsOfFilteredOutNodes() throws Exception {
+        for (boolean nodeIdOrder : new boolean[] {false, true}) {
+            final List<ProfileResourceNode> nodes = readAll(newReader(nodeIdOrder), newPuidFilter("test/text"));
+
+            assertEquals(Arrays.asList(3L, 5L), getIds(nodes));
+            assertEquals(Collections.singletonList("test/text"), getPuids(nodes.get(0)));
+            assertEquals(Collections.singletonList("test/text"), getPuids(nodes.get(1)));
+        }
+    }
+
+    @Test
+    public void testReadsAllIdentificationsOfFilteredNodesWithSeveralFormats() throws Exception {
+        for (boolean nodeIdOrder : new boolean[] {false, true}) {
+            final List<ProfileResourceNode> nodes = readAll(newReader(nodeIdOrder), newPuidFilter("test/word"));
+
+            assertEquals(Collections.singletonList(2L), getIds(nodes));
+            assertEquals(Arrays.asList("test/ole2", "test/word"), getPuids(nodes.get(0)));
+            assertEquals(Integer.valueOf(2), nodes.get(0).getIdentificationCount());
+        }
+    }
+
+    @Test
+    public void testReadsRangesOfNodeIdsInNodeIdOrder() throws Exception {
+        final JDBCSqlItemReader<ProfileResourceNode> reader = newReader(true);
+        assertEquals(6L, reader.getPartitionKeyLimit());
+
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>();
+        reader.readRange(newCallback(nodes), null, 3, 5);
+
+        assertEquals(Arrays.asList(3L, 4L), getIds(nodes));
+        assertEquals(Collections.singletonList("test/text"), getPuids(nodes.get(0)));
+        assertNull(nodes.get(1).getFormatIdentifications().get(0).getPuid());
+    }
+
+    @Test
+    public void testReadsAllNodesInOneRangeInUriOrder() throws Exception {
+        final JDBCSqlItemReader<ProfileResourceNode> reader = newReader(false);
+        assertEquals(1L, reader.getPartitionKeyLimit());
+
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>();
+        reader.readRange(newCallback(nodes), null, 1, Long.MAX_VALUE);
+        assertEquals(0, nodes.size());
+
+        reader.readRange(newCallback(nodes), null, 0, 1);
+        assertEquals(Arrays.asList(1L, 3L, 2L, 4L, 5L), getIds(nodes));
+    }
+
+    /*
+     * The folder and the unidentified file have only the empty puid row, and the word document has two formats.
+     */
+    private void assertFormats(List<ProfileResourceNode> nodes) {
+        for (ProfileResourceNode node : nodes) {
+            final long id = node.getId();
+            if (id == 1L || id == 4L) {
+                assertEquals(1, node.getFormatIdentifications().size());
+                assertNull(node.getFormatIdentifications().get(0).getPuid());
+            } else if (id == 2L) {
+                assertEquals(Arrays.asList("test/ole2", "test/word"), getPuids(node));
+            } else {
+                assertEquals(Collections.singletonList("test/text"), getPuids(node));
+            }
+        }
+        assertEquals(Integer.valueOf(0), getNode(nodes, 4L).getIdentificationCount());
+        assertEquals(Integer.valueOf(2), getNode(nodes, 2L).getIdentificationCount());
+    }
+
+    private JDBCSqlItemReader<ProfileResourceNode> newReader(boolean nodeIdOrder) {
+        final JDBCSqlItemReader<ProfileResourceNode> reader = new JDBCSqlItemReader<ProfileResourceNode>();
+        reader.setResultHandlerDao(resultHandlerDao);
+        reader.setFetchSize(2);
+        reader.setChunkSize(2);
+        reader.setNodeIdOrder(nodeIdOrder);
+        return reader;
+    }
+
+    private static FilterImpl newPuidFilter(String puid) {
+        final FilterImpl filter = new FilterImpl();
+        filter.setEnabled(true);
+        filter.setNarrowed(true);
+
+        final FilterCriterionImpl criterion = new FilterCriterionImpl();
+        criterion.setSelectedValues(new ArrayList<FilterValue>());
+        criterion.setField(CriterionFieldEnum.PUID);
+        criterion.setOperator(CriterionOperator.ANY_OF);
+        criterion.addSelectedValue(new FilterValue(0, "", puid));
+        filter.addFilterCiterion(criterion, 0);
+        return filter;
+    }
+
+    private static List<ProfileResourceNode> readAll(JDBCSqlItemReader<ProfileResourceNode> reader,
+                                                     FilterImpl filter) throws Exception {
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>();
+        reader.readAll(newCallback(nodes), filter);
+        return nodes;
+    }
+
+    private static ItemReaderCallback<ProfileResourceNode> newCallback(final List<ProfileResourceNode> nodes) {
+        return new ItemReaderCallback<ProfileResourceNode>() {
+            @Override
+            public void onItem(List<? extends ProfileResourceNode> itemChunk) {
+                nodes.addAll(itemChunk);
+            }
+        };
+    }
+
+    private static List<Long> getIds(List<ProfileResourceNode> nodes) {
+        final List<Long> ids = new ArrayList<Long>();
+        for (ProfileResourceNode node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    private static ProfileResourceNode getNode(List<ProfileResourceNode> nodes, long id) {
+        for (ProfileResourceNode node : nodes) {
+            if (node.getId() == id) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getPuids(ProfileResourceNode node) {
+        final List<String> puids = new ArrayList<String>();
+        for (Format format : node.getFormatIdentifications()) {
+            puids.add(format.getPuid());
+        }
+        Collections.sort(puids);
+        return puids;
+    }
+
+    @Before
+    public void setupTestData() throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(true);
+            DatabaseOperation.CLEAN_INSERT.execute(getConnection(con), testData);
+        }
+    }
+
+    @After
+    public void tearDownTestData() throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(true);
+            DatabaseOperation.DELETE.execute(getConnection(con), testData);
+        }
+    }
+
+    // Nodes which were not identified have the empty puid of the NULL format.
+    private static IDatabaseConnection getConnection(Connection con) throws Exception {
+        final IDatabaseConnection conn = new DatabaseConnection(con);
+        conn.getConfig().setProperty(DatabaseConfig.FEATURE_ALLOW_EMPTY_FIELDS, true);
+        return conn;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.report.dao;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Restrictions;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.ColumnarResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.handlers.ResultHandlerDao;
+
+public class ColumnarReportDaoImplTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Map<String, Format> puidFormatMap;
+    private ColumnarResultHandlerDao resultHandlerDao;
+    private ColumnarReportDaoImpl reportDao;
+
+    @Before
+    public void setup() {
+        puidFormatMap = new HashMap<>();
+        puidFormatMap.put("fmt/18", newFormat("fmt/18", "Acrobat PDF", "application/pdf"));
+        puidFormatMap.put("x-fmt/111", newFormat("x-fmt/111", "Plain Text File", "text/plain"));
+        ResultHandlerDao referenceDataDao = mock(ResultHandlerDao.class);
+        when(referenceDataDao.getPUIDFormatMap()).thenReturn(puidFormatMap);
+        resultHandlerDao = new ColumnarResultHandlerDao();
+        resultHandlerDao.setReferenceDataDao(referenceDataDao);
+        resultHandlerDao.setStoreDirectory(temp.getRoot().toPath().resolve("columnar"));
+        resultHandlerDao.init();
+        reportDao = new ColumnarReportDaoImpl();
+        reportDao.setResultHandlerDao(resultHandlerDao);
+
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER, null);
+        resultHandlerDao.save(folder, null);
+        ResourceId parent = new ResourceId(folder.getId(), folder.getPrefix());
+        resultHandlerDao.save(newNode("file:/folder/a.pdf", ResourceType.FILE, 100L, "fmt/18"), parent);
+        resultHandlerDao.save(newNode("file:/folder/b.pdf", ResourceType.FILE, 300L, "fmt/18", "x-fmt/111"), parent);
+        resultHandlerDao.save(newNode("file:/folder/c.txt", ResourceType.FILE, 50L, "x-fmt/111"), parent);
+        resultHandlerDao.save(newNode("file:/folder/d.bin", ResourceType.FILE, 10L), parent);
+        resultHandlerDao.commit();
+    }
+
+    @After
+    public void tearDown() {
+        resultHandlerDao.cleanup();
+    }
+
+    @Test
+    public void testFileSizesAreAggregatedForEveryNode() {
+        List<ReportLineItem> items = reportDao.getReportData(null, ReportFieldEnum.FILE_SIZE);
+        assertEquals(1, items.size());
+        assertEquals(Long.valueOf(4), items.get(0).getCount());
+        assertEquals(Long.valueOf(460), items.get(0).getSum());
+        assertEquals(Long.valueOf(10), items.get(0).getMinimum());
+        assertEquals(Long.valueOf(300), items.get(0).getMaximum());
+    }
+
+    @Test
+    public void testGroupingOnPuidCountsEachIdentification() {
+        List<ReportLineItem> items = reportDao.getReportData(null, ReportFieldEnum.FILE_NAME,
+                Arrays.asList(newGroupByField(ReportFieldEnum.PUID)));
+        assertEquals(3, items.size());
+        assertGroup(items.get(0), "", 2);
+        assertGroup(items.get(1), "fmt/18", 2);
+        assertGroup(items.get(2), "x-fmt/111", 2);
+    }
+
+    @Test
+    public void testResourceTypesAreGroupedOnTheValuesTheDatabaseHolds() {
+        List<ReportLineItem> items = reportDao.getReportData(null, ReportFieldEnum.FILE_NAME,
+                Arrays.asList(newGroupByField(ReportFieldEnum.RESOURCE_TYPE)));
+        assertEquals(2, items.size());
+        assertGroup(items.get(0), String.valueOf(ResourceType.FOLDER.ordinal()), 1);
+        assertGroup(items.get(1), String.valueOf(ResourceType.FILE.ordinal()), 4);
+    }
+
+    @Test
+    public void testFiltersAreMatchedAgainstEachNode() {
+        ReportQuery pdfSizes = new ReportQuery(Restrictions.eq("format.puid", "fmt/18"),
+                ReportFieldEnum.FILE_SIZE, null);
+        ReportQuery largeFileFormats = new ReportQuery(Restrictions.gt("metaData.size", 60L),
+                ReportFieldEnum.FILE_NAME, Arrays.asList(newGroupByField(ReportFieldEnum.FILE_FORMAT)));
+        List<List<ReportLineItem>> reportData = reportDao.getReportData(Arrays.asList(pdfSizes, largeFileFormats), null);
+
+        assertEquals(Long.valueOf(2), reportData.get(0).get(0).getCount());
+        assertEquals(Long.valueOf(400), reportData.get(0).get(0).getSum());
+        List<ReportLineItem> formats = reportData.get(1);
+        assertEquals(2, formats.size());
+        assertGroup(formats.get(0), "Acrobat PDF", 2);
+        assertGroup(formats.get(1), "Plain Text File", 1);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testReadingStopsWhenTheObserverIsCancelled() {
+        ReportReadObserver observer = mock(ReportReadObserver.class);
+        when(observer.isCancelled()).thenReturn(true);
+        reportDao.getReportData(Collections.singletonList(
+                new ReportQuery(null, ReportFieldEnum.FILE_SIZE, null)), observer);
+    }
+
+    private static void assertGroup(ReportLineItem item, String groupValue, long count) {
+        assertEquals(Collections.singletonList(groupValue), item.getGroupByValues());
+        assertEquals(Long.valueOf(count), item.getCount());
+    }
+
+    private static GroupByField newGroupByField(ReportFieldEnum field) {
+        GroupByField groupByField = new GroupByField();
+        groupByField.setGroupByField(field);
+        return groupByField;
+    }
+
+    private ProfileResourceNode newNode(String uri, ResourceType resourceType, Long size, String... puids) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create(uri));
+        NodeMetaData metaData = new NodeMetaData();
+        String path = URI.create(uri).getPath();
+        metaData.setName(path.substring(path.lastIndexOf('/', path.length() - 2) + 1));
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(resourceType);
+        metaData.setSize(size);
+        node.setMetaData(metaData);
+        for (String puid : puids) {
+            node.addFormatIdentification(puidFormatMap.get(puid));
+        }
+        return node;
+    }
+
+    private static Format newFormat(String puid, String name, String mimeType) {
+        Format format = new Format();
+        format.setPuid(puid);
+        format.setName(name);
+        format.setMimeType(mimeType);
+        return format;
+    }
+}
@@ -38,8 +38,10 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import org.dbunit.DatabaseUnitException;
@@ -247,6 +249,71 @@ public class JpaReportDaoTest {
         //printReportData(reportData);
     }
 
+    // All report items read at once.
+
+    @Test
+    public void testReportDataForSeveralQueriesMatchesSeparateQueries() {
+        final Criterion[] filters = {null, filter, Restrictions.eq("format.puid", "x-fmt/111")};
+        final ReportFieldEnum[] fields = {ReportFieldEnum.FILE_SIZE, ReportFieldEnum.LAST_MODIFIED_DATE,
+                ReportFieldEnum.FILE_NAME};
+        final List<List<GroupByField>> groupings = new ArrayList<List<GroupByField>>();
+        groupings.add(new ArrayList<GroupByField>());
+        groupings.add(getGroupByFieldList(ReportFieldEnum.FILE_FORMAT));
+        groupings.add(getGroupByFieldList(ReportFieldEnum.PUID));
+        groupings.add(getGroupByFieldList(ReportFieldEnum.LAST_MODIFIED_DATE, "Year"));
+        groupings.add(getGroupByFieldList(ReportFieldEnum.LAST_MODIFIED_DATE, "month"));
+        groupings.add(getGroupByFieldList(ReportFieldEnum.FILE_EXTENSION, "upper"));
+        groupings.add(getGroupByFieldList(ReportFieldEnum.IDENTIFICATION_STATUS));
+        final List<GroupByField> formatGrouping = getGroupByFieldList(ReportFieldEnum.PUID);
+        formatGrouping.addAll(getGroupByFieldList(ReportFieldEnum.FILE_FORMAT));
+        formatGrouping.addAll(getGroupByFieldList(ReportFieldEnum.FORMAT_VERSION));
+        formatGrouping.addAll(getGroupByFieldList(ReportFieldEnum.MIME_TYPE));
+        groupings.add(formatGrouping);
+
+        final List<ReportQuery> queries = new ArrayList<ReportQuery>();
+        for (Criterion queryFilter : filters) {
+            for (ReportFieldEnum field : fields) {
+                for (List<GroupByField> grouping : groupings) {
+                    queries.add(new ReportQuery(queryFilter, field, grouping));
+                }
+            }
+        }
+
+        final List<List<ReportLineItem>> allReportData = reportDao.getReportData(queries, null);
+        assertEquals(queries.size(), allReportData.size());
+        for (int i = 0; i < queries.size(); i++) {
+            final ReportQuery query = queries.get(i);
+            final List<ReportLineItem> expected = reportDao.getReportData(query.getFilter(),
+                    query.getReportField(), query.getGroupByFields());
+            assertNotNull(expected);
+            assertReportDataEquals(expected, allReportData.get(i));
+        }
+    }
+
+    @Test
+    public void testReportDataProgressIsReportedForNodesAndSeparateQueries() {
+        final List<ReportQuery> queries = new ArrayList<ReportQuery>();
+        queries.add(new ReportQuery(null, ReportFieldEnum.FILE_NAME, new ArrayList<GroupByField>()));
+        queries.add(new ReportQuery(null, ReportFieldEnum.FILE_SIZE,
+                getGroupByFieldList(ReportFieldEnum.LAST_MODIFIED_DATE, "day")));
+        final RecordingObserver observer = new RecordingObserver(false);
+
+        final List<List<ReportLineItem>> allReportData = reportDao.getReportData(queries, observer);
+
+        assertEquals(2, allReportData.size());
+        final long nodeCount = allReportData.get(0).get(0).getCount();
+        assertEquals(2, observer.progressCount);
+        assertEquals(nodeCount + 1, observer.stepCount);
+        assertEquals(observer.stepCount, observer.stepsDone);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testReportDataStopsWhenCancelled() {
+        final List<ReportQuery> queries = new ArrayList<ReportQuery>();
+        queries.add(new ReportQuery(null, ReportFieldEnum.FILE_SIZE, new ArrayList<GroupByField>()));
+        reportDao.getReportData(queries, new RecordingObserver(true));
+    }
+
     @Before
     public void setupTestData() throws Exception {
 
@@ -278,6 +345,46 @@ public class JpaReportDaoTest {
     }
 
 
+    private void assertReportDataEquals(List<ReportLineItem> expected, List<ReportLineItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final ReportLineItem expectedItem = expected.get(i);
+            final ReportLineItem actualItem = actual.get(i);
+            assertEquals(expectedItem.getGroupByValues(), actualItem.getGroupByValues());
+            assertEquals(expectedItem.getCount(), actualItem.getCount());
+            assertEquals(expectedItem.getSum(), actualItem.getSum());
+            assertEquals(expectedItem.getAverage(), actualItem.getAverage());
+            assertEquals(expectedItem.getMinimum(), actualItem.getMinimum());
+            assertEquals(expectedItem.getMaximum(), actualItem.getMaximum());
+            assertEquals(expectedItem.getEarliestDate(), actualItem.getEarliestDate());
+            assertEquals(expectedItem.getLatestDate(), actualItem.getLatestDate());
+        }
+    }
+
+    private static final class RecordingObserver implements ReportReadObserver {
+
+        private final boolean cancelled;
+        private int progressCount;
+        private long stepsDone;
+        private long stepCount;
+
+        RecordingObserver(boolean cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void onProgress(long stepsDone, long stepCount) {
+            progressCount++;
+            this.stepsDone = stepsDone;
+            this.stepCount = stepCount;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
     private void printReportData(List<ReportLineItem> myReportData) {
         for (ReportLineItem item : myReportData) {
             System.out.println("GroupBy Value:" + getGroupValue(item, 0) + "   Count:" + item.getCount() + "   Average:"
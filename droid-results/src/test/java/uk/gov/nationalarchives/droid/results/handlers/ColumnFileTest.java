@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColumnFileTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testValuesAreReadBackWhileTheColumnGrows() throws IOException {
+        try (ColumnFile column = new ColumnFile(temp.getRoot().toPath().resolve("column"))) {
+            for (int i = 0; i < 100000; i++) {
+                column.writeInt(i);
+                assertEquals(i, column.getInt(i * 4L));
+                if (i % 1000 == 0) {
+                    for (int j = 0; j <= i; j += 97) {
+                        assertEquals(j, column.getInt(j * 4L));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBytesAreReadBackAcrossTheMappedPartOfTheColumn() throws IOException {
+        try (ColumnFile column = new ColumnFile(temp.getRoot().toPath().resolve("column"))) {
+            column.writeLong(42);
+            assertEquals(42, column.getLong(0));
+            final byte[] bytes = "read past the mapping".getBytes(StandardCharsets.UTF_8);
+            column.write(bytes);
+            assertArrayEquals(bytes, column.read(8, bytes.length));
+            assertArrayEquals(new byte[] {0, 0, 0, 0, 0, 0, 0, 42, bytes[0]}, column.read(0, 9));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadingPastTheEndOfTheColumnFails() throws IOException {
+        try (ColumnFile column = new ColumnFile(temp.getRoot().toPath().resolve("column"))) {
+            column.writeInt(1);
+            column.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+public class ColumnarResultHandlerDaoTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path storeDirectory;
+    private Map<String, Format> puidFormatMap;
+    private ColumnarResultHandlerDao dao;
+
+    @Before
+    public void setup() {
+        storeDirectory = temp.getRoot().toPath().resolve("columnar");
+        puidFormatMap = new HashMap<>();
+        puidFormatMap.put("fmt/18", newFormat("fmt/18"));
+        puidFormatMap.put("x-fmt/111", newFormat("x-fmt/111"));
+        dao = newDao();
+    }
+
+    @After
+    public void tearDown() {
+        dao.cleanup();
+    }
+
+    @Test
+    public void testSavedNodesAreLoadedWithAllTheirFields() {
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER);
+        dao.save(folder, null);
+        ProfileResourceNode file = newNode("file:/folder/a.pdf", ResourceType.FILE);
+        file.getMetaData().setSize(1234L);
+        file.getMetaData().setLastModified(1000L);
+        file.getMetaData().setSha256Hash("abcd");
+        file.getMetaData().setIdentificationMethod(IdentificationMethod.BINARY_SIGNATURE);
+        file.setExtensionMismatch(true);
+        file.setFinished(new Date(2000L));
+        file.addFormatIdentification(puidFormatMap.get("fmt/18"));
+        file.addFormatIdentification(puidFormatMap.get("x-fmt/111"));
+        dao.save(file, new ResourceId(folder.getId(), folder.getPrefix()));
+
+        ProfileResourceNode loaded = dao.loadNode(file.getId());
+        NodeMetaData metaData = loaded.getMetaData();
+        assertEquals(URI.create("file:/folder/a.pdf"), loaded.getUri());
+        assertEquals(folder.getId(), loaded.getParentId());
+        assertEquals(file.getPrefix(), loaded.getPrefix());
+        assertTrue(loaded.getPrefix().startsWith(folder.getPrefix()));
+        assertEquals(Long.valueOf(1234L), metaData.getSize());
+        assertEquals(new Date(1000L), metaData.getLastModifiedDate());
+        assertEquals(new Date(2000L), loaded.getFinished());
+        assertEquals("a.pdf", metaData.getName());
+        assertEquals("abcd", metaData.getSha256Hash());
+        assertNull(metaData.getMd5Hash());
+        assertEquals(NodeStatus.DONE, metaData.getNodeStatus());
+        assertEquals(ResourceType.FILE, metaData.getResourceType());
+        assertEquals(IdentificationMethod.BINARY_SIGNATURE, metaData.getIdentificationMethod());
+        assertTrue(loaded.getExtensionMismatch());
+        assertEquals(Integer.valueOf(2), loaded.getIdentificationCount());
+        assertEquals("x-fmt/111", loaded.getFormatIdentifications().get(1).getPuid());
+    }
+
+    @Test
+    public void testUpdatedNodesReplaceTheirEarlierRowAndDeletedNodesAreGone() throws IOException {
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER);
+        dao.save(folder, null);
+        ProfileResourceNode first = newNode("file:/folder/a.pdf", ResourceType.FILE);
+        dao.save(first, new ResourceId(folder.getId(), folder.getPrefix()));
+        ProfileResourceNode second = newNode("file:/folder/b.pdf", ResourceType.FILE);
+        dao.save(second, new ResourceId(folder.getId(), folder.getPrefix()));
+
+        first.getMetaData().setNodeStatus(NodeStatus.ERROR);
+        dao.save(first, null);
+        dao.deleteNode(second.getId());
+        dao.commit();
+
+        assertEquals(NodeStatus.ERROR, dao.loadNode(first.getId()).getMetaData().getNodeStatus());
+        assertNull(dao.loadNode(second.getId()));
+        List<ProfileResourceNode> children = dao.getStore().loadChildren(folder.getId(), puidFormatMap);
+        assertEquals(1, children.size());
+        assertEquals(first.getId(), children.get(0).getId());
+        assertEquals(1, dao.getStore().loadChildren(null, puidFormatMap).size());
+    }
+
+    @Test
+    public void testChildrenAreLoadedInPagesInNodeIdOrder() throws IOException {
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER);
+        dao.save(folder, null);
+        ResourceId parent = new ResourceId(folder.getId(), folder.getPrefix());
+        ProfileResourceNode first = newNode("file:/folder/a.pdf", ResourceType.FILE);
+        dao.save(first, parent);
+        ProfileResourceNode second = newNode("file:/folder/b.pdf", ResourceType.FILE);
+        dao.save(second, parent);
+        ProfileResourceNode third = newNode("file:/folder/c.pdf", ResourceType.FILE);
+        dao.save(third, parent);
+        dao.deleteNode(second.getId());
+        dao.commit();
+
+        List<ProfileResourceNode> page = dao.getStore().loadChildren(folder.getId(), 0, 1, puidFormatMap);
+        assertEquals(1, page.size());
+        assertEquals(first.getId(), page.get(0).getId());
+        page = dao.getStore().loadChildren(folder.getId(), first.getId(), 1, puidFormatMap);
+        assertEquals(1, page.size());
+        assertEquals(third.getId(), page.get(0).getId());
+        assertTrue(dao.getStore().loadChildren(folder.getId(), third.getId(), 1, puidFormatMap).isEmpty());
+    }
+
+    @Test
+    public void testChildrenSavedOutOfNodeIdOrderAreLoadedInNodeIdOrder() throws IOException {
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER);
+        dao.save(folder, null);
+        ResourceId parent = new ResourceId(folder.getId(), folder.getPrefix());
+        for (long id : new long[] {folder.getId() + 3, folder.getId() + 1, folder.getId() + 2}) {
+            ProfileResourceNode child = newNode("file:/folder/" + id + ".pdf", ResourceType.FILE);
+            JDBCBatchResultHandlerDao.setNodeIds(child, parent, id);
+            dao.save(child, parent);
+        }
+        dao.commit();
+
+        List<ProfileResourceNode> children = dao.getStore().loadChildren(folder.getId(), puidFormatMap);
+        assertEquals(3, children.size());
+        for (int i = 0; i < children.size(); i++) {
+            assertEquals(Long.valueOf(folder.getId() + i + 1), children.get(i).getId());
+        }
+        List<ProfileResourceNode> page = dao.getStore().loadChildren(folder.getId(), folder.getId() + 1, 1, puidFormatMap);
+        assertEquals(1, page.size());
+        assertEquals(Long.valueOf(folder.getId() + 2), page.get(0).getId());
+    }
+
+    @Test
+    public void testPagesOfChildrenSkipDeletedChildren() throws IOException {
+        ProfileResourceNode folder = newNode("file:/folder/", ResourceType.FOLDER);
+        dao.save(folder, null);
+        ResourceId parent = new ResourceId(folder.getId(), folder.getPrefix());
+        List<ProfileResourceNode> saved = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            ProfileResourceNode child = newNode("file:/folder/" + i + ".pdf", ResourceType.FILE);
+            dao.save(child, parent);
+            saved.add(child);
+        }
+        for (int i = 0; i < 500; i++) {
+            dao.deleteNode(saved.get(i).getId());
+        }
+        dao.commit();
+
+        List<ProfileResourceNode> page = dao.getStore().loadChildren(folder.getId(), 0, 10, puidFormatMap);
+        assertEquals(10, page.size());
+        assertEquals(saved.get(500).getId(), page.get(0).getId());
+        assertEquals(saved.get(509).getId(), page.get(9).getId());
+        assertTrue(dao.getStore().hasChildren(folder.getId()));
+
+        for (int i = 500; i < 600; i++) {
+            dao.deleteNode(saved.get(i).getId());
+        }
+        assertFalse(dao.getStore().hasChildren(folder.getId()));
+        assertTrue(dao.getStore().loadChildren(folder.getId(), puidFormatMap).isEmpty());
+    }
+
+    @Test
+    public void testReopenedStoreKeepsItsNodesAndDropsPartlyWrittenRows() throws IOException {
+        ProfileResourceNode first = newNode("file:/a.pdf", ResourceType.FILE);
+        dao.save(first, null);
+        dao.cleanup();
+
+        // Simulate a row which was only partly written when DROID stopped.
+        Files.write(storeDirectory.resolve("parent_id.col"), new byte[8], StandardOpenOption.APPEND);
+        dao = newDao();
+
+        ProfileResourceNode second = newNode("file:/b.pdf", ResourceType.FILE);
+        second.getMetaData().setSize(99L);
+        dao.save(second, null);
+
+        assertEquals(Long.valueOf(first.getId() + 1), second.getId());
+        assertEquals("a.pdf", dao.loadNode(first.getId()).getMetaData().getName());
+        assertEquals(Long.valueOf(99L), dao.loadNode(second.getId()).getMetaData().getSize());
+        assertNull(dao.loadNode(second.getId()).getParentId());
+    }
+
+    @Test
+    public void testReopenedStoreDropsRowsMissingFromAnyFixedWidthColumn() throws IOException {
+        ProfileResourceNode first = newNode("file:/a.pdf", ResourceType.FILE);
+        dao.save(first, null);
+        ProfileResourceNode second = newNode("file:/b.pdf", ResourceType.FILE);
+        dao.save(second, null);
+        dao.cleanup();
+
+        // The flags column only reached the disk for the first row.
+        truncate("flags.col", 4);
+        dao = newDao();
+
+        assertEquals("a.pdf", dao.loadNode(first.getId()).getMetaData().getName());
+        assertNull(dao.loadNode(second.getId()));
+        assertEquals(1, dao.getStore().getRowCount());
+        assertEquals(1, dao.getStore().loadChildren(null, puidFormatMap).size());
+    }
+
+    @Test
+    public void testReopenedStoreDropsRowsWhoseStringsWereNotWritten() throws IOException {
+        ProfileResourceNode first = newNode("file:/a.pdf", ResourceType.FILE);
+        dao.save(first, null);
+        ProfileResourceNode second = newNode("file:/b.pdf", ResourceType.FILE);
+        second.addFormatIdentification(puidFormatMap.get("fmt/18"));
+        dao.save(second, null);
+        dao.cleanup();
+
+        // The string heap lost the end of the second row's strings.
+        Path heap = storeDirectory.resolve("string_heap.col");
+        truncate("string_heap.col", Files.size(heap) - 1);
+        dao = newDao();
+
+        assertEquals("a.pdf", dao.loadNode(first.getId()).getMetaData().getName());
+        assertNull(dao.loadNode(second.getId()));
+
+        ProfileResourceNode third = newNode("file:/c.pdf", ResourceType.FILE);
+        third.addFormatIdentification(puidFormatMap.get("x-fmt/111"));
+        dao.save(third, null);
+        dao.commit();
+        ProfileResourceNode loaded = dao.loadNode(third.getId());
+        assertEquals("c.pdf", loaded.getMetaData().getName());
+        assertEquals("x-fmt/111", loaded.getFormatIdentifications().get(0).getPuid());
+    }
+
+    @Test
+    public void testRowWhichFailsToBeWrittenIsRolledBack() throws IOException {
+        ProfileResourceNode first = newNode("file:/a.pdf", ResourceType.FILE);
+        first.addFormatIdentification(puidFormatMap.get("fmt/18"));
+        dao.save(first, null);
+
+        // Its identifications, strings and some fixed width columns are written before it fails.
+        ProfileResourceNode broken = newNode("file:/broken.pdf", ResourceType.FILE);
+        broken.setMetaData(new NodeMetaData() {
+            @Override
+            public IdentificationMethod getIdentificationMethod() {
+                throw new IllegalStateException("Failed to read the identification method");
+            }
+        });
+        broken.getMetaData().setName("broken.pdf");
+        broken.addFormatIdentification(puidFormatMap.get("x-fmt/111"));
+        JDBCBatchResultHandlerDao.setNodeIds(broken, null, first.getId() + 1);
+        try {
+            dao.getStore().append(broken);
+            fail("Expected the row to fail");
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+        assertEquals(1, dao.getStore().getRowCount());
+
+        ProfileResourceNode second = newNode("file:/b.pdf", ResourceType.FILE);
+        second.addFormatIdentification(puidFormatMap.get("x-fmt/111"));
+        second.addFormatIdentification(puidFormatMap.get("fmt/18"));
+        dao.save(second, null);
+        dao.cleanup();
+        dao = newDao();
+
+        assertEquals(2, dao.getStore().getRowCount());
+        ProfileResourceNode loaded = dao.loadNode(second.getId());
+        assertEquals("b.pdf", loaded.getMetaData().getName());
+        assertEquals("x-fmt/111", loaded.getFormatIdentifications().get(0).getPuid());
+        assertEquals("fmt/18", loaded.getFormatIdentifications().get(1).getPuid());
+        assertEquals("fmt/18", dao.loadNode(first.getId()).getFormatIdentifications().get(0).getPuid());
+    }
+
+    private void truncate(String column, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(storeDirectory.resolve(column), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    private ColumnarResultHandlerDao newDao() {
+        ResultHandlerDao referenceDataDao = mock(ResultHandlerDao.class);
+        when(referenceDataDao.getPUIDFormatMap()).thenReturn(puidFormatMap);
+        ColumnarResultHandlerDao newDao = new ColumnarResultHandlerDao();
+        newDao.setReferenceDataDao(referenceDataDao);
+        newDao.setStoreDirectory(storeDirectory);
+        newDao.init();
+        return newDao;
+    }
+
+    private static ProfileResourceNode newNode(String uri, ResourceType resourceType) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create(uri));
+        NodeMetaData metaData = new NodeMetaData();
+        String path = URI.create(uri).getPath();
+        metaData.setName(path.substring(path.lastIndexOf('/', path.length() - 2) + 1));
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(resourceType);
+        node.setMetaData(metaData);
+        return node;
+    }
+
+    private static Format newFormat(String puid) {
+        Format format = new Format();
+        format.setPuid(puid);
+        return format;
+    }
+}
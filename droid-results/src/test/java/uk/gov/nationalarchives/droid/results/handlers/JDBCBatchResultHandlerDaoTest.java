@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Bulk loads nodes through the database writer, with its identifications inserted several rows at a time,
+ * batches which grow and shrink, and secondary indexes which are built once a bulk load is committed.
+ * <p>
+ * The nodes have more than one identification each, so they are written to a {@link TestProfileDatabase}.
+ */
+public class JDBCBatchResultHandlerDaoTest {
+
+    private static final long FIRST_NODE_ID = 900000;
+    private static final String[] TEST_PUIDS = {"test/a", "test/b", "test/c"};
+    private static final int QUEUE_SIZE = 4;
+    private static final long SLOW_COMMIT_MILLIS = 10000;
+
+    private static final String SELECT_IDENTIFICATIONS = "SELECT NODE_ID, PUID FROM IDENTIFICATION WHERE NODE_ID >= ?";
+    private static final String DELETE_IDENTIFICATIONS = "DELETE FROM IDENTIFICATION WHERE NODE_ID >= ?";
+    private static final String DELETE_NODES = "DELETE FROM PROFILE_RESOURCE_NODE WHERE NODE_ID >= ?";
+
+    private static HikariDataSource dataSource;
+
+    @BeforeClass
+    public static void createDatabase() throws Exception {
+        dataSource = TestProfileDatabase.create("jdbcBatchResultHandlerDaoTest",
+                "", TEST_PUIDS[0], TEST_PUIDS[1], TEST_PUIDS[2]);
+    }
+
+    @AfterClass
+    public static void closeDatabase() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testBulkLoadInsertsIdentificationsAcrossNodesAndLeftOversOnCommit() throws Exception {
+        final JDBCBatchResultHandlerDao.DatabaseWriter writer = newWriter(newQueue(), true);
+        writer.init();
+        try {
+            assertDeferredIndexes(false);
+
+            // 7 nodes with 3 identifications each, and one with none, make 2 inserts of 10 rows and 2 rows left over.
+            final List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < 7; i++) {
+                writer.batchInsertNode(newNode(FIRST_NODE_ID + i, TEST_PUIDS));
+                for (String puid : TEST_PUIDS) {
+                    expected.add((FIRST_NODE_ID + i) + ":" + puid);
+                }
+            }
+            writer.batchInsertNode(newNode(FIRST_NODE_ID + 7));
+            expected.add((FIRST_NODE_ID + 7) + ":");
+
+            assertEquals(Collections.emptyList(), getIdentifications());
+            writer.commit();
+
+            Collections.sort(expected);
+            assertEquals(expected, getIdentifications());
+            assertDeferredIndexes(true);
+        } finally {
+            writer.closeResources();
+        }
+    }
+
+    @Test
+    public void testBatchLimitGrowsWhileTheQueueBacksUpAndShrinksWhenCommitsAreSlow() throws Exception {
+        final BlockingQueue<JDBCBatchResultHandlerDao.NodeInfo> queue = newQueue();
+        final JDBCBatchResultHandlerDao.DatabaseWriter writer = newWriter(queue, false);
+
+        writer.adjustBatchLimit(0);
+        assertEquals(JDBCBatchResultHandlerDao.BATCH_LIMIT, writer.getBatchLimit());
+
+        for (int i = 0; i < QUEUE_SIZE - 1; i++) {
+            queue.put(new JDBCBatchResultHandlerDao.NodeInfo(null, false));
+        }
+        final List<Integer> limits = new ArrayList<Integer>();
+        for (int i = 0; i < 6; i++) {
+            writer.adjustBatchLimit(0);
+            limits.add(writer.getBatchLimit());
+        }
+        assertEquals(Arrays.asList(200, 400, 800, 1600, 2000, 2000), limits);
+
+        limits.clear();
+        for (int i = 0; i < 6; i++) {
+            writer.adjustBatchLimit(SLOW_COMMIT_MILLIS);
+            limits.add(writer.getBatchLimit());
+        }
+        assertEquals(Arrays.asList(1000, 500, 250, 125, 100, 100), limits);
+    }
+
+    @Test
+    public void testIndexesAreRebuiltWhenReopenedAfterAnInterruptedBulkLoad() throws Exception {
+        final JDBCBatchResultHandlerDao.DatabaseWriter writer = newWriter(newQueue(), true);
+        writer.init();
+        try {
+            writer.batchInsertNode(newNode(FIRST_NODE_ID, TEST_PUIDS));
+            writer.commitBatch(); // the results are committed, but the profile is stopped before it is.
+        } finally {
+            writer.closeResources();
+        }
+        assertDeferredIndexes(false);
+
+        final JDBCBatchResultHandlerDao dao = new JDBCBatchResultHandlerDao();
+        dao.setDatasource(dataSource);
+        dao.init();
+        try {
+            assertDeferredIndexes(true);
+        } finally {
+            dao.cleanup();
+        }
+    }
+
+    private BlockingQueue<JDBCBatchResultHandlerDao.NodeInfo> newQueue() {
+        return new ArrayBlockingQueue<JDBCBatchResultHandlerDao.NodeInfo>(QUEUE_SIZE);
+    }
+
+    private JDBCBatchResultHandlerDao.DatabaseWriter newWriter(BlockingQueue<JDBCBatchResultHandlerDao.NodeInfo> queue,
+                                                             boolean bulkLoad) {
+        return new JDBCBatchResultHandlerDao.DatabaseWriter(queue, dataSource, bulkLoad);
+    }
+
+    private static ProfileResourceNode newNode(long nodeId, String... puids) {
+        final ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/folder/file" + nodeId));
+        final NodeMetaData metaData = new NodeMetaData();
+        metaData.setName("file" + nodeId);
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setResourceType(ResourceType.FILE);
+        node.setMetaData(metaData);
+        node.setId(nodeId);
+        for (String puid : puids) {
+            final Format format = new Format();
+            format.setPuid(puid);
+            node.addFormatIdentification(format);
+        }
+        return node;
+    }
+
+    private List<String> getIdentifications() throws Exception {
+        final List<String> identifications = new ArrayList<String>();
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement select = con.prepareStatement(SELECT_IDENTIFICATIONS)) {
+            select.setLong(1, FIRST_NODE_ID);
+            try (ResultSet results = select.executeQuery()) {
+                while (results.next()) {
+                    identifications.add(results.getLong(1) + ":" + results.getString(2));
+                }
+            }
+            con.commit();
+        }
+        Collections.sort(identifications);
+        return identifications;
+    }
+
+    private void assertDeferredIndexes(boolean exist) throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            final List<String> indexNames = JDBCBatchResultHandlerDao.getIndexNames(con);
+            for (String[] index : JDBCBatchResultHandlerDao.DEFERRED_INDEXES) {
+                if (exist) {
+                    assertTrue(index[0], indexNames.contains(index[0]));
+                } else {
+                    assertFalse(index[0], indexNames.contains(index[0]));
+                }
+            }
+            con.commit();
+        }
+    }
+
+    @Before
+    public void setupTestData() throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            deleteTestNodes(con);
+            con.commit();
+        }
+    }
+
+    @After
+    public void tearDownTestData() throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            deleteTestNodes(con);
+            con.commit();
+            JDBCBatchResultHandlerDao.createDeferredIndexes(con); // in case a test failed part way through a bulk load.
+        }
+    }
+
+    private static void deleteTestNodes(Connection con) throws Exception {
+        for (String sql : new String[] {DELETE_IDENTIFICATIONS, DELETE_NODES}) {
+            try (PreparedStatement delete = con.prepareStatement(sql)) {
+                delete.setLong(1, FIRST_NODE_ID);
+                delete.execute();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Creates an in-memory profile database with the schema the dao creates for a fresh template.
+ * <p>
+ * The droid-test-db fixture was created by an older DROID, and only has a primary key on the identification
+ * node id, so it cannot hold a node with more than one identification.
+ */
+public final class TestProfileDatabase {
+
+    private static final String INSERT_FORMAT = "INSERT INTO FORMAT (PUID, MIME_TYPE, NAME, VERSION) VALUES (?, '', ?, '')";
+
+    private TestProfileDatabase() {
+    }
+
+    /**
+     * @param name The name of the in-memory database.
+     * @param puids The puids of the formats to insert.
+     * @return A data source for the new database, which does not auto commit.
+     * @throws Exception If the database could not be created.
+     */
+    public static HikariDataSource create(String name, String... puids) throws Exception {
+        final HikariConfig config = new HikariConfig();
+        config.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        config.setJdbcUrl("jdbc:derby:memory:" + name + ";create=true");
+        config.setAutoCommit(false);
+        final HikariDataSource dataSource = new HikariDataSource(config);
+
+        final JDBCBatchResultHandlerDao dao = new JDBCBatchResultHandlerDao();
+        dao.setDatasource(dataSource);
+        JDBCBatchResultHandlerDao.setIsFreshTemplate(true);
+        try {
+            dao.init();
+        } finally {
+            JDBCBatchResultHandlerDao.setIsFreshTemplate(false);
+        }
+
+        try (Connection con = dataSource.getConnection()) {
+            for (String puid : puids) {
+                try (PreparedStatement insert = con.prepareStatement(INSERT_FORMAT)) {
+                    insert.setString(1, puid);
+                    insert.setString(2, puid);
+                    insert.execute();
+                }
+            }
+            con.commit();
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryListingTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testListingRecordsChildAttributes() throws Exception {
+        Path root = temp.getRoot().toPath();
+        Files.createDirectory(root.resolve("dir"));
+        Files.write(root.resolve("file.txt"), new byte[] {1, 2, 3});
+
+        DirectoryListing listing = DirectoryListing.list(root);
+
+        assertEquals(2, listing.size());
+        for (int i = 0; i < listing.size(); i++) {
+            if (listing.getChild(i).getFileName().toString().equals("dir")) {
+                assertTrue(listing.isDirectory(i));
+            } else {
+                assertFalse(listing.isDirectory(i));
+                assertEquals(3, listing.getAttributes(i).size());
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetcherReturnsListingOfEachSubDirectory() throws Exception {
+        Path root = temp.getRoot().toPath();
+        final int numDirs = 100;
+        for (int i = 0; i < numDirs; i++) {
+            Path dir = Files.createDirectory(root.resolve("dir" + i));
+            Files.write(dir.resolve("file" + i), new byte[i]);
+        }
+        Files.write(root.resolve("file.txt"), new byte[0]);
+
+        DirectoryListing listing = DirectoryListing.list(root);
+        DirectoryListing.Prefetcher prefetcher = new DirectoryListing.Prefetcher(listing);
+        Set<String> found = new HashSet<>();
+        try {
+            for (int i = 0; i < listing.size(); i++) {
+                if (listing.isDirectory(i)) {
+                    DirectoryListing subListing = prefetcher.take(i);
+                    assertEquals(1, subListing.size());
+                    assertEquals(listing.getChild(i), subListing.getChild(0).getParent());
+                    found.add(subListing.getChild(0).getFileName().toString());
+                }
+            }
+        } finally {
+            prefetcher.cancel();
+        }
+        assertEquals(numDirs, found.size());
+    }
+}
@@ -36,7 +36,10 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -44,6 +47,7 @@ import static org.mockito.Matchers.any;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -199,4 +203,39 @@ public class FileEventHandlerTest {
 
         FileUtil.deleteQuietly(file);
     }
+
+    @Test
+    public void testFileEventHandlerUsesAttributesFromTheWalker() throws IOException {
+
+        SubmissionThrottle throttle = mock(SubmissionThrottle.class);
+        fileEventHandler.setSubmissionThrottle(throttle);
+
+        final Path file = Paths.get("test_sig_files/DROID 5  Architecture.doc");
+        BasicFileAttributes attributes = mock(BasicFileAttributes.class);
+        when(attributes.size()).thenReturn(42L);
+        when(attributes.lastModifiedTime()).thenReturn(FileTime.fromMillis(1000L));
+
+        fileEventHandler.onEvent(file, attributes, new ResourceId(1L, ""), null);
+
+        ArgumentCaptor<RequestMetaData> metaDataCaptor = ArgumentCaptor.forClass(RequestMetaData.class);
+        verify(requestFactory).newRequest(metaDataCaptor.capture(), any(RequestIdentifier.class));
+        assertEquals(Long.valueOf(42L), metaDataCaptor.getValue().getSize());
+        assertEquals(Long.valueOf(1000L), metaDataCaptor.getValue().getTime());
+        verify(request).open(file);
+        verify(identificationEngine).submit(request);
+    }
+
+    @Test
+    public void testDeferredOpenSubmitsTheFileWithoutOpeningTheRequest() throws IOException {
+
+        SubmissionThrottle throttle = mock(SubmissionThrottle.class);
+        fileEventHandler.setSubmissionThrottle(throttle);
+        fileEventHandler.setDeferOpen(true);
+
+        final Path file = Paths.get("test_sig_files/DROID 5  Architecture.doc");
+        fileEventHandler.onEvent(file, new ResourceId(1L, ""), null);
+
+        verify(identificationEngine).submit(request, file);
+        verify(request, never()).open(any(Path.class));
+    }
 }
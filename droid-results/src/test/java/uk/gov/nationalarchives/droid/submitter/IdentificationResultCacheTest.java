@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+public class IdentificationResultCacheTest {
+
+    private static final String BINARY_SIGNATURE_FILE = "DROID_SignatureFile_V91.xml";
+    private static final String CONTAINER_SIGNATURE_FILE = "container-signature-20170330.xml";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testCachedResultsAreReturnedForTheSameFile() throws Exception {
+        IdentificationResultCache cache = newCache(temp.getRoot().toPath().resolve("cache"), 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        String key = cache.getKey(request, 65536);
+
+        assertNull(cache.get(key, request));
+        cache.put(key, newResults(request, "fmt/18", "x-fmt/111"));
+
+        IdentificationResultCollection results = cache.get(key, request);
+        assertEquals(2, results.getResults().size());
+        assertEquals("fmt/18", results.getResults().get(0).getPuid());
+        assertEquals(IdentificationMethod.BINARY_SIGNATURE, results.getResults().get(0).getMethod());
+        assertEquals("x-fmt/111", results.getResults().get(1).getPuid());
+        assertEquals(Long.valueOf(100L), results.getFileLength());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testKeyDependsOnFileAndScanSettings() throws Exception {
+        IdentificationResultCache cache = newCache(temp.getRoot().toPath().resolve("cache"), 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        String key = cache.getKey(request, 65536);
+
+        assertNotEquals(key, cache.getKey(request, -1));
+        assertNotEquals(key, cache.getKey(newRequest("file:/a.pdf", 100L, 2000L), 65536));
+        assertNotEquals(key, cache.getKey(newRequest("file:/a.pdf", 101L, 1000L), 65536));
+        assertNull(cache.getKey(newRequest("file:/a.pdf", null, null), 65536));
+
+        IdentificationRequest hashed = newRequest("file:/a.pdf", 100L, 1000L);
+        hashed.getRequestMetaData().setHash("abcdef");
+        IdentificationRequest hashedCopy = newRequest("file:/b.pdf", 100L, 3000L);
+        hashedCopy.getRequestMetaData().setHash("abcdef");
+        assertEquals(cache.getKey(hashed, 65536), cache.getKey(hashedCopy, 65536));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        IdentificationResultCache cache = newCache(temp.getRoot().toPath().resolve("cache"), 2);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        cache.put("a", newResults(request, "fmt/1"));
+        cache.put("b", newResults(request, "fmt/2"));
+        cache.get("a", request);
+        cache.put("c", newResults(request, "fmt/3"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b", request));
+        assertEquals("fmt/1", cache.get("a", request).getResults().get(0).getPuid());
+        assertEquals("fmt/3", cache.get("c", request).getResults().get(0).getPuid());
+    }
+
+    @Test
+    public void testCacheIsPersisted() throws Exception {
+        Path cacheFile = temp.getRoot().toPath().resolve("result_cache").resolve("results.cache");
+        IdentificationResultCache cache = newCache(cacheFile, 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        cache.put("a", newResults(request, "fmt/1", "fmt/2"));
+        cache.put("b", newResults(request));
+        cache.save();
+
+        IdentificationResultCache reloaded = newCache(cacheFile, 10);
+        assertEquals(2, reloaded.size());
+        assertEquals(2, reloaded.get("a", request).getResults().size());
+        assertTrue(reloaded.get("b", request).getResults().isEmpty());
+    }
+
+    @Test
+    public void testSavingMergesWithEntriesSavedByAnotherCache() throws Exception {
+        Path cacheFile = temp.getRoot().toPath().resolve("results.cache");
+        IdentificationResultCache first = newCache(cacheFile, 10);
+        IdentificationResultCache second = newCache(cacheFile, 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        first.put("a", newResults(request, "fmt/1"));
+        second.put("b", newResults(request, "fmt/2"));
+        first.save();
+        second.save();
+
+        IdentificationResultCache reloaded = newCache(cacheFile, 10);
+        assertEquals(2, reloaded.size());
+        assertEquals("fmt/1", reloaded.get("a", request).getResults().get(0).getPuid());
+        assertEquals("fmt/2", reloaded.get("b", request).getResults().get(0).getPuid());
+    }
+
+    @Test
+    public void testClearedCacheDoesNotMergeSavedEntries() throws Exception {
+        Path cacheFile = temp.getRoot().toPath().resolve("results.cache");
+        IdentificationResultCache cache = newCache(cacheFile, 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        cache.put("a", newResults(request, "fmt/1"));
+        cache.save();
+        cache.clear();
+        cache.put("b", newResults(request, "fmt/2"));
+        cache.save();
+
+        IdentificationResultCache reloaded = newCache(cacheFile, 10);
+        assertEquals(1, reloaded.size());
+        assertNull(reloaded.get("a", request));
+    }
+
+    @Test
+    public void testKeyChangesWhenSignatureFileContentChanges() throws Exception {
+        IdentificationResultCache cache = newCache(temp.getRoot().toPath().resolve("cache"), 10);
+        IdentificationRequest request = newRequest("file:/a.pdf", 100L, 1000L);
+        String key = cache.getKey(request, 65536);
+
+        Files.write(temp.getRoot().toPath().resolve(BINARY_SIGNATURE_FILE), "<edited/>".getBytes(StandardCharsets.UTF_8));
+        IdentificationResultCache edited = newCache(temp.getRoot().toPath().resolve("cache"), 10);
+        assertNotEquals(key, edited.getKey(request, 65536));
+    }
+
+    @Test
+    public void testNothingIsCachedIfSignatureFileCannotBeRead() {
+        IdentificationResultCache cache = new IdentificationResultCache();
+        cache.setMaxEntries(10);
+        cache.setBinarySignatureFile(temp.getRoot().toPath().resolve("missing.xml"));
+        cache.init();
+        assertNull(cache.getKey(newRequest("file:/a.pdf", 100L, 1000L), 65536));
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        IdentificationResultCache cache = newCache(temp.getRoot().toPath().resolve("cache"), 0);
+        assertFalse(cache.isEnabled());
+    }
+
+    private IdentificationResultCache newCache(Path cacheFile, int maxEntries) throws IOException {
+        IdentificationResultCache cache = new IdentificationResultCache();
+        cache.setCacheFile(cacheFile);
+        cache.setMaxEntries(maxEntries);
+        cache.setBinarySignatureFile(signatureFile(BINARY_SIGNATURE_FILE));
+        cache.setContainerSignatureFile(signatureFile(CONTAINER_SIGNATURE_FILE));
+        cache.init();
+        return cache;
+    }
+
+    private Path signatureFile(String name) throws IOException {
+        Path signatureFile = temp.getRoot().toPath().resolve(name);
+        if (!Files.exists(signatureFile)) {
+            Files.write(signatureFile, ("<" + name + "/>").getBytes(StandardCharsets.UTF_8));
+        }
+        return signatureFile;
+    }
+
+    private static IdentificationRequest newRequest(String uri, Long size, Long time) {
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        RequestMetaData metaData = new RequestMetaData(size, time, "a.pdf");
+        when(request.getRequestMetaData()).thenReturn(metaData);
+        when(request.getIdentifier()).thenReturn(new RequestIdentifier(URI.create(uri)));
+        when(request.size()).thenReturn(size == null ? 0L : size);
+        return request;
+    }
+
+    private static IdentificationResultCollection newResults(IdentificationRequest request, String... puids) {
+        IdentificationResultCollection results = new IdentificationResultCollection(request);
+        for (String puid : puids) {
+            IdentificationResultImpl result = new IdentificationResultImpl();
+            result.setPuid(puid);
+            result.setMethod(IdentificationMethod.BINARY_SIGNATURE);
+            results.addResult(result);
+        }
+        return results;
+    }
+}
@@ -35,17 +35,27 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -53,8 +63,13 @@ import static org.mockito.Mockito.when;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
@@ -66,6 +81,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ZipEntryRequestFact
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.SignatureParseException;
+import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 
 /**
  * @author rflitcroft
@@ -209,4 +225,195 @@ public class SubmissionGatewayTest {
         assertEquals("I failed", e.getCause().getMessage());
         */
     }
+
+    @Test
+    public void testDeferredOpenFailureIsReportedAsFileNotFound() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setExecutorService(Executors.newFixedThreadPool(2));
+
+        final Path file = Paths.get("test_sig_files/does-not-exist.pdf");
+        assertFalse(Files.exists(file));
+
+        RequestMetaData metaData = new RequestMetaData(-1L, 0L, "does-not-exist.pdf");
+        RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(metaData, identifier);
+
+        Future<IdentificationResultCollection> future = submissionGateway.submit(request, file);
+        try {
+            future.get();
+            fail("Expected Exception.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IdentificationException);
+        }
+        submissionGateway.awaitIdle();
+
+        ArgumentCaptor<IdentificationException> captor = ArgumentCaptor.forClass(IdentificationException.class);
+        verify(resultHandler).handleError(captor.capture());
+        assertEquals(IdentificationErrorType.FILE_NOT_FOUND, captor.getValue().getErrorType());
+        assertSame(request, captor.getValue().getRequest());
+    }
+
+    @Test
+    public void testResultsAreHandledOnThePostProcessExecutor() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        final String[] handlingThread = new String[1];
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                handlingThread[0] = Thread.currentThread().getName();
+                return null;
+            }
+        }).when(resultHandler).handle(any(IdentificationResultCollection.class));
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setArchiveFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setContainerFormatResolver(mock(ArchiveFormatResolver.class));
+
+        BlockingThreadPoolExecutorFactory postProcessFactory = new BlockingThreadPoolExecutorFactory();
+        postProcessFactory.setCorePoolSize(1);
+        postProcessFactory.setMaxPoolSize(1);
+        postProcessFactory.setQueueCapacity(10);
+        postProcessFactory.setThreadNamePrefix("post-process-thread-");
+        submissionGateway.setExecutorService(Executors.newFixedThreadPool(2));
+        submissionGateway.setPostProcessExecutorService(postProcessFactory.newInstance());
+
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), "sample.pdf");
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(metaData,
+                new RequestIdentifier(file.toUri()));
+
+        submissionGateway.submit(request, file).get();
+        submissionGateway.awaitIdle();
+
+        verify(resultHandler).handle(any(IdentificationResultCollection.class));
+        assertTrue(handlingThread[0].startsWith("post-process-thread-"));
+        assertEquals(0, submissionGateway.getPostProcessQueueDepth());
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testCloseDiscardsQueuedPostProcessTasks() throws Exception {
+
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return new IdentificationResultCollection((IdentificationRequest) invocation.getArguments()[0]);
+            }
+        });
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws InterruptedException {
+                handling.countDown();
+                release.await();
+                return null;
+            }
+        }).when(resultHandler).handle(any(IdentificationResultCollection.class));
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setExecutorService(Executors.newFixedThreadPool(1));
+        BlockingThreadPoolExecutorFactory postProcessFactory = new BlockingThreadPoolExecutorFactory();
+        postProcessFactory.setCorePoolSize(1);
+        postProcessFactory.setMaxPoolSize(1);
+        postProcessFactory.setQueueCapacity(10);
+        submissionGateway.setPostProcessExecutorService(postProcessFactory.newInstance());
+
+        IdentificationRequest[] requests = new IdentificationRequest[3];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = mock(IdentificationRequest.class);
+            when(requests[i].getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/request" + i)));
+            submissionGateway.submit(requests[i]).get();
+        }
+        // The first request holds the only post process thread, so the others are queued behind it.
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+
+        submissionGateway.close();
+
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+        Future<?> finished = waiter.submit(new java.util.concurrent.Callable<Object>() {
+            @Override
+            public Object call() throws InterruptedException {
+                submissionGateway.awaitFinished();
+                return null;
+            }
+        });
+        finished.get(10, TimeUnit.SECONDS);
+        waiter.shutdown();
+        for (IdentificationRequest request : requests) {
+            verify(request, atLeastOnce()).close();
+        }
+    }
+
+    @Test
+    public void testFullPostProcessQueueWaitsInsteadOfPostProcessingOnTheMatchThread() throws Exception {
+
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return new IdentificationResultCollection((IdentificationRequest) invocation.getArguments()[0]);
+            }
+        });
+        final List<String> handlingThreads = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws InterruptedException {
+                handlingThreads.add(Thread.currentThread().getName());
+                handling.countDown();
+                release.await();
+                return null;
+            }
+        }).when(resultHandler).handle(any(IdentificationResultCollection.class));
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setExecutorService(Executors.newFixedThreadPool(1));
+        BlockingThreadPoolExecutorFactory postProcessFactory = new BlockingThreadPoolExecutorFactory();
+        postProcessFactory.setCorePoolSize(1);
+        postProcessFactory.setMaxPoolSize(1);
+        postProcessFactory.setQueueCapacity(1);
+        postProcessFactory.setBlockWhenFull(true);
+        postProcessFactory.setThreadNamePrefix("post-process-thread-");
+        submissionGateway.setPostProcessExecutorService(postProcessFactory.newInstance());
+
+        // One request holds the post process thread and one fills its queue, so the match thread waits with the rest.
+        for (int i = 0; i < 4; i++) {
+            IdentificationRequest request = mock(IdentificationRequest.class);
+            when(request.getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/request" + i)));
+            submissionGateway.submit(request);
+        }
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+        while (submissionGateway.getPostProcessQueueDepth() < 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        submissionGateway.awaitIdle();
+
+        assertEquals(4, handlingThreads.size());
+        for (String handlingThread : handlingThreads) {
+            assertTrue(handlingThread.startsWith("post-process-thread-"));
+        }
+        submissionGateway.close();
+    }
 }
@@ -157,6 +157,11 @@ public class ConfigDialog extends JDialog {
         Object defaultHashAlgorithm =
             globalConfig.get(DroidGlobalProperty.HASH_ALGORITHM.getName());
         allHashAlgorithms.addAll(availableAlgorithms);
+        // The dropdown only offers single algorithms, so a list of them set in droid.properties
+        // is offered as it is, rather than being replaced by the first algorithm in the dropdown.
+        if (defaultHashAlgorithm != null && !allHashAlgorithms.contains(defaultHashAlgorithm)) {
+            allHashAlgorithms.add(defaultHashAlgorithm.toString());
+        }
         if (allHashAlgorithms.contains(defaultHashAlgorithm)) {
             globalConfig.put(DroidGlobalProperty.HASH_ALGORITHM.getName(), defaultHashAlgorithm);
         }
@@ -31,16 +31,16 @@
  */
 package uk.gov.nationalarchives.droid.gui.treemodel;
 
-import java.awt.Cursor;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.TreeNode;
 
 import uk.gov.nationalarchives.droid.gui.ProfileForm;
+import uk.gov.nationalarchives.droid.gui.worker.ChildNodeLoader;
 import uk.gov.nationalarchives.droid.profile.ProfileManager;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 
@@ -52,6 +52,7 @@ public class ExpandingTreeListener implements TreeWillExpandListener {
 
     private ProfileManager profileManager;
     private ProfileForm profileForm;
+    private List<ChildNodeLoader> loaders = new ArrayList<ChildNodeLoader>();
 
     /**
      * @param profileManager a profile manager. 
@@ -63,57 +64,58 @@ public class ExpandingTreeListener implements TreeWillExpandListener {
     }
     
     /**
+     * Loads the children of the expanding node a page at a time in the background,
+     * adding them to the tree as each page arrives.
      * {@inheritDoc}
      */
     @Override
     public void treeWillExpand(TreeExpansionEvent event) {
-        try {
-            profileForm.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            DefaultMutableTreeNode expandingNode = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
-            ProfileResourceNode prn = (ProfileResourceNode) expandingNode.getUserObject();
-            profileForm.getInMemoryNodes().put(prn.getId(), expandingNode);
-            expandingNode.removeAllChildren();
-            
-            final List<ProfileResourceNode> childNodes = 
-                profileManager.findProfileResourceNodeAndImmediateChildren(
-                        profileForm.getProfile().getUuid(), prn.getId());
-            if (!childNodes.isEmpty()) {
-                expandingNode.setAllowsChildren(true);
-                for (ProfileResourceNode node : childNodes) {
-                    DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(node, node.allowsChildren());
-                    expandingNode.add(newNode);
-                    profileForm.getInMemoryNodes().put(node.getId(), newNode);
-                }
-            }
-            
-            if (expandingNode.getChildCount() == 0) {
-                expandingNode.setAllowsChildren(false);
-            }
-            
-            profileForm.getTreeModel().nodeStructureChanged(expandingNode);
-        } finally {
-            profileForm.setCursor(Cursor.getDefaultCursor());
-        }
+        DefaultMutableTreeNode expandingNode = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        ProfileResourceNode prn = (ProfileResourceNode) expandingNode.getUserObject();
+        cancelLoading(expandingNode);
+        profileForm.getInMemoryNodes().put(prn.getId(), expandingNode);
+        expandingNode.removeAllChildren();
+        expandingNode.setAllowsChildren(true);
+
+        final ChildNodeLoader loader = new ChildNodeLoader(profileManager, profileForm, expandingNode);
+        loaders.add(loader);
+        profileForm.getTreeModel().nodeStructureChanged(expandingNode);
+        loader.execute();
     }
     
     /**
+     * Forgets the collapsing node and every expanded node below it, so the profile
+     * stops adding children to them.
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
     public void treeWillCollapse(TreeExpansionEvent event) {
         DefaultMutableTreeNode collapsingNode = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
-        ProfileResourceNode prn = (ProfileResourceNode) collapsingNode.getUserObject();
-        profileForm.getInMemoryNodes().remove(prn.getId());
-        
-        for (Enumeration<TreeNode> e = collapsingNode.children(); e.hasMoreElements();) {
-            DefaultMutableTreeNode nodeToRemove = (DefaultMutableTreeNode) e.nextElement();
-            final ProfileResourceNode node = (ProfileResourceNode) nodeToRemove.getUserObject();
-            profileForm.getInMemoryNodes().remove(node.getId());
+        cancelLoading(collapsingNode);
+        for (Iterator<DefaultMutableTreeNode> it = profileForm.getInMemoryNodes().values().iterator(); it.hasNext();) {
+            if (collapsingNode.isNodeDescendant(it.next())) {
+                it.remove();
+            }
         }
         collapsingNode.removeAllChildren();
         
         profileForm.getTreeModel().nodeStructureChanged(collapsingNode);
     }
-    
+
+    /*
+     * Stops loading children into the node, or into any node below it, as they are no longer displayed.
+     * Loaders which have finished are forgotten.
+     */
+    private void cancelLoading(DefaultMutableTreeNode node) {
+        for (Iterator<ChildNodeLoader> it = loaders.iterator(); it.hasNext();) {
+            final ChildNodeLoader loader = it.next();
+            if (loader.isDone()) {
+                it.remove();
+            } else if (node.isNodeDescendant(loader.getParentNode())) {
+                loader.cancel(false);
+                it.remove();
+            }
+        }
+    }
+
 }
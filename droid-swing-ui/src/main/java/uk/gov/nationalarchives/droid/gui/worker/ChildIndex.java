@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.gui.worker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+/**
+ * The positions of the children of a tree node, keyed by the profile resource nodes they show,
+ * with the children inserted and changed since the tree model was last told.
+ * Other parts of the GUI also add and remove children, so the index is rebuilt if a position
+ * no longer holds the node it indexes, or a node isn't found and the number of children has changed.
+ */
+final class ChildIndex {
+
+    private static final int INITIAL_CHANGED_CAPACITY = 16;
+
+    private final DefaultMutableTreeNode parent;
+    private final Map<ProfileResourceNode, Integer> positions = new HashMap<>();
+    private int indexedCount;
+    private int[] changed = new int[INITIAL_CHANGED_CAPACITY];
+    private int changedCount;
+    private int firstInserted = -1;
+    private int endInserted;
+
+    /**
+     * @param parent the tree node whose children are indexed.
+     */
+    ChildIndex(DefaultMutableTreeNode parent) {
+        this.parent = parent;
+        rebuild();
+    }
+
+    /**
+     * @param node a profile resource node.
+     * @return the child showing the node, or null if there isn't one.
+     */
+    DefaultMutableTreeNode get(ProfileResourceNode node) {
+        DefaultMutableTreeNode child = getIndexedChild(node);
+        if (child == null && (positions.containsKey(node) || indexedCount != parent.getChildCount())) {
+            rebuild();
+            child = getIndexedChild(node);
+        }
+        return child;
+    }
+
+    /**
+     * Finds the child showing a node, remembering that it has changed.
+     * @param node a profile resource node.
+     * @return the child showing the node, or null if there isn't one.
+     */
+    DefaultMutableTreeNode find(ProfileResourceNode node) {
+        final DefaultMutableTreeNode child = get(node);
+        if (child != null) {
+            if (changedCount == changed.length) {
+                changed = Arrays.copyOf(changed, changedCount * 2);
+            }
+            changed[changedCount++] = positions.get(node);
+        }
+        return child;
+    }
+
+    /**
+     * Adds a child after the existing ones.
+     * @param child the child to add.
+     */
+    void add(DefaultMutableTreeNode child) {
+        insert(child, parent.getChildCount());
+    }
+
+    /**
+     * Inserts a child.  Children inserted between changes being fired must be next to each other.
+     * @param child the child to insert.
+     * @param position the position to insert it at.
+     */
+    void insert(DefaultMutableTreeNode child, int position) {
+        parent.insert(child, position);
+        positions.put((ProfileResourceNode) child.getUserObject(), position);
+        indexedCount++;
+        if (firstInserted < 0) {
+            firstInserted = position;
+        }
+        endInserted = position + 1;
+    }
+
+    /**
+     * Tells the tree model about the children inserted and changed since it was last told.
+     * @param treeModel the tree model showing the parent.
+     */
+    void fireChanges(DefaultTreeModel treeModel) {
+        if (firstInserted >= 0) {
+            final int[] inserted = new int[endInserted - firstInserted];
+            for (int i = 0; i < inserted.length; i++) {
+                inserted[i] = firstInserted + i;
+            }
+            treeModel.nodesWereInserted(parent, inserted);
+            firstInserted = -1;
+        }
+        if (changedCount > 0) {
+            Arrays.sort(changed, 0, changedCount);
+            int distinct = 1;
+            for (int i = 1; i < changedCount; i++) {
+                if (changed[i] != changed[distinct - 1]) {
+                    changed[distinct++] = changed[i];
+                }
+            }
+            treeModel.nodesChanged(parent, Arrays.copyOf(changed, distinct));
+            changedCount = 0;
+        }
+        treeModel.nodeChanged(parent);
+    }
+
+    private DefaultMutableTreeNode getIndexedChild(ProfileResourceNode node) {
+        final Integer position = positions.get(node);
+        if (position != null && position < parent.getChildCount()) {
+            final DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(position);
+            if (node.equals(child.getUserObject())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private void rebuild() {
+        positions.clear();
+        indexedCount = parent.getChildCount();
+        for (int i = 0; i < indexedCount; i++) {
+            final Object child = ((DefaultMutableTreeNode) parent.getChildAt(i)).getUserObject();
+            if (child instanceof ProfileResourceNode) {
+                positions.put((ProfileResourceNode) child, i);
+            }
+        }
+    }
+}
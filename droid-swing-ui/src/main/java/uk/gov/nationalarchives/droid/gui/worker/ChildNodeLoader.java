@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.gui.worker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.gui.ProfileForm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileManager;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+/**
+ * Loads the children of an expanded node in the profile tree in the background,
+ * a page at a time in node id order, so the tree stays responsive however many children there are.
+ * A placeholder row is shown below the children until they have all been loaded.
+ */
+public class ChildNodeLoader extends SwingWorker<Void, List<ProfileResourceNode>> {
+
+    /** The number of children fetched from the profile at a time. */
+    public static final int PAGE_SIZE = 1000;
+
+    private static final String LOADING = "Loading...";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ProfileManager profileManager;
+    private final ProfileForm profileForm;
+    private final DefaultMutableTreeNode parentNode;
+    private final DefaultMutableTreeNode loadingNode;
+    private final ChildIndex children;
+
+    /**
+     * Adds a placeholder row to the parent node, which is removed once its children have been loaded.
+     * @param profileManager a profile manager.
+     * @param profileForm the profile form showing the tree.
+     * @param parentNode the tree node whose children are loaded.
+     */
+    public ChildNodeLoader(ProfileManager profileManager, ProfileForm profileForm, DefaultMutableTreeNode parentNode) {
+        this.profileManager = profileManager;
+        this.profileForm = profileForm;
+        this.parentNode = parentNode;
+        this.loadingNode = new DefaultMutableTreeNode(newLoadingNode((ProfileResourceNode) parentNode.getUserObject()), false);
+        parentNode.add(loadingNode);
+        this.children = new ChildIndex(parentNode);
+    }
+
+    /**
+     * @return the tree node whose children are loaded.
+     */
+    public DefaultMutableTreeNode getParentNode() {
+        return parentNode;
+    }
+
+    @Override
+    protected Void doInBackground() {
+        final String profileId = profileForm.getProfile().getUuid();
+        final Long parentId = ((ProfileResourceNode) parentNode.getUserObject()).getId();
+        long afterNodeId = 0;
+        List<ProfileResourceNode> page;
+        do {
+            page = profileManager.findProfileResourceNodeChildren(profileId, parentId, afterNodeId, PAGE_SIZE);
+            if (!page.isEmpty()) {
+                publish(page);
+                afterNodeId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == PAGE_SIZE && !isCancelled());
+        return null;
+    }
+
+    /**
+     * Inserts pages of children above the placeholder row.  Children the profile has
+     * already added to the tree while they were being loaded are found in the parent's
+     * child index and updated instead.  The children aren't registered as parents,
+     * so the profile only adds their own children once they are expanded.
+     * @param pages the pages of children loaded since the last time this was called.
+     */
+    @Override
+    protected void process(List<List<ProfileResourceNode>> pages) {
+        if (!isCancelled()) {
+            final DefaultTreeModel treeModel = profileForm.getTreeModel();
+            final List<DefaultMutableTreeNode> updated = new ArrayList<>();
+            int index = parentNode.getIndex(loadingNode);
+            for (final List<ProfileResourceNode> page : pages) {
+                for (final ProfileResourceNode node : page) {
+                    final DefaultMutableTreeNode existing = children.get(node);
+                    if (existing != null) {
+                        existing.setUserObject(node);
+                        updated.add(existing);
+                    } else {
+                        children.insert(new DefaultMutableTreeNode(node, node.allowsChildren()), index++);
+                    }
+                }
+            }
+            children.fireChanges(treeModel);
+            for (final DefaultMutableTreeNode existing : updated) {
+                treeModel.nodeChanged(existing);
+            }
+        }
+    }
+
+    /**
+     * Removes the placeholder row once all the children have been loaded.
+     */
+    @Override
+    protected void done() {
+        if (!isCancelled()) {
+            final int index = parentNode.getIndex(loadingNode);
+            if (index >= 0) {
+                parentNode.remove(index);
+                profileForm.getTreeModel().nodesWereRemoved(parentNode, new int[] {index}, new Object[] {loadingNode});
+            }
+            if (parentNode.getChildCount() == 0) {
+                parentNode.setAllowsChildren(false);
+                profileForm.getTreeModel().nodeStructureChanged(parentNode);
+            }
+            try {
+                get();
+            } catch (ExecutionException e) {
+                log.error(e.getCause().getMessage(), e);
+            } catch (InterruptedException | CancellationException e) {
+                log.debug(e);
+            }
+        }
+    }
+
+    /*
+     * The placeholder has the uri of its parent, so it shows the folder being loaded as its tooltip.
+     */
+    private static ProfileResourceNode newLoadingNode(ProfileResourceNode parent) {
+        final NodeMetaData metaData = new NodeMetaData();
+        metaData.setName(LOADING);
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setNodeStatus(NodeStatus.NOT_DONE);
+        final ProfileResourceNode loading = new ProfileResourceNode(parent.getUri());
+        loading.setMetaData(metaData);
+        loading.setParentId(parent.getId());
+        return loading;
+    }
+}
@@ -34,15 +34,16 @@ package uk.gov.nationalarchives.droid.gui.worker;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.TreeNode;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -64,11 +65,17 @@ public class DroidJob extends SwingWorker<Integer, ProfileResourceNode> {
     private static final int RESULT_MAX_LENGTH = 60;
     private static final int RESULT_LEFT_MIN = 20;
 
+    /** The minimum time between updates of the resource shown in the progress bar. */
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+
     private final Log log = LogFactory.getLog(getClass());
     
     private ProfileForm profileForm;
     private ProfileManager profileManager;
     private DefaultTreeModel treeModel;
+
+    private final Map<DefaultMutableTreeNode, ChildIndex> childIndexes = new WeakHashMap<>();
+    private long lastProgressUpdate;
     
     /**
      * 
@@ -79,48 +86,59 @@ public class DroidJob extends SwingWorker<Integer, ProfileResourceNode> {
     }
     
     /**
+     * Merges a chunk of results into the tree.  Only the children of expanded nodes are shown,
+     * so new nodes aren't registered as parents until they are expanded.  Each displayed parent's children are indexed,
+     * so results are matched to existing children without searching them, and the tree model
+     * is told about the changes to each parent once per chunk.
      * {@inheritDoc}
      */
     @Override
     protected void process(List<ProfileResourceNode> chunks) {
+        final Map<DefaultMutableTreeNode, ChildIndex> changedParents = new LinkedHashMap<>();
         for (ProfileResourceNode node : chunks) {
         
             Long parentId = node.getParentId() == null ? -1L : node.getParentId();
             DefaultMutableTreeNode parent = profileForm.getInMemoryNodes().get(parentId);
             if (parent != null) {
                 parent.setAllowsChildren(true);
-                boolean updated = false;
-                for (Enumeration<TreeNode> e = parent.children();
-                     e.hasMoreElements() && !updated;) {
-                    DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) e.nextElement();
-                    if (childNode.getUserObject().equals(node)) {
-                        childNode.setUserObject(node);
-                        childNode.setAllowsChildren(node.allowsChildren());
-                        treeModel.nodeChanged(childNode);
-                        updated = true;
-                    }
-                } 
-                
-                if (!updated) {
+                final ChildIndex children = getChildIndex(parent);
+                final DefaultMutableTreeNode childNode = children.find(node);
+                if (childNode != null) {
+                    childNode.setUserObject(node);
+                    childNode.setAllowsChildren(node.allowsChildren());
+                } else {
                     DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(node, node.allowsChildren());
-                    treeModel.insertNodeInto(newNode, parent, parent.getChildCount());
+                    children.add(newNode);
                 }
-                treeModel.nodeChanged(parent);
+                changedParents.put(parent, children);
             }
         }
+
+        for (ChildIndex children : changedParents.values()) {
+            children.fireChanges(treeModel);
+        }
         
-        if (!chunks.isEmpty()) {
-            String decodedURI = java.net.URLDecoder.decode(chunks.get(0).getUri().toString());
+        final long now = System.currentTimeMillis();
+        if (!chunks.isEmpty() && now - lastProgressUpdate >= PROGRESS_INTERVAL_MILLIS) {
+            lastProgressUpdate = now;
+            String decodedURI = java.net.URLDecoder.decode(chunks.get(chunks.size() - 1).getUri().toString());
             String abbreviatedUri = DroidStringUtils.abbreviate(decodedURI, profileForm.getProfileProgressBar());
             profileForm.getProfileProgressBar().setString(abbreviatedUri);
         }
     }
 
+    private ChildIndex getChildIndex(DefaultMutableTreeNode parent) {
+        ChildIndex children = childIndexes.get(parent);
+        if (children == null) {
+            children = new ChildIndex(parent);
+            childIndexes.put(parent, children);
+        }
+        return children;
+    }
+
     @Override
     protected Integer doInBackground() throws IOException {
 
-        treeModel = profileForm.getTreeModel();
-        
         ProfileResultObserver myObserver = new ProfileResultObserver() {
             @Override
             public void onResult(ProfileResourceNode result) {
@@ -224,6 +242,7 @@ public class DroidJob extends SwingWorker<Integer, ProfileResourceNode> {
      */
     public void setProfileForm(ProfileForm profileForm) {
         this.profileForm = profileForm;
+        this.treeModel = profileForm.getTreeModel();
     }
 
     /**
@@ -232,5 +251,4 @@ public class DroidJob extends SwingWorker<Integer, ProfileResourceNode> {
     public void start() {
         execute();
     }
-    
 }
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.gui.worker;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.gui.ProfileForm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileInstance;
+import uk.gov.nationalarchives.droid.profile.ProfileManager;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+public class ChildNodeLoaderTest {
+
+    private static final String PROFILE_ID = "profile";
+    private static final long PARENT_ID = 1L;
+
+    private ProfileManager profileManager;
+    private ProfileForm profileForm;
+    private Map<Long, DefaultMutableTreeNode> inMemoryNodes;
+    private DefaultMutableTreeNode root;
+    private DefaultMutableTreeNode parentNode;
+
+    @Before
+    public void setup() {
+        profileManager = mock(ProfileManager.class);
+        profileForm = mock(ProfileForm.class);
+        ProfileInstance profile = mock(ProfileInstance.class);
+        when(profile.getUuid()).thenReturn(PROFILE_ID);
+        when(profileForm.getProfile()).thenReturn(profile);
+
+        root = new DefaultMutableTreeNode(null, true);
+        parentNode = new DefaultMutableTreeNode(newNode(PARENT_ID, ResourceType.FOLDER), true);
+        root.add(parentNode);
+        when(profileForm.getTreeModel()).thenReturn(new DefaultTreeModel(root, true));
+
+        inMemoryNodes = new HashMap<>();
+        inMemoryNodes.put(PARENT_ID, parentNode);
+        when(profileForm.getInMemoryNodes()).thenReturn(inMemoryNodes);
+    }
+
+    @Test
+    public void testChildrenAreLoadedAPageAtATimeAndThePlaceholderIsRemoved() throws Exception {
+        final int lastPageSize = 3;
+        List<ProfileResourceNode> firstPage = newPage(2, ChildNodeLoader.PAGE_SIZE);
+        List<ProfileResourceNode> lastPage = newPage(2 + ChildNodeLoader.PAGE_SIZE, lastPageSize);
+        when(profileManager.findProfileResourceNodeChildren(PROFILE_ID, PARENT_ID, 0, ChildNodeLoader.PAGE_SIZE))
+            .thenReturn(firstPage);
+        when(profileManager.findProfileResourceNodeChildren(PROFILE_ID, PARENT_ID, 1 + ChildNodeLoader.PAGE_SIZE,
+            ChildNodeLoader.PAGE_SIZE)).thenReturn(lastPage);
+
+        ChildNodeLoader loader = new ChildNodeLoader(profileManager, profileForm, parentNode);
+        assertEquals(1, parentNode.getChildCount());
+        assertEquals("Loading...", getChild(0).getMetaData().getName());
+
+        runToCompletion(loader);
+
+        assertEquals(ChildNodeLoader.PAGE_SIZE + lastPageSize, parentNode.getChildCount());
+        for (int i = 0; i < parentNode.getChildCount(); i++) {
+            assertEquals(Long.valueOf(i + 2), getChild(i).getId());
+        }
+        // only the expanded parent receives children from the running profile.
+        assertEquals(1, inMemoryNodes.size());
+    }
+
+    @Test
+    public void testChildrenAlreadyAddedByTheProfileAreUpdatedRatherThanAddedTwice() throws Exception {
+        DefaultMutableTreeNode alreadyAdded = new DefaultMutableTreeNode(newNode(2L, ResourceType.FILE), false);
+        parentNode.add(alreadyAdded);
+        List<ProfileResourceNode> page = newPage(2, 2);
+        when(profileManager.findProfileResourceNodeChildren(PROFILE_ID, PARENT_ID, 0, ChildNodeLoader.PAGE_SIZE))
+            .thenReturn(page);
+
+        runToCompletion(new ChildNodeLoader(profileManager, profileForm, parentNode));
+
+        assertEquals(2, parentNode.getChildCount());
+        assertSame(page.get(0), alreadyAdded.getUserObject());
+        assertEquals(Long.valueOf(3L), getChild(1).getId());
+    }
+
+    @Test
+    public void testAFolderWithNoChildrenNoLongerAllowsThem() throws Exception {
+        when(profileManager.findProfileResourceNodeChildren(PROFILE_ID, PARENT_ID, 0, ChildNodeLoader.PAGE_SIZE))
+            .thenReturn(new ArrayList<ProfileResourceNode>());
+
+        runToCompletion(new ChildNodeLoader(profileManager, profileForm, parentNode));
+
+        assertEquals(0, parentNode.getChildCount());
+        assertFalse(parentNode.getAllowsChildren());
+    }
+
+    private void runToCompletion(ChildNodeLoader loader) throws Exception {
+        // process and done run later on the event dispatch thread, before the state becomes done.
+        final CountDownLatch finished = new CountDownLatch(1);
+        loader.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (StateValue.DONE == evt.getNewValue()) {
+                    finished.countDown();
+                }
+            }
+        });
+        loader.execute();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+    }
+
+    private ProfileResourceNode getChild(int index) {
+        return (ProfileResourceNode) ((DefaultMutableTreeNode) parentNode.getChildAt(index)).getUserObject();
+    }
+
+    private static List<ProfileResourceNode> newPage(long firstId, int size) {
+        List<ProfileResourceNode> page = new ArrayList<>();
+        for (long id = firstId; id < firstId + size; id++) {
+            ProfileResourceNode node = newNode(id, ResourceType.FILE);
+            node.setParentId(PARENT_ID);
+            page.add(node);
+        }
+        return page;
+    }
+
+    private static ProfileResourceNode newNode(long id, ResourceType resourceType) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/folder/" + id));
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setName(Long.toString(id));
+        metaData.setResourceType(resourceType);
+        node.setMetaData(metaData);
+        node.setId(id);
+        return node;
+    }
+}
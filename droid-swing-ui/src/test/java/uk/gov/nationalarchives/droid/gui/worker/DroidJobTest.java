@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.gui.worker;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JProgressBar;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.gui.ProfileForm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+public class DroidJobTest {
+
+    private static final long PARENT_ID = 1L;
+
+    private DroidJob job;
+    private DefaultMutableTreeNode parentNode;
+    private Map<Long, DefaultMutableTreeNode> inMemoryNodes;
+    private List<int[]> inserted;
+    private List<int[]> changed;
+
+    @Before
+    public void setup() {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode(null, true);
+        parentNode = new DefaultMutableTreeNode(newNode(PARENT_ID, ResourceType.FOLDER), true);
+        root.add(parentNode);
+        for (long id = 2; id <= 4; id++) {
+            parentNode.add(new DefaultMutableTreeNode(newNode(id, ResourceType.FILE), false));
+        }
+        inMemoryNodes = new HashMap<>();
+        inMemoryNodes.put(PARENT_ID, parentNode);
+
+        DefaultTreeModel treeModel = new DefaultTreeModel(root, true);
+        inserted = new ArrayList<>();
+        changed = new ArrayList<>();
+        treeModel.addTreeModelListener(new TreeModelListener() {
+            @Override
+            public void treeNodesInserted(TreeModelEvent e) {
+                inserted.add(e.getChildIndices());
+            }
+
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+                if (e.getTreePath().getLastPathComponent() == parentNode) {
+                    changed.add(e.getChildIndices());
+                }
+            }
+
+            @Override
+            public void treeNodesRemoved(TreeModelEvent e) {
+            }
+
+            @Override
+            public void treeStructureChanged(TreeModelEvent e) {
+            }
+        });
+
+        ProfileForm profileForm = mock(ProfileForm.class);
+        when(profileForm.getTreeModel()).thenReturn(treeModel);
+        when(profileForm.getInMemoryNodes()).thenReturn(inMemoryNodes);
+        when(profileForm.getProfileProgressBar()).thenReturn(new JProgressBar() {
+            @Override
+            public Graphics getGraphics() {
+                // the progress bar isn't displayed, but the resource shown in it is abbreviated to fit.
+                return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).getGraphics();
+            }
+        });
+        job = new DroidJob();
+        job.setProfileForm(profileForm);
+    }
+
+    @Test
+    public void testResultsUpdateExistingChildrenAndNewChildrenAreInsertedInOneEvent() {
+        ProfileResourceNode updated = newNode(3L, ResourceType.FILE);
+        job.process(Arrays.asList(newNode(5L, ResourceType.FILE), updated, newNode(6L, ResourceType.FILE)));
+
+        assertEquals(5, parentNode.getChildCount());
+        assertSame(updated, getChild(1));
+        assertEquals(Long.valueOf(5L), getChild(3).getId());
+        assertEquals(Long.valueOf(6L), getChild(4).getId());
+        assertFalse(inMemoryNodes.containsKey(6L));
+
+        assertEquals(1, inserted.size());
+        assertArrayEquals(new int[] {3, 4}, inserted.get(0));
+        assertArrayEquals(new int[] {1}, changed.get(0));
+    }
+
+    @Test
+    public void testChildrenAddedElsewhereAreFoundAfterTheIndexIsRebuilt() {
+        job.process(Arrays.asList(newNode(3L, ResourceType.FILE)));
+
+        // children added by loading a page of them insert above the existing ones.
+        parentNode.insert(new DefaultMutableTreeNode(newNode(7L, ResourceType.FILE), false), 0);
+        ProfileResourceNode updatedLoaded = newNode(7L, ResourceType.FILE);
+        ProfileResourceNode updatedExisting = newNode(4L, ResourceType.FILE);
+        job.process(Arrays.asList(updatedLoaded, updatedExisting));
+
+        assertEquals(4, parentNode.getChildCount());
+        assertSame(updatedLoaded, getChild(0));
+        assertSame(updatedExisting, getChild(3));
+        assertArrayEquals(new int[] {0, 3}, changed.get(1));
+    }
+
+    @Test
+    public void testGrandchildrenOfAnUnexpandedFolderAreNotAddedToTheTree() {
+        ProfileResourceNode folder = newNode(5L, ResourceType.FOLDER);
+        ProfileResourceNode grandchild = newNode(8L, ResourceType.FILE);
+        grandchild.setParentId(5L);
+        job.process(Arrays.asList(folder, grandchild));
+
+        assertEquals(4, parentNode.getChildCount());
+        DefaultMutableTreeNode folderNode = (DefaultMutableTreeNode) parentNode.getChildAt(3);
+        assertSame(folder, folderNode.getUserObject());
+        assertEquals(0, folderNode.getChildCount());
+        assertEquals(1, inMemoryNodes.size());
+    }
+
+    private ProfileResourceNode getChild(int index) {
+        return (ProfileResourceNode) ((DefaultMutableTreeNode) parentNode.getChildAt(index)).getUserObject();
+    }
+
+    private static ProfileResourceNode newNode(long id, ResourceType resourceType) {
+        ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/folder/" + id));
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setName(Long.toString(id));
+        metaData.setResourceType(resourceType);
+        node.setMetaData(metaData);
+        node.setId(id);
+        node.setParentId(id == PARENT_ID ? null : PARENT_ID);
+        return node;
+    }
+}